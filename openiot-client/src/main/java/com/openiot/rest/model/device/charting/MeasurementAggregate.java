@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.rest.model.device.charting;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.openiot.rest.model.datatype.JsonDateSerializer;
+import com.openiot.spi.device.charting.IMeasurementAggregate;
+
+import java.util.Date;
+
+/**
+ * Measurement aggregate implementation.
+ * 
+ * @author Derek
+ */
+public class MeasurementAggregate implements IMeasurementAggregate {
+
+	/** Start of interval */
+	private Date startDate;
+
+	/** Number of values */
+	private long count;
+
+	/** Smallest value */
+	private double min;
+
+	/** Largest value */
+	private double max;
+
+	/** Average value */
+	private double average;
+
+	/** Most recent value */
+	private double last;
+
+	/** Date of most recent value */
+	private Date lastDate;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IMeasurementAggregate#getStartDate()
+	 */
+	@Override
+	@JsonSerialize(using = JsonDateSerializer.class)
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IMeasurementAggregate#getCount()
+	 */
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IMeasurementAggregate#getMin()
+	 */
+	@Override
+	public double getMin() {
+		return min;
+	}
+
+	public void setMin(double min) {
+		this.min = min;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IMeasurementAggregate#getMax()
+	 */
+	@Override
+	public double getMax() {
+		return max;
+	}
+
+	public void setMax(double max) {
+		this.max = max;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IMeasurementAggregate#getAverage()
+	 */
+	@Override
+	public double getAverage() {
+		return average;
+	}
+
+	public void setAverage(double average) {
+		this.average = average;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IMeasurementAggregate#getLast()
+	 */
+	@Override
+	public double getLast() {
+		return last;
+	}
+
+	public void setLast(double last) {
+		this.last = last;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IMeasurementAggregate#getLastDate()
+	 */
+	@Override
+	@JsonSerialize(using = JsonDateSerializer.class)
+	public Date getLastDate() {
+		return lastDate;
+	}
+
+	public void setLastDate(Date lastDate) {
+		this.lastDate = lastDate;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.rest.model.device.charting;
+
+import com.openiot.spi.device.charting.IMeasurementAggregate;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measurement aggregate series implementation.
+ * 
+ * @author Derek
+ */
+public class MeasurementAggregateSeries implements IMeasurementAggregateSeries {
+
+	/** Measurement id */
+	private String measurementId;
+
+	/** Aggregates ordered by interval */
+	private List<IMeasurementAggregate> aggregates = new ArrayList<IMeasurementAggregate>();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IMeasurementAggregateSeries#getMeasurementId()
+	 */
+	@Override
+	public String getMeasurementId() {
+		return measurementId;
+	}
+
+	public void setMeasurementId(String measurementId) {
+		this.measurementId = measurementId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IMeasurementAggregateSeries#getAggregates()
+	 */
+	@Override
+	public List<IMeasurementAggregate> getAggregates() {
+		return aggregates;
+	}
+
+	public void setAggregates(List<IMeasurementAggregate> aggregates) {
+		this.aggregates = aggregates;
+	}
+}
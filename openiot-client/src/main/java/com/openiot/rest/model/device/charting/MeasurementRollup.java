@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.rest.model.device.charting;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.openiot.rest.model.datatype.JsonDateSerializer;
+import com.openiot.spi.device.charting.IMeasurementRollup;
+import com.openiot.spi.device.charting.MeasurementRollupResolution;
+
+import java.util.Date;
+
+/**
+ * Measurement rollup implementation.
+ *
+ * @author Derek
+ */
+public class MeasurementRollup implements IMeasurementRollup {
+
+	/** Assignment token */
+	private String assignmentToken;
+
+	/** Measurement id */
+	private String measurementId;
+
+	/** Rollup resolution */
+	private MeasurementRollupResolution resolution;
+
+	/** Start of interval */
+	private Date startDate;
+
+	/** Number of values */
+	private long count;
+
+	/** Smallest value */
+	private double min = Double.POSITIVE_INFINITY;
+
+	/** Largest value */
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/** Sum of values */
+	private double sum;
+
+	/** Most recent value */
+	private double last;
+
+	/** Date of most recent value */
+	private Date lastDate;
+
+	public MeasurementRollup() {
+	}
+
+	public MeasurementRollup(String assignmentToken, String measurementId,
+			MeasurementRollupResolution resolution, Date startDate) {
+		this.assignmentToken = assignmentToken;
+		this.measurementId = measurementId;
+		this.resolution = resolution;
+		this.startDate = startDate;
+	}
+
+	/**
+	 * Add a value to the running totals.
+	 *
+	 * @param value
+	 * @param date
+	 */
+	public void add(double value, Date date) {
+		count++;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		sum += value;
+		if ((lastDate == null) || (!date.before(lastDate))) {
+			last = value;
+			lastDate = date;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getAssignmentToken()
+	 */
+	@Override
+	public String getAssignmentToken() {
+		return assignmentToken;
+	}
+
+	public void setAssignmentToken(String assignmentToken) {
+		this.assignmentToken = assignmentToken;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getMeasurementId()
+	 */
+	@Override
+	public String getMeasurementId() {
+		return measurementId;
+	}
+
+	public void setMeasurementId(String measurementId) {
+		this.measurementId = measurementId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getResolution()
+	 */
+	@Override
+	public MeasurementRollupResolution getResolution() {
+		return resolution;
+	}
+
+	public void setResolution(MeasurementRollupResolution resolution) {
+		this.resolution = resolution;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getStartDate()
+	 */
+	@Override
+	@JsonSerialize(using = JsonDateSerializer.class)
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getCount()
+	 */
+	@Override
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getMin()
+	 */
+	@Override
+	public double getMin() {
+		return min;
+	}
+
+	public void setMin(double min) {
+		this.min = min;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getMax()
+	 */
+	@Override
+	public double getMax() {
+		return max;
+	}
+
+	public void setMax(double max) {
+		this.max = max;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getSum()
+	 */
+	@Override
+	public double getSum() {
+		return sum;
+	}
+
+	public void setSum(double sum) {
+		this.sum = sum;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getLast()
+	 */
+	@Override
+	public double getLast() {
+		return last;
+	}
+
+	public void setLast(double last) {
+		this.last = last;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IMeasurementRollup#getLastDate()
+	 */
+	@Override
+	@JsonSerialize(using = JsonDateSerializer.class)
+	public Date getLastDate() {
+		return lastDate;
+	}
+
+	public void setLastDate(Date lastDate) {
+		this.lastDate = lastDate;
+	}
+}
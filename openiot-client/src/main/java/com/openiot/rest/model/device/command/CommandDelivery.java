@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.rest.model.device.command;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.openiot.rest.model.datatype.JsonDateSerializer;
+import com.openiot.spi.device.command.CommandDeliveryStatus;
+import com.openiot.spi.device.command.ICommandDelivery;
+
+import java.util.Date;
+
+/**
+ * Default implementation of the {@link ICommandDelivery} interface.
+ * 
+ * @author Derek
+ */
+public class CommandDelivery implements ICommandDelivery {
+
+	/** Destination id */
+	private String destinationId;
+
+	/** Invocation id */
+	private String invocationId;
+
+	/** Assignment token */
+	private String assignmentToken;
+
+	/** Delivery status */
+	private CommandDeliveryStatus status;
+
+	/** Number of delivery attempts */
+	private int attempts;
+
+	/** Error for failed delivery */
+	private String error;
+
+	/** Date delivery was queued */
+	private Date createdDate;
+
+	/** Date status last changed */
+	private Date updatedDate;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDelivery#getDestinationId()
+	 */
+	@Override
+	public String getDestinationId() {
+		return destinationId;
+	}
+
+	public void setDestinationId(String destinationId) {
+		this.destinationId = destinationId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDelivery#getInvocationId()
+	 */
+	@Override
+	public String getInvocationId() {
+		return invocationId;
+	}
+
+	public void setInvocationId(String invocationId) {
+		this.invocationId = invocationId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDelivery#getAssignmentToken()
+	 */
+	@Override
+	public String getAssignmentToken() {
+		return assignmentToken;
+	}
+
+	public void setAssignmentToken(String assignmentToken) {
+		this.assignmentToken = assignmentToken;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDelivery#getStatus()
+	 */
+	@Override
+	public CommandDeliveryStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(CommandDeliveryStatus status) {
+		this.status = status;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDelivery#getAttempts()
+	 */
+	@Override
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDelivery#getError()
+	 */
+	@Override
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDelivery#getCreatedDate()
+	 */
+	@Override
+	@JsonSerialize(using = JsonDateSerializer.class)
+	public Date getCreatedDate() {
+		return createdDate;
+	}
+
+	public void setCreatedDate(Date createdDate) {
+		this.createdDate = createdDate;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDelivery#getUpdatedDate()
+	 */
+	@Override
+	@JsonSerialize(using = JsonDateSerializer.class)
+	public Date getUpdatedDate() {
+		return updatedDate;
+	}
+
+	public void setUpdatedDate(Date updatedDate) {
+		this.updatedDate = updatedDate;
+	}
+}
@@ -26,6 +26,12 @@ public class DecodedDeviceEventRequest implements IDecodedDeviceEventRequest {
 	/** Event create request */
 	private IDeviceEventCreateRequest request;
 
+	/** Id of event source that received the event */
+	private String sourceId;
+
+	/** Time the event was handed to the processing strategy */
+	private long queuedNanos;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -66,4 +72,40 @@ public class DecodedDeviceEventRequest implements IDecodedDeviceEventRequest {
 	public void setRequest(IDeviceEventCreateRequest request) {
 		this.request = request;
 	}
-}
\ No newline at end of file
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDecodedDeviceEventRequest#getSourceId()
+	 */
+	public String getSourceId() {
+		return sourceId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDecodedDeviceEventRequest#setSourceId(java.lang.String)
+	 */
+	public void setSourceId(String sourceId) {
+		this.sourceId = sourceId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDecodedDeviceEventRequest#getQueuedNanos()
+	 */
+	public long getQueuedNanos() {
+		return queuedNanos;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDecodedDeviceEventRequest#setQueuedNanos(long)
+	 */
+	public void setQueuedNanos(long queuedNanos) {
+		this.queuedNanos = queuedNanos;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.rest.model.search;
+
+import com.openiot.spi.OpenIoTSystemException;
+import com.openiot.spi.device.event.IDeviceEvent;
+import com.openiot.spi.error.ErrorCode;
+import com.openiot.spi.error.ErrorLevel;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Identifies the last event on a page of events so the next page can start right after
+ * it. Events are listed newest first and ties on event date are broken by event id, so
+ * the date and id of the last event are enough to find where the next page starts. The
+ * encoded form is opaque to clients.
+ * 
+ * @author Derek
+ */
+public class ContinuationToken {
+
+	/** Separates the encoded date from the event id */
+	private static final char SEPARATOR = '_';
+
+	/** Date of the last event returned */
+	private final Date eventDate;
+
+	/** Id of the last event returned */
+	private final String id;
+
+	public ContinuationToken(Date eventDate, String id) {
+		this.eventDate = eventDate;
+		this.id = id;
+	}
+
+	/**
+	 * Encode the token for use in a request.
+	 * 
+	 * @return
+	 */
+	public String encode() {
+		return Long.toString(eventDate.getTime(), Character.MAX_RADIX) + SEPARATOR + id;
+	}
+
+	/**
+	 * Decode a token from a request.
+	 * 
+	 * @param encoded
+	 * @return
+	 * @throws OpenIoTSystemException if the token is not valid
+	 */
+	public static ContinuationToken decode(String encoded) throws OpenIoTSystemException {
+		int separator = (encoded != null) ? encoded.indexOf(SEPARATOR) : -1;
+		if ((separator < 1) || (separator == encoded.length() - 1)) {
+			throw new OpenIoTSystemException(ErrorCode.InvalidContinuationToken, ErrorLevel.ERROR);
+		}
+		try {
+			long time = Long.parseLong(encoded.substring(0, separator), Character.MAX_RADIX);
+			return new ContinuationToken(new Date(time), encoded.substring(separator + 1));
+		} catch (NumberFormatException e) {
+			throw new OpenIoTSystemException(ErrorCode.InvalidContinuationToken, ErrorLevel.ERROR);
+		}
+	}
+
+	/**
+	 * Get the encoded token for the page after a list of events.
+	 * 
+	 * @param page
+	 * @return null if the list is empty
+	 */
+	public static String after(List<? extends IDeviceEvent> page) {
+		if (page.isEmpty()) {
+			return null;
+		}
+		IDeviceEvent last = page.get(page.size() - 1);
+		return new ContinuationToken(last.getEventDate(), last.getId()).encode();
+	}
+
+	/**
+	 * Indicates whether an event comes after the token in newest-first order and so
+	 * belongs on a following page.
+	 * 
+	 * @param date
+	 * @param eventId
+	 * @return
+	 */
+	public boolean isFollowedBy(Date date, String eventId) {
+		int byDate = date.compareTo(eventDate);
+		if (byDate != 0) {
+			return byDate < 0;
+		}
+		return eventId.compareTo(id) < 0;
+	}
+
+	public Date getEventDate() {
+		return eventDate;
+	}
+
+	public String getId() {
+		return id;
+	}
+}
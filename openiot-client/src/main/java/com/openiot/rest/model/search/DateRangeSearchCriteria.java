@@ -24,6 +24,12 @@ public class DateRangeSearchCriteria extends SearchCriteria implements IDateRang
 	/** End date for search */
 	private Date endDate;
 
+	/** Token from the previous page of results */
+	private String continuationToken;
+
+	/** Indicates whether the total number of matches is counted */
+	private boolean includeTotal = true;
+
 	public DateRangeSearchCriteria(int pageNumber, int pageSize, Date startDate, Date endDate) {
 		super(pageNumber, pageSize);
 		this.startDate = startDate;
@@ -47,4 +53,30 @@ public class DateRangeSearchCriteria extends SearchCriteria implements IDateRang
 	public Date getEndDate() {
 		return endDate;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.search.IDateRangeSearchCriteria#getContinuationToken()
+	 */
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	public void setContinuationToken(String continuationToken) {
+		this.continuationToken = continuationToken;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.search.IDateRangeSearchCriteria#isIncludeTotal()
+	 */
+	public boolean isIncludeTotal() {
+		return includeTotal;
+	}
+
+	public void setIncludeTotal(boolean includeTotal) {
+		this.includeTotal = includeTotal;
+	}
 }
\ No newline at end of file
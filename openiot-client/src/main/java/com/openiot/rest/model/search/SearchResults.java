@@ -24,6 +24,9 @@ public class SearchResults<T> implements ISearchResults<T> {
 	/** List of results */
 	private List<T> results;
 
+	/** Token for the next page of results */
+	private String continuationToken;
+
 	public SearchResults(List<T> all) {
 		setNumResults(all.size());
 		setResults(all);
@@ -49,4 +52,12 @@ public class SearchResults<T> implements ISearchResults<T> {
 	public void setResults(List<T> results) {
 		this.results = results;
 	}
+
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+	public void setContinuationToken(String continuationToken) {
+		this.continuationToken = continuationToken;
+	}
 }
\ No newline at end of file
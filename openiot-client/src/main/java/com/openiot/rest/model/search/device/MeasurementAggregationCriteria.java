@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.rest.model.search.device;
+
+import com.openiot.spi.search.device.IMeasurementAggregationCriteria;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Criteria for aggregating measurements into fixed-width time intervals.
+ * 
+ * @author Derek
+ */
+public class MeasurementAggregationCriteria implements IMeasurementAggregationCriteria {
+
+	/** Start of range */
+	private Date startDate;
+
+	/** End of range */
+	private Date endDate;
+
+	/** Interval width in milliseconds */
+	private long intervalMs;
+
+	/** Measurement ids to aggregate */
+	private List<String> measurementIds;
+
+	public MeasurementAggregationCriteria(Date startDate, Date endDate, long intervalMs) {
+		this.startDate = startDate;
+		this.endDate = endDate;
+		this.intervalMs = intervalMs;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.search.device.IMeasurementAggregationCriteria#getStartDate()
+	 */
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(Date startDate) {
+		this.startDate = startDate;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.search.device.IMeasurementAggregationCriteria#getEndDate()
+	 */
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	public void setEndDate(Date endDate) {
+		this.endDate = endDate;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.search.device.IMeasurementAggregationCriteria#getIntervalMs()
+	 */
+	public long getIntervalMs() {
+		return intervalMs;
+	}
+
+	public void setIntervalMs(long intervalMs) {
+		this.intervalMs = intervalMs;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.search.device.IMeasurementAggregationCriteria#getMeasurementIds()
+	 */
+	public List<String> getMeasurementIds() {
+		return measurementIds;
+	}
+
+	public void setMeasurementIds(List<String> measurementIds) {
+		this.measurementIds = measurementIds;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.rest.model.system;
+
+import com.openiot.spi.system.ILatencySummary;
+
+/**
+ * Model object for latency percentiles of a pipeline stage.
+ * 
+ * @author Derek
+ */
+public class LatencySummary implements ILatencySummary {
+
+	/** Stage name */
+	private String stage;
+
+	/** Number of measurements */
+	private long count;
+
+	/** Mean latency */
+	private long meanMicros;
+
+	/** Median latency */
+	private long p50Micros;
+
+	/** 99th percentile latency */
+	private long p99Micros;
+
+	/** 99.9th percentile latency */
+	private long p999Micros;
+
+	/** Largest latency */
+	private long maxMicros;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencySummary#getStage()
+	 */
+	public String getStage() {
+		return stage;
+	}
+
+	public void setStage(String stage) {
+		this.stage = stage;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencySummary#getCount()
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencySummary#getMeanMicros()
+	 */
+	public long getMeanMicros() {
+		return meanMicros;
+	}
+
+	public void setMeanMicros(long meanMicros) {
+		this.meanMicros = meanMicros;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencySummary#getP50Micros()
+	 */
+	public long getP50Micros() {
+		return p50Micros;
+	}
+
+	public void setP50Micros(long p50Micros) {
+		this.p50Micros = p50Micros;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencySummary#getP99Micros()
+	 */
+	public long getP99Micros() {
+		return p99Micros;
+	}
+
+	public void setP99Micros(long p99Micros) {
+		this.p99Micros = p99Micros;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencySummary#getP999Micros()
+	 */
+	public long getP999Micros() {
+		return p999Micros;
+	}
+
+	public void setP999Micros(long p999Micros) {
+		this.p999Micros = p999Micros;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencySummary#getMaxMicros()
+	 */
+	public long getMaxMicros() {
+		return maxMicros;
+	}
+
+	public void setMaxMicros(long maxMicros) {
+		this.maxMicros = maxMicros;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device;
+
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.IDeviceAlert;
+import com.openiot.spi.device.event.IDeviceLocation;
+import com.openiot.spi.device.event.IDeviceMeasurements;
+import com.openiot.spi.server.lifecycle.ILifecycleComponent;
+
+/**
+ * Collects assignment state changes in memory and writes the merged state for each
+ * assignment in periodic flushes rather than once per event.
+ * 
+ * @author Derek
+ */
+public interface IDeviceAssignmentStateAggregator extends ILifecycleComponent {
+
+	/**
+	 * Set the {@link IDeviceManagement} implementation merged state is written to.
+	 * 
+	 * @param deviceManagement
+	 */
+	public void setDeviceManagement(IDeviceManagement deviceManagement);
+
+	/**
+	 * Merge measurements into the pending state for an assignment.
+	 * 
+	 * @param assignment
+	 * @param measurements
+	 * @throws OpenIoTException
+	 */
+	public void addMeasurements(IDeviceAssignment assignment, IDeviceMeasurements measurements)
+			throws OpenIoTException;
+
+	/**
+	 * Merge a location into the pending state for an assignment.
+	 * 
+	 * @param assignment
+	 * @param location
+	 * @throws OpenIoTException
+	 */
+	public void addLocation(IDeviceAssignment assignment, IDeviceLocation location)
+			throws OpenIoTException;
+
+	/**
+	 * Merge an alert into the pending state for an assignment.
+	 * 
+	 * @param assignment
+	 * @param alert
+	 * @throws OpenIoTException
+	 */
+	public void addAlert(IDeviceAssignment assignment, IDeviceAlert alert) throws OpenIoTException;
+
+	/**
+	 * Write all pending state changes.
+	 * 
+	 * @throws OpenIoTException
+	 */
+	public void flush() throws OpenIoTException;
+}
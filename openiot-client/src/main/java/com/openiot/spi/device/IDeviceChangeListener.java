@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device;
+
+/**
+ * Notified when a device, its element mappings or its current assignment change, so that
+ * data derived from the device can be discarded.
+ *
+ * @author Derek
+ */
+public interface IDeviceChangeListener {
+
+	/**
+	 * Called after a device has been updated or deleted, has gained or lost an element
+	 * mapping, or has been assigned or unassigned.
+	 *
+	 * @param hardwareId
+	 */
+	public void onDeviceChanged(String hardwareId);
+}
@@ -13,7 +13,12 @@ import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.common.IMetadataProvider;
 import com.openiot.spi.device.batch.IBatchElement;
 import com.openiot.spi.device.batch.IBatchOperation;
+import com.openiot.spi.device.command.CommandDeliveryStatus;
+import com.openiot.spi.device.command.ICommandDelivery;
 import com.openiot.spi.device.command.IDeviceCommand;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
+import com.openiot.spi.device.charting.IMeasurementRollup;
+import com.openiot.spi.device.charting.MeasurementRollupResolution;
 import com.openiot.spi.device.event.*;
 import com.openiot.spi.device.event.request.*;
 import com.openiot.spi.device.group.IDeviceGroup;
@@ -24,9 +29,11 @@ import com.openiot.spi.search.ISearchCriteria;
 import com.openiot.spi.search.ISearchResults;
 import com.openiot.spi.search.device.IBatchElementSearchCriteria;
 import com.openiot.spi.search.device.IDeviceSearchCriteria;
+import com.openiot.spi.search.device.IMeasurementAggregationCriteria;
 import com.openiot.spi.server.lifecycle.ILifecycleComponent;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface for device operations.
@@ -237,6 +244,16 @@ public interface IDeviceManagement extends ILifecycleComponent {
 	 */
 	public IDeviceAssignment getDeviceAssignmentByToken(String token) throws OpenIoTException;
 
+	/**
+	 * Get many device assignments by unique token in a single query. Tokens that do not
+	 * match an assignment are skipped.
+	 * 
+	 * @param tokens
+	 * @return assignments in the order of the tokens
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public List<IDeviceAssignment> getDeviceAssignmentsByTokens(List<String> tokens) throws OpenIoTException;
+
 	/**
 	 * Delete a device assignment. Depending on 'force' flag the assignment will be marked
 	 * for delete or actually be deleted.
@@ -394,6 +411,52 @@ public interface IDeviceManagement extends ILifecycleComponent {
 	public ISearchResults<IDeviceMeasurements> listDeviceMeasurementsForSite(String siteToken,
 			IDateRangeSearchCriteria criteria) throws OpenIoTException;
 
+	/**
+	 * Aggregate measurements for an assignment into fixed-width time intervals.
+	 * 
+	 * @param assignmentToken
+	 * @param criteria
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public List<IMeasurementAggregateSeries> aggregateDeviceMeasurements(String assignmentToken,
+			IMeasurementAggregationCriteria criteria) throws OpenIoTException;
+
+	/**
+	 * Aggregate measurements for all assignments in a site into fixed-width time
+	 * intervals.
+	 * 
+	 * @param siteToken
+	 * @param criteria
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public List<IMeasurementAggregateSeries> aggregateDeviceMeasurementsForSite(String siteToken,
+			IMeasurementAggregationCriteria criteria) throws OpenIoTException;
+
+	/**
+	 * Merge measurement rollups into the stored rollups for the same assignment,
+	 * measurement, resolution and interval, creating them if they do not exist.
+	 * 
+	 * @param rollups
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public void addMeasurementRollups(List<IMeasurementRollup> rollups) throws OpenIoTException;
+
+	/**
+	 * Read stored measurement rollups for an assignment. Rollups are merged into the
+	 * intervals of the criteria, which should be a multiple of the resolution.
+	 * 
+	 * @param assignmentToken
+	 * @param resolution
+	 * @param criteria
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public List<IMeasurementAggregateSeries> listMeasurementRollups(String assignmentToken,
+			MeasurementRollupResolution resolution, IMeasurementAggregationCriteria criteria)
+			throws OpenIoTException;
+
 	/**
 	 * Add location for a given device assignment.
 	 * 
@@ -517,6 +580,38 @@ public interface IDeviceManagement extends ILifecycleComponent {
 	public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId)
 			throws OpenIoTException;
 
+	/**
+	 * Create or replace the stored delivery state for a command invocation sent to an
+	 * assignment through a command destination.
+	 * 
+	 * @param delivery
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public void saveCommandDelivery(ICommandDelivery delivery) throws OpenIoTException;
+
+	/**
+	 * List stored command deliveries for a destination that have the given status.
+	 * 
+	 * @param destinationId
+	 * @param status
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public List<ICommandDelivery> listCommandDeliveries(String destinationId, CommandDeliveryStatus status)
+			throws OpenIoTException;
+
+	/**
+	 * Delete the stored delivery state for a command invocation sent to an assignment
+	 * through a command destination. Does nothing if no state is stored.
+	 * 
+	 * @param destinationId
+	 * @param invocationId
+	 * @param assignmentToken
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public void deleteCommandDelivery(String destinationId, String invocationId, String assignmentToken)
+			throws OpenIoTException;
+
 	/**
 	 * Adds a new device command response event.
 	 * 
@@ -850,6 +945,18 @@ public interface IDeviceManagement extends ILifecycleComponent {
 	public IBatchElement updateBatchElement(String operationToken, long index,
 			IBatchElementUpdateRequest request) throws OpenIoTException;
 
+	/**
+	 * Updates many elements of a batch operation at once. Backends apply the updates in
+	 * as few round trips as they can.
+	 * 
+	 * @param operationToken
+	 * @param requests update requests by element index
+	 * @return updated elements in the iteration order of the requests
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public List<IBatchElement> updateBatchElements(String operationToken,
+			Map<Long, IBatchElementUpdateRequest> requests) throws OpenIoTException;
+
 	/**
 	 * Creates a {@link BatchOperation} that will invoke a command on multiple devices.
 	 * 
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device;
+
+/**
+ * Holds the listeners that are told when device management data changes. Components that
+ * cache data derived from device management register in their start method and remove
+ * themselves when stopped.
+ *
+ * @author Derek
+ */
+public interface IDeviceManagementListenerRegistry {
+
+	/**
+	 * Register a listener for specification changes.
+	 *
+	 * @param listener
+	 */
+	public void addSpecificationListener(IDeviceSpecificationListener listener);
+
+	/**
+	 * Remove a listener for specification changes.
+	 *
+	 * @param listener
+	 */
+	public void removeSpecificationListener(IDeviceSpecificationListener listener);
+
+	/**
+	 * Register a listener for device changes.
+	 *
+	 * @param listener
+	 */
+	public void addDeviceListener(IDeviceChangeListener listener);
+
+	/**
+	 * Remove a listener for device changes.
+	 *
+	 * @param listener
+	 */
+	public void removeDeviceListener(IDeviceChangeListener listener);
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device;
+
+/**
+ * Notified when a device specification or one of its commands changes, so that data
+ * derived from the specification can be discarded.
+ *
+ * @author Derek
+ */
+public interface IDeviceSpecificationListener {
+
+	/**
+	 * Called after a specification or one of its commands has been created, updated or
+	 * deleted.
+	 *
+	 * @param specificationToken
+	 */
+	public void onDeviceSpecificationChanged(String specificationToken);
+}
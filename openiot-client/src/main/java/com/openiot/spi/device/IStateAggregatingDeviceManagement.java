@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device;
+
+import com.openiot.spi.OpenIoTException;
+
+/**
+ * Interface implemented by {@link IDeviceManagement} implementations that can hand
+ * assignment state updates to an {@link IDeviceAssignmentStateAggregator}.
+ * 
+ * @author Derek
+ */
+public interface IStateAggregatingDeviceManagement {
+
+	/**
+	 * Set the aggregator used for assignment state updates.
+	 * 
+	 * @param aggregator
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public void setAssignmentStateAggregator(IDeviceAssignmentStateAggregator aggregator)
+			throws OpenIoTException;
+}
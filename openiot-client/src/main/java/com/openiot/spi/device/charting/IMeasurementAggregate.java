@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.charting;
+
+import java.util.Date;
+
+/**
+ * Summary of the values recorded for a measurement during one time interval.
+ * 
+ * @author Derek
+ */
+public interface IMeasurementAggregate {
+
+	/**
+	 * Get the start of the interval.
+	 * 
+	 * @return
+	 */
+	public Date getStartDate();
+
+	/**
+	 * Get the number of values recorded in the interval.
+	 * 
+	 * @return
+	 */
+	public long getCount();
+
+	/**
+	 * Get the smallest value.
+	 * 
+	 * @return
+	 */
+	public double getMin();
+
+	/**
+	 * Get the largest value.
+	 * 
+	 * @return
+	 */
+	public double getMax();
+
+	/**
+	 * Get the average value.
+	 * 
+	 * @return
+	 */
+	public double getAverage();
+
+	/**
+	 * Get the most recent value.
+	 * 
+	 * @return
+	 */
+	public double getLast();
+
+	/**
+	 * Get the date of the most recent value.
+	 * 
+	 * @return
+	 */
+	public Date getLastDate();
+}
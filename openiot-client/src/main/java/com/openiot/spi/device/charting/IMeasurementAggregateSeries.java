@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.charting;
+
+import java.util.List;
+
+/**
+ * Aggregates for a single measurement, one for each interval that has values.
+ * 
+ * @author Derek
+ */
+public interface IMeasurementAggregateSeries {
+
+	/**
+	 * Get id of the measurement represented by the series.
+	 * 
+	 * @return
+	 */
+	public String getMeasurementId();
+
+	/**
+	 * Get aggregates ordered by interval start date.
+	 * 
+	 * @return
+	 */
+	public List<IMeasurementAggregate> getAggregates();
+}
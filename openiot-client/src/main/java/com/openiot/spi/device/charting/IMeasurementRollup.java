@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.charting;
+
+import java.util.Date;
+
+/**
+ * Running totals for one measurement of an assignment during one rollup interval.
+ * Rollups for the same interval are merged when stored.
+ *
+ * @author Derek
+ */
+public interface IMeasurementRollup {
+
+	/**
+	 * Get the token of the assignment that recorded the values.
+	 *
+	 * @return
+	 */
+	public String getAssignmentToken();
+
+	/**
+	 * Get the measurement id.
+	 *
+	 * @return
+	 */
+	public String getMeasurementId();
+
+	/**
+	 * Get the rollup resolution.
+	 *
+	 * @return
+	 */
+	public MeasurementRollupResolution getResolution();
+
+	/**
+	 * Get the start of the interval.
+	 *
+	 * @return
+	 */
+	public Date getStartDate();
+
+	/**
+	 * Get the number of values.
+	 *
+	 * @return
+	 */
+	public long getCount();
+
+	/**
+	 * Get the smallest value.
+	 *
+	 * @return
+	 */
+	public double getMin();
+
+	/**
+	 * Get the largest value.
+	 *
+	 * @return
+	 */
+	public double getMax();
+
+	/**
+	 * Get the sum of the values.
+	 *
+	 * @return
+	 */
+	public double getSum();
+
+	/**
+	 * Get the most recent value.
+	 *
+	 * @return
+	 */
+	public double getLast();
+
+	/**
+	 * Get the date of the most recent value.
+	 *
+	 * @return
+	 */
+	public Date getLastDate();
+}
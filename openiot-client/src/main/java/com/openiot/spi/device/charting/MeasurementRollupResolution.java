@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.charting;
+
+/**
+ * Interval widths for which measurement rollups are maintained.
+ *
+ * @author Derek
+ */
+public enum MeasurementRollupResolution {
+
+	/** One minute rollups */
+	Minute("1m", 60 * 1000L, 7),
+
+	/** One hour rollups */
+	Hour("1h", 60 * 60 * 1000L, 90),
+
+	/** One day rollups */
+	Day("1d", 24 * 60 * 60 * 1000L, 0);
+
+	/** Resolution code */
+	private String code;
+
+	/** Interval width in milliseconds */
+	private long intervalMs;
+
+	/** Default number of days rollups are kept (0 keeps them forever) */
+	private int defaultRetentionDays;
+
+	private MeasurementRollupResolution(String code, long intervalMs, int defaultRetentionDays) {
+		this.code = code;
+		this.intervalMs = intervalMs;
+		this.defaultRetentionDays = defaultRetentionDays;
+	}
+
+	public static MeasurementRollupResolution getByCode(String code) {
+		for (MeasurementRollupResolution value : MeasurementRollupResolution.values()) {
+			if (value.getCode().equals(code)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the finest resolution that covers a time range with no more than the given
+	 * number of intervals. The coarsest resolution is used if none does.
+	 *
+	 * @param rangeMs
+	 * @param maxIntervals
+	 * @return
+	 */
+	public static MeasurementRollupResolution getForRange(long rangeMs, long maxIntervals) {
+		for (MeasurementRollupResolution value : MeasurementRollupResolution.values()) {
+			if ((rangeMs / value.getIntervalMs()) <= maxIntervals) {
+				return value;
+			}
+		}
+		return Day;
+	}
+
+	/**
+	 * Get the start of the interval that contains a time.
+	 *
+	 * @param time
+	 * @return
+	 */
+	public long getIntervalStart(long time) {
+		return time - (((time % intervalMs) + intervalMs) % intervalMs);
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public long getIntervalMs() {
+		return intervalMs;
+	}
+
+	public int getDefaultRetentionDays() {
+		return defaultRetentionDays;
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.command;
+
+/**
+ * Indicates the state of an {@link ICommandDelivery}. Deliveries that succeed are not
+ * kept, so there is no delivered state.
+ * 
+ * @author Derek
+ */
+public enum CommandDeliveryStatus {
+
+	/** Indicates delivery has not completed yet */
+	Pending('P'),
+
+	/** Indicates delivery was given up on */
+	Failed('F');
+
+	/** Status code */
+	private char code;
+
+	private CommandDeliveryStatus(char code) {
+		this.code = code;
+	}
+
+	public static CommandDeliveryStatus getByCode(char code) {
+		for (CommandDeliveryStatus value : CommandDeliveryStatus.values()) {
+			if (value.getCode() == code) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	public char getCode() {
+		return code;
+	}
+
+	public void setCode(char code) {
+		this.code = code;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.command;
+
+import java.util.Date;
+
+/**
+ * Delivery state of a command invocation sent to one assignment through a command
+ * destination. A delivery is identified by destination id, invocation id and assignment
+ * token.
+ * 
+ * @author Derek
+ */
+public interface ICommandDelivery {
+
+	/**
+	 * Get the id of the command destination that delivers the command.
+	 * 
+	 * @return
+	 */
+	public String getDestinationId();
+
+	/**
+	 * Get the id of the command invocation being delivered.
+	 * 
+	 * @return
+	 */
+	public String getInvocationId();
+
+	/**
+	 * Get the token of the target assignment.
+	 * 
+	 * @return
+	 */
+	public String getAssignmentToken();
+
+	/**
+	 * Get the delivery status.
+	 * 
+	 * @return
+	 */
+	public CommandDeliveryStatus getStatus();
+
+	/**
+	 * Get the number of delivery attempts made.
+	 * 
+	 * @return
+	 */
+	public int getAttempts();
+
+	/**
+	 * Get the error that caused the delivery to fail.
+	 * 
+	 * @return error message or null if the delivery has not failed
+	 */
+	public String getError();
+
+	/**
+	 * Get the date the delivery was queued.
+	 * 
+	 * @return
+	 */
+	public Date getCreatedDate();
+
+	/**
+	 * Get the date the delivery status last changed.
+	 * 
+	 * @return
+	 */
+	public Date getUpdatedDate();
+}
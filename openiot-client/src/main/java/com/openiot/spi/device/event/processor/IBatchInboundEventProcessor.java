@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.event.processor;
+
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+
+import java.util.List;
+
+/**
+ * Extends {@link IInboundEventProcessor} for processors that can handle several events
+ * at once. Processors that do not implement this interface receive the events in a
+ * batch one at a time through the type-specific methods.
+ * 
+ * @author Derek
+ */
+public interface IBatchInboundEventProcessor extends IInboundEventProcessor {
+
+	/**
+	 * Called with a batch of decoded events. Events are in the order they were received.
+	 * 
+	 * @param batch
+	 * @throws OpenIoTException
+	 */
+	public void onDeviceEventBatch(List<IDecodedDeviceEventRequest> batch) throws OpenIoTException;
+}
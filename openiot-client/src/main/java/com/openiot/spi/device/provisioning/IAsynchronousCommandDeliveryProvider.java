@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.provisioning;
+
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDeviceAssignment;
+import com.openiot.spi.device.IDeviceNestingContext;
+import com.openiot.spi.device.command.IDeviceCommandExecution;
+
+/**
+ * An {@link ICommandDeliveryProvider} that returns before the transport has confirmed a
+ * delivery. These methods report the outcome of a single delivery to a callback. If a
+ * method returns normally, exactly one method of the callback is called later, possibly
+ * on another thread. If a method throws an exception, the callback is not called.
+ *
+ * @author Derek
+ *
+ * @param <T>
+ *            type of data that was encoded by the {@link ICommandExecutionEncoder}
+ * @param <P>
+ *            parameters specific to the delivery provider
+ */
+public interface IAsynchronousCommandDeliveryProvider<T, P> extends ICommandDeliveryProvider<T, P> {
+
+	/**
+	 * Deliver the given encoded invocation and report the outcome to a callback.
+	 *
+	 * @param nested
+	 * @param assignment
+	 * @param execution
+	 * @param encoded
+	 * @param parameters
+	 * @param callback
+	 * @throws OpenIoTException
+	 */
+	public void deliver(IDeviceNestingContext nested, IDeviceAssignment assignment,
+			IDeviceCommandExecution execution, T encoded, P parameters, ICommandDeliveryListener callback)
+			throws OpenIoTException;
+
+	/**
+	 * Deliver a system command and report the outcome to a callback.
+	 *
+	 * @param nested
+	 * @param assignment
+	 * @param encoded
+	 * @param parameters
+	 * @param callback
+	 * @throws OpenIoTException
+	 */
+	public void deliverSystemCommand(IDeviceNestingContext nested, IDeviceAssignment assignment, T encoded,
+			P parameters, ICommandDeliveryListener callback) throws OpenIoTException;
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.provisioning;
+
+import com.openiot.spi.device.IDeviceAssignment;
+import com.openiot.spi.device.command.IDeviceCommandExecution;
+
+/**
+ * Notified when an {@link ICommandDeliveryProvider} that delivers asynchronously learns
+ * the outcome of a delivery. Callbacks are made on a provider thread after
+ * {@link ICommandDeliveryProvider#deliver} has returned.
+ * 
+ * @author Derek
+ */
+public interface ICommandDeliveryListener {
+
+	/**
+	 * Called when the transport has confirmed delivery.
+	 * 
+	 * @param execution execution that was delivered (null for system commands)
+	 * @param assignment
+	 */
+	public void onDelivered(IDeviceCommandExecution execution, IDeviceAssignment assignment);
+
+	/**
+	 * Called when delivery could not be completed.
+	 * 
+	 * @param execution execution that was not delivered (null for system commands)
+	 * @param assignment
+	 * @param error
+	 */
+	public void onDeliveryFailed(IDeviceCommandExecution execution, IDeviceAssignment assignment,
+			Throwable error);
+}
@@ -12,6 +12,8 @@ import com.openiot.spi.device.command.ISystemCommand;
 import com.openiot.spi.device.event.IDeviceCommandInvocation;
 import com.openiot.spi.server.lifecycle.ILifecycleComponent;
 
+import java.util.List;
+
 /**
  * Defines the flow executed for processing a command for delivery.
  * 
@@ -26,6 +28,13 @@ public interface ICommandProcessingStrategy extends ILifecycleComponent {
 	 */
 	public ICommandTargetResolver getCommandTargetResolver();
 
+	/**
+	 * Get the {@link ICommandExecutionBuilder} implementation.
+	 * 
+	 * @return
+	 */
+	public ICommandExecutionBuilder getCommandExecutionBuilder();
+
 	/**
 	 * Send a command using the given provisioning implementation.
 	 * 
@@ -36,6 +45,18 @@ public interface ICommandProcessingStrategy extends ILifecycleComponent {
 	public void deliverCommand(IDeviceProvisioning provisioning, IDeviceCommandInvocation invocation)
 			throws OpenIoTException;
 
+	/**
+	 * Send several commands using the given provisioning implementation. Targets for all
+	 * invocations are resolved together. A failure for one invocation does not prevent
+	 * delivery of the others.
+	 * 
+	 * @param provisioning
+	 * @param invocations
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public void deliverCommands(IDeviceProvisioning provisioning, List<IDeviceCommandInvocation> invocations)
+			throws OpenIoTException;
+
 	/**
 	 * Delivers a system command using the given provisioning implementation.
 	 * 
@@ -13,6 +13,7 @@ import com.openiot.spi.device.event.IDeviceCommandInvocation;
 import com.openiot.spi.server.lifecycle.ILifecycleComponent;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Allows an {@link IDeviceCommandInvocation} to be resolved to one or more
@@ -32,4 +33,15 @@ public interface ICommandTargetResolver extends ILifecycleComponent {
 	 */
 	public List<IDeviceAssignment> resolveTargets(IDeviceCommandInvocation invocation)
 			throws OpenIoTException;
+
+	/**
+	 * Resolves several command invocations at once. Implementations should load the
+	 * targets for all invocations in as few queries as possible.
+	 * 
+	 * @param invocations
+	 * @return assignments that should receive each command, indexed by invocation id
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public Map<String, List<IDeviceAssignment>> resolveTargets(List<IDeviceCommandInvocation> invocations)
+			throws OpenIoTException;
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.provisioning;
+
+import com.openiot.spi.OpenIoTException;
+
+/**
+ * Receives events from an {@link IStreamingDeviceEventDecoder} as they are decoded.
+ * 
+ * @author Derek
+ */
+public interface IDecodedDeviceEventHandler {
+
+	/**
+	 * Called for each event as soon as it has been decoded.
+	 * 
+	 * @param decoded
+	 * @throws OpenIoTException
+	 */
+	public void onDecodedEvent(IDecodedDeviceEventRequest decoded) throws OpenIoTException;
+}
@@ -37,4 +37,34 @@ public interface IDecodedDeviceEventRequest {
 	 * @return
 	 */
 	public IDeviceEventCreateRequest getRequest();
+
+	/**
+	 * Get id of the {@link IInboundEventSource} that received the event.
+	 * 
+	 * @return
+	 */
+	public String getSourceId();
+
+	/**
+	 * Set id of the {@link IInboundEventSource} that received the event.
+	 * 
+	 * @param sourceId
+	 */
+	public void setSourceId(String sourceId);
+
+	/**
+	 * Get the {@link System#nanoTime()} value at which the event was handed to the
+	 * {@link IInboundProcessingStrategy}. Only meaningful within the receiving JVM.
+	 * 
+	 * @return
+	 */
+	public long getQueuedNanos();
+
+	/**
+	 * Set the {@link System#nanoTime()} value at which the event was handed to the
+	 * {@link IInboundProcessingStrategy}.
+	 * 
+	 * @param queuedNanos
+	 */
+	public void setQueuedNanos(long queuedNanos);
 }
\ No newline at end of file
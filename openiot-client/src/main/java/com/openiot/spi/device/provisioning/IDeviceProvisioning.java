@@ -86,6 +86,14 @@ public interface IDeviceProvisioning extends ILifecycleComponent {
 	 */
 	public void deliverCommand(IDeviceCommandInvocation invocation) throws OpenIoTException;
 
+	/**
+	 * Deliver several command invocations, resolving their targets together.
+	 * 
+	 * @param invocations
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public void deliverCommands(List<IDeviceCommandInvocation> invocations) throws OpenIoTException;
+
 	/**
 	 * Deliver a system command via the provisioning pipeline.
 	 * 
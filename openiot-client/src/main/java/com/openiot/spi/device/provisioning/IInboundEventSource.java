@@ -48,6 +48,13 @@ public interface IInboundEventSource<T> extends ILifecycleComponent {
 	 */
 	public void setInboundProcessingStrategy(IInboundProcessingStrategy strategy);
 
+	/**
+	 * Get the strategy for submitting inbound events into the bus.
+	 * 
+	 * @return
+	 */
+	public IInboundProcessingStrategy getInboundProcessingStrategy();
+
 	/**
 	 * Set the list of {@link IInboundEventReceiver} that feed this processor.
 	 * 
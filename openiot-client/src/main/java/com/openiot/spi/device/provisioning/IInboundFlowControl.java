@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.provisioning;
+
+/**
+ * Implemented by {@link IInboundProcessingStrategy} implementations that can tell
+ * {@link IInboundEventReceiver} implementations to stop consuming while the strategy is
+ * overloaded.
+ * 
+ * @author Derek
+ */
+public interface IInboundFlowControl {
+
+	/**
+	 * Indicates whether the strategy has capacity for more events.
+	 * 
+	 * @return
+	 */
+	public boolean isAcceptingEvents();
+
+	/**
+	 * Wait until the strategy has capacity for more events.
+	 * 
+	 * @param timeoutMs
+	 * @return true if capacity is available, false if the timeout expired
+	 * @throws InterruptedException
+	 */
+	public boolean awaitCapacity(long timeoutMs) throws InterruptedException;
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.device.provisioning;
+
+import com.openiot.spi.OpenIoTException;
+
+import java.util.Map;
+
+/**
+ * Decoder that can hand off events while a payload is still being decoded rather than
+ * returning them all at the end.
+ * 
+ * @author Derek
+ */
+public interface IStreamingDeviceEventDecoder<T> extends IDeviceEventDecoder<T> {
+
+	/**
+	 * Decodes a payload, passing each event to the handler as it is decoded.
+	 * 
+	 * @param payload
+	 * @param context
+	 * @param handler
+	 * @throws OpenIoTException
+	 */
+	public void decode(T payload, Map context, IDecodedDeviceEventHandler handler) throws OpenIoTException;
+}
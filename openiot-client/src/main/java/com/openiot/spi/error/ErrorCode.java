@@ -21,6 +21,12 @@ public enum ErrorCode {
 	/** Bad username */
 	InvalidMetadataFieldName(10, "Metadata field name contains invalid characters."),
 
+	/** Continuation token could not be decoded */
+	InvalidContinuationToken(11, "Continuation token is not valid."),
+
+	/** Measurement rollup resolution is not known */
+	InvalidRollupResolution(12, "Measurement rollup resolution is not valid."),
+
 	/*********
 	 * USERS *
 	 *********/
@@ -29,4 +29,21 @@ public interface IDateRangeSearchCriteria extends ISearchCriteria {
 	 * @return
 	 */
 	public Date getEndDate();
+
+	/**
+	 * Get the continuation token returned with the previous page of results. When set,
+	 * results start right after the last result of that page and the page number is
+	 * ignored.
+	 * 
+	 * @return
+	 */
+	public String getContinuationToken();
+
+	/**
+	 * Indicates whether the total number of matches should be counted. Counting scans
+	 * every match, so callers that page with continuation tokens can turn it off.
+	 * 
+	 * @return
+	 */
+	public boolean isIncludeTotal();
 }
\ No newline at end of file
@@ -21,7 +21,7 @@ public interface ISearchResults<T> {
 	/**
 	 * Get the total number of results.
 	 * 
-	 * @return
+	 * @return -1 if the total was not counted
 	 */
 	public long getNumResults();
 
@@ -31,4 +31,11 @@ public interface ISearchResults<T> {
 	 * @return
 	 */
 	public List<T> getResults();
+
+	/**
+	 * Get the token for requesting the next page of results.
+	 * 
+	 * @return null if there are no more results or the search does not support tokens
+	 */
+	public String getContinuationToken();
 }
\ No newline at end of file
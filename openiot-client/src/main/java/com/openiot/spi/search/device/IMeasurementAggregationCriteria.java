@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.search.device;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Criteria for aggregating measurements into fixed-width time intervals. Intervals start
+ * at the start date.
+ * 
+ * @author Derek
+ */
+public interface IMeasurementAggregationCriteria {
+
+	/**
+	 * Get the start of the range (inclusive).
+	 * 
+	 * @return
+	 */
+	public Date getStartDate();
+
+	/**
+	 * Get the end of the range (exclusive).
+	 * 
+	 * @return
+	 */
+	public Date getEndDate();
+
+	/**
+	 * Get the width of each interval in milliseconds.
+	 * 
+	 * @return
+	 */
+	public long getIntervalMs();
+
+	/**
+	 * Get the measurement ids to aggregate. Null or empty aggregates all measurements.
+	 * 
+	 * @return
+	 */
+	public List<String> getMeasurementIds();
+}
@@ -12,14 +12,17 @@ import com.codahale.metrics.health.HealthCheckRegistry;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.asset.IAssetModuleManager;
 import com.openiot.spi.configuration.IConfigurationResolver;
+import com.openiot.spi.device.IDeviceAssignmentStateAggregator;
 import com.openiot.spi.device.IDeviceManagement;
 import com.openiot.spi.device.IDeviceManagementCacheProvider;
+import com.openiot.spi.device.IDeviceManagementListenerRegistry;
 import com.openiot.spi.device.event.processor.IInboundEventProcessorChain;
 import com.openiot.spi.device.event.processor.IOutboundEventProcessorChain;
 import com.openiot.spi.device.provisioning.IDeviceProvisioning;
 import com.openiot.spi.search.external.ISearchProviderManager;
 import com.openiot.spi.server.debug.ITracer;
 import com.openiot.spi.server.lifecycle.ILifecycleComponent;
+import com.openiot.spi.system.IPipelineLatencyMetrics;
 import com.openiot.spi.system.IVersion;
 import com.openiot.spi.user.IUserManagement;
 
@@ -88,6 +91,14 @@ public interface IOpenIoTServer extends ILifecycleComponent {
 	 */
 	public IDeviceManagementCacheProvider getDeviceManagementCacheProvider();
 
+	/**
+	 * Get the configured device assignment state aggregator. Returns null if assignment
+	 * state is written for each event.
+	 * 
+	 * @return
+	 */
+	public IDeviceAssignmentStateAggregator getAssignmentStateAggregator();
+
 	/**
 	 * Get the inbound event processor chain.
 	 * 
@@ -152,4 +163,18 @@ public interface IOpenIoTServer extends ILifecycleComponent {
 	 * @return
 	 */
 	public HealthCheckRegistry getHealthCheckRegistry();
+
+	/**
+	 * Get latency histograms for each stage of the event pipeline.
+	 * 
+	 * @return
+	 */
+	public IPipelineLatencyMetrics getPipelineLatencyMetrics();
+
+	/**
+	 * Get the registry of listeners told when device management data changes.
+	 * 
+	 * @return
+	 */
+	public IDeviceManagementListenerRegistry getDeviceManagementListeners();
 }
\ No newline at end of file
@@ -23,6 +23,9 @@ public enum LifecycleComponentType {
 	/** Cache provider */
 	CacheProvider,
 
+	/** Assignment state aggregator */
+	AssignmentStateAggregator,
+
 	/** Asset module manager */
 	AssetModuleManager,
 
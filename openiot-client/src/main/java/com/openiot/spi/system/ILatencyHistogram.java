@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.system;
+
+/**
+ * Records latencies for a single stage of the event pipeline. Implementations must not
+ * allocate when recording so they can be called on every event.
+ * 
+ * @author Derek
+ */
+public interface ILatencyHistogram {
+
+	/**
+	 * Record an elapsed time measured with {@link System#nanoTime()}.
+	 * 
+	 * @param elapsedNanos
+	 */
+	public void record(long elapsedNanos);
+
+	/**
+	 * Get percentiles for all values recorded so far.
+	 * 
+	 * @return
+	 */
+	public ILatencySummary getSummary();
+
+	/**
+	 * Discard all recorded values.
+	 */
+	public void reset();
+}
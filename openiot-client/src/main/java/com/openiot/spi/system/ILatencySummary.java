@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.system;
+
+/**
+ * Latency percentiles recorded for one stage of the event pipeline. All times are in
+ * microseconds.
+ * 
+ * @author Derek
+ */
+public interface ILatencySummary {
+
+	/**
+	 * Get the name of the pipeline stage.
+	 * 
+	 * @return
+	 */
+	public String getStage();
+
+	/**
+	 * Get the number of recorded measurements.
+	 * 
+	 * @return
+	 */
+	public long getCount();
+
+	/**
+	 * Get the mean latency.
+	 * 
+	 * @return
+	 */
+	public long getMeanMicros();
+
+	/**
+	 * Get the median latency.
+	 * 
+	 * @return
+	 */
+	public long getP50Micros();
+
+	/**
+	 * Get the 99th percentile latency.
+	 * 
+	 * @return
+	 */
+	public long getP99Micros();
+
+	/**
+	 * Get the 99.9th percentile latency.
+	 * 
+	 * @return
+	 */
+	public long getP999Micros();
+
+	/**
+	 * Get the largest recorded latency.
+	 * 
+	 * @return
+	 */
+	public long getMaxMicros();
+}
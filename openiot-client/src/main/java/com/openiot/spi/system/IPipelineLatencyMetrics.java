@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.spi.system;
+
+import java.util.List;
+
+/**
+ * Holds an {@link ILatencyHistogram} for each stage of the event pipeline.
+ * 
+ * @author Derek
+ */
+public interface IPipelineLatencyMetrics {
+
+	/**
+	 * Get the histogram for a stage, creating it if it does not exist. Callers on the
+	 * event path should look up a histogram once and keep the reference.
+	 * 
+	 * @param stage
+	 * @return
+	 */
+	public ILatencyHistogram getHistogram(String stage);
+
+	/**
+	 * Get summaries for all stages that have a histogram.
+	 * 
+	 * @return
+	 */
+	public List<ILatencySummary> getLatencySummaries();
+
+	/**
+	 * Discard values recorded for all stages.
+	 */
+	public void reset();
+}
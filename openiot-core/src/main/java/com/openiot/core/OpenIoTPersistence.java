@@ -813,7 +813,7 @@ public class OpenIoTPersistence {
 	 * @param assignment
 	 * @return
 	 */
-	protected static DeviceAssignmentState assureState(IDeviceAssignment assignment)
+	public static DeviceAssignmentState assureState(IDeviceAssignment assignment)
 			throws OpenIoTException {
 		if (assignment.getState() == null) {
 			return new DeviceAssignmentState();
@@ -832,13 +832,25 @@ public class OpenIoTPersistence {
 	public static DeviceAssignmentState assignmentStateLocationUpdateLogic(IDeviceAssignment assignment,
 			IDeviceLocation location) throws OpenIoTException {
 		DeviceAssignmentState existing = assureState(assignment);
+		applyLocationToState(existing, location);
+		return existing;
+	}
+
+	/**
+	 * Merge a location into an assignment state.
+	 * 
+	 * @param existing
+	 * @param location
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static void applyLocationToState(DeviceAssignmentState existing, IDeviceLocation location)
+			throws OpenIoTException {
 		existing.setLastInteractionDate(new Date());
 
 		if ((existing.getLastLocation() == null)
 				|| (location.getEventDate().after(existing.getLastLocation().getEventDate()))) {
 			existing.setLastLocation(DeviceLocation.copy(location));
 		}
-		return existing;
 	}
 
 	/**
@@ -852,6 +864,19 @@ public class OpenIoTPersistence {
 	public static DeviceAssignmentState assignmentStateMeasurementsUpdateLogic(IDeviceAssignment assignment,
 			IDeviceMeasurements measurements) throws OpenIoTException {
 		DeviceAssignmentState existing = assureState(assignment);
+		applyMeasurementsToState(existing, measurements);
+		return existing;
+	}
+
+	/**
+	 * Merge measurements into an assignment state.
+	 * 
+	 * @param existing
+	 * @param measurements
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static void applyMeasurementsToState(DeviceAssignmentState existing,
+			IDeviceMeasurements measurements) throws OpenIoTException {
 		existing.setLastInteractionDate(new Date());
 
 		Map<String, IDeviceMeasurement> measurementsById = new HashMap<String, IDeviceMeasurement>();
@@ -875,7 +900,6 @@ public class OpenIoTPersistence {
 		for (IDeviceMeasurement m : measurementsById.values()) {
 			existing.getLatestMeasurements().add(m);
 		}
-		return existing;
 	}
 
 	/**
@@ -889,6 +913,19 @@ public class OpenIoTPersistence {
 	public static DeviceAssignmentState assignmentStateAlertUpdateLogic(IDeviceAssignment assignment,
 			IDeviceAlert alert) throws OpenIoTException {
 		DeviceAssignmentState existing = assureState(assignment);
+		applyAlertToState(existing, alert);
+		return existing;
+	}
+
+	/**
+	 * Merge an alert into an assignment state.
+	 * 
+	 * @param existing
+	 * @param alert
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static void applyAlertToState(DeviceAssignmentState existing, IDeviceAlert alert)
+			throws OpenIoTException {
 		existing.setLastInteractionDate(new Date());
 
 		Map<String, IDeviceAlert> alertsById = new HashMap<String, IDeviceAlert>();
@@ -906,9 +943,74 @@ public class OpenIoTPersistence {
 		for (IDeviceAlert a : alertsById.values()) {
 			existing.getLatestAlerts().add(a);
 		}
+	}
+
+	/**
+	 * Compute the assignment state after all events in a batch have been applied. Only
+	 * events whose request asked for a state update are considered. Lists in the response
+	 * are expected to be in the same order as the lists in the batch.
+	 * 
+	 * @param assignment
+	 * @param batch
+	 * @param created
+	 * @return updated state or null if no event in the batch requested a state update
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static DeviceAssignmentState assignmentStateBatchUpdateLogic(IDeviceAssignment assignment,
+			IDeviceEventBatch batch, IDeviceEventBatchResponse created) throws OpenIoTException {
+		DeviceAssignmentState existing = null;
+		for (int i = 0; i < batch.getMeasurements().size(); i++) {
+			if (batch.getMeasurements().get(i).isUpdateState()) {
+				existing = (existing == null) ? assureState(assignment) : existing;
+				applyMeasurementsToState(existing, created.getCreatedMeasurements().get(i));
+			}
+		}
+		for (int i = 0; i < batch.getLocations().size(); i++) {
+			if (batch.getLocations().get(i).isUpdateState()) {
+				existing = (existing == null) ? assureState(assignment) : existing;
+				applyLocationToState(existing, created.getCreatedLocations().get(i));
+			}
+		}
+		for (int i = 0; i < batch.getAlerts().size(); i++) {
+			if (batch.getAlerts().get(i).isUpdateState()) {
+				existing = (existing == null) ? assureState(assignment) : existing;
+				applyAlertToState(existing, created.getCreatedAlerts().get(i));
+			}
+		}
 		return existing;
 	}
 
+	/**
+	 * Hand state changes for all events in a batch that requested a state update to an
+	 * {@link IDeviceAssignmentStateAggregator}. Lists in the response are expected to be in
+	 * the same order as the lists in the batch.
+	 * 
+	 * @param assignment
+	 * @param batch
+	 * @param created
+	 * @param aggregator
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static void assignmentStateBatchAggregateLogic(IDeviceAssignment assignment,
+			IDeviceEventBatch batch, IDeviceEventBatchResponse created,
+			IDeviceAssignmentStateAggregator aggregator) throws OpenIoTException {
+		for (int i = 0; i < batch.getMeasurements().size(); i++) {
+			if (batch.getMeasurements().get(i).isUpdateState()) {
+				aggregator.addMeasurements(assignment, created.getCreatedMeasurements().get(i));
+			}
+		}
+		for (int i = 0; i < batch.getLocations().size(); i++) {
+			if (batch.getLocations().get(i).isUpdateState()) {
+				aggregator.addLocation(assignment, created.getCreatedLocations().get(i));
+			}
+		}
+		for (int i = 0; i < batch.getAlerts().size(); i++) {
+			if (batch.getAlerts().get(i).isUpdateState()) {
+				aggregator.addAlert(assignment, created.getCreatedAlerts().get(i));
+			}
+		}
+	}
+
 	/**
 	 * Common logic for creating a zone based on an incoming request.
 	 * 
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device;
+
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDevice;
+import com.openiot.spi.device.IDeviceAssignment;
+import com.openiot.spi.device.IDeviceChangeListener;
+import com.openiot.spi.device.IDeviceElementMapping;
+import com.openiot.spi.device.IDeviceManagement;
+import com.openiot.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.openiot.spi.device.request.IDeviceCreateRequest;
+
+/**
+ * Wraps device management to tell registered {@link IDeviceChangeListener} instances
+ * when a device changes. Listeners are held by the
+ * {@link DeviceManagementListenerRegistry} owned by the server, in the same way as for
+ * {@link SpecificationChangeNotifier}.
+ *
+ * @author Derek
+ */
+public class DeviceChangeNotifier extends DeviceManagementDecorator {
+
+	/** Registry holding the listeners */
+	private DeviceManagementListenerRegistry listeners;
+
+	public DeviceChangeNotifier(IDeviceManagement delegate, DeviceManagementListenerRegistry listeners) {
+		super(delegate);
+		this.listeners = listeners;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.DeviceManagementDecorator#updateDevice(java.lang.String,
+	 * com.openiot.spi.device.request.IDeviceCreateRequest)
+	 */
+	@Override
+	public IDevice updateDevice(String hardwareId, IDeviceCreateRequest request) throws OpenIoTException {
+		IDevice result = super.updateDevice(hardwareId, request);
+		fireChanged(hardwareId);
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.DeviceManagementDecorator#deleteDevice(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public IDevice deleteDevice(String hardwareId, boolean force) throws OpenIoTException {
+		IDevice result = super.deleteDevice(hardwareId, force);
+		fireChanged(hardwareId);
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.DeviceManagementDecorator#createDeviceElementMapping(java.lang.
+	 * String, com.openiot.spi.device.IDeviceElementMapping)
+	 */
+	@Override
+	public IDevice createDeviceElementMapping(String hardwareId, IDeviceElementMapping mapping)
+			throws OpenIoTException {
+		IDevice result = super.createDeviceElementMapping(hardwareId, mapping);
+		fireChanged(hardwareId);
+		fireChanged(mapping.getHardwareId());
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.DeviceManagementDecorator#deleteDeviceElementMapping(java.lang.
+	 * String, java.lang.String)
+	 */
+	@Override
+	public IDevice deleteDeviceElementMapping(String hardwareId, String path) throws OpenIoTException {
+		IDevice result = super.deleteDeviceElementMapping(hardwareId, path);
+		fireChanged(hardwareId);
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.DeviceManagementDecorator#createDeviceAssignment(com.openiot.spi.
+	 * device.request.IDeviceAssignmentCreateRequest)
+	 */
+	@Override
+	public IDeviceAssignment createDeviceAssignment(IDeviceAssignmentCreateRequest request)
+			throws OpenIoTException {
+		IDeviceAssignment result = super.createDeviceAssignment(request);
+		fireChanged(request.getDeviceHardwareId());
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.DeviceManagementDecorator#endDeviceAssignment(java.lang.String)
+	 */
+	@Override
+	public IDeviceAssignment endDeviceAssignment(String token) throws OpenIoTException {
+		IDeviceAssignment result = super.endDeviceAssignment(token);
+		if (result != null) {
+			fireChanged(result.getDeviceHardwareId());
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.DeviceManagementDecorator#deleteDeviceAssignment(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public IDeviceAssignment deleteDeviceAssignment(String token, boolean force) throws OpenIoTException {
+		IDeviceAssignment result = super.deleteDeviceAssignment(token, force);
+		if (result != null) {
+			fireChanged(result.getDeviceHardwareId());
+		}
+		return result;
+	}
+
+	/**
+	 * Notify listeners that a device changed.
+	 *
+	 * @param hardwareId
+	 */
+	protected void fireChanged(String hardwareId) {
+		if (hardwareId == null) {
+			return;
+		}
+		listeners.fireDeviceChanged(hardwareId);
+	}
+}
@@ -12,7 +12,12 @@ import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.common.IMetadataProvider;
 import com.openiot.spi.device.*;
 import com.openiot.spi.device.batch.IBatchElement;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
+import com.openiot.spi.device.charting.IMeasurementRollup;
+import com.openiot.spi.device.charting.MeasurementRollupResolution;
 import com.openiot.spi.device.batch.IBatchOperation;
+import com.openiot.spi.device.command.CommandDeliveryStatus;
+import com.openiot.spi.device.command.ICommandDelivery;
 import com.openiot.spi.device.command.IDeviceCommand;
 import com.openiot.spi.device.event.*;
 import com.openiot.spi.device.event.request.*;
@@ -24,12 +29,14 @@ import com.openiot.spi.search.ISearchCriteria;
 import com.openiot.spi.search.ISearchResults;
 import com.openiot.spi.search.device.IBatchElementSearchCriteria;
 import com.openiot.spi.search.device.IDeviceSearchCriteria;
+import com.openiot.spi.search.device.IMeasurementAggregationCriteria;
 import com.openiot.spi.server.lifecycle.ILifecycleComponent;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
 import com.openiot.spi.server.lifecycle.LifecycleStatus;
 import org.apache.log4j.Logger;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Allows classes to inject themselves as a facade around an existing device management
@@ -320,6 +327,11 @@ public class DeviceManagementDecorator implements IDeviceManagement {
 		return delegate.getDeviceAssignmentByToken(token);
 	}
 
+	@Override
+	public List<IDeviceAssignment> getDeviceAssignmentsByTokens(List<String> tokens) throws OpenIoTException {
+		return delegate.getDeviceAssignmentsByTokens(tokens);
+	}
+
 	@Override
 	public IDeviceAssignment deleteDeviceAssignment(String token, boolean force) throws OpenIoTException {
 		return delegate.deleteDeviceAssignment(token, force);
@@ -405,6 +417,30 @@ public class DeviceManagementDecorator implements IDeviceManagement {
 		return delegate.listDeviceMeasurementsForSite(siteToken, criteria);
 	}
 
+	@Override
+	public List<IMeasurementAggregateSeries> aggregateDeviceMeasurements(String assignmentToken,
+			IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		return delegate.aggregateDeviceMeasurements(assignmentToken, criteria);
+	}
+
+	@Override
+	public List<IMeasurementAggregateSeries> aggregateDeviceMeasurementsForSite(String siteToken,
+			IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		return delegate.aggregateDeviceMeasurementsForSite(siteToken, criteria);
+	}
+
+	@Override
+	public void addMeasurementRollups(List<IMeasurementRollup> rollups) throws OpenIoTException {
+		delegate.addMeasurementRollups(rollups);
+	}
+
+	@Override
+	public List<IMeasurementAggregateSeries> listMeasurementRollups(String assignmentToken,
+			MeasurementRollupResolution resolution, IMeasurementAggregationCriteria criteria)
+			throws OpenIoTException {
+		return delegate.listMeasurementRollups(assignmentToken, resolution, criteria);
+	}
+
 	@Override
 	public IDeviceLocation addDeviceLocation(String assignmentToken, IDeviceLocationCreateRequest request)
 			throws OpenIoTException {
@@ -471,6 +507,23 @@ public class DeviceManagementDecorator implements IDeviceManagement {
 		return delegate.listDeviceCommandInvocationResponses(invocationId);
 	}
 
+	@Override
+	public void saveCommandDelivery(ICommandDelivery delivery) throws OpenIoTException {
+		delegate.saveCommandDelivery(delivery);
+	}
+
+	@Override
+	public List<ICommandDelivery> listCommandDeliveries(String destinationId, CommandDeliveryStatus status)
+			throws OpenIoTException {
+		return delegate.listCommandDeliveries(destinationId, status);
+	}
+
+	@Override
+	public void deleteCommandDelivery(String destinationId, String invocationId, String assignmentToken)
+			throws OpenIoTException {
+		delegate.deleteCommandDelivery(destinationId, invocationId, assignmentToken);
+	}
+
 	@Override
 	public IDeviceCommandResponse addDeviceCommandResponse(String assignmentToken,
 			IDeviceCommandResponseCreateRequest request) throws OpenIoTException {
@@ -649,6 +702,12 @@ public class DeviceManagementDecorator implements IDeviceManagement {
 		return delegate.updateBatchElement(operationToken, index, request);
 	}
 
+	@Override
+	public List<IBatchElement> updateBatchElements(String operationToken,
+			Map<Long, IBatchElementUpdateRequest> requests) throws OpenIoTException {
+		return delegate.updateBatchElements(operationToken, requests);
+	}
+
 	@Override
 	public IBatchOperation createBatchCommandInvocation(IBatchCommandInvocationRequest request)
 			throws OpenIoTException {
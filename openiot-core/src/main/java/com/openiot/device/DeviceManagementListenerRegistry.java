@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device;
+
+import com.openiot.spi.device.IDeviceChangeListener;
+import com.openiot.spi.device.IDeviceManagementListenerRegistry;
+import com.openiot.spi.device.IDeviceSpecificationListener;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Default implementation of {@link IDeviceManagementListenerRegistry}. One instance is
+ * owned by the server and shared by the device management decorators that fire the
+ * notifications.
+ *
+ * @author Derek
+ */
+public class DeviceManagementListenerRegistry implements IDeviceManagementListenerRegistry {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(DeviceManagementListenerRegistry.class);
+
+	/** Registered specification listeners */
+	private List<IDeviceSpecificationListener> specificationListeners =
+			new CopyOnWriteArrayList<IDeviceSpecificationListener>();
+
+	/** Registered device listeners */
+	private List<IDeviceChangeListener> deviceListeners = new CopyOnWriteArrayList<IDeviceChangeListener>();
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.device.IDeviceManagementListenerRegistry#addSpecificationListener(com
+	 * .openiot.spi.device.IDeviceSpecificationListener)
+	 */
+	@Override
+	public void addSpecificationListener(IDeviceSpecificationListener listener) {
+		specificationListeners.add(listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.spi.device.IDeviceManagementListenerRegistry#removeSpecificationListener
+	 * (com.openiot.spi.device.IDeviceSpecificationListener)
+	 */
+	@Override
+	public void removeSpecificationListener(IDeviceSpecificationListener listener) {
+		specificationListeners.remove(listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.device.IDeviceManagementListenerRegistry#addDeviceListener(com.openiot
+	 * .spi.device.IDeviceChangeListener)
+	 */
+	@Override
+	public void addDeviceListener(IDeviceChangeListener listener) {
+		deviceListeners.add(listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.spi.device.IDeviceManagementListenerRegistry#removeDeviceListener(com.openiot
+	 * .spi.device.IDeviceChangeListener)
+	 */
+	@Override
+	public void removeDeviceListener(IDeviceChangeListener listener) {
+		deviceListeners.remove(listener);
+	}
+
+	/**
+	 * Notify listeners that a specification changed.
+	 *
+	 * @param specificationToken
+	 */
+	public void fireSpecificationChanged(String specificationToken) {
+		for (IDeviceSpecificationListener listener : specificationListeners) {
+			try {
+				listener.onDeviceSpecificationChanged(specificationToken);
+			} catch (Throwable e) {
+				LOGGER.error("Specification listener failed.", e);
+			}
+		}
+	}
+
+	/**
+	 * Notify listeners that a device changed.
+	 *
+	 * @param hardwareId
+	 */
+	public void fireDeviceChanged(String hardwareId) {
+		for (IDeviceChangeListener listener : deviceListeners) {
+			try {
+				listener.onDeviceChanged(hardwareId);
+			} catch (Throwable e) {
+				LOGGER.error("Device listener failed.", e);
+			}
+		}
+	}
+}
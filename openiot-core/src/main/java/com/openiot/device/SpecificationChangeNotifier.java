@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device;
+
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDeviceManagement;
+import com.openiot.spi.device.IDeviceSpecification;
+import com.openiot.spi.device.IDeviceSpecificationListener;
+import com.openiot.spi.device.command.IDeviceCommand;
+import com.openiot.spi.device.request.IDeviceCommandCreateRequest;
+import com.openiot.spi.device.request.IDeviceSpecificationCreateRequest;
+
+/**
+ * Wraps device management to tell registered {@link IDeviceSpecificationListener}
+ * instances when a specification or its commands change. Listeners are held by the
+ * {@link DeviceManagementListenerRegistry} owned by the server.
+ *
+ * @author Derek
+ */
+public class SpecificationChangeNotifier extends DeviceManagementDecorator {
+
+	/** Registry holding the listeners */
+	private DeviceManagementListenerRegistry listeners;
+
+	public SpecificationChangeNotifier(IDeviceManagement delegate,
+			DeviceManagementListenerRegistry listeners) {
+		super(delegate);
+		this.listeners = listeners;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.DeviceManagementDecorator#updateDeviceSpecification(java.lang.
+	 * String, com.openiot.spi.device.request.IDeviceSpecificationCreateRequest)
+	 */
+	@Override
+	public IDeviceSpecification updateDeviceSpecification(String token,
+			IDeviceSpecificationCreateRequest request) throws OpenIoTException {
+		IDeviceSpecification result = super.updateDeviceSpecification(token, request);
+		fireChanged(token);
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.DeviceManagementDecorator#deleteDeviceSpecification(java.lang.
+	 * String, boolean)
+	 */
+	@Override
+	public IDeviceSpecification deleteDeviceSpecification(String token, boolean force)
+			throws OpenIoTException {
+		IDeviceSpecification result = super.deleteDeviceSpecification(token, force);
+		fireChanged(token);
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.DeviceManagementDecorator#createDeviceCommand(com.openiot.spi.
+	 * device.IDeviceSpecification, com.openiot.spi.device.request.IDeviceCommandCreateRequest)
+	 */
+	@Override
+	public IDeviceCommand createDeviceCommand(IDeviceSpecification spec, IDeviceCommandCreateRequest request)
+			throws OpenIoTException {
+		IDeviceCommand result = super.createDeviceCommand(spec, request);
+		fireChanged(spec.getToken());
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.DeviceManagementDecorator#updateDeviceCommand(java.lang.String,
+	 * com.openiot.spi.device.request.IDeviceCommandCreateRequest)
+	 */
+	@Override
+	public IDeviceCommand updateDeviceCommand(String token, IDeviceCommandCreateRequest request)
+			throws OpenIoTException {
+		IDeviceCommand result = super.updateDeviceCommand(token, request);
+		if (result != null) {
+			fireChanged(result.getSpecificationToken());
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.DeviceManagementDecorator#deleteDeviceCommand(java.lang.String,
+	 * boolean)
+	 */
+	@Override
+	public IDeviceCommand deleteDeviceCommand(String token, boolean force) throws OpenIoTException {
+		IDeviceCommand result = super.deleteDeviceCommand(token, force);
+		if (result != null) {
+			fireChanged(result.getSpecificationToken());
+		}
+		return result;
+	}
+
+	/**
+	 * Notify listeners that a specification changed.
+	 *
+	 * @param specificationToken
+	 */
+	protected void fireChanged(String specificationToken) {
+		listeners.fireSpecificationChanged(specificationToken);
+	}
+}
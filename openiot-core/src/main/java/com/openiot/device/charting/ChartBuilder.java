@@ -10,6 +10,8 @@ package com.openiot.device.charting;
 import com.openiot.rest.model.device.charting.ChartEntry;
 import com.openiot.rest.model.device.charting.ChartSeries;
 import com.openiot.spi.device.charting.IChartSeries;
+import com.openiot.spi.device.charting.IMeasurementAggregate;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
 import com.openiot.spi.device.event.IDeviceMeasurements;
 
 import java.util.*;
@@ -54,6 +56,23 @@ public class ChartBuilder {
 		return results;
 	}
 
+	/**
+	 * Process measurement aggregates into a list of chart series. Each interval becomes an
+	 * entry with the average value dated at the start of the interval.
+	 * 
+	 * @param aggregates
+	 * @return
+	 */
+	public List<IChartSeries<Double>> processAggregates(List<IMeasurementAggregateSeries> aggregates) {
+		seriesByMeasurementName = new HashMap<String, IChartSeries<Double>>();
+		for (IMeasurementAggregateSeries series : aggregates) {
+			for (IMeasurementAggregate aggregate : series.getAggregates()) {
+				addSeriesEntry(series.getMeasurementId(), aggregate.getAverage(), aggregate.getStartDate());
+			}
+		}
+		return new ArrayList<IChartSeries<Double>>(seriesByMeasurementName.values());
+	}
+
 	/**
 	 * Add a new measurement entry. Create a new series if one does not already exist.
 	 * 
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.charting;
+
+import com.openiot.rest.model.device.charting.MeasurementAggregate;
+import com.openiot.rest.model.device.charting.MeasurementAggregateSeries;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
+import com.openiot.spi.search.device.IMeasurementAggregationCriteria;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Accumulates measurement values into fixed-width intervals as they are read from a
+ * datastore, so raw events never have to be collected. Datastores that compute partial
+ * aggregates themselves can merge them instead of adding single values.
+ *
+ * @author Derek
+ */
+public class MeasurementAggregator {
+
+	/** Maximum number of intervals in a request */
+	public static final long MAX_INTERVALS = 10000;
+
+	/** Start of range in milliseconds */
+	private final long start;
+
+	/** End of range in milliseconds (exclusive) */
+	private final long end;
+
+	/** Interval width in milliseconds */
+	private final long interval;
+
+	/** Measurement ids to include or null for all */
+	private final Set<String> measurementIds;
+
+	/** Accumulators by measurement id and interval index */
+	private Map<String, TreeMap<Long, Accumulator>> accumulators =
+			new TreeMap<String, TreeMap<Long, Accumulator>>();
+
+	public MeasurementAggregator(IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		if ((criteria.getStartDate() == null) || (criteria.getEndDate() == null)) {
+			throw new OpenIoTException("Measurement aggregation requires a start and end date.");
+		}
+		if (criteria.getIntervalMs() <= 0) {
+			throw new OpenIoTException("Measurement aggregation interval must be greater than zero.");
+		}
+		this.start = criteria.getStartDate().getTime();
+		this.end = criteria.getEndDate().getTime();
+		this.interval = criteria.getIntervalMs();
+		if (((end - start) / interval) > MAX_INTERVALS) {
+			throw new OpenIoTException("Measurement aggregation may not return more than " + MAX_INTERVALS
+					+ " intervals per measurement.");
+		}
+		if ((criteria.getMeasurementIds() != null) && (!criteria.getMeasurementIds().isEmpty())) {
+			this.measurementIds = new HashSet<String>(criteria.getMeasurementIds());
+		} else {
+			this.measurementIds = null;
+		}
+	}
+
+	/**
+	 * Indicates whether a measurement is aggregated.
+	 *
+	 * @param measurementId
+	 * @return
+	 */
+	public boolean includes(String measurementId) {
+		return (measurementIds == null) || (measurementIds.contains(measurementId));
+	}
+
+	/**
+	 * Add a single value. Values outside the range or for measurements that are not
+	 * included are ignored.
+	 *
+	 * @param measurementId
+	 * @param time
+	 * @param value
+	 */
+	public void add(String measurementId, long time, Double value) {
+		if ((value == null) || (time < start) || (time >= end) || (!includes(measurementId))) {
+			return;
+		}
+		getAccumulator(measurementId, (time - start) / interval).add(time, value);
+	}
+
+	/**
+	 * Merge a partial aggregate for an interval.
+	 *
+	 * @param measurementId
+	 * @param index interval index counted from the start date
+	 * @param count
+	 * @param min
+	 * @param max
+	 * @param sum
+	 * @param last
+	 * @param lastTime
+	 */
+	public void merge(String measurementId, long index, long count, double min, double max, double sum,
+			double last, long lastTime) {
+		if ((count == 0) || (!includes(measurementId))) {
+			return;
+		}
+		getAccumulator(measurementId, index).merge(count, min, max, sum, last, lastTime);
+	}
+
+	/**
+	 * Merge a partial aggregate that covers a period starting at the given time into the
+	 * interval containing that time. Aggregates that start outside the range are ignored.
+	 *
+	 * @param measurementId
+	 * @param time
+	 * @param count
+	 * @param min
+	 * @param max
+	 * @param sum
+	 * @param last
+	 * @param lastTime
+	 */
+	public void mergeAt(String measurementId, long time, long count, double min, double max, double sum,
+			double last, long lastTime) {
+		if ((time < start) || (time >= end)) {
+			return;
+		}
+		merge(measurementId, (time - start) / interval, count, min, max, sum, last, lastTime);
+	}
+
+	/**
+	 * Get the accumulator for an interval, creating it if necessary.
+	 *
+	 * @param measurementId
+	 * @param index
+	 * @return
+	 */
+	protected Accumulator getAccumulator(String measurementId, long index) {
+		TreeMap<Long, Accumulator> intervals = accumulators.get(measurementId);
+		if (intervals == null) {
+			intervals = new TreeMap<Long, Accumulator>();
+			accumulators.put(measurementId, intervals);
+		}
+		Accumulator accumulator = intervals.get(index);
+		if (accumulator == null) {
+			accumulator = new Accumulator();
+			intervals.put(index, accumulator);
+		}
+		return accumulator;
+	}
+
+	/**
+	 * Get a series for each measurement, ordered by measurement id, with aggregates
+	 * ordered by interval.
+	 *
+	 * @return
+	 */
+	public List<IMeasurementAggregateSeries> getSeries() {
+		List<IMeasurementAggregateSeries> results = new ArrayList<IMeasurementAggregateSeries>();
+		for (Map.Entry<String, TreeMap<Long, Accumulator>> entry : accumulators.entrySet()) {
+			MeasurementAggregateSeries series = new MeasurementAggregateSeries();
+			series.setMeasurementId(entry.getKey());
+			for (Map.Entry<Long, Accumulator> current : entry.getValue().entrySet()) {
+				Accumulator accumulator = current.getValue();
+				MeasurementAggregate aggregate = new MeasurementAggregate();
+				aggregate.setStartDate(new Date(start + (current.getKey() * interval)));
+				aggregate.setCount(accumulator.count);
+				aggregate.setMin(accumulator.min);
+				aggregate.setMax(accumulator.max);
+				aggregate.setAverage(accumulator.sum / accumulator.count);
+				aggregate.setLast(accumulator.last);
+				aggregate.setLastDate(new Date(accumulator.lastTime));
+				series.getAggregates().add(aggregate);
+			}
+			results.add(series);
+		}
+		return results;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public Set<String> getMeasurementIds() {
+		return measurementIds;
+	}
+
+	/**
+	 * Running totals for one interval.
+	 *
+	 * @author Derek
+	 */
+	private static class Accumulator {
+
+		/** Number of values */
+		private long count;
+
+		/** Smallest value */
+		private double min = Double.POSITIVE_INFINITY;
+
+		/** Largest value */
+		private double max = Double.NEGATIVE_INFINITY;
+
+		/** Sum of values */
+		private double sum;
+
+		/** Most recent value */
+		private double last;
+
+		/** Time of most recent value */
+		private long lastTime = Long.MIN_VALUE;
+
+		public void add(long time, double value) {
+			merge(1, value, value, value, value, time);
+		}
+
+		public void merge(long count, double min, double max, double sum, double last, long lastTime) {
+			this.count += count;
+			this.min = Math.min(this.min, min);
+			this.max = Math.max(this.max, max);
+			this.sum += sum;
+			if (lastTime >= this.lastTime) {
+				this.last = last;
+				this.lastTime = lastTime;
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.event.processor;
+
+import com.openiot.device.provisioning.InboundProcessingUtils;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.processor.IBatchInboundEventProcessor;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+
+import java.util.List;
+
+/**
+ * Base class for {@link IBatchInboundEventProcessor} implementations. By default each
+ * event in a batch is passed to the matching type-specific method so subclasses only
+ * need to override {@link #onDeviceEventBatch(List)} when they can do better.
+ * 
+ * @author Derek
+ */
+public abstract class BatchInboundEventProcessor extends InboundEventProcessor implements
+		IBatchInboundEventProcessor {
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IBatchInboundEventProcessor#onDeviceEventBatch(java.util.List)
+	 */
+	@Override
+	public void onDeviceEventBatch(List<IDecodedDeviceEventRequest> batch) throws OpenIoTException {
+		for (IDecodedDeviceEventRequest request : batch) {
+			try {
+				InboundProcessingUtils.dispatch(request, this);
+			} catch (OpenIoTException e) {
+				getLogger().error("Processor failed to process event in batch.", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.event.processor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks consecutive failures of a downstream component. After
+ * <code>failureThreshold</code> consecutive failures the circuit opens and calls are
+ * rejected for <code>openMs</code> milliseconds. After that a single trial call is let
+ * through: success closes the circuit, failure opens it again. Calls that succeed but
+ * take longer than <code>slowCallMs</code> are counted as failures.
+ *
+ * @author Derek
+ */
+public class CircuitBreaker {
+
+	/**
+	 * States of a circuit breaker.
+	 *
+	 * @author Derek
+	 */
+	public static enum State {
+
+		/** Calls are allowed */
+		Closed,
+
+		/** Calls are rejected */
+		Open,
+
+		/** A single trial call is allowed */
+		HalfOpen;
+	}
+
+	/** Number of consecutive failures that open the circuit (0 disables) */
+	private final int failureThreshold;
+
+	/** Time the circuit stays open before a trial call is allowed */
+	private final long openNanos;
+
+	/** Calls slower than this are treated as failures (0 disables) */
+	private final long slowCallNanos;
+
+	/** Current state */
+	private State state = State.Closed;
+
+	/** Number of consecutive failures */
+	private int consecutiveFailures;
+
+	/** Time the circuit was last opened */
+	private long openedAt;
+
+	/** Indicates a trial call is in progress */
+	private boolean trialInProgress;
+
+	/** Number of times the circuit has opened */
+	private long openCount;
+
+	public CircuitBreaker(int failureThreshold, long openMs, long slowCallMs) {
+		this.failureThreshold = failureThreshold;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+		this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+	}
+
+	/**
+	 * Indicates whether a call may be made. Moves an open circuit to half-open once the
+	 * open period has passed.
+	 *
+	 * @return
+	 */
+	public synchronized boolean allowRequest() {
+		switch (state) {
+		case Closed: {
+			return true;
+		}
+		case Open: {
+			if ((System.nanoTime() - openedAt) < openNanos) {
+				return false;
+			}
+			state = State.HalfOpen;
+			trialInProgress = true;
+			return true;
+		}
+		case HalfOpen: {
+			if (trialInProgress) {
+				return false;
+			}
+			trialInProgress = true;
+			return true;
+		}
+		}
+		return true;
+	}
+
+	/**
+	 * Record the outcome of a call allowed by {@link #allowRequest()}.
+	 *
+	 * @param success
+	 * @param elapsedNanos
+	 */
+	public synchronized void record(boolean success, long elapsedNanos) {
+		boolean failed = !success || ((slowCallNanos > 0) && (elapsedNanos > slowCallNanos));
+		if (state == State.HalfOpen) {
+			trialInProgress = false;
+			if (failed) {
+				open();
+			} else {
+				close();
+			}
+			return;
+		}
+		if (!failed) {
+			consecutiveFailures = 0;
+			return;
+		}
+		consecutiveFailures++;
+		if ((failureThreshold > 0) && (consecutiveFailures >= failureThreshold) && (state == State.Closed)) {
+			open();
+		}
+	}
+
+	/**
+	 * Open the circuit.
+	 */
+	protected void open() {
+		state = State.Open;
+		openedAt = System.nanoTime();
+		openCount++;
+	}
+
+	/**
+	 * Close the circuit.
+	 */
+	protected void close() {
+		state = State.Closed;
+		consecutiveFailures = 0;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized long getOpenCount() {
+		return openCount;
+	}
+
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+}
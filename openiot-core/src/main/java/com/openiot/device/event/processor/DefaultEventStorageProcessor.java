@@ -8,32 +8,48 @@
 package com.openiot.device.event.processor;
 
 import com.openiot.OpenIoT;
+import com.openiot.device.provisioning.InboundProcessingUtils;
+import com.openiot.rest.model.device.event.DeviceEventBatch;
 import com.openiot.rest.model.device.event.request.DeviceCommandResponseCreateRequest;
+import com.openiot.server.metrics.PipelineLatencyMetrics;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.OpenIoTSystemException;
 import com.openiot.spi.device.IDevice;
 import com.openiot.spi.device.IDeviceAssignment;
 import com.openiot.spi.device.event.IDeviceAlert;
 import com.openiot.spi.device.event.IDeviceCommandResponse;
+import com.openiot.spi.device.event.IDeviceEventBatchResponse;
 import com.openiot.spi.device.event.IDeviceLocation;
 import com.openiot.spi.device.event.IDeviceMeasurements;
 import com.openiot.spi.device.event.processor.IInboundEventProcessor;
 import com.openiot.spi.device.event.request.*;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
 import com.openiot.spi.error.ErrorCode;
 import com.openiot.spi.error.ErrorLevel;
+import com.openiot.spi.system.ILatencyHistogram;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Implementation of {@link IInboundEventProcessor} that attempts to store the inbound
- * event request using device management APIs.
+ * event request using device management APIs. When events arrive in batches, the
+ * measurements, locations and alerts for each assignment are stored with a single call to
+ * {@link com.openiot.spi.device.IDeviceManagement#addDeviceEventBatch(String, com.openiot.spi.device.event.IDeviceEventBatch)}.
  * 
  * @author Derek
  */
-public class DefaultEventStorageProcessor extends InboundEventProcessor {
+public class DefaultEventStorageProcessor extends BatchInboundEventProcessor {
 
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(DefaultEventStorageProcessor.class);
 
+	/** Time spent in device management calls that store events */
+	private ILatencyHistogram persistenceLatency;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -41,6 +57,9 @@ public class DefaultEventStorageProcessor extends InboundEventProcessor {
 	 */
 	@Override
 	public void start() throws OpenIoTException {
+		persistenceLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+						PipelineLatencyMetrics.STAGE_PERSISTENCE);
 	}
 
 	/*
@@ -87,7 +106,9 @@ public class DefaultEventStorageProcessor extends InboundEventProcessor {
 	public void onDeviceCommandResponseRequest(String hardwareId, String originator,
 			IDeviceCommandResponseCreateRequest request) throws OpenIoTException {
 		IDeviceAssignment assignment = getCurrentAssignment(hardwareId);
+		long start = System.nanoTime();
 		OpenIoT.getServer().getDeviceManagement().addDeviceCommandResponse(assignment.getToken(), request);
+		recordPersistence(start);
 	}
 
 	/*
@@ -101,9 +122,11 @@ public class DefaultEventStorageProcessor extends InboundEventProcessor {
 	public void onDeviceMeasurementsCreateRequest(String hardwareId, String originator,
 			IDeviceMeasurementsCreateRequest request) throws OpenIoTException {
 		IDeviceAssignment assignment = getCurrentAssignment(hardwareId);
+		long start = System.nanoTime();
 		IDeviceMeasurements measurements =
 				OpenIoT.getServer().getDeviceManagement().addDeviceMeasurements(assignment.getToken(),
 						request);
+		recordPersistence(start);
 		handleLinkResponseToInvocation(originator, measurements.getId(), assignment);
 	}
 
@@ -118,8 +141,10 @@ public class DefaultEventStorageProcessor extends InboundEventProcessor {
 	public void onDeviceLocationCreateRequest(String hardwareId, String originator,
 			IDeviceLocationCreateRequest request) throws OpenIoTException {
 		IDeviceAssignment assignment = getCurrentAssignment(hardwareId);
+		long start = System.nanoTime();
 		IDeviceLocation location =
 				OpenIoT.getServer().getDeviceManagement().addDeviceLocation(assignment.getToken(), request);
+		recordPersistence(start);
 		handleLinkResponseToInvocation(originator, location.getId(), assignment);
 	}
 
@@ -134,11 +159,92 @@ public class DefaultEventStorageProcessor extends InboundEventProcessor {
 	public void onDeviceAlertCreateRequest(String hardwareId, String originator,
 			IDeviceAlertCreateRequest request) throws OpenIoTException {
 		IDeviceAssignment assignment = getCurrentAssignment(hardwareId);
+		long start = System.nanoTime();
 		IDeviceAlert alert =
 				OpenIoT.getServer().getDeviceManagement().addDeviceAlert(assignment.getToken(), request);
+		recordPersistence(start);
 		handleLinkResponseToInvocation(originator, alert.getId(), assignment);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.openiot.device.event.processor.BatchInboundEventProcessor#onDeviceEventBatch
+	 * (java.util.List)
+	 */
+	@Override
+	public void onDeviceEventBatch(List<IDecodedDeviceEventRequest> batch) throws OpenIoTException {
+		Map<String, AssignmentEvents> byHardwareId = new LinkedHashMap<String, AssignmentEvents>();
+		for (IDecodedDeviceEventRequest decoded : batch) {
+			try {
+				IDeviceEventCreateRequest request = decoded.getRequest();
+				if ((request instanceof IDeviceMeasurementsCreateRequest)
+						|| (request instanceof IDeviceLocationCreateRequest)
+						|| (request instanceof IDeviceAlertCreateRequest)) {
+					AssignmentEvents events = byHardwareId.get(decoded.getHardwareId());
+					if (events == null) {
+						events = new AssignmentEvents(getCurrentAssignment(decoded.getHardwareId()));
+						events.getBatch().setHardwareId(decoded.getHardwareId());
+						byHardwareId.put(decoded.getHardwareId(), events);
+					}
+					events.add(decoded);
+				} else {
+					InboundProcessingUtils.dispatch(decoded, this);
+				}
+			} catch (OpenIoTException e) {
+				LOGGER.error("Unable to store event for device '" + decoded.getHardwareId() + "'.", e);
+			}
+		}
+		for (AssignmentEvents events : byHardwareId.values()) {
+			try {
+				storeAssignmentEvents(events);
+			} catch (OpenIoTException e) {
+				LOGGER.error("Unable to store event batch for assignment '"
+						+ events.getAssignment().getToken() + "'.", e);
+			}
+		}
+	}
+
+	/**
+	 * Store all events collected for an assignment in a single call, then link any
+	 * responses back to their originating invocations.
+	 * 
+	 * @param events
+	 * @throws OpenIoTException
+	 */
+	protected void storeAssignmentEvents(AssignmentEvents events) throws OpenIoTException {
+		IDeviceAssignment assignment = events.getAssignment();
+		long start = System.nanoTime();
+		IDeviceEventBatchResponse response =
+				OpenIoT.getServer().getDeviceManagement().addDeviceEventBatch(assignment.getToken(),
+						events.getBatch());
+		recordPersistence(start);
+		for (int i = 0; i < response.getCreatedMeasurements().size(); i++) {
+			handleLinkResponseToInvocation(events.getMeasurementOriginators().get(i),
+					response.getCreatedMeasurements().get(i).getId(), assignment);
+		}
+		for (int i = 0; i < response.getCreatedLocations().size(); i++) {
+			handleLinkResponseToInvocation(events.getLocationOriginators().get(i),
+					response.getCreatedLocations().get(i).getId(), assignment);
+		}
+		for (int i = 0; i < response.getCreatedAlerts().size(); i++) {
+			handleLinkResponseToInvocation(events.getAlertOriginators().get(i),
+					response.getCreatedAlerts().get(i).getId(), assignment);
+		}
+	}
+
+	/**
+	 * Record time spent storing events.
+	 * 
+	 * @param start
+	 */
+	protected void recordPersistence(long start) {
+		if (persistenceLatency != null) {
+			persistenceLatency.record(System.nanoTime() - start);
+		}
+	}
+
 	/**
 	 * Get the current assignment or throw errors if it can not be resolved.
 	 * 
@@ -177,4 +283,70 @@ public class DefaultEventStorageProcessor extends InboundEventProcessor {
 					response);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Events from a batch that belong to a single assignment, along with the originator
+	 * of each event in the same order as the batch lists.
+	 * 
+	 * @author Derek
+	 */
+	protected static class AssignmentEvents {
+
+		/** Assignment events are stored against */
+		private IDeviceAssignment assignment;
+
+		/** Batch of events to store */
+		private DeviceEventBatch batch = new DeviceEventBatch();
+
+		/** Originators for measurements */
+		private List<String> measurementOriginators = new ArrayList<String>();
+
+		/** Originators for locations */
+		private List<String> locationOriginators = new ArrayList<String>();
+
+		/** Originators for alerts */
+		private List<String> alertOriginators = new ArrayList<String>();
+
+		public AssignmentEvents(IDeviceAssignment assignment) {
+			this.assignment = assignment;
+		}
+
+		/**
+		 * Add a decoded measurements, location or alert request.
+		 * 
+		 * @param decoded
+		 */
+		public void add(IDecodedDeviceEventRequest decoded) {
+			if (decoded.getRequest() instanceof IDeviceMeasurementsCreateRequest) {
+				batch.getMeasurements().add((IDeviceMeasurementsCreateRequest) decoded.getRequest());
+				measurementOriginators.add(decoded.getOriginator());
+			} else if (decoded.getRequest() instanceof IDeviceLocationCreateRequest) {
+				batch.getLocations().add((IDeviceLocationCreateRequest) decoded.getRequest());
+				locationOriginators.add(decoded.getOriginator());
+			} else if (decoded.getRequest() instanceof IDeviceAlertCreateRequest) {
+				batch.getAlerts().add((IDeviceAlertCreateRequest) decoded.getRequest());
+				alertOriginators.add(decoded.getOriginator());
+			}
+		}
+
+		public IDeviceAssignment getAssignment() {
+			return assignment;
+		}
+
+		public DeviceEventBatch getBatch() {
+			return batch;
+		}
+
+		public List<String> getMeasurementOriginators() {
+			return measurementOriginators;
+		}
+
+		public List<String> getLocationOriginators() {
+			return locationOriginators;
+		}
+
+		public List<String> getAlertOriginators() {
+			return alertOriginators;
+		}
+	}
+}
@@ -7,24 +7,40 @@
  */
 package com.openiot.device.event.processor;
 
+import com.openiot.OpenIoT;
+import com.openiot.device.provisioning.InboundProcessingUtils;
 import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.server.metrics.PipelineLatencyMetrics;
 import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.processor.IBatchInboundEventProcessor;
 import com.openiot.spi.device.event.processor.IInboundEventProcessor;
 import com.openiot.spi.device.event.processor.IInboundEventProcessorChain;
 import com.openiot.spi.device.event.request.*;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import com.openiot.spi.system.ILatencyHistogram;
 import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Default implementation of {@link IInboundEventProcessorChain} interface.
+ * Default implementation of {@link IInboundEventProcessorChain} interface. Time spent in
+ * each processor is recorded per event in the server pipeline latency metrics.
+ * 
+ * The chain also accepts batches of events. A processor that implements
+ * {@link IBatchInboundEventProcessor} receives the whole batch before any later processor
+ * sees it. Consecutive processors that do not support batches are handled one event at a
+ * time, so each event passes through all of them before the next event starts. An event
+ * is therefore always seen by processors in chain order, but a processor after a batch
+ * processor only sees the first event of a batch once the batch processor has handled
+ * the whole batch. For a batch processor, the time spent on a batch is divided evenly
+ * across its events.
  * 
  * @author Derek
  */
 public class DefaultInboundEventProcessorChain extends LifecycleComponent implements
-		IInboundEventProcessorChain {
+		IInboundEventProcessorChain, IBatchInboundEventProcessor {
 
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(DefaultInboundEventProcessorChain.class);
@@ -32,6 +48,9 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 	/** List of processors */
 	private List<IInboundEventProcessor> processors = new ArrayList<IInboundEventProcessor>();
 
+	/** Latency histogram for each processor, indexed like the processor list */
+	private ILatencyHistogram[] processorLatencies = new ILatencyHistogram[0];
+
 	public DefaultInboundEventProcessorChain() {
 		super(LifecycleComponentType.InboundProcessorChain);
 	}
@@ -44,9 +63,17 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 	@Override
 	public void start() throws OpenIoTException {
 		getLifecycleComponents().clear();
-		for (IInboundEventProcessor processor : getProcessors()) {
+		ILatencyHistogram[] latencies = new ILatencyHistogram[getProcessors().size()];
+		for (int i = 0; i < latencies.length; i++) {
+			IInboundEventProcessor processor = getProcessors().get(i);
 			startNestedComponent(processor, false);
+			latencies[i] =
+					OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+							PipelineLatencyMetrics.getProcessorStage(
+									PipelineLatencyMetrics.STAGE_INBOUND_PROCESSOR_PREFIX, i,
+									processor.getComponentName()));
 		}
+		processorLatencies = latencies;
 	}
 
 	/*
@@ -82,12 +109,15 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 	@Override
 	public void onRegistrationRequest(String hardwareId, String originator, IDeviceRegistrationRequest request)
 			throws OpenIoTException {
-		for (IInboundEventProcessor processor : getProcessors()) {
+		List<IInboundEventProcessor> processors = getProcessors();
+		for (int i = 0; i < processors.size(); i++) {
+			long start = System.nanoTime();
 			try {
-				processor.onRegistrationRequest(hardwareId, originator, request);
+				processors.get(i).onRegistrationRequest(hardwareId, originator, request);
 			} catch (OpenIoTException e) {
 				LOGGER.error("Processor failed to process registration request.", e);
 			}
+			recordLatency(i, start);
 		}
 	}
 
@@ -101,12 +131,15 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 	@Override
 	public void onDeviceCommandResponseRequest(String hardwareId, String originator,
 			IDeviceCommandResponseCreateRequest request) throws OpenIoTException {
-		for (IInboundEventProcessor processor : getProcessors()) {
+		List<IInboundEventProcessor> processors = getProcessors();
+		for (int i = 0; i < processors.size(); i++) {
+			long start = System.nanoTime();
 			try {
-				processor.onDeviceCommandResponseRequest(hardwareId, originator, request);
+				processors.get(i).onDeviceCommandResponseRequest(hardwareId, originator, request);
 			} catch (OpenIoTException e) {
 				LOGGER.error("Processor failed to process command response request.", e);
 			}
+			recordLatency(i, start);
 		}
 	}
 
@@ -120,12 +153,15 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 	@Override
 	public void onDeviceMeasurementsCreateRequest(String hardwareId, String originator,
 			IDeviceMeasurementsCreateRequest request) throws OpenIoTException {
-		for (IInboundEventProcessor processor : getProcessors()) {
+		List<IInboundEventProcessor> processors = getProcessors();
+		for (int i = 0; i < processors.size(); i++) {
+			long start = System.nanoTime();
 			try {
-				processor.onDeviceMeasurementsCreateRequest(hardwareId, originator, request);
+				processors.get(i).onDeviceMeasurementsCreateRequest(hardwareId, originator, request);
 			} catch (OpenIoTException e) {
 				LOGGER.error("Processor failed to process measurements create request.", e);
 			}
+			recordLatency(i, start);
 		}
 	}
 
@@ -139,12 +175,15 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 	@Override
 	public void onDeviceLocationCreateRequest(String hardwareId, String originator,
 			IDeviceLocationCreateRequest request) throws OpenIoTException {
-		for (IInboundEventProcessor processor : getProcessors()) {
+		List<IInboundEventProcessor> processors = getProcessors();
+		for (int i = 0; i < processors.size(); i++) {
+			long start = System.nanoTime();
 			try {
-				processor.onDeviceLocationCreateRequest(hardwareId, originator, request);
+				processors.get(i).onDeviceLocationCreateRequest(hardwareId, originator, request);
 			} catch (OpenIoTException e) {
 				LOGGER.error("Processor failed to process location create request.", e);
 			}
+			recordLatency(i, start);
 		}
 	}
 
@@ -158,12 +197,90 @@ public class DefaultInboundEventProcessorChain extends LifecycleComponent implem
 	@Override
 	public void onDeviceAlertCreateRequest(String hardwareId, String originator,
 			IDeviceAlertCreateRequest request) throws OpenIoTException {
-		for (IInboundEventProcessor processor : getProcessors()) {
+		List<IInboundEventProcessor> processors = getProcessors();
+		for (int i = 0; i < processors.size(); i++) {
+			long start = System.nanoTime();
 			try {
-				processor.onDeviceAlertCreateRequest(hardwareId, originator, request);
+				processors.get(i).onDeviceAlertCreateRequest(hardwareId, originator, request);
 			} catch (OpenIoTException e) {
 				LOGGER.error("Processor failed to process alert create request.", e);
 			}
+			recordLatency(i, start);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IBatchInboundEventProcessor#onDeviceEventBatch(java.util.List)
+	 */
+	@Override
+	public void onDeviceEventBatch(List<IDecodedDeviceEventRequest> batch) throws OpenIoTException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		List<IInboundEventProcessor> processors = getProcessors();
+		int i = 0;
+		while (i < processors.size()) {
+			IInboundEventProcessor processor = processors.get(i);
+			if (processor instanceof IBatchInboundEventProcessor) {
+				long start = System.nanoTime();
+				try {
+					((IBatchInboundEventProcessor) processor).onDeviceEventBatch(batch);
+				} catch (OpenIoTException e) {
+					LOGGER.error("Processor failed to process event batch.", e);
+				}
+				recordLatency(i, start, batch.size());
+				i++;
+				continue;
+			}
+
+			// Pass each event through the run of processors that do not handle batches.
+			int end = i + 1;
+			while ((end < processors.size())
+					&& (!(processors.get(end) instanceof IBatchInboundEventProcessor))) {
+				end++;
+			}
+			for (IDecodedDeviceEventRequest request : batch) {
+				for (int j = i; j < end; j++) {
+					long start = System.nanoTime();
+					try {
+						InboundProcessingUtils.dispatch(request, processors.get(j));
+					} catch (OpenIoTException e) {
+						LOGGER.error("Processor failed to process event in batch.", e);
+					}
+					recordLatency(j, start);
+				}
+			}
+			i = end;
+		}
+	}
+
+	/**
+	 * Record time spent in the processor at the given index.
+	 * 
+	 * @param index
+	 * @param start
+	 */
+	protected void recordLatency(int index, long start) {
+		recordLatency(index, start, 1);
+	}
+
+	/**
+	 * Record time spent in the processor at the given index on a number of events. The
+	 * elapsed time is divided evenly and recorded once for each event.
+	 * 
+	 * @param index
+	 * @param start
+	 * @param events
+	 */
+	protected void recordLatency(int index, long start, int events) {
+		ILatencyHistogram[] latencies = processorLatencies;
+		if ((index < latencies.length) && (events > 0)) {
+			long perEvent = (System.nanoTime() - start) / events;
+			for (int i = 0; i < events; i++) {
+				latencies[index].record(perEvent);
+			}
 		}
 	}
 
@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.event.processor;
+
+import com.openiot.OpenIoT;
+import com.openiot.rest.model.device.charting.MeasurementRollup;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDevice;
+import com.openiot.spi.device.IDeviceChangeListener;
+import com.openiot.spi.device.charting.IMeasurementRollup;
+import com.openiot.spi.device.charting.MeasurementRollupResolution;
+import com.openiot.spi.device.event.processor.IInboundEventProcessor;
+import com.openiot.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implementation of {@link IInboundEventProcessor} that maintains one minute, one hour
+ * and one day rollups of measurement values for each assignment. Values are added to
+ * rollups held in memory, so all values for the same assignment, measurement and
+ * interval that arrive between flushes are written as a single update. Pending rollups
+ * are written by a background thread every <code>flushIntervalMs</code> milliseconds,
+ * or sooner once <code>maxPendingRollups</code> rollups are waiting, and when the
+ * processor is stopped. Rollups that can not be written are logged and dropped.
+ *
+ * Pending rollups are spread over shards by assignment, so each request takes a single
+ * shard lock and requests for different assignments rarely contend. Assignment tokens
+ * are cached by hardware id and dropped when the device changes.
+ *
+ * @author Derek
+ */
+public class MeasurementRollupProcessor extends BatchInboundEventProcessor implements
+		IDeviceChangeListener {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(MeasurementRollupProcessor.class);
+
+	/** Default interval between flushes */
+	private static final long DEFAULT_FLUSH_INTERVAL_MS = 5000;
+
+	/** Default number of pending rollups that forces an early flush */
+	private static final int DEFAULT_MAX_PENDING_ROLLUPS = 10000;
+
+	/** Number of shards pending rollups are spread over */
+	private static final int SHARD_COUNT = 16;
+
+	/** Maximum number of cached assignment tokens */
+	private static final int MAX_CACHED_ASSIGNMENTS = 100000;
+
+	/** Interval between flushes */
+	private long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+
+	/** Number of pending rollups that forces an early flush */
+	private int maxPendingRollups = DEFAULT_MAX_PENDING_ROLLUPS;
+
+	/** Shards holding pending rollups */
+	private Shard[] shards = new Shard[SHARD_COUNT];
+
+	/** Number of pending rollups across all shards */
+	private AtomicInteger pendingCount = new AtomicInteger();
+
+	/** Used to wake the flusher thread */
+	private ReentrantLock signalLock = new ReentrantLock();
+
+	/** Signaled when the pending rollup limit is reached */
+	private Condition limitReached = signalLock.newCondition();
+
+	/** Current assignment tokens indexed by hardware id */
+	private ConcurrentMap<String, String> assignmentTokens = new ConcurrentHashMap<String, String>();
+
+	/** Incremented on every device change so tokens loaded before it are not cached */
+	private AtomicLong generation = new AtomicLong();
+
+	/** Guards caching assignment tokens against concurrent invalidation */
+	private Object assignmentLock = new Object();
+
+	/** Serializes flushes */
+	private ReentrantLock flushLock = new ReentrantLock();
+
+	/** Runs the flusher thread */
+	private ExecutorService executor;
+
+	public MeasurementRollupProcessor() {
+		for (int i = 0; i < SHARD_COUNT; i++) {
+			shards[i] = new Shard();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		OpenIoT.getServer().getDeviceManagementListeners().addDeviceListener(this);
+		executor = Executors.newSingleThreadExecutor(new FlusherThreadFactory());
+		executor.execute(new Flusher());
+		LOGGER.info("Measurement rollups flushing every " + getFlushIntervalMs() + "ms or when "
+				+ getMaxPendingRollups() + " rollups are pending.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		if (executor != null) {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		OpenIoT.getServer().getDeviceManagementListeners().removeDeviceListener(this);
+		clearAssignments();
+		flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.event.processor.InboundEventProcessor#
+	 * onDeviceMeasurementsCreateRequest(java.lang.String, java.lang.String,
+	 * IDeviceMeasurementsCreateRequest)
+	 */
+	@Override
+	public void onDeviceMeasurementsCreateRequest(String hardwareId, String originator,
+			IDeviceMeasurementsCreateRequest request) throws OpenIoTException {
+		String assignmentToken = getAssignmentToken(hardwareId);
+		if (assignmentToken != null) {
+			addMeasurements(assignmentToken, request);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.event.processor.BatchInboundEventProcessor#onDeviceEventBatch
+	 * (java.util.List)
+	 */
+	@Override
+	public void onDeviceEventBatch(List<IDecodedDeviceEventRequest> batch) throws OpenIoTException {
+		for (IDecodedDeviceEventRequest decoded : batch) {
+			if (!(decoded.getRequest() instanceof IDeviceMeasurementsCreateRequest)) {
+				continue;
+			}
+			try {
+				String assignmentToken = getAssignmentToken(decoded.getHardwareId());
+				if (assignmentToken != null) {
+					addMeasurements(assignmentToken, (IDeviceMeasurementsCreateRequest) decoded.getRequest());
+				}
+			} catch (OpenIoTException e) {
+				LOGGER.error("Unable to roll up measurements for device '" + decoded.getHardwareId()
+						+ "'.", e);
+			}
+		}
+	}
+
+	/**
+	 * Add the values in a measurements request to the pending rollups for each
+	 * resolution.
+	 *
+	 * @param assignmentToken
+	 * @param request
+	 */
+	protected void addMeasurements(String assignmentToken, IDeviceMeasurementsCreateRequest request) {
+		Date eventDate = (request.getEventDate() != null) ? request.getEventDate() : new Date();
+		Shard shard = shards[(assignmentToken.hashCode() & Integer.MAX_VALUE) % SHARD_COUNT];
+		int created = 0;
+		boolean signal = false;
+		shard.lock.lock();
+		try {
+			for (Map.Entry<String, Double> entry : request.getMeasurements().entrySet()) {
+				if (entry.getValue() == null) {
+					continue;
+				}
+				for (MeasurementRollupResolution resolution : MeasurementRollupResolution.values()) {
+					long start = resolution.getIntervalStart(eventDate.getTime());
+					String key =
+							assignmentToken + ":" + resolution.getCode() + ":" + start + ":" + entry.getKey();
+					MeasurementRollup rollup = shard.rollups.get(key);
+					if (rollup == null) {
+						rollup =
+								new MeasurementRollup(assignmentToken, entry.getKey(), resolution, new Date(
+										start));
+						shard.rollups.put(key, rollup);
+						created++;
+					}
+					rollup.add(entry.getValue(), eventDate);
+				}
+			}
+			if (created > 0) {
+				int count = pendingCount.addAndGet(created);
+				signal = (count >= getMaxPendingRollups()) && (count - created < getMaxPendingRollups());
+			}
+		} finally {
+			shard.lock.unlock();
+		}
+		if (signal) {
+			signalLimitReached();
+		}
+	}
+
+	/**
+	 * Wake the flusher thread because the pending rollup limit was reached.
+	 */
+	protected void signalLimitReached() {
+		signalLock.lock();
+		try {
+			limitReached.signal();
+		} finally {
+			signalLock.unlock();
+		}
+	}
+
+	/**
+	 * Write all pending rollups.
+	 *
+	 * @throws OpenIoTException
+	 */
+	public void flush() throws OpenIoTException {
+		flushLock.lock();
+		try {
+			List<IMeasurementRollup> rollups = new ArrayList<IMeasurementRollup>();
+			for (Shard shard : shards) {
+				shard.lock.lock();
+				try {
+					if (!shard.rollups.isEmpty()) {
+						rollups.addAll(shard.rollups.values());
+						pendingCount.addAndGet(-shard.rollups.size());
+						shard.rollups = new HashMap<String, MeasurementRollup>();
+					}
+				} finally {
+					shard.lock.unlock();
+				}
+			}
+			if (rollups.isEmpty()) {
+				return;
+			}
+			OpenIoT.getServer().getDeviceManagement().addMeasurementRollups(rollups);
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Flushed " + rollups.size() + " measurement rollups.");
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the token of the current assignment for a device. Devices are only loaded when
+	 * the token is not cached.
+	 *
+	 * @param hardwareId
+	 * @return null if the device does not exist or is not assigned
+	 * @throws OpenIoTException
+	 */
+	protected String getAssignmentToken(String hardwareId) throws OpenIoTException {
+		String cached = assignmentTokens.get(hardwareId);
+		if (cached != null) {
+			return cached;
+		}
+		long start = generation.get();
+		IDevice device = OpenIoT.getServer().getDeviceManagement().getDeviceByHardwareId(hardwareId);
+		if ((device == null) || (device.getAssignmentToken() == null)) {
+			return null;
+		}
+		synchronized (assignmentLock) {
+			if ((assignmentTokens.size() < MAX_CACHED_ASSIGNMENTS) && (generation.get() == start)) {
+				assignmentTokens.put(hardwareId, device.getAssignmentToken());
+			}
+		}
+		return device.getAssignmentToken();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.device.IDeviceChangeListener#onDeviceChanged(java.lang.String)
+	 */
+	@Override
+	public void onDeviceChanged(String hardwareId) {
+		synchronized (assignmentLock) {
+			generation.incrementAndGet();
+			assignmentTokens.remove(hardwareId);
+		}
+	}
+
+	/**
+	 * Remove all cached assignment tokens.
+	 */
+	protected void clearAssignments() {
+		synchronized (assignmentLock) {
+			generation.incrementAndGet();
+			assignmentTokens.clear();
+		}
+	}
+
+	/**
+	 * Get the number of rollups waiting to be written.
+	 *
+	 * @return
+	 */
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	public long getFlushIntervalMs() {
+		return flushIntervalMs;
+	}
+
+	public void setFlushIntervalMs(long flushIntervalMs) {
+		this.flushIntervalMs = flushIntervalMs;
+	}
+
+	public int getMaxPendingRollups() {
+		return maxPendingRollups;
+	}
+
+	public void setMaxPendingRollups(int maxPendingRollups) {
+		this.maxPendingRollups = maxPendingRollups;
+	}
+
+	/**
+	 * Pending rollups for the assignments that hash to a shard.
+	 *
+	 * @author Derek
+	 */
+	private static class Shard {
+
+		/** Guards the pending rollups */
+		private ReentrantLock lock = new ReentrantLock();
+
+		/** Pending rollups indexed by assignment, resolution, interval and measurement */
+		private Map<String, MeasurementRollup> rollups = new HashMap<String, MeasurementRollup>();
+	}
+
+	/** Used for naming the flusher thread */
+	private class FlusherThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "OpenIoT Measurement Rollup Flusher");
+		}
+	}
+
+	/**
+	 * Flushes pending rollups on an interval or when the pending limit is reached.
+	 *
+	 * @author Derek
+	 */
+	private class Flusher implements Runnable {
+
+		@Override
+		public void run() {
+			while (true) {
+				signalLock.lock();
+				try {
+					if (pendingCount.get() < getMaxPendingRollups()) {
+						limitReached.await(getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+					}
+				} catch (InterruptedException e) {
+					return;
+				} finally {
+					signalLock.unlock();
+				}
+				try {
+					flush();
+				} catch (Throwable e) {
+					LOGGER.error("Unable to write measurement rollups.", e);
+				}
+			}
+		}
+	}
+}
@@ -8,7 +8,6 @@
 package com.openiot.device.event.processor;
 
 import com.openiot.OpenIoT;
-import com.openiot.core.OpenIoTPersistence;
 import com.openiot.device.DeviceManagementDecorator;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.device.IDeviceManagement;
@@ -52,7 +51,17 @@ public class OutboundProcessingStrategyDecorator extends DeviceManagementDecorat
 	@Override
 	public IDeviceEventBatchResponse addDeviceEventBatch(String assignmentToken, IDeviceEventBatch batch)
 			throws OpenIoTException {
-		return OpenIoTPersistence.deviceEventBatchLogic(assignmentToken, batch, this);
+		IDeviceEventBatchResponse result = super.addDeviceEventBatch(assignmentToken, batch);
+		for (IDeviceMeasurements measurements : result.getCreatedMeasurements()) {
+			outbound.onMeasurements(measurements);
+		}
+		for (IDeviceLocation location : result.getCreatedLocations()) {
+			outbound.onLocation(location);
+		}
+		for (IDeviceAlert alert : result.getCreatedAlerts()) {
+			outbound.onAlert(alert);
+		}
+		return result;
 	}
 
 	/*
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.event.processor;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.openiot.OpenIoT;
+import com.openiot.device.provisioning.InboundProcessingUtils;
+import com.openiot.server.metrics.PipelineLatencyMetrics;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.batch.IBatchOperation;
+import com.openiot.spi.device.event.*;
+import com.openiot.spi.device.event.processor.IOutboundEventProcessor;
+import com.openiot.spi.device.event.processor.IOutboundEventProcessorChain;
+import com.openiot.spi.server.lifecycle.LifecycleStatus;
+import com.openiot.spi.system.ILatencyHistogram;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Implementation of {@link IOutboundEventProcessorChain} that fans each event out to
+ * the processors in parallel. Every processor gets its own bounded queue and thread, so
+ * a slow or failing processor only backs up its own queue. When a queue is full, new
+ * events for that processor are dropped. Each processor is guarded by a
+ * {@link CircuitBreaker} that stops calling it for a while after repeated failures.
+ *
+ * Backlog, processed, error, drop and rejection counts are registered in the server
+ * metric registry under <code>[this class].[processor name].*</code>. Processing time
+ * is recorded in the <code>outboundProcessor.[index].[processor name]</code> latency histogram.
+ *
+ * @author Derek
+ */
+public class ParallelOutboundEventProcessorChain extends DefaultOutboundEventProcessorChain {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(ParallelOutboundEventProcessorChain.class);
+
+	/** Default number of events queued for each processor */
+	private static final int DEFAULT_PROCESSOR_QUEUE_SIZE = 1000;
+
+	/** Default number of consecutive failures that open a circuit */
+	private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+	/** Default time a circuit stays open */
+	private static final long DEFAULT_CIRCUIT_OPEN_MS = 30000;
+
+	/** Maximum number of events queued for each processor */
+	private int processorQueueSize = DEFAULT_PROCESSOR_QUEUE_SIZE;
+
+	/** Number of consecutive failures that open a circuit (0 disables) */
+	private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+	/** Milliseconds a circuit stays open before a trial call */
+	private long circuitOpenMs = DEFAULT_CIRCUIT_OPEN_MS;
+
+	/** Calls slower than this count as failures (0 disables) */
+	private long slowCallThresholdMs = 0;
+
+	/** Lane for each processor, indexed like the processor list */
+	private List<ProcessorLane> lanes = new ArrayList<ProcessorLane>();
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.event.processor.DefaultOutboundEventProcessorChain#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		super.start();
+		List<ProcessorLane> started = new ArrayList<ProcessorLane>();
+		Set<String> names = new HashSet<String>();
+		for (int i = 0; i < getProcessors().size(); i++) {
+			IOutboundEventProcessor processor = getProcessors().get(i);
+			String name = processor.getComponentName();
+			if (!names.add(name)) {
+				name = name + " " + i;
+				names.add(name);
+			}
+			ProcessorLane lane = new ProcessorLane(processor, i, name);
+			lane.start();
+			started.add(lane);
+		}
+		lanes = started;
+		LOGGER.info("Started parallel outbound processor chain with " + lanes.size()
+				+ " processors, queue size of " + getProcessorQueueSize() + " and failure threshold of "
+				+ getFailureThreshold() + ".");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.event.processor.DefaultOutboundEventProcessorChain#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		for (ProcessorLane lane : lanes) {
+			lane.stop();
+		}
+		super.stop();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.event.processor.DefaultOutboundEventProcessorChain#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.event.processor.DefaultOutboundEventProcessorChain#onMeasurements
+	 * (com.openiot.spi.device.event.IDeviceMeasurements)
+	 */
+	@Override
+	public void onMeasurements(IDeviceMeasurements measurements) throws OpenIoTException {
+		fanOut(measurements);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.event.processor.DefaultOutboundEventProcessorChain#onLocation(com
+	 * .openiot.spi.device.event.IDeviceLocation)
+	 */
+	@Override
+	public void onLocation(IDeviceLocation location) throws OpenIoTException {
+		fanOut(location);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.event.processor.DefaultOutboundEventProcessorChain#onAlert(com.
+	 * openiot.spi.device.event.IDeviceAlert)
+	 */
+	@Override
+	public void onAlert(IDeviceAlert alert) throws OpenIoTException {
+		fanOut(alert);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.event.processor.DefaultOutboundEventProcessorChain#onCommandInvocation
+	 * (com.openiot.spi.device.event.IDeviceCommandInvocation)
+	 */
+	@Override
+	public void onCommandInvocation(IDeviceCommandInvocation invocation) throws OpenIoTException {
+		fanOut(invocation);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.event.processor.DefaultOutboundEventProcessorChain#onCommandResponse
+	 * (com.openiot.spi.device.event.IDeviceCommandResponse)
+	 */
+	@Override
+	public void onCommandResponse(IDeviceCommandResponse response) throws OpenIoTException {
+		fanOut(response);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.device.event.processor.DefaultOutboundEventProcessorChain#onBatchOperation
+	 * (com.openiot.spi.device.batch.IBatchOperation)
+	 */
+	@Override
+	public void onBatchOperation(IBatchOperation operation) throws OpenIoTException {
+		fanOut(operation);
+	}
+
+	/**
+	 * Add an event to the queue of every processor. Never blocks the caller.
+	 *
+	 * @param event
+	 */
+	protected void fanOut(Object event) {
+		if (isProcessingEnabled()) {
+			for (ProcessorLane lane : lanes) {
+				lane.submit(event);
+			}
+		}
+	}
+
+	/**
+	 * Deliver an event to the method on the {@link IOutboundEventProcessor} that matches
+	 * the event type.
+	 *
+	 * @param processor
+	 * @param event
+	 * @throws OpenIoTException
+	 */
+	protected static void deliver(IOutboundEventProcessor processor, Object event) throws OpenIoTException {
+		if (event instanceof IDeviceMeasurements) {
+			processor.onMeasurements((IDeviceMeasurements) event);
+		} else if (event instanceof IDeviceLocation) {
+			processor.onLocation((IDeviceLocation) event);
+		} else if (event instanceof IDeviceAlert) {
+			processor.onAlert((IDeviceAlert) event);
+		} else if (event instanceof IDeviceCommandInvocation) {
+			processor.onCommandInvocation((IDeviceCommandInvocation) event);
+		} else if (event instanceof IDeviceCommandResponse) {
+			processor.onCommandResponse((IDeviceCommandResponse) event);
+		} else if (event instanceof IBatchOperation) {
+			processor.onBatchOperation((IBatchOperation) event);
+		} else {
+			throw new RuntimeException("Unknown device event type in outbound processing: "
+					+ event.getClass().getName());
+		}
+	}
+
+	/**
+	 * Get the lane for each processor.
+	 *
+	 * @return
+	 */
+	public List<ProcessorLane> getLanes() {
+		return lanes;
+	}
+
+	public int getProcessorQueueSize() {
+		return processorQueueSize;
+	}
+
+	public void setProcessorQueueSize(int processorQueueSize) {
+		this.processorQueueSize = processorQueueSize;
+	}
+
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	public void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	public long getCircuitOpenMs() {
+		return circuitOpenMs;
+	}
+
+	public void setCircuitOpenMs(long circuitOpenMs) {
+		this.circuitOpenMs = circuitOpenMs;
+	}
+
+	public long getSlowCallThresholdMs() {
+		return slowCallThresholdMs;
+	}
+
+	public void setSlowCallThresholdMs(long slowCallThresholdMs) {
+		this.slowCallThresholdMs = slowCallThresholdMs;
+	}
+
+	/**
+	 * Queue, thread, circuit breaker and metrics for a single processor.
+	 *
+	 * @author Derek
+	 */
+	public class ProcessorLane implements Runnable {
+
+		/** Processor events are delivered to */
+		private IOutboundEventProcessor processor;
+
+		/** Position of the processor in the chain */
+		private int index;
+
+		/** Name used for metrics and threads */
+		private String name;
+
+		/** Events waiting for the processor */
+		private BlockingQueue<Object> queue;
+
+		/** Guards calls to the processor */
+		private CircuitBreaker breaker;
+
+		/** Time spent in the processor */
+		private ILatencyHistogram latency;
+
+		/** Events delivered successfully */
+		private Counter processed;
+
+		/** Events the processor failed on */
+		private Counter errors;
+
+		/** Events dropped because the queue was full */
+		private Counter dropped;
+
+		/** Events skipped because the circuit was open */
+		private Counter rejected;
+
+		/** Runs the lane thread */
+		private ExecutorService executor;
+
+		public ProcessorLane(IOutboundEventProcessor processor, int index, String name) {
+			this.processor = processor;
+			this.index = index;
+			this.name = name;
+			this.queue = new ArrayBlockingQueue<Object>(getProcessorQueueSize());
+			this.breaker = new CircuitBreaker(getFailureThreshold(), getCircuitOpenMs(), getSlowCallThresholdMs());
+		}
+
+		/**
+		 * Register metrics and start the lane thread.
+		 */
+		public void start() {
+			MetricRegistry registry = OpenIoT.getServer().getMetricRegistry();
+			latency =
+					OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+							PipelineLatencyMetrics.getProcessorStage(
+									PipelineLatencyMetrics.STAGE_OUTBOUND_PROCESSOR_PREFIX, index,
+									processor.getComponentName()));
+			processed = registry.counter(getMetricName("processed"));
+			errors = registry.counter(getMetricName("errors"));
+			dropped = registry.counter(getMetricName("dropped"));
+			rejected = registry.counter(getMetricName("rejected"));
+			registry.remove(getMetricName("backlog"));
+			registry.register(getMetricName("backlog"), new Gauge<Integer>() {
+
+				@Override
+				public Integer getValue() {
+					return queue.size();
+				}
+			});
+			registry.remove(getMetricName("circuit"));
+			registry.register(getMetricName("circuit"), new Gauge<String>() {
+
+				@Override
+				public String getValue() {
+					return breaker.getState().name();
+				}
+			});
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					return new Thread(r, "OpenIoT Outbound Processor " + name);
+				}
+			});
+			executor.execute(this);
+		}
+
+		/**
+		 * Stop the lane thread and remove metrics.
+		 */
+		public void stop() {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			MetricRegistry registry = OpenIoT.getServer().getMetricRegistry();
+			for (String metric : new String[] {
+					"processed",
+					"errors",
+					"dropped",
+					"rejected",
+					"backlog",
+					"circuit" }) {
+				registry.remove(getMetricName(metric));
+			}
+		}
+
+		/**
+		 * Add an event to the queue, dropping it if the queue is full.
+		 *
+		 * @param event
+		 */
+		public void submit(Object event) {
+			if (!queue.offer(event)) {
+				dropped.inc();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			// Event creation APIs expect an authenticated user in order to check
+			// permissions and log who creates events. When called in this context, the
+			// authenticated user will always be 'system'.
+			InboundProcessingUtils.setSystemAuthentication();
+			while (true) {
+				Object event;
+				try {
+					event = queue.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				if (processor.getLifecycleStatus() != LifecycleStatus.Started) {
+					logSkipped(processor);
+					continue;
+				}
+				if (!breaker.allowRequest()) {
+					rejected.inc();
+					continue;
+				}
+				CircuitBreaker.State before = breaker.getState();
+				boolean success = false;
+				long start = System.nanoTime();
+				try {
+					deliver(processor, event);
+					success = true;
+					processed.inc();
+				} catch (OpenIoTException e) {
+					errors.inc();
+					LOGGER.error("Outbound processor '" + name + "' failed to process event.", e);
+				} catch (Throwable e) {
+					errors.inc();
+					LOGGER.error("Unhandled exception in outbound processor '" + name + "'.", e);
+				}
+				long elapsed = System.nanoTime() - start;
+				latency.record(elapsed);
+				breaker.record(success, elapsed);
+				logTransition(before, breaker.getState());
+			}
+		}
+
+		/**
+		 * Log changes in circuit state.
+		 *
+		 * @param before
+		 * @param after
+		 */
+		protected void logTransition(CircuitBreaker.State before, CircuitBreaker.State after) {
+			if (before == after) {
+				return;
+			}
+			if (after == CircuitBreaker.State.Open) {
+				LOGGER.warn("Circuit opened for outbound processor '" + name + "'. Events will be skipped for "
+						+ getCircuitOpenMs() + "ms.");
+			} else if (after == CircuitBreaker.State.Closed) {
+				LOGGER.info("Circuit closed for outbound processor '" + name + "'.");
+			}
+		}
+
+		/**
+		 * Get name for a lane metric.
+		 *
+		 * @param metric
+		 * @return
+		 */
+		protected String getMetricName(String metric) {
+			return MetricRegistry.name(ParallelOutboundEventProcessorChain.class, name, metric);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public IOutboundEventProcessor getProcessor() {
+			return processor;
+		}
+
+		public int getBacklog() {
+			return queue.size();
+		}
+
+		public CircuitBreaker.State getCircuitState() {
+			return breaker.getState();
+		}
+
+		public long getProcessedCount() {
+			return processed.getCount();
+		}
+
+		public long getErrorCount() {
+			return errors.getCount();
+		}
+
+		public long getDroppedCount() {
+			return dropped.getCount();
+		}
+
+		public long getRejectedCount() {
+			return rejected.getCount();
+		}
+	}
+}
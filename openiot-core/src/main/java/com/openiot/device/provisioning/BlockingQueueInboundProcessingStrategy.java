@@ -8,30 +8,38 @@
 package com.openiot.device.provisioning;
 
 import com.openiot.OpenIoT;
-import com.openiot.server.OpenIoTServer;
+import com.openiot.device.provisioning.overload.DropCounter;
+import com.openiot.device.provisioning.overload.FlowControlGate;
+import com.openiot.device.provisioning.overload.OverloadHandler;
+import com.openiot.device.provisioning.overload.OverloadPolicy;
+import com.openiot.server.concurrent.ExecutorFactory;
+import com.openiot.server.concurrent.ThreadingMode;
 import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.server.metrics.PipelineLatencyMetrics;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.device.event.processor.IInboundEventProcessorChain;
-import com.openiot.spi.device.event.request.*;
 import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+import com.openiot.spi.device.provisioning.IInboundFlowControl;
 import com.openiot.spi.device.provisioning.IInboundProcessingStrategy;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import com.openiot.spi.system.ILatencyHistogram;
 import org.apache.log4j.Logger;
-import org.springframework.security.core.context.SecurityContextHolder;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of {@link IInboundProcessingStrategy} that uses an
  * {@link ArrayBlockingQueue} to hold decoded events that are submitted into the
- * {@link IInboundEventProcessorChain}.
+ * {@link IInboundEventProcessorChain}. When the queue is full, the configured
+ * {@link OverloadPolicy} decides whether to wait or which event to drop.
  * 
  * @author Derek
  */
 public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent implements
-		IInboundProcessingStrategy {
+		IInboundProcessingStrategy, IInboundFlowControl {
 
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(BlockingQueueInboundProcessingStrategy.class);
@@ -45,9 +53,39 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	/** Interval between monitoring log output messages */
 	private static final int MONITORING_INTERVAL_SEC = 5;
 
+	/** Default wait for a batch to fill */
+	private static final long MAX_BATCH_WAIT_MS = 50;
+
+	/** Event types shed first by default */
+	private static final String DEFAULT_SHED_EVENT_TYPES = "Measurements,Location";
+
 	/** Number of thread used for event processing */
 	private int eventProcessorThreadCount = EVENT_PROCESSOR_THREAD_COUNT;
 
+	/** Indicates whether processing threads are platform or virtual threads */
+	private ThreadingMode threadingMode = ThreadingMode.Platform;
+
+	/** Maximum number of events delivered to the chain at once (1 disables batching) */
+	private int maxBatchSize = 1;
+
+	/** Maximum time to wait for a batch to fill */
+	private long maxBatchWaitMs = MAX_BATCH_WAIT_MS;
+
+	/** Policy applied when the queue is full */
+	private OverloadPolicy overloadPolicy = OverloadPolicy.Block;
+
+	/** Milliseconds to wait for space when blocking (0 waits forever) */
+	private long blockTimeoutMs = 0;
+
+	/** Comma-delimited event types that may be dropped by the shed policy */
+	private String shedEventTypes = DEFAULT_SHED_EVENT_TYPES;
+
+	/** Backlog at which receivers are asked to pause */
+	private int highWaterMark = MAX_QUEUE_SIZE * 9 / 10;
+
+	/** Backlog at which paused receivers resume */
+	private int lowWaterMark = MAX_QUEUE_SIZE / 2;
+
 	/** Indicates whether monitoring messages should be logged */
 	private boolean enableMonitoring = false;
 
@@ -60,15 +98,24 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	/** Counter for number of errors */
 	private AtomicLong errorCount = new AtomicLong();
 
-	/** Total wait time */
-	private AtomicLong totalWaitTime = new AtomicLong();
+	/** Time events wait in the queue */
+	private ILatencyHistogram queueWaitLatency;
 
-	/** Total processing time */
-	private AtomicLong totalProcessingTime = new AtomicLong();
+	/** Time spent in the inbound processor chain */
+	private ILatencyHistogram chainLatency;
 
 	/** Blocking queue of pending event create requests from event sources */
-	private BlockingQueue<PerformanceWrapper> queue = new ArrayBlockingQueue<PerformanceWrapper>(
-			MAX_QUEUE_SIZE);
+	private BlockingQueue<IDecodedDeviceEventRequest> queue =
+			new ArrayBlockingQueue<IDecodedDeviceEventRequest>(MAX_QUEUE_SIZE);
+
+	/** Applies overload policy when adding to the queue */
+	private OverloadHandler<IDecodedDeviceEventRequest> overloadHandler;
+
+	/** Tells receivers when to pause consumption */
+	private FlowControlGate flowControl;
+
+	/** Counts events dropped per event source */
+	private DropCounter dropCounter = new DropCounter(getClass());
 
 	/** Thread pool for processing events */
 	private ExecutorService processorPool;
@@ -87,13 +134,42 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	 */
 	@Override
 	public void start() throws OpenIoTException {
+		queueWaitLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+						PipelineLatencyMetrics.STAGE_QUEUE_WAIT);
+		chainLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+						PipelineLatencyMetrics.STAGE_INBOUND_CHAIN);
+		overloadHandler =
+				new OverloadHandler<IDecodedDeviceEventRequest>(getOverloadPolicy(), getBlockTimeoutMs(),
+						InboundProcessingUtils.parseEventTypes(getShedEventTypes())) {
+
+					@Override
+					protected String getEventType(IDecodedDeviceEventRequest entry) {
+						return InboundProcessingUtils.getEventType(entry);
+					}
+
+					@Override
+					protected void onDropped(IDecodedDeviceEventRequest entry) {
+						dropCounter.increment(entry.getSourceId());
+					}
+				};
+		flowControl = new FlowControlGate(getHighWaterMark(), getLowWaterMark()) {
+
+			@Override
+			protected long getBacklog() {
+				return queue.size();
+			}
+		};
 		processorPool =
-				Executors.newFixedThreadPool(getEventProcessorThreadCount(), new ProcessorsThreadFactory());
+				ExecutorFactory.newExecutor(getThreadingMode(), getEventProcessorThreadCount(),
+						"OpenIoT BlockingQueueInboundProcessingStrategy Processor ");
 		for (int i = 0; i < getEventProcessorThreadCount(); i++) {
 			processorPool.execute(new BlockingMessageProcessor(queue));
 		}
 		LOGGER.info("Started blocking queue inbound processing strategy with queue size of " + MAX_QUEUE_SIZE
-				+ " and " + getEventProcessorThreadCount() + " threads.");
+				+ ", " + getEventProcessorThreadCount() + " " + getThreadingMode().getName() + " threads and '"
+				+ getOverloadPolicy().getName() + "' overload policy.");
 
 		// Only show monitoring data if enabled.
 		if (isEnableMonitoring()) {
@@ -111,18 +187,6 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		return LOGGER;
 	}
 
-	/** Used for naming processor threads */
-	private class ProcessorsThreadFactory implements ThreadFactory {
-
-		/** Counts threads */
-		private AtomicInteger counter = new AtomicInteger();
-
-		public Thread newThread(Runnable r) {
-			return new Thread(r, "OpenIoT BlockingQueueInboundProcessingStrategy Processor "
-					+ counter.incrementAndGet());
-		}
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -136,6 +200,7 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		if (monitorPool != null) {
 			monitorPool.shutdownNow();
 		}
+		dropCounter.unregister();
 		LOGGER.info("Stopped blocking queue inbound processing strategy.");
 	}
 
@@ -200,8 +265,9 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	}
 
 	/**
-	 * Adds an {@link IDecodedDeviceEventRequest} to the queue, blocking if no space is
-	 * available.
+	 * Adds an {@link IDecodedDeviceEventRequest} to the queue, applying the overload
+	 * policy if no space is available. The enqueue time is stored on the request itself
+	 * so nothing is allocated per event.
 	 * 
 	 * @param request
 	 * @throws com.openiot.spi.OpenIoTException
@@ -210,10 +276,8 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		try {
 			eventCount.incrementAndGet();
 
-			PerformanceWrapper wrapper = new PerformanceWrapper();
-			wrapper.setRequest(request);
-			wrapper.setStartTime(System.currentTimeMillis());
-			queue.put(wrapper);
+			request.setQueuedNanos(System.nanoTime());
+			overloadHandler.submit(queue, request);
 		} catch (InterruptedException e) {
 			errorCount.incrementAndGet();
 			throw new OpenIoTException(e);
@@ -248,40 +312,41 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	}
 
 	/**
-	 * Get the average wait time in milliseconds.
+	 * Get the number of events dropped by the overload policy.
 	 * 
 	 * @return
 	 */
-	public long getAverageProcessingWaitTime() {
-		long total = totalWaitTime.get();
-		long count = eventCount.get();
-		if (count == 0) {
-			return 0;
-		}
-		return total / count;
+	public long getDroppedCount() {
+		return dropCounter.getTotal();
 	}
 
 	/**
-	 * Get the average processing time in milliseconds.
+	 * Get the number of events dropped by the overload policy for each event source.
 	 * 
 	 * @return
 	 */
-	public long getAverageProcessingTime() {
-		return 0;
+	public Map<String, Long> getDroppedCountsBySource() {
+		return dropCounter.getCounts();
 	}
 
-	/**
-	 * Get the average processing time of downstream components.
+	/*
+	 * (non-Javadoc)
 	 * 
-	 * @return
+	 * @see com.openiot.spi.device.provisioning.IInboundFlowControl#isAcceptingEvents()
 	 */
-	public long getAverageDownstreamProcessingTime() {
-		long total = totalProcessingTime.get();
-		long count = eventCount.get();
-		if (count == 0) {
-			return 0;
-		}
-		return total / count;
+	@Override
+	public boolean isAcceptingEvents() {
+		return (flowControl == null) || flowControl.isAcceptingEvents();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.device.provisioning.IInboundFlowControl#awaitCapacity(long)
+	 */
+	@Override
+	public boolean awaitCapacity(long timeoutMs) throws InterruptedException {
+		return (flowControl == null) || flowControl.awaitCapacity(timeoutMs);
 	}
 
 	public int getEventProcessorThreadCount() {
@@ -292,45 +357,84 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		this.eventProcessorThreadCount = eventProcessorThreadCount;
 	}
 
-	public boolean isEnableMonitoring() {
-		return enableMonitoring;
+	public ThreadingMode getThreadingMode() {
+		return threadingMode;
 	}
 
-	public void setEnableMonitoring(boolean enableMonitoring) {
-		this.enableMonitoring = enableMonitoring;
+	public void setThreadingMode(ThreadingMode threadingMode) {
+		this.threadingMode = threadingMode;
 	}
 
-	public int getMonitoringIntervalSec() {
-		return monitoringIntervalSec;
+	public int getMaxBatchSize() {
+		return maxBatchSize;
 	}
 
-	public void setMonitoringIntervalSec(int monitoringIntervalSec) {
-		this.monitoringIntervalSec = monitoringIntervalSec;
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
 	}
 
-	public class PerformanceWrapper {
+	public long getMaxBatchWaitMs() {
+		return maxBatchWaitMs;
+	}
 
-		/** Start time for event processing */
-		private long startTime;
+	public void setMaxBatchWaitMs(long maxBatchWaitMs) {
+		this.maxBatchWaitMs = maxBatchWaitMs;
+	}
 
-		/** Event request */
-		private IDecodedDeviceEventRequest request;
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
 
-		public long getStartTime() {
-			return startTime;
-		}
+	public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+		this.overloadPolicy = overloadPolicy;
+	}
 
-		public void setStartTime(long startTime) {
-			this.startTime = startTime;
-		}
+	public long getBlockTimeoutMs() {
+		return blockTimeoutMs;
+	}
 
-		public IDecodedDeviceEventRequest getRequest() {
-			return request;
-		}
+	public void setBlockTimeoutMs(long blockTimeoutMs) {
+		this.blockTimeoutMs = blockTimeoutMs;
+	}
 
-		public void setRequest(IDecodedDeviceEventRequest request) {
-			this.request = request;
-		}
+	public String getShedEventTypes() {
+		return shedEventTypes;
+	}
+
+	public void setShedEventTypes(String shedEventTypes) {
+		this.shedEventTypes = shedEventTypes;
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public void setHighWaterMark(int highWaterMark) {
+		this.highWaterMark = highWaterMark;
+	}
+
+	public int getLowWaterMark() {
+		return lowWaterMark;
+	}
+
+	public void setLowWaterMark(int lowWaterMark) {
+		this.lowWaterMark = lowWaterMark;
+	}
+
+	public boolean isEnableMonitoring() {
+		return enableMonitoring;
+	}
+
+	public void setEnableMonitoring(boolean enableMonitoring) {
+		this.enableMonitoring = enableMonitoring;
+	}
+
+	public int getMonitoringIntervalSec() {
+		return monitoringIntervalSec;
+	}
+
+	public void setMonitoringIntervalSec(int monitoringIntervalSec) {
+		this.monitoringIntervalSec = monitoringIntervalSec;
 	}
 
 	/**
@@ -344,17 +448,11 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 		public void run() {
 			while (true) {
 				try {
-					long eventCount = getEventCount();
-					long errorCount = getErrorCount();
-					long backlog = getBacklog();
-					long avgWaitTime = getAverageProcessingWaitTime();
-					long avgProcessingTime = getAverageProcessingTime();
-					long avgDownstreamTime = getAverageDownstreamProcessingTime();
 					String message =
-							String.format(
-									"Count(%5d) Errors(%5d) Backlog(%5d) AvgWait(%5d ms) AvgProc(%5d ms) AvgDS(%5d ms)",
-									eventCount, errorCount, backlog, avgWaitTime, avgProcessingTime,
-									avgDownstreamTime);
+							String.format("Count(%5d) Errors(%5d) Backlog(%5d) Dropped(%5d) %s %s",
+									getEventCount(), getErrorCount(), getBacklog(), getDroppedCount(),
+									PipelineLatencyMetrics.format(queueWaitLatency.getSummary()),
+									PipelineLatencyMetrics.format(chainLatency.getSummary()));
 					LOGGER.info(message);
 				} catch (Throwable e) {
 					LOGGER.error(e);
@@ -377,63 +475,29 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 	private class BlockingMessageProcessor implements Runnable {
 
 		/** Queue where messages are placed */
-		private BlockingQueue<PerformanceWrapper> queue;
+		private BlockingQueue<IDecodedDeviceEventRequest> queue;
 
-		public BlockingMessageProcessor(BlockingQueue<PerformanceWrapper> queue) {
+		public BlockingMessageProcessor(BlockingQueue<IDecodedDeviceEventRequest> queue) {
 			this.queue = queue;
 		}
 
 		@Override
 		public void run() {
-			// Event creation APIs expect an authenticated user in order to check
-			// permissions and log who creates events. When called in this context, the
-			// authenticated user will always be 'system'.
-			//
-			// TODO: Alternatively, we may want the client to authenticate on registration
-			// and pass a token on each request.
-			try {
-				SecurityContextHolder.getContext().setAuthentication(
-						OpenIoTServer.getSystemAuthentication());
-			} catch (OpenIoTException e) {
-				throw new RuntimeException("Unable to use system authentication for inbound device "
-						+ " event processor thread.", e);
-			}
+			InboundProcessingUtils.setSystemAuthentication();
 			while (true) {
 				try {
-					PerformanceWrapper wrapper = queue.take();
-					long wait = System.currentTimeMillis() - wrapper.getStartTime();
-					totalWaitTime.addAndGet(wait);
-
-					long processingStart = System.currentTimeMillis();
-
-					IDecodedDeviceEventRequest decoded = wrapper.getRequest();
-					if (decoded.getRequest() instanceof IDeviceRegistrationRequest) {
-						OpenIoT.getServer().getInboundEventProcessorChain().onRegistrationRequest(
-								decoded.getHardwareId(), decoded.getOriginator(),
-								((IDeviceRegistrationRequest) decoded.getRequest()));
-					} else if (decoded.getRequest() instanceof IDeviceCommandResponseCreateRequest) {
-						OpenIoT.getServer().getInboundEventProcessorChain().onDeviceCommandResponseRequest(
-								decoded.getHardwareId(), decoded.getOriginator(),
-								((IDeviceCommandResponseCreateRequest) decoded.getRequest()));
-					} else if (decoded.getRequest() instanceof IDeviceMeasurementsCreateRequest) {
-						OpenIoT.getServer().getInboundEventProcessorChain().onDeviceMeasurementsCreateRequest(
-								decoded.getHardwareId(), decoded.getOriginator(),
-								((IDeviceMeasurementsCreateRequest) decoded.getRequest()));
-					} else if (decoded.getRequest() instanceof IDeviceLocationCreateRequest) {
-						OpenIoT.getServer().getInboundEventProcessorChain().onDeviceLocationCreateRequest(
-								decoded.getHardwareId(), decoded.getOriginator(),
-								((IDeviceLocationCreateRequest) decoded.getRequest()));
-					} else if (decoded.getRequest() instanceof IDeviceAlertCreateRequest) {
-						OpenIoT.getServer().getInboundEventProcessorChain().onDeviceAlertCreateRequest(
-								decoded.getHardwareId(), decoded.getOriginator(),
-								((IDeviceAlertCreateRequest) decoded.getRequest()));
-					} else {
-						throw new RuntimeException("Unknown device event type: "
-								+ decoded.getRequest().getClass().getName());
+					if (getMaxBatchSize() > 1) {
+						processBatch();
+						continue;
 					}
+					IDecodedDeviceEventRequest request = queue.take();
+					long processingStart = System.nanoTime();
+					queueWaitLatency.record(processingStart - request.getQueuedNanos());
+
+					InboundProcessingUtils.dispatch(request,
+							OpenIoT.getServer().getInboundEventProcessorChain());
 
-					long processingTime = System.currentTimeMillis() - processingStart;
-					totalProcessingTime.addAndGet(processingTime);
+					chainLatency.record(System.nanoTime() - processingStart);
 				} catch (OpenIoTException e) {
 					errorCount.incrementAndGet();
 					LOGGER.error("Error processing inbound device event.", e);
@@ -445,5 +509,24 @@ public class BlockingQueueInboundProcessingStrategy extends LifecycleComponent i
 				}
 			}
 		}
+
+		/**
+		 * Drain a batch of requests from the queue and deliver it to the chain in one call.
+		 * 
+		 * @throws OpenIoTException
+		 * @throws InterruptedException
+		 */
+		protected void processBatch() throws OpenIoTException, InterruptedException {
+			List<IDecodedDeviceEventRequest> batch =
+					InboundProcessingUtils.drain(queue, getMaxBatchSize(), getMaxBatchWaitMs());
+			long processingStart = System.nanoTime();
+			for (IDecodedDeviceEventRequest request : batch) {
+				queueWaitLatency.record(processingStart - request.getQueuedNanos());
+			}
+
+			InboundProcessingUtils.dispatchBatch(batch, OpenIoT.getServer().getInboundEventProcessorChain());
+
+			chainLatency.record(System.nanoTime() - processingStart);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -8,24 +8,31 @@
 package com.openiot.device.provisioning;
 
 import com.openiot.OpenIoT;
+import com.openiot.device.provisioning.overload.DropCounter;
+import com.openiot.device.provisioning.overload.OverloadHandler;
+import com.openiot.device.provisioning.overload.OverloadPolicy;
 import com.openiot.server.OpenIoTServer;
 import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.server.metrics.PipelineLatencyMetrics;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.device.batch.IBatchOperation;
 import com.openiot.spi.device.event.*;
 import com.openiot.spi.device.event.processor.IOutboundEventProcessorChain;
 import com.openiot.spi.device.provisioning.IOutboundProcessingStrategy;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import com.openiot.spi.system.ILatencyHistogram;
 import org.apache.log4j.Logger;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of {@link IOutboundProcessingStrategy} that uses an
  * {@link ArrayBlockingQueue} to hold events that are submitted into the
- * {@link IOutboundEventProcessorChain}.
+ * {@link IOutboundEventProcessorChain}. When the queue is full, the configured
+ * {@link OverloadPolicy} decides whether to wait or which event to drop.
  * 
  * @author Derek
  */
@@ -41,9 +48,39 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 	/** Number of threads used for event processing */
 	private static final int EVENT_PROCESSOR_THREAD_COUNT = 10;
 
+	/** Event types shed first by default */
+	private static final String DEFAULT_SHED_EVENT_TYPES = "Measurements,Location";
+
+	/** Event type name used for batch operations */
+	private static final String BATCH_OPERATION_TYPE = "BatchOperation";
+
+	/** Maximum number of events waiting to be processed */
+	private int queueSize = MAX_QUEUE_SIZE;
+
+	/** Number of threads used for event processing */
+	private int eventProcessorThreadCount = EVENT_PROCESSOR_THREAD_COUNT;
+
+	/** Policy applied when the queue is full */
+	private OverloadPolicy overloadPolicy = OverloadPolicy.DropNewest;
+
+	/** Milliseconds to wait for space when blocking (0 waits forever) */
+	private long blockTimeoutMs = 0;
+
+	/** Comma-delimited event types that may be dropped by the shed policy */
+	private String shedEventTypes = DEFAULT_SHED_EVENT_TYPES;
+
 	/** Blocking queue of pending create requests from receivers */
 	private BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(MAX_QUEUE_SIZE);
 
+	/** Applies overload policy when adding to the queue */
+	private OverloadHandler<Object> overloadHandler;
+
+	/** Counts events dropped per event type */
+	private DropCounter dropCounter = new DropCounter(getClass());
+
+	/** Time spent delivering events to the outbound processor chain */
+	private ILatencyHistogram dispatchLatency;
+
 	/** Thread pool for processing events */
 	private ExecutorService processorPool;
 
@@ -58,13 +95,31 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 	 */
 	@Override
 	public void start() throws OpenIoTException {
+		dispatchLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+						PipelineLatencyMetrics.STAGE_OUTBOUND_DISPATCH);
+		overloadHandler =
+				new OverloadHandler<Object>(getOverloadPolicy(), getBlockTimeoutMs(),
+						InboundProcessingUtils.parseEventTypes(getShedEventTypes())) {
+
+					@Override
+					protected String getEventType(Object entry) {
+						return getOutboundEventType(entry);
+					}
+
+					@Override
+					protected void onDropped(Object entry) {
+						dropCounter.increment(getOutboundEventType(entry));
+					}
+				};
 		processorPool =
-				Executors.newFixedThreadPool(EVENT_PROCESSOR_THREAD_COUNT, new ProcessorsThreadFactory());
-		for (int i = 0; i < EVENT_PROCESSOR_THREAD_COUNT; i++) {
+				Executors.newFixedThreadPool(getEventProcessorThreadCount(), new ProcessorsThreadFactory());
+		for (int i = 0; i < getEventProcessorThreadCount(); i++) {
 			processorPool.execute(new BlockingDeviceEventProcessor(queue));
 		}
 		LOGGER.info("Started blocking queue outbound processing strategy with queue size of "
-				+ MAX_QUEUE_SIZE + " and " + EVENT_PROCESSOR_THREAD_COUNT + " threads.");
+				+ getQueueSize() + ", " + getEventProcessorThreadCount() + " threads and '"
+				+ getOverloadPolicy().getName() + "' overload policy.");
 	}
 
 	/*
@@ -99,6 +154,7 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 		if (processorPool != null) {
 			processorPool.shutdownNow();
 		}
+		dropCounter.unregister();
 	}
 
 	/*
@@ -110,7 +166,7 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 	 */
 	@Override
 	public void onMeasurements(IDeviceMeasurements measurements) throws OpenIoTException {
-		queue.offer(measurements);
+		addToQueue(measurements);
 	}
 
 	/*
@@ -122,7 +178,7 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 	 */
 	@Override
 	public void onLocation(IDeviceLocation location) throws OpenIoTException {
-		queue.offer(location);
+		addToQueue(location);
 	}
 
 	/*
@@ -134,7 +190,7 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 	 */
 	@Override
 	public void onAlert(IDeviceAlert alert) throws OpenIoTException {
-		queue.offer(alert);
+		addToQueue(alert);
 	}
 
 	/*
@@ -146,7 +202,7 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 	 */
 	@Override
 	public void onCommandInvocation(IDeviceCommandInvocation invocation) throws OpenIoTException {
-		queue.offer(invocation);
+		addToQueue(invocation);
 	}
 
 	/*
@@ -158,7 +214,7 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 	 */
 	@Override
 	public void onCommandResponse(IDeviceCommandResponse response) throws OpenIoTException {
-		queue.offer(response);
+		addToQueue(response);
 	}
 
 	/*
@@ -170,7 +226,111 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 	 */
 	@Override
 	public void onBatchOperation(IBatchOperation operation) throws OpenIoTException {
-		queue.offer(operation);
+		addToQueue(operation);
+	}
+
+	/**
+	 * Adds an event to the queue, applying the overload policy if no space is available.
+	 * 
+	 * @param event
+	 * @throws OpenIoTException
+	 */
+	protected void addToQueue(Object event) throws OpenIoTException {
+		if (overloadHandler == null) {
+			if (!queue.offer(event)) {
+				dropCounter.increment(getOutboundEventType(event));
+			}
+			return;
+		}
+		try {
+			overloadHandler.submit(queue, event);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OpenIoTException(e);
+		}
+	}
+
+	/**
+	 * Get the event type name used to classify drops and decide which events may be shed.
+	 * 
+	 * @param event
+	 * @return
+	 */
+	protected static String getOutboundEventType(Object event) {
+		if (event instanceof IDeviceEvent) {
+			return ((IDeviceEvent) event).getEventType().name();
+		} else if (event instanceof IBatchOperation) {
+			return BATCH_OPERATION_TYPE;
+		}
+		return event.getClass().getSimpleName();
+	}
+
+	/**
+	 * Get the number of backlogged events.
+	 * 
+	 * @return
+	 */
+	public long getBacklog() {
+		return queue.size();
+	}
+
+	/**
+	 * Get the number of events dropped by the overload policy.
+	 * 
+	 * @return
+	 */
+	public long getDroppedCount() {
+		return dropCounter.getTotal();
+	}
+
+	/**
+	 * Get the number of events dropped by the overload policy for each event type.
+	 * 
+	 * @return
+	 */
+	public Map<String, Long> getDroppedCountsByType() {
+		return dropCounter.getCounts();
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+		this.queue = new ArrayBlockingQueue<Object>(queueSize);
+	}
+
+	public int getEventProcessorThreadCount() {
+		return eventProcessorThreadCount;
+	}
+
+	public void setEventProcessorThreadCount(int eventProcessorThreadCount) {
+		this.eventProcessorThreadCount = eventProcessorThreadCount;
+	}
+
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+		this.overloadPolicy = overloadPolicy;
+	}
+
+	public long getBlockTimeoutMs() {
+		return blockTimeoutMs;
+	}
+
+	public void setBlockTimeoutMs(long blockTimeoutMs) {
+		this.blockTimeoutMs = blockTimeoutMs;
+	}
+
+	public String getShedEventTypes() {
+		return shedEventTypes;
+	}
+
+	public void setShedEventTypes(String shedEventTypes) {
+		this.shedEventTypes = shedEventTypes;
 	}
 
 	/**
@@ -207,6 +367,7 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 			while (true) {
 				try {
 					Object event = queue.take();
+					long start = System.nanoTime();
 					if (event instanceof IDeviceMeasurements) {
 						OpenIoT.getServer().getOutboundEventProcessorChain().onMeasurements(
 								(IDeviceMeasurements) event);
@@ -228,6 +389,7 @@ public class BlockingQueueOutboundProcessingStrategy extends LifecycleComponent
 						throw new RuntimeException("Unknown device event type in outbound processing: "
 								+ event.getClass().getName());
 					}
+					dispatchLatency.record(System.nanoTime() - start);
 				} catch (OpenIoTException e) {
 					LOGGER.error("Error processing outbound device event.", e);
 				} catch (InterruptedException e) {
@@ -0,0 +1,800 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.openiot.OpenIoT;
+import com.openiot.rest.model.device.command.CommandDelivery;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDeviceAssignment;
+import com.openiot.spi.device.IDeviceManagement;
+import com.openiot.spi.device.command.CommandDeliveryStatus;
+import com.openiot.spi.device.command.ICommandDelivery;
+import com.openiot.spi.device.command.IDeviceCommandExecution;
+import com.openiot.spi.device.provisioning.ICommandDeliveryListener;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stages command deliveries for a {@link CommandDestination}. The caller returns as soon
+ * as a delivery is queued, and worker threads call the delivery provider. A failed
+ * delivery is retried with exponential backoff up to {@link #getMaxAttempts()} times. A
+ * delivery attempt reports its outcome to a callback, so a provider that delivers
+ * asynchronously completes the attempt once the transport has confirmed or rejected it.
+ * Until then the delivery stays queued.
+ *
+ * Each delivery is keyed by invocation id and assignment token. A key that is queued,
+ * or was delivered recently, is not queued again, so a redelivered invocation does not
+ * reach the device twice. Delivery counters are published as gauges in the server
+ * metric registry.
+ *
+ * The state of each invocation delivery is stored through device management. It is
+ * saved as pending when queued, deleted once delivered and saved as failed when the
+ * outbox gives up on it. Failed deliveries are deleted once they are older than
+ * {@link #FAILED_RETENTION_MS}. Deliveries still pending when the outbox starts,
+ * including any left over when it was last stopped, are handed back to the destination
+ * to be sent again. System commands are not tied to an invocation and are only held in
+ * memory.
+ *
+ * @author Derek
+ */
+public class CommandDeliveryOutbox {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(CommandDeliveryOutbox.class);
+
+	/** Default number of delivery threads */
+	private static final int DEFAULT_NUM_THREADS = 2;
+
+	/** Default maximum number of queued deliveries */
+	private static final int DEFAULT_CAPACITY = 10000;
+
+	/** Default number of delivery attempts */
+	private static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+	/** Default delay before the first retry */
+	private static final long DEFAULT_INITIAL_RETRY_DELAY_MS = 1000;
+
+	/** Default upper limit for the retry delay */
+	private static final long DEFAULT_MAX_RETRY_DELAY_MS = 60000;
+
+	/** Default number of delivered keys remembered */
+	private static final int DEFAULT_DEDUPLICATION_WINDOW = 10000;
+
+	/** Time to wait for queued deliveries to finish when stopping */
+	private static final long DRAIN_TIMEOUT_MS = 10000;
+
+	/** Time failed deliveries are kept in storage */
+	public static final long FAILED_RETENTION_MS = 7 * 24 * 60 * 60 * 1000L;
+
+	/** Interval between removals of expired failed deliveries */
+	private static final long PRUNE_INTERVAL_MS = 60 * 60 * 1000;
+
+	/** Number of delivery threads */
+	private int numThreads = DEFAULT_NUM_THREADS;
+
+	/** Maximum number of queued deliveries */
+	private int capacity = DEFAULT_CAPACITY;
+
+	/** Number of delivery attempts before giving up */
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+	/** Delay before the first retry */
+	private long initialRetryDelayMs = DEFAULT_INITIAL_RETRY_DELAY_MS;
+
+	/** Upper limit for the retry delay */
+	private long maxRetryDelayMs = DEFAULT_MAX_RETRY_DELAY_MS;
+
+	/** Number of delivered keys remembered */
+	private int deduplicationWindow = DEFAULT_DEDUPLICATION_WINDOW;
+
+	/** Optionally notified of delivery outcomes */
+	private ICommandDeliveryListener deliveryListener;
+
+	/** Id of destination that owns the outbox */
+	private String destinationId;
+
+	/** Sends stored deliveries again */
+	private Redelivery redelivery;
+
+	/** Runs delivery attempts */
+	private ScheduledThreadPoolExecutor executor;
+
+	/** Deliveries queued or waiting for a retry */
+	private Set<Entry> pending = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+
+	/** Keys for deliveries queued or waiting for a retry */
+	private Set<String> pendingKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** Keys for recent deliveries */
+	private Map<String, Boolean> deliveredKeys;
+
+	/** Number of deliveries queued or waiting for a retry */
+	private AtomicInteger queued = new AtomicInteger();
+
+	/** Delivery counters */
+	private AtomicLong delivered = new AtomicLong();
+	private AtomicLong retried = new AtomicLong();
+	private AtomicLong failed = new AtomicLong();
+	private AtomicLong rejected = new AtomicLong();
+	private AtomicLong duplicates = new AtomicLong();
+
+	/** Names of registered gauges */
+	private List<String> metrics = new ArrayList<String>();
+
+	/**
+	 * Start the delivery threads, register gauges and resend deliveries that were still
+	 * pending when the outbox was last stopped.
+	 *
+	 * @param destinationId
+	 * @param redelivery used to resend stored deliveries
+	 */
+	public void start(String destinationId, Redelivery redelivery) {
+		this.destinationId = destinationId;
+		this.redelivery = redelivery;
+		this.deliveredKeys = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>() {
+
+			/** Serial version UID */
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > getDeduplicationWindow();
+			}
+		});
+		this.executor = new ScheduledThreadPoolExecutor(getNumThreads(), new OutboxThreadFactory());
+
+		registerGauge("queued", new Gauge<Integer>() {
+			public Integer getValue() {
+				return queued.get();
+			}
+		});
+		registerCounter("delivered", delivered);
+		registerCounter("retried", retried);
+		registerCounter("failed", failed);
+		registerCounter("rejected", rejected);
+		registerCounter("duplicates", duplicates);
+		LOGGER.info("Started command outbox for destination '" + destinationId + "' with " + getNumThreads()
+				+ " threads.");
+
+		executor.execute(new Reload());
+		executor.scheduleWithFixedDelay(new Prune(), 0, PRUNE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the delivery threads. Retries that are waiting for their delay are cancelled,
+	 * and deliveries that are ready are given time to finish. Deliveries that do not
+	 * finish stay pending in storage and are sent again when the outbox is restarted.
+	 */
+	public void stop() {
+		if (executor != null) {
+			executor.shutdown();
+			for (Runnable task : executor.getQueue()) {
+				if (((Delayed) task).getDelay(TimeUnit.MILLISECONDS) > 0) {
+					executor.remove(task);
+				}
+			}
+			try {
+				if (!executor.awaitTermination(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+					LOGGER.warn("Command outbox for destination '" + destinationId
+							+ "' did not drain within " + DRAIN_TIMEOUT_MS + "ms.");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executor.shutdownNow();
+		}
+		int remaining = 0;
+		int dropped = 0;
+		for (Entry entry : pending) {
+			if (entry.key != null) {
+				remaining++;
+			} else {
+				dropped++;
+			}
+		}
+		pending.clear();
+		pendingKeys.clear();
+		queued.set(0);
+		if (remaining > 0) {
+			LOGGER.info("Command outbox for destination '" + destinationId + "' stopped with " + remaining
+					+ " pending deliveries. They will be sent again on restart.");
+		}
+		if (dropped > 0) {
+			LOGGER.warn("Command outbox for destination '" + destinationId + "' stopped with " + dropped
+					+ " undelivered system commands.");
+		}
+		MetricRegistry registry = OpenIoT.getServer().getMetricRegistry();
+		for (String name : metrics) {
+			registry.remove(name);
+		}
+		metrics.clear();
+	}
+
+	/**
+	 * Queue a delivery. Returns without waiting for the delivery to be attempted.
+	 *
+	 * @param execution execution being delivered (null for system commands)
+	 * @param assignment
+	 * @param delivery
+	 * @return false if the delivery was a duplicate or the outbox was full
+	 */
+	public boolean submit(IDeviceCommandExecution execution, IDeviceAssignment assignment, Delivery delivery) {
+		String key = getKey(execution, assignment);
+		if (key != null) {
+			if (deliveredKeys.containsKey(key) || !pendingKeys.add(key)) {
+				duplicates.incrementAndGet();
+				LOGGER.debug("Skipping duplicate delivery of '" + key + "'.");
+				return false;
+			}
+		}
+		Entry entry = new Entry(key, execution, assignment, delivery);
+		if (queued.incrementAndGet() > getCapacity()) {
+			queued.decrementAndGet();
+			release(entry);
+			rejected.incrementAndGet();
+			onFailed(entry, new OpenIoTException("Command outbox for destination '" + destinationId
+					+ "' is full."));
+			return false;
+		}
+		pending.add(entry);
+		saveState(entry, CommandDeliveryStatus.Pending, null);
+		try {
+			executor.execute(entry);
+		} catch (RejectedExecutionException e) {
+			finish(entry);
+			rejected.incrementAndGet();
+			LOGGER.warn("Command outbox for destination '" + destinationId + "' is stopped. Delivery of '"
+					+ key + "' was not attempted.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get the idempotency key for a delivery.
+	 *
+	 * @param execution
+	 * @param assignment
+	 * @return key or null if the delivery can not be identified
+	 */
+	protected String getKey(IDeviceCommandExecution execution, IDeviceAssignment assignment) {
+		if ((execution == null) || (execution.getInvocation() == null)
+				|| (execution.getInvocation().getId() == null) || (assignment == null)) {
+			return null;
+		}
+		return execution.getInvocation().getId() + ":" + assignment.getToken();
+	}
+
+	/**
+	 * Get the delay before a retry.
+	 *
+	 * @param attempt number of attempts already made
+	 * @return
+	 */
+	protected long getRetryDelay(int attempt) {
+		long delay = getInitialRetryDelayMs();
+		for (int i = 1; (i < attempt) && (delay < getMaxRetryDelayMs()); i++) {
+			delay *= 2;
+		}
+		return Math.min(delay, getMaxRetryDelayMs());
+	}
+
+	/**
+	 * Remove a delivery from the queue.
+	 *
+	 * @param entry
+	 */
+	protected void finish(Entry entry) {
+		if (pending.remove(entry)) {
+			queued.decrementAndGet();
+		}
+		release(entry);
+	}
+
+	/**
+	 * Release the key held by a delivery.
+	 *
+	 * @param entry
+	 */
+	protected void release(Entry entry) {
+		if (entry.key != null) {
+			pendingKeys.remove(entry.key);
+		}
+	}
+
+	/**
+	 * Record a delivery that succeeded.
+	 *
+	 * @param entry
+	 */
+	protected void onDelivered(Entry entry) {
+		deleteState(entry);
+		if (getDeliveryListener() != null) {
+			try {
+				getDeliveryListener().onDelivered(entry.execution, entry.assignment);
+			} catch (Throwable e) {
+				LOGGER.error("Command delivery listener failed.", e);
+			}
+		}
+	}
+
+	/**
+	 * Record a delivery that was given up on.
+	 *
+	 * @param entry
+	 * @param error
+	 */
+	protected void onFailed(Entry entry, Throwable error) {
+		LOGGER.warn("Command delivery failed for destination '" + destinationId + "'.", error);
+		saveState(entry, CommandDeliveryStatus.Failed, error.getMessage());
+		if (getDeliveryListener() != null) {
+			try {
+				getDeliveryListener().onDeliveryFailed(entry.execution, entry.assignment, error);
+			} catch (Throwable e) {
+				LOGGER.error("Command delivery listener failed.", e);
+			}
+		}
+	}
+
+	/**
+	 * Store the state of an invocation delivery. The created date is only stored when the
+	 * delivery is first saved. Errors are logged so that a storage problem does not stop
+	 * commands from being delivered.
+	 *
+	 * @param entry
+	 * @param status
+	 * @param error
+	 */
+	protected void saveState(Entry entry, CommandDeliveryStatus status, String error) {
+		if (entry.key == null) {
+			return;
+		}
+		CommandDelivery delivery = new CommandDelivery();
+		delivery.setDestinationId(destinationId);
+		delivery.setInvocationId(entry.execution.getInvocation().getId());
+		delivery.setAssignmentToken(entry.assignment.getToken());
+		delivery.setStatus(status);
+		delivery.setAttempts(entry.attempts);
+		delivery.setError(error);
+		delivery.setUpdatedDate(new Date());
+		delivery.setCreatedDate(delivery.getUpdatedDate());
+		try {
+			OpenIoT.getServer().getDeviceManagement().saveCommandDelivery(delivery);
+		} catch (Throwable e) {
+			LOGGER.error("Unable to store command delivery state for '" + entry.key + "'.", e);
+		}
+	}
+
+	/**
+	 * Delete the stored state of an invocation delivery. Errors are logged.
+	 *
+	 * @param entry
+	 */
+	protected void deleteState(Entry entry) {
+		if (entry.key == null) {
+			return;
+		}
+		try {
+			OpenIoT.getServer().getDeviceManagement().deleteCommandDelivery(destinationId,
+					entry.execution.getInvocation().getId(), entry.assignment.getToken());
+		} catch (Throwable e) {
+			LOGGER.error("Unable to delete command delivery state for '" + entry.key + "'.", e);
+		}
+	}
+
+	/**
+	 * Register a gauge that reports a counter.
+	 *
+	 * @param name
+	 * @param counter
+	 */
+	protected void registerCounter(String name, final AtomicLong counter) {
+		registerGauge(name, new Gauge<Long>() {
+			public Long getValue() {
+				return counter.get();
+			}
+		});
+	}
+
+	/**
+	 * Register a gauge for the outbox, replacing any left by an earlier start.
+	 *
+	 * @param name
+	 * @param gauge
+	 */
+	protected void registerGauge(String name, Gauge<?> gauge) {
+		String full = MetricRegistry.name(CommandDestination.class, destinationId, "outbox", name);
+		MetricRegistry registry = OpenIoT.getServer().getMetricRegistry();
+		registry.remove(full);
+		registry.register(full, gauge);
+		metrics.add(full);
+	}
+
+	/**
+	 * Performs a single delivery attempt.
+	 *
+	 * @author Derek
+	 */
+	public static interface Delivery {
+
+		/**
+		 * Attempt delivery. If this returns normally, the outcome must be reported to the
+		 * callback exactly once, either before returning or later from another thread. If an
+		 * exception is thrown, the attempt has failed and the callback is not used.
+		 *
+		 * @param callback
+		 * @throws OpenIoTException
+		 */
+		public void deliver(ICommandDeliveryListener callback) throws OpenIoTException;
+	}
+
+	/**
+	 * Sends a stored delivery again.
+	 *
+	 * @author Derek
+	 */
+	public static interface Redelivery {
+
+		/**
+		 * Rebuild a delivery for an invocation and assignment and submit it to the outbox.
+		 *
+		 * @param invocationId
+		 * @param assignmentToken
+		 * @throws OpenIoTException if the delivery can no longer be built
+		 */
+		public void redeliver(String invocationId, String assignmentToken) throws OpenIoTException;
+	}
+
+	/**
+	 * A queued delivery and its attempt count.
+	 *
+	 * @author Derek
+	 */
+	private class Entry implements Runnable {
+
+		/** Idempotency key (may be null) */
+		private final String key;
+
+		/** Execution being delivered */
+		private final IDeviceCommandExecution execution;
+
+		/** Target assignment */
+		private final IDeviceAssignment assignment;
+
+		/** Performs the delivery */
+		private final Delivery delivery;
+
+		/** Number of attempts made */
+		private int attempts;
+
+		public Entry(String key, IDeviceCommandExecution execution, IDeviceAssignment assignment,
+				Delivery delivery) {
+			this.key = key;
+			this.execution = execution;
+			this.assignment = assignment;
+			this.delivery = delivery;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			attempts++;
+			Outcome outcome = new Outcome(this);
+			try {
+				delivery.deliver(outcome);
+			} catch (Throwable e) {
+				outcome.complete(e);
+			}
+		}
+
+		/**
+		 * Handle the outcome of a delivery attempt.
+		 *
+		 * @param error null if the attempt succeeded
+		 */
+		protected void onAttemptCompleted(Throwable error) {
+			if (error == null) {
+				if (key != null) {
+					deliveredKeys.put(key, Boolean.TRUE);
+				}
+				finish(this);
+				delivered.incrementAndGet();
+				onDelivered(this);
+				return;
+			}
+			if (executor.isShutdown()) {
+				// Stopping, so leave the delivery pending for the next start.
+				finish(this);
+				return;
+			}
+			if (attempts < getMaxAttempts()) {
+				long delay = getRetryDelay(attempts);
+				LOGGER.debug("Delivery attempt " + attempts + " failed for destination '" + destinationId
+						+ "'. Retrying in " + delay + "ms.", error);
+				retried.incrementAndGet();
+				try {
+					executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+				} catch (RejectedExecutionException r) {
+					finish(this);
+				}
+				return;
+			}
+			finish(this);
+			failed.incrementAndGet();
+			onFailed(this, error);
+		}
+	}
+
+	/**
+	 * Receives the outcome of a single delivery attempt. Only the first outcome reported
+	 * is used.
+	 *
+	 * @author Derek
+	 */
+	private class Outcome implements ICommandDeliveryListener {
+
+		/** Entry the attempt was made for */
+		private final Entry entry;
+
+		/** Set once an outcome has been reported */
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		public Outcome(Entry entry) {
+			this.entry = entry;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see ICommandDeliveryListener#onDelivered(IDeviceCommandExecution, IDeviceAssignment)
+		 */
+		@Override
+		public void onDelivered(IDeviceCommandExecution execution, IDeviceAssignment assignment) {
+			complete(null);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see ICommandDeliveryListener#onDeliveryFailed(IDeviceCommandExecution,
+		 * IDeviceAssignment, java.lang.Throwable)
+		 */
+		@Override
+		public void onDeliveryFailed(IDeviceCommandExecution execution, IDeviceAssignment assignment,
+				Throwable error) {
+			complete(error);
+		}
+
+		/**
+		 * Complete the attempt unless an outcome was already reported.
+		 *
+		 * @param error null if the attempt succeeded
+		 */
+		public void complete(Throwable error) {
+			if (completed.compareAndSet(false, true)) {
+				entry.onAttemptCompleted(error);
+			} else if (error != null) {
+				LOGGER.debug("Ignoring failure reported after delivery attempt completed.", error);
+			}
+		}
+	}
+
+	/**
+	 * Sends deliveries that were pending when the outbox was last stopped.
+	 *
+	 * @author Derek
+	 */
+	private class Reload implements Runnable {
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			List<ICommandDelivery> stored;
+			try {
+				stored =
+						OpenIoT.getServer().getDeviceManagement().listCommandDeliveries(destinationId,
+								CommandDeliveryStatus.Pending);
+			} catch (Throwable e) {
+				LOGGER.error("Unable to load pending deliveries for destination '" + destinationId + "'.", e);
+				return;
+			}
+			if (stored.isEmpty()) {
+				return;
+			}
+			LOGGER.info("Resending " + stored.size() + " pending deliveries for destination '" + destinationId
+					+ "'.");
+			for (ICommandDelivery delivery : stored) {
+				if (executor.isShutdown()) {
+					return;
+				}
+				try {
+					redelivery.redeliver(delivery.getInvocationId(), delivery.getAssignmentToken());
+				} catch (Throwable e) {
+					LOGGER.warn("Unable to resend delivery of invocation " + delivery.getInvocationId() + ".",
+							e);
+					CommandDelivery updated = new CommandDelivery();
+					updated.setDestinationId(destinationId);
+					updated.setInvocationId(delivery.getInvocationId());
+					updated.setAssignmentToken(delivery.getAssignmentToken());
+					updated.setStatus(CommandDeliveryStatus.Failed);
+					updated.setAttempts(delivery.getAttempts());
+					updated.setError(e.getMessage());
+					updated.setUpdatedDate(new Date());
+					try {
+						OpenIoT.getServer().getDeviceManagement().saveCommandDelivery(updated);
+					} catch (Throwable t) {
+						LOGGER.error("Unable to store command delivery state.", t);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes failed deliveries that are older than {@link #FAILED_RETENTION_MS}.
+	 *
+	 * @author Derek
+	 */
+	private class Prune implements Runnable {
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			long cutoff = System.currentTimeMillis() - FAILED_RETENTION_MS;
+			int removed = 0;
+			try {
+				IDeviceManagement management = OpenIoT.getServer().getDeviceManagement();
+				for (ICommandDelivery delivery : management.listCommandDeliveries(destinationId,
+						CommandDeliveryStatus.Failed)) {
+					Date updated = delivery.getUpdatedDate();
+					if ((updated != null) && (updated.getTime() < cutoff)) {
+						management.deleteCommandDelivery(destinationId, delivery.getInvocationId(),
+								delivery.getAssignmentToken());
+						removed++;
+					}
+				}
+			} catch (Throwable e) {
+				LOGGER.error("Unable to remove expired deliveries for destination '" + destinationId + "'.",
+						e);
+			}
+			if (removed > 0) {
+				LOGGER.info("Removed " + removed + " expired failed deliveries for destination '"
+						+ destinationId + "'.");
+			}
+		}
+	}
+
+	/** Used for naming outbox threads */
+	private class OutboxThreadFactory implements ThreadFactory {
+
+		/** Counts threads */
+		private AtomicInteger counter = new AtomicInteger();
+
+		public Thread newThread(final Runnable r) {
+			Runnable authenticated = new Runnable() {
+
+				public void run() {
+					InboundProcessingUtils.setSystemAuthentication();
+					r.run();
+				}
+			};
+			return new Thread(authenticated, "OpenIoT Outbox(" + destinationId + ") "
+					+ counter.incrementAndGet());
+		}
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public long getInitialRetryDelayMs() {
+		return initialRetryDelayMs;
+	}
+
+	public void setInitialRetryDelayMs(long initialRetryDelayMs) {
+		this.initialRetryDelayMs = initialRetryDelayMs;
+	}
+
+	public long getMaxRetryDelayMs() {
+		return maxRetryDelayMs;
+	}
+
+	public void setMaxRetryDelayMs(long maxRetryDelayMs) {
+		this.maxRetryDelayMs = maxRetryDelayMs;
+	}
+
+	public int getDeduplicationWindow() {
+		return deduplicationWindow;
+	}
+
+	public void setDeduplicationWindow(int deduplicationWindow) {
+		this.deduplicationWindow = deduplicationWindow;
+	}
+
+	public ICommandDeliveryListener getDeliveryListener() {
+		return deliveryListener;
+	}
+
+	public void setDeliveryListener(ICommandDeliveryListener deliveryListener) {
+		this.deliveryListener = deliveryListener;
+	}
+
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	public long getRetriedCount() {
+		return retried.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public long getDuplicateCount() {
+		return duplicates.get();
+	}
+
+	public int getQueuedCount() {
+		return queued.get();
+	}
+}
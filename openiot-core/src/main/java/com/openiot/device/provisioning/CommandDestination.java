@@ -7,21 +7,36 @@
  */
 package com.openiot.device.provisioning;
 
+import com.openiot.OpenIoT;
 import com.openiot.server.lifecycle.LifecycleComponent;
 import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDevice;
 import com.openiot.spi.device.IDeviceAssignment;
+import com.openiot.spi.device.IDeviceManagement;
 import com.openiot.spi.device.IDeviceNestingContext;
+import com.openiot.spi.device.command.IDeviceCommand;
 import com.openiot.spi.device.command.IDeviceCommandExecution;
 import com.openiot.spi.device.command.ISystemCommand;
+import com.openiot.spi.device.event.IDeviceCommandInvocation;
+import com.openiot.spi.device.event.IDeviceEvent;
+import com.openiot.spi.device.provisioning.IAsynchronousCommandDeliveryProvider;
+import com.openiot.spi.device.provisioning.ICommandDeliveryListener;
 import com.openiot.spi.device.provisioning.ICommandDeliveryParameterExtractor;
 import com.openiot.spi.device.provisioning.ICommandDeliveryProvider;
 import com.openiot.spi.device.provisioning.ICommandDestination;
 import com.openiot.spi.device.provisioning.ICommandExecutionEncoder;
+import com.openiot.spi.device.provisioning.ICommandProcessingStrategy;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
 import org.apache.log4j.Logger;
 
 /**
- * Default implementation of {@link ICommandDestination}.
+ * Default implementation of {@link ICommandDestination}. If a
+ * {@link CommandDeliveryOutbox} is configured, commands are encoded on the calling thread
+ * and then queued in the outbox, which calls the delivery provider and retries failures.
+ * Deliveries the outbox still has stored as pending when it starts are rebuilt from their
+ * invocation and assignment. If the delivery provider implements
+ * {@link IAsynchronousCommandDeliveryProvider}, an outbox delivery is only complete once
+ * the provider reports its outcome. Otherwise the delivery provider is called directly.
  * 
  * @author Derek
  * 
@@ -44,6 +59,9 @@ public class CommandDestination<T, P> extends LifecycleComponent implements ICom
 	/** Configured command delivery provider */
 	private ICommandDeliveryProvider<T, P> commandDeliveryProvider;
 
+	/** Optional outbox for asynchronous delivery with retries */
+	private CommandDeliveryOutbox outbox;
+
 	public CommandDestination() {
 		super(LifecycleComponentType.CommandDestination);
 	}
@@ -58,13 +76,29 @@ public class CommandDestination<T, P> extends LifecycleComponent implements ICom
 	 * IDeviceAssignment)
 	 */
 	@Override
-	public void deliverCommand(IDeviceCommandExecution execution, IDeviceNestingContext nesting,
-			IDeviceAssignment assignment) throws OpenIoTException {
-		T encoded = getCommandExecutionEncoder().encode(execution, nesting, assignment);
-		P params =
+	public void deliverCommand(final IDeviceCommandExecution execution, final IDeviceNestingContext nesting,
+			final IDeviceAssignment assignment) throws OpenIoTException {
+		final T encoded = getCommandExecutionEncoder().encode(execution, nesting, assignment);
+		final P params =
 				getCommandDeliveryParameterExtractor().extractDeliveryParameters(nesting, assignment,
 						execution);
-		getCommandDeliveryProvider().deliver(nesting, assignment, execution, encoded, params);
+		if (getOutbox() == null) {
+			getCommandDeliveryProvider().deliver(nesting, assignment, execution, encoded, params);
+			return;
+		}
+		getOutbox().submit(execution, assignment, new CommandDeliveryOutbox.Delivery() {
+
+			@SuppressWarnings("unchecked")
+			public void deliver(ICommandDeliveryListener callback) throws OpenIoTException {
+				if (getCommandDeliveryProvider() instanceof IAsynchronousCommandDeliveryProvider) {
+					((IAsynchronousCommandDeliveryProvider<T, P>) getCommandDeliveryProvider()).deliver(
+							nesting, assignment, execution, encoded, params, callback);
+					return;
+				}
+				getCommandDeliveryProvider().deliver(nesting, assignment, execution, encoded, params);
+				callback.onDelivered(execution, assignment);
+			}
+		});
 	}
 
 	/*
@@ -77,12 +111,28 @@ public class CommandDestination<T, P> extends LifecycleComponent implements ICom
 	 * IDeviceAssignment)
 	 */
 	@Override
-	public void deliverSystemCommand(ISystemCommand command, IDeviceNestingContext nesting,
-			IDeviceAssignment assignment) throws OpenIoTException {
-		T encoded = getCommandExecutionEncoder().encodeSystemCommand(command, nesting, assignment);
-		P params =
+	public void deliverSystemCommand(ISystemCommand command, final IDeviceNestingContext nesting,
+			final IDeviceAssignment assignment) throws OpenIoTException {
+		final T encoded = getCommandExecutionEncoder().encodeSystemCommand(command, nesting, assignment);
+		final P params =
 				getCommandDeliveryParameterExtractor().extractDeliveryParameters(nesting, assignment, null);
-		getCommandDeliveryProvider().deliverSystemCommand(nesting, assignment, encoded, params);
+		if (getOutbox() == null) {
+			getCommandDeliveryProvider().deliverSystemCommand(nesting, assignment, encoded, params);
+			return;
+		}
+		getOutbox().submit(null, assignment, new CommandDeliveryOutbox.Delivery() {
+
+			@SuppressWarnings("unchecked")
+			public void deliver(ICommandDeliveryListener callback) throws OpenIoTException {
+				if (getCommandDeliveryProvider() instanceof IAsynchronousCommandDeliveryProvider) {
+					((IAsynchronousCommandDeliveryProvider<T, P>) getCommandDeliveryProvider())
+							.deliverSystemCommand(nesting, assignment, encoded, params, callback);
+					return;
+				}
+				getCommandDeliveryProvider().deliverSystemCommand(nesting, assignment, encoded, params);
+				callback.onDelivered(null, assignment);
+			}
+		});
 	}
 
 	/*
@@ -111,6 +161,11 @@ public class CommandDestination<T, P> extends LifecycleComponent implements ICom
 			throw new OpenIoTException("No command delivery provider configured for destination.");
 		}
 		startNestedComponent(getCommandDeliveryProvider(), true);
+
+		// Start outbox if configured.
+		if (getOutbox() != null) {
+			getOutbox().start(getDestinationId(), new OutboxRedelivery());
+		}
 	}
 
 	/*
@@ -142,6 +197,11 @@ public class CommandDestination<T, P> extends LifecycleComponent implements ICom
 	public void stop() throws OpenIoTException {
 		LOGGER.info("Stopping command destination '" + getDestinationId() + "'.");
 
+		// Stop outbox before the provider it delivers to.
+		if (getOutbox() != null) {
+			getOutbox().stop();
+		}
+
 		// Stop command execution encoder.
 		if (getCommandExecutionEncoder() != null) {
 			getCommandExecutionEncoder().lifecycleStop();
@@ -153,6 +213,48 @@ public class CommandDestination<T, P> extends LifecycleComponent implements ICom
 		}
 	}
 
+	/**
+	 * Rebuilds stored outbox deliveries from their invocation and assignment.
+	 * 
+	 * @author Derek
+	 */
+	private class OutboxRedelivery implements CommandDeliveryOutbox.Redelivery {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see CommandDeliveryOutbox.Redelivery#redeliver(java.lang.String,
+		 * java.lang.String)
+		 */
+		@Override
+		public void redeliver(String invocationId, String assignmentToken) throws OpenIoTException {
+			IDeviceManagement management = OpenIoT.getServer().getDeviceManagement();
+			IDeviceEvent event = management.getDeviceEventById(invocationId);
+			if (!(event instanceof IDeviceCommandInvocation)) {
+				throw new OpenIoTException("Command invocation no longer exists.");
+			}
+			IDeviceCommandInvocation invocation = (IDeviceCommandInvocation) event;
+			IDeviceCommand command = management.getDeviceCommandByToken(invocation.getCommandToken());
+			if (command == null) {
+				throw new OpenIoTException("Invalid command referenced from invocation.");
+			}
+			IDeviceAssignment assignment = management.getDeviceAssignmentByToken(assignmentToken);
+			if (assignment == null) {
+				throw new OpenIoTException("Targeted assignment no longer exists.");
+			}
+			IDevice device = management.getDeviceByHardwareId(assignment.getDeviceHardwareId());
+			if (device == null) {
+				throw new OpenIoTException("Targeted assignment references device that does not exist.");
+			}
+			ICommandProcessingStrategy strategy =
+					OpenIoT.getServer().getDeviceProvisioning().getCommandProcessingStrategy();
+			IDeviceCommandExecution execution =
+					strategy.getCommandExecutionBuilder().createExecution(command, invocation);
+			IDeviceNestingContext nesting = NestedDeviceSupport.calculateNestedDeviceInformation(device);
+			deliverCommand(execution, nesting, assignment);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -210,4 +312,12 @@ public class CommandDestination<T, P> extends LifecycleComponent implements ICom
 	public void setCommandDeliveryProvider(ICommandDeliveryProvider<T, P> commandDeliveryProvider) {
 		this.commandDeliveryProvider = commandDeliveryProvider;
 	}
+
+	public CommandDeliveryOutbox getOutbox() {
+		return outbox;
+	}
+
+	public void setOutbox(CommandDeliveryOutbox outbox) {
+		this.outbox = outbox;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning;
+
+import com.openiot.OpenIoT;
+import com.openiot.rest.model.device.event.request.DeviceCommandResponseCreateRequest;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDeviceAssignment;
+import com.openiot.spi.device.command.IDeviceCommandExecution;
+import com.openiot.spi.device.provisioning.ICommandDeliveryListener;
+import org.apache.log4j.Logger;
+
+/**
+ * Reports delivery outcomes back to the originating command invocation by adding a
+ * command response for the target assignment. Failures are always reported. Successful
+ * deliveries are only reported when {@link #isReportDelivered()} is set, since doing so
+ * adds a write for every device a command is sent to.
+ * 
+ * @author Derek
+ */
+public class CommandResponseDeliveryListener implements ICommandDeliveryListener {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(CommandResponseDeliveryListener.class);
+
+	/** Response text prefix for failed deliveries */
+	public static final String FAILED_PREFIX = "Delivery failed: ";
+
+	/** Response text for completed deliveries */
+	public static final String DELIVERED = "Delivered";
+
+	/** Indicates whether successful deliveries are reported */
+	private boolean reportDelivered = false;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDeliveryListener#onDelivered(IDeviceCommandExecution,
+	 * IDeviceAssignment)
+	 */
+	@Override
+	public void onDelivered(IDeviceCommandExecution execution, IDeviceAssignment assignment) {
+		if (isReportDelivered()) {
+			addResponse(execution, assignment, DELIVERED);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandDeliveryListener#onDeliveryFailed(IDeviceCommandExecution,
+	 * IDeviceAssignment, java.lang.Throwable)
+	 */
+	@Override
+	public void onDeliveryFailed(IDeviceCommandExecution execution, IDeviceAssignment assignment,
+			Throwable error) {
+		LOGGER.warn("Command delivery failed for assignment '"
+				+ ((assignment != null) ? assignment.getToken() : null) + "'.", error);
+		addResponse(execution, assignment, FAILED_PREFIX + error.getMessage());
+	}
+
+	/**
+	 * Add a command response linked to the invocation for an execution.
+	 * 
+	 * @param execution
+	 * @param assignment
+	 * @param text
+	 */
+	protected void addResponse(IDeviceCommandExecution execution, IDeviceAssignment assignment, String text) {
+		if ((execution == null) || (execution.getInvocation() == null) || (assignment == null)) {
+			return;
+		}
+		DeviceCommandResponseCreateRequest response = new DeviceCommandResponseCreateRequest();
+		response.setOriginatingEventId(execution.getInvocation().getId());
+		response.setResponse(text);
+		try {
+			OpenIoT.getServer().getDeviceManagement().addDeviceCommandResponse(assignment.getToken(),
+					response);
+		} catch (OpenIoTException e) {
+			LOGGER.error("Unable to record command delivery outcome.", e);
+		}
+	}
+
+	public boolean isReportDelivered() {
+		return reportDelivered;
+	}
+
+	public void setReportDelivered(boolean reportDelivered) {
+		this.reportDelivered = reportDelivered;
+	}
+}
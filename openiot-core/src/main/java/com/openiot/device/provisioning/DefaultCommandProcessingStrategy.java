@@ -25,7 +25,9 @@ import com.openiot.spi.device.provisioning.IDeviceProvisioning;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
 import org.apache.log4j.Logger;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Default implementation of {@link ICommandProcessingStrategy}.
@@ -44,6 +46,9 @@ public class DefaultCommandProcessingStrategy extends LifecycleComponent impleme
 	/** Configured command execution builder */
 	private ICommandExecutionBuilder commandExecutionBuilder = new DefaultCommandExecutionBuilder();
 
+	/** Caches nesting contexts of command targets */
+	private NestingContextCache nestingContextCache = new NestingContextCache();
+
 	public DefaultCommandProcessingStrategy() {
 		super(LifecycleComponentType.CommandProcessingStrategy);
 	}
@@ -67,18 +72,69 @@ public class DefaultCommandProcessingStrategy extends LifecycleComponent impleme
 			IDeviceCommandExecution execution =
 					getCommandExecutionBuilder().createExecution(command, invocation);
 			List<IDeviceAssignment> assignments = getCommandTargetResolver().resolveTargets(invocation);
-			for (IDeviceAssignment assignment : assignments) {
-				IDevice device =
-						OpenIoT.getServer().getDeviceManagement().getDeviceForAssignment(assignment);
-				if (device == null) {
-					throw new OpenIoTException("Targeted assignment references device that does not exist.");
+			routeToTargets(provisioning, execution, assignments);
+		} else {
+			throw new OpenIoTException("Invalid command referenced from invocation.");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandProcessingStrategy#deliverCommands(IDeviceProvisioning,
+	 * java.util.List)
+	 */
+	@Override
+	public void deliverCommands(IDeviceProvisioning provisioning, List<IDeviceCommandInvocation> invocations)
+			throws OpenIoTException {
+		LOGGER.debug("Command processing strategy handling " + invocations.size() + " invocations.");
+		Map<String, List<IDeviceAssignment>> targets = getCommandTargetResolver().resolveTargets(invocations);
+		Map<String, IDeviceCommand> commands = new HashMap<String, IDeviceCommand>();
+		for (IDeviceCommandInvocation invocation : invocations) {
+			try {
+				IDeviceCommand command = commands.get(invocation.getCommandToken());
+				if (command == null) {
+					command =
+							OpenIoT.getServer().getDeviceManagement().getDeviceCommandByToken(
+									invocation.getCommandToken());
+					if (command == null) {
+						throw new OpenIoTException("Invalid command referenced from invocation.");
+					}
+					commands.put(invocation.getCommandToken(), command);
+				}
+				IDeviceCommandExecution execution =
+						getCommandExecutionBuilder().createExecution(command, invocation);
+				List<IDeviceAssignment> assignments = targets.get(invocation.getId());
+				if (assignments != null) {
+					routeToTargets(provisioning, execution, assignments);
 				}
+			} catch (OpenIoTException e) {
+				LOGGER.error("Unable to deliver command invocation " + invocation.getId() + ".", e);
+			} catch (Throwable e) {
+				LOGGER.error("Unhandled exception delivering command invocation " + invocation.getId() + ".",
+						e);
+			}
+		}
+	}
 
-				IDeviceNestingContext nesting = NestedDeviceSupport.calculateNestedDeviceInformation(device);
-				provisioning.getOutboundCommandRouter().routeCommand(execution, nesting, assignment);
+	/**
+	 * Route an execution to each target assignment. Nesting information is taken from
+	 * the {@link NestingContextCache}.
+	 * 
+	 * @param provisioning
+	 * @param execution
+	 * @param assignments
+	 * @throws OpenIoTException
+	 */
+	protected void routeToTargets(IDeviceProvisioning provisioning, IDeviceCommandExecution execution,
+			List<IDeviceAssignment> assignments) throws OpenIoTException {
+		for (IDeviceAssignment assignment : assignments) {
+			IDeviceNestingContext nesting =
+					getNestingContextCache().getNestingContext(assignment.getDeviceHardwareId());
+			if (nesting == null) {
+				throw new OpenIoTException("Targeted assignment references device that does not exist.");
 			}
-		} else {
-			throw new OpenIoTException("Invalid command referenced from invocation.");
+			provisioning.getOutboundCommandRouter().routeCommand(execution, nesting, assignment);
 		}
 	}
 
@@ -94,12 +150,12 @@ public class DefaultCommandProcessingStrategy extends LifecycleComponent impleme
 	public void deliverSystemCommand(IDeviceProvisioning provisioning, String hardwareId,
 			ISystemCommand command) throws OpenIoTException {
 		IDeviceManagement management = OpenIoT.getServer().getDeviceManagement();
-		IDevice device = management.getDeviceByHardwareId(hardwareId);
-		if (device == null) {
+		IDeviceNestingContext nesting = getNestingContextCache().getNestingContext(hardwareId);
+		if (nesting == null) {
 			throw new OpenIoTException("Targeted assignment references device that does not exist.");
 		}
+		IDevice device = NestingContextCache.getTargetDevice(nesting);
 		IDeviceAssignment assignment = management.getCurrentDeviceAssignment(device);
-		IDeviceNestingContext nesting = NestedDeviceSupport.calculateNestedDeviceInformation(device);
 		provisioning.getOutboundCommandRouter().routeSystemCommand(command, nesting, assignment);
 	}
 
@@ -123,6 +179,12 @@ public class DefaultCommandProcessingStrategy extends LifecycleComponent impleme
 			throw new OpenIoTException("No command target resolver configured for provisioning.");
 		}
 		getCommandTargetResolver().lifecycleStart();
+
+		// Start nesting context cache.
+		if (getNestingContextCache() == null) {
+			throw new OpenIoTException("No nesting context cache configured for provisioning.");
+		}
+		getNestingContextCache().lifecycleStart();
 	}
 
 	/*
@@ -153,6 +215,11 @@ public class DefaultCommandProcessingStrategy extends LifecycleComponent impleme
 		if (getCommandTargetResolver() != null) {
 			getCommandTargetResolver().lifecycleStop();
 		}
+
+		// Stop nesting context cache.
+		if (getNestingContextCache() != null) {
+			getNestingContextCache().lifecycleStop();
+		}
 	}
 
 	public ICommandTargetResolver getCommandTargetResolver() {
@@ -170,4 +237,12 @@ public class DefaultCommandProcessingStrategy extends LifecycleComponent impleme
 	public void setCommandExecutionBuilder(ICommandExecutionBuilder commandExecutionBuilder) {
 		this.commandExecutionBuilder = commandExecutionBuilder;
 	}
+
+	public NestingContextCache getNestingContextCache() {
+		return nestingContextCache;
+	}
+
+	public void setNestingContextCache(NestingContextCache nestingContextCache) {
+		this.nestingContextCache = nestingContextCache;
+	}
 }
\ No newline at end of file
@@ -17,7 +17,11 @@ import com.openiot.spi.server.lifecycle.LifecycleComponentType;
 import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Uses information in an {@link IDeviceCommandInvocation} to determine a list of target
@@ -54,6 +58,38 @@ public class DefaultCommandTargetResolver extends LifecycleComponent implements
 		return results;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see ICommandTargetResolver#resolveTargets(java.util.List)
+	 */
+	@Override
+	public Map<String, List<IDeviceAssignment>> resolveTargets(List<IDeviceCommandInvocation> invocations)
+			throws OpenIoTException {
+		LOGGER.debug("Resolving targets for " + invocations.size() + " invocations.");
+		Set<String> tokens = new LinkedHashSet<String>();
+		for (IDeviceCommandInvocation invocation : invocations) {
+			tokens.add(invocation.getDeviceAssignmentToken());
+		}
+		List<IDeviceAssignment> assignments =
+				OpenIoT.getServer().getDeviceManagement().getDeviceAssignmentsByTokens(
+						new ArrayList<String>(tokens));
+		Map<String, IDeviceAssignment> byToken = new HashMap<String, IDeviceAssignment>();
+		for (IDeviceAssignment assignment : assignments) {
+			byToken.put(assignment.getToken(), assignment);
+		}
+		Map<String, List<IDeviceAssignment>> results = new HashMap<String, List<IDeviceAssignment>>();
+		for (IDeviceCommandInvocation invocation : invocations) {
+			List<IDeviceAssignment> targets = new ArrayList<IDeviceAssignment>();
+			IDeviceAssignment assignment = byToken.get(invocation.getDeviceAssignmentToken());
+			if (assignment != null) {
+				targets.add(assignment);
+			}
+			results.put(invocation.getId(), targets);
+		}
+		return results;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
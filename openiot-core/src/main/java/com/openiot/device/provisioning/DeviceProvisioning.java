@@ -174,6 +174,16 @@ public abstract class DeviceProvisioning extends LifecycleComponent implements I
 		getCommandProcessingStrategy().deliverCommand(this, invocation);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDeviceProvisioning#deliverCommands(java.util.List)
+	 */
+	@Override
+	public void deliverCommands(List<IDeviceCommandInvocation> invocations) throws OpenIoTException {
+		getCommandProcessingStrategy().deliverCommands(this, invocations);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
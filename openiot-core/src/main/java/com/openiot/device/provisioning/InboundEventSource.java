@@ -8,11 +8,14 @@
 package com.openiot.device.provisioning;
 
 import com.openiot.OpenIoT;
+import com.openiot.server.concurrent.ThreadingMode;
 import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.server.metrics.PipelineLatencyMetrics;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.device.event.request.*;
 import com.openiot.spi.device.provisioning.*;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import com.openiot.spi.system.ILatencyHistogram;
 import org.apache.log4j.Logger;
 
 import java.util.ArrayList;
@@ -31,6 +34,9 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(InboundEventSource.class);
 
+	/** Default maximum number of payloads waiting to be decoded and routed */
+	private static final int DEFAULT_DECODE_QUEUE_SIZE = 1000;
+
 	/** Unique id for referencing source */
 	private String sourceId;
 
@@ -46,6 +52,24 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 	/** List of {@link IInboundEventReceiver} that supply this processor */
 	private List<IInboundEventReceiver<T>> inboundEventReceivers = new ArrayList<IInboundEventReceiver<T>>();
 
+	/** Latency from payload arrival until all decoded events are queued */
+	private ILatencyHistogram receiveLatency;
+
+	/** Latency of payload decoding */
+	private ILatencyHistogram decodeLatency;
+
+	/** Number of threads decoding payloads (0 decodes on the receiver thread) */
+	private int decodeThreads = 0;
+
+	/** Indicates whether decode threads are platform or virtual threads */
+	private ThreadingMode decodeThreadingMode = ThreadingMode.Platform;
+
+	/** Maximum number of payloads waiting to be decoded and routed */
+	private int decodeQueueSize = DEFAULT_DECODE_QUEUE_SIZE;
+
+	/** Decodes payloads off the receiver threads if enabled */
+	private OrderedDecodeStage<T> decodeStage;
+
 	public InboundEventSource() {
 		super(LifecycleComponentType.InboundEventSource);
 	}
@@ -63,9 +87,19 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 		if (getInboundProcessingStrategy() == null) {
 			setInboundProcessingStrategy(OpenIoT.getServer().getDeviceProvisioning().getInboundProcessingStrategy());
 		}
+		receiveLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(PipelineLatencyMetrics.STAGE_RECEIVE);
+		decodeLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(PipelineLatencyMetrics.STAGE_DECODE);
 		if ((getInboundEventReceivers() == null) || (getInboundEventReceivers().size() == 0)) {
 			throw new OpenIoTException("No inbound event receivers registered for event source.");
 		}
+		if (getDecodeThreads() > 0) {
+			decodeStage =
+					new OrderedDecodeStage<T>(this, getDecodeThreads(), getDecodeThreadingMode(),
+							getDecodeQueueSize(), decodeLatency, receiveLatency);
+			decodeStage.start();
+		}
 		startEventReceivers();
 		LOGGER.debug("Started event source '" + getSourceId() + "'.");
 	}
@@ -115,35 +149,93 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 	 */
 	@Override
 	public void onEncodedEventReceived(IInboundEventReceiver<T> receiver, T encodedPayload, Map eventContext) {
+		long receiveStart = System.nanoTime();
 		try {
 			LOGGER.debug("Device event receiver thread picked up event.");
-			List<IDecodedDeviceEventRequest> requests = decodePayload(encodedPayload, eventContext);
-			if (requests != null) {
-				for (IDecodedDeviceEventRequest decoded : requests) {
-					decoded.getRequest().setUpdateState(isUpdateAssignmentState());
-					if (decoded.getRequest() instanceof IDeviceRegistrationRequest) {
-						getInboundProcessingStrategy().processRegistration(decoded);
-					} else if (decoded.getRequest() instanceof IDeviceCommandResponseCreateRequest) {
-						getInboundProcessingStrategy().processDeviceCommandResponse(decoded);
-					} else if (decoded.getRequest() instanceof IDeviceMeasurementsCreateRequest) {
-						getInboundProcessingStrategy().processDeviceMeasurements(decoded);
-					} else if (decoded.getRequest() instanceof IDeviceLocationCreateRequest) {
-						getInboundProcessingStrategy().processDeviceLocation(decoded);
-					} else if (decoded.getRequest() instanceof IDeviceAlertCreateRequest) {
-						getInboundProcessingStrategy().processDeviceAlert(decoded);
-					} else {
-						LOGGER.error("Decoded device event request could not be routed: "
-								+ decoded.getRequest().getClass().getName());
+			if (decodeStage != null) {
+				decodeStage.submit(encodedPayload, eventContext, receiveStart);
+				return;
+			}
+			if (getDeviceEventDecoder() instanceof IStreamingDeviceEventDecoder) {
+				decodeStreaming((IStreamingDeviceEventDecoder<T>) getDeviceEventDecoder(), encodedPayload,
+						eventContext, receiveStart);
+			} else {
+				List<IDecodedDeviceEventRequest> requests = decodePayload(encodedPayload, eventContext);
+				if (decodeLatency != null) {
+					decodeLatency.record(System.nanoTime() - receiveStart);
+				}
+				if (requests != null) {
+					for (IDecodedDeviceEventRequest decoded : requests) {
+						routeDecodedEvent(decoded);
 					}
 				}
 			}
+			if (receiveLatency != null) {
+				receiveLatency.record(System.nanoTime() - receiveStart);
+			}
 		} catch (OpenIoTException e) {
 			onEventDecodeFailed(encodedPayload, e);
+		} catch (InterruptedException e) {
+			LOGGER.warn("Interrupted while waiting to queue payload for decoding.");
+			Thread.currentThread().interrupt();
 		} catch (Throwable e) {
 			onEventDecodeFailed(encodedPayload, e);
 		}
 	}
 
+	/**
+	 * Decode a payload with a streaming decoder, routing each event as soon as it is
+	 * decoded. Time spent routing is excluded from the decode latency.
+	 * 
+	 * @param decoder
+	 * @param encodedPayload
+	 * @param context
+	 * @param receiveStart
+	 * @throws OpenIoTException
+	 */
+	protected void decodeStreaming(IStreamingDeviceEventDecoder<T> decoder, T encodedPayload, Map context,
+			long receiveStart) throws OpenIoTException {
+		final long[] routingNanos = new long[1];
+		decoder.decode(encodedPayload, context, new IDecodedDeviceEventHandler() {
+
+			@Override
+			public void onDecodedEvent(IDecodedDeviceEventRequest decoded) throws OpenIoTException {
+				long start = System.nanoTime();
+				routeDecodedEvent(decoded);
+				routingNanos[0] += System.nanoTime() - start;
+			}
+		});
+		if (decodeLatency != null) {
+			decodeLatency.record(System.nanoTime() - receiveStart - routingNanos[0]);
+		}
+	}
+
+	/**
+	 * Pass a decoded event to the inbound processing strategy.
+	 * 
+	 * @param decoded
+	 * @throws OpenIoTException
+	 */
+	protected void routeDecodedEvent(IDecodedDeviceEventRequest decoded) throws OpenIoTException {
+		decoded.getRequest().setUpdateState(isUpdateAssignmentState());
+		decoded.setSourceId(getSourceId());
+		decoded.setQueuedNanos(System.nanoTime());
+		if (decoded.getRequest() instanceof IDeviceRegistrationRequest) {
+			getInboundProcessingStrategy().processRegistration(decoded);
+		} else if (decoded.getRequest() instanceof IDeviceCommandResponseCreateRequest) {
+			getInboundProcessingStrategy().processDeviceCommandResponse(decoded);
+		} else if (decoded.getRequest() instanceof IDeviceMeasurementsCreateRequest) {
+			getInboundProcessingStrategy().processDeviceMeasurements(decoded);
+		} else if (decoded.getRequest() instanceof IDeviceLocationCreateRequest) {
+			getInboundProcessingStrategy().processDeviceLocation(decoded);
+		} else if (decoded.getRequest() instanceof IDeviceAlertCreateRequest) {
+			getInboundProcessingStrategy().processDeviceAlert(decoded);
+		} else {
+			LOGGER.error("Decoded device event request could not be routed: "
+					+ decoded.getRequest().getClass().getName());
+		}
+	}
+
 	/**
 	 * Decode a payload into individual events.
 	 * 
@@ -178,6 +270,10 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 				receiver.lifecycleStop();
 			}
 		}
+		if (decodeStage != null) {
+			decodeStage.stop();
+			decodeStage = null;
+		}
 	}
 
 	/*
@@ -233,6 +329,11 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 		this.inboundProcessingStrategy = inboundProcessingStrategy;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IInboundEventSource#getInboundProcessingStrategy()
+	 */
 	public IInboundProcessingStrategy getInboundProcessingStrategy() {
 		return inboundProcessingStrategy;
 	}
@@ -251,4 +352,28 @@ public class InboundEventSource<T> extends LifecycleComponent implements IInboun
 	public List<IInboundEventReceiver<T>> getInboundEventReceivers() {
 		return inboundEventReceivers;
 	}
+
+	public int getDecodeThreads() {
+		return decodeThreads;
+	}
+
+	public void setDecodeThreads(int decodeThreads) {
+		this.decodeThreads = decodeThreads;
+	}
+
+	public ThreadingMode getDecodeThreadingMode() {
+		return decodeThreadingMode;
+	}
+
+	public void setDecodeThreadingMode(ThreadingMode decodeThreadingMode) {
+		this.decodeThreadingMode = decodeThreadingMode;
+	}
+
+	public int getDecodeQueueSize() {
+		return decodeQueueSize;
+	}
+
+	public void setDecodeQueueSize(int decodeQueueSize) {
+		this.decodeQueueSize = decodeQueueSize;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning;
+
+import com.openiot.server.OpenIoTServer;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.DeviceEventType;
+import com.openiot.spi.device.event.processor.IBatchInboundEventProcessor;
+import com.openiot.spi.device.event.processor.IInboundEventProcessor;
+import com.openiot.spi.device.event.request.*;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+import org.apache.log4j.Logger;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utility methods shared by {@link com.openiot.spi.device.provisioning.IInboundProcessingStrategy}
+ * implementations.
+ *
+ * @author Derek
+ */
+public class InboundProcessingUtils {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(InboundProcessingUtils.class);
+
+	/** Event type name used for registration requests */
+	public static final String EVENT_TYPE_REGISTRATION = "Registration";
+
+	/**
+	 * Event creation APIs expect an authenticated user in order to check permissions and
+	 * log who creates events. Processing threads always run as the 'system' user.
+	 *
+	 * TODO: Alternatively, we may want the client to authenticate on registration and
+	 * pass a token on each request.
+	 */
+	public static void setSystemAuthentication() {
+		try {
+			SecurityContextHolder.getContext().setAuthentication(OpenIoTServer.getSystemAuthentication());
+		} catch (OpenIoTException e) {
+			throw new RuntimeException("Unable to use system authentication for inbound device "
+					+ " event processor thread.", e);
+		}
+	}
+
+	/**
+	 * Deliver a decoded event to the method on the {@link IInboundEventProcessor} that
+	 * matches the request type.
+	 *
+	 * @param decoded
+	 * @param processor
+	 * @throws OpenIoTException
+	 */
+	public static void dispatch(IDecodedDeviceEventRequest decoded, IInboundEventProcessor processor)
+			throws OpenIoTException {
+		if (decoded.getRequest() instanceof IDeviceRegistrationRequest) {
+			processor.onRegistrationRequest(decoded.getHardwareId(), decoded.getOriginator(),
+					((IDeviceRegistrationRequest) decoded.getRequest()));
+		} else if (decoded.getRequest() instanceof IDeviceCommandResponseCreateRequest) {
+			processor.onDeviceCommandResponseRequest(decoded.getHardwareId(), decoded.getOriginator(),
+					((IDeviceCommandResponseCreateRequest) decoded.getRequest()));
+		} else if (decoded.getRequest() instanceof IDeviceMeasurementsCreateRequest) {
+			processor.onDeviceMeasurementsCreateRequest(decoded.getHardwareId(), decoded.getOriginator(),
+					((IDeviceMeasurementsCreateRequest) decoded.getRequest()));
+		} else if (decoded.getRequest() instanceof IDeviceLocationCreateRequest) {
+			processor.onDeviceLocationCreateRequest(decoded.getHardwareId(), decoded.getOriginator(),
+					((IDeviceLocationCreateRequest) decoded.getRequest()));
+		} else if (decoded.getRequest() instanceof IDeviceAlertCreateRequest) {
+			processor.onDeviceAlertCreateRequest(decoded.getHardwareId(), decoded.getOriginator(),
+					((IDeviceAlertCreateRequest) decoded.getRequest()));
+		} else {
+			throw new RuntimeException("Unknown device event type: "
+					+ decoded.getRequest().getClass().getName());
+		}
+	}
+
+	/**
+	 * Deliver a batch of decoded events to a processor. A processor that implements
+	 * {@link IBatchInboundEventProcessor} receives the whole batch. Any other processor
+	 * receives one event at a time, and an error for one event is logged without
+	 * affecting the rest.
+	 *
+	 * @param batch
+	 * @param processor
+	 * @throws OpenIoTException
+	 */
+	public static void dispatchBatch(List<IDecodedDeviceEventRequest> batch, IInboundEventProcessor processor)
+			throws OpenIoTException {
+		if (processor instanceof IBatchInboundEventProcessor) {
+			((IBatchInboundEventProcessor) processor).onDeviceEventBatch(batch);
+			return;
+		}
+		for (IDecodedDeviceEventRequest request : batch) {
+			try {
+				dispatch(request, processor);
+			} catch (OpenIoTException e) {
+				LOGGER.error("Processor failed to process event in batch.", e);
+			}
+		}
+	}
+
+	/**
+	 * Get the event type name used by overload policies to decide which events may be
+	 * shed.
+	 *
+	 * @param decoded
+	 * @return
+	 */
+	public static String getEventType(IDecodedDeviceEventRequest decoded) {
+		if (decoded.getRequest() instanceof IDeviceRegistrationRequest) {
+			return EVENT_TYPE_REGISTRATION;
+		} else if (decoded.getRequest() instanceof IDeviceCommandResponseCreateRequest) {
+			return DeviceEventType.CommandResponse.name();
+		} else if (decoded.getRequest() instanceof IDeviceMeasurementsCreateRequest) {
+			return DeviceEventType.Measurements.name();
+		} else if (decoded.getRequest() instanceof IDeviceLocationCreateRequest) {
+			return DeviceEventType.Location.name();
+		} else if (decoded.getRequest() instanceof IDeviceAlertCreateRequest) {
+			return DeviceEventType.Alert.name();
+		}
+		return decoded.getRequest().getClass().getSimpleName();
+	}
+
+	/**
+	 * Split a comma-delimited list of event type names.
+	 *
+	 * @param types
+	 * @return
+	 */
+	public static List<String> parseEventTypes(String types) {
+		List<String> result = new ArrayList<String>();
+		if (types != null) {
+			for (String type : types.split(",")) {
+				if (type.trim().length() > 0) {
+					result.add(type.trim());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Take a batch of entries from a queue. Blocks until at least one entry is available,
+	 * then keeps collecting until the batch holds <code>maxBatchSize</code> entries or
+	 * <code>maxBatchWaitMs</code> have passed since the first entry was taken.
+	 * 
+	 * @param queue
+	 * @param maxBatchSize
+	 * @param maxBatchWaitMs
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public static <T> List<T> drain(BlockingQueue<T> queue, int maxBatchSize, long maxBatchWaitMs)
+			throws InterruptedException {
+		List<T> batch = new ArrayList<T>(Math.max(1, maxBatchSize));
+		batch.add(queue.take());
+		if (maxBatchSize <= 1) {
+			return batch;
+		}
+		queue.drainTo(batch, maxBatchSize - batch.size());
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchWaitMs);
+		while (batch.size() < maxBatchSize) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				break;
+			}
+			T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (next == null) {
+				break;
+			}
+			batch.add(next);
+			queue.drainTo(batch, maxBatchSize - batch.size());
+		}
+		return batch;
+	}
+}
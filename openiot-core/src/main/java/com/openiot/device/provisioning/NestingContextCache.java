@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning;
+
+import com.openiot.OpenIoT;
+import com.openiot.device.provisioning.NestedDeviceSupport.NestedDeviceInformation;
+import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDevice;
+import com.openiot.spi.device.IDeviceChangeListener;
+import com.openiot.spi.device.IDeviceNestingContext;
+import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import org.apache.log4j.Logger;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the {@link IDeviceNestingContext} for each device so that routing a command
+ * does not have to load the device, load its parent gateway and scan the gateway element
+ * mappings every time. Entries are keyed by hardware id. When a device changes, its
+ * entry is dropped along with the entries of any nested devices that route through it.
+ * Storing a loaded context and invalidating entries happen under the same lock, so a
+ * context loaded before a change is never stored after it.
+ *
+ * @author Derek
+ */
+public class NestingContextCache extends LifecycleComponent implements IDeviceChangeListener {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(NestingContextCache.class);
+
+	/** Default maximum number of cached contexts */
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+	/** Nesting contexts indexed by hardware id */
+	private ConcurrentMap<String, NestedDeviceInformation> contexts =
+			new ConcurrentHashMap<String, NestedDeviceInformation>();
+
+	/** Hardware ids of cached nested devices indexed by gateway hardware id */
+	private ConcurrentMap<String, Set<String>> dependents = new ConcurrentHashMap<String, Set<String>>();
+
+	/** Incremented on every invalidation so contexts loaded before it are not cached */
+	private AtomicLong generation = new AtomicLong();
+
+	/** Guards storing contexts against concurrent invalidation */
+	private Object lock = new Object();
+
+	/** Maximum number of cached contexts */
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	public NestingContextCache() {
+		super(LifecycleComponentType.Other);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		OpenIoT.getServer().getDeviceManagementListeners().addDeviceListener(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		OpenIoT.getServer().getDeviceManagementListeners().removeDeviceListener(this);
+		clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/**
+	 * Get the device a nesting context addresses.
+	 *
+	 * @param context
+	 * @return
+	 */
+	public static IDevice getTargetDevice(IDeviceNestingContext context) {
+		return (context.getNested() != null) ? context.getNested() : context.getGateway();
+	}
+
+	/**
+	 * Get the nesting context for a device by hardware id.
+	 *
+	 * @param hardwareId
+	 * @return the context or null if the device does not exist
+	 * @throws OpenIoTException
+	 */
+	public IDeviceNestingContext getNestingContext(String hardwareId) throws OpenIoTException {
+		NestedDeviceInformation cached = contexts.get(hardwareId);
+		if (cached != null) {
+			return cached;
+		}
+		long start = generation.get();
+		IDevice device = OpenIoT.getServer().getDeviceManagement().getDeviceByHardwareId(hardwareId);
+		if (device == null) {
+			return null;
+		}
+		return load(device, start);
+	}
+
+	/**
+	 * Get the nesting context for a device that has already been loaded.
+	 *
+	 * @param device
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public IDeviceNestingContext getNestingContext(IDevice device) throws OpenIoTException {
+		NestedDeviceInformation cached = contexts.get(device.getHardwareId());
+		if (cached != null) {
+			return cached;
+		}
+		return load(device, generation.get());
+	}
+
+	/**
+	 * Calculate the nesting context for a device and cache it unless something changed
+	 * while it was being calculated.
+	 *
+	 * @param device
+	 * @param start generation when loading started
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	protected NestedDeviceInformation load(IDevice device, long start) throws OpenIoTException {
+		NestedDeviceInformation nesting = NestedDeviceSupport.calculateNestedDeviceInformation(device);
+		synchronized (lock) {
+			if ((contexts.size() >= getMaxEntries()) || (generation.get() != start)) {
+				return nesting;
+			}
+			if (nesting.getNested() != null) {
+				String gateway = nesting.getGateway().getHardwareId();
+				Set<String> nested = dependents.get(gateway);
+				if (nested == null) {
+					nested = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+					dependents.put(gateway, nested);
+				}
+				nested.add(device.getHardwareId());
+			}
+			contexts.put(device.getHardwareId(), nesting);
+		}
+		return nesting;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.device.IDeviceChangeListener#onDeviceChanged(java.lang.String)
+	 */
+	@Override
+	public void onDeviceChanged(String hardwareId) {
+		synchronized (lock) {
+			generation.incrementAndGet();
+			contexts.remove(hardwareId);
+			Set<String> nested = dependents.remove(hardwareId);
+			if (nested != null) {
+				for (String id : nested) {
+					contexts.remove(id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached contexts.
+	 */
+	public void clear() {
+		synchronized (lock) {
+			generation.incrementAndGet();
+			contexts.clear();
+			dependents.clear();
+		}
+	}
+
+	/**
+	 * Get the number of cached contexts.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return contexts.size();
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+}
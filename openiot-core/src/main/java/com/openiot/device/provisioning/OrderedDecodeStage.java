@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.openiot.OpenIoT;
+import com.openiot.server.concurrent.ExecutorFactory;
+import com.openiot.server.concurrent.ThreadingMode;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+import com.openiot.spi.system.ILatencyHistogram;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes payloads for an {@link InboundEventSource} on a pool of worker threads so that
+ * receiver threads only hand payloads off. Hardware ids are not known until a payload
+ * is decoded, so order is kept by routing decoded events in the order their payloads
+ * arrived. A single router thread waits on each payload in turn. Later payloads may
+ * finish decoding first, but they wait for it. Events for a device therefore reach the
+ * processing strategy in the order they were received.
+ *
+ * The number of payloads in flight is bounded. When the limit is reached, receivers
+ * block until the router catches up. Receivers may acknowledge a payload as soon as it
+ * is submitted, so stopping the stage waits for payloads in flight to be routed before
+ * the workers are shut down.
+ *
+ * @author Derek
+ *
+ * @param <T>
+ */
+public class OrderedDecodeStage<T> {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(OrderedDecodeStage.class);
+
+	/** Maximum time to wait for payloads in flight to be routed when stopping */
+	private static final long DRAIN_TIMEOUT_MS = 10 * 1000;
+
+	/** Event source that owns the stage */
+	private final InboundEventSource<T> source;
+
+	/** Number of decode threads */
+	private final int threads;
+
+	/** Indicates whether decode threads are platform or virtual threads */
+	private final ThreadingMode threadingMode;
+
+	/** Maximum number of payloads in flight */
+	private final int queueSize;
+
+	/** Payloads in arrival order */
+	private final BlockingQueue<DecodeTask> pending = new LinkedBlockingQueue<DecodeTask>();
+
+	/** Limits the number of payloads in flight */
+	private final Semaphore inFlight;
+
+	/** Decode latency histogram */
+	private final ILatencyHistogram decodeLatency;
+
+	/** Receive latency histogram */
+	private final ILatencyHistogram receiveLatency;
+
+	/** Decode workers */
+	private ExecutorService decoders;
+
+	/** Routes decoded events in order */
+	private Thread router;
+
+	/** Name of the backlog gauge */
+	private String backlogMetric;
+
+	public OrderedDecodeStage(InboundEventSource<T> source, int threads, ThreadingMode threadingMode,
+			int queueSize, ILatencyHistogram decodeLatency, ILatencyHistogram receiveLatency) {
+		this.source = source;
+		this.threads = threads;
+		this.threadingMode = threadingMode;
+		this.queueSize = queueSize;
+		this.inFlight = new Semaphore(queueSize);
+		this.decodeLatency = decodeLatency;
+		this.receiveLatency = receiveLatency;
+	}
+
+	/**
+	 * Start the decode workers and router.
+	 */
+	public void start() {
+		String prefix = "Event Source (" + source.getSourceId() + ") ";
+		decoders = ExecutorFactory.newExecutor(threadingMode, threads, prefix + "Decoder ");
+		router = new Thread(new Router(), prefix + "Router");
+		router.setDaemon(true);
+		router.start();
+
+		backlogMetric = MetricRegistry.name(InboundEventSource.class, source.getSourceId(), "decodeBacklog");
+		MetricRegistry registry = OpenIoT.getServer().getMetricRegistry();
+		registry.remove(backlogMetric);
+		registry.register(backlogMetric, new Gauge<Integer>() {
+			public Integer getValue() {
+				return pending.size();
+			}
+		});
+		LOGGER.info("Started " + threads + " " + threadingMode.getName()
+				+ " decoder threads for event source '" + source.getSourceId() + "'.");
+	}
+
+	/**
+	 * Stop the decode workers and router. Receivers should be stopped first. Payloads in
+	 * flight are decoded and routed unless that takes longer than the drain timeout, in
+	 * which case the rest are discarded.
+	 */
+	public void stop() {
+		try {
+			if (!inFlight.tryAcquire(queueSize, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				LOGGER.warn("Timed out waiting for payloads to be decoded for event source '"
+						+ source.getSourceId() + "'. Discarding " + pending.size() + " payloads.");
+			}
+		} catch (InterruptedException e) {
+			LOGGER.warn("Interrupted while waiting for payloads to be decoded. Discarding " + pending.size()
+					+ " payloads.");
+			Thread.currentThread().interrupt();
+		}
+		if (router != null) {
+			router.interrupt();
+		}
+		if (decoders != null) {
+			decoders.shutdownNow();
+		}
+		pending.clear();
+		if (backlogMetric != null) {
+			OpenIoT.getServer().getMetricRegistry().remove(backlogMetric);
+		}
+	}
+
+	/**
+	 * Queue a payload for decoding. Blocks while the maximum number of payloads are in
+	 * flight.
+	 *
+	 * @param payload
+	 * @param context
+	 * @param receiveStart
+	 * @throws InterruptedException
+	 */
+	public void submit(T payload, Map context, long receiveStart) throws InterruptedException {
+		inFlight.acquire();
+		DecodeTask task = new DecodeTask(payload, context, receiveStart);
+		pending.add(task);
+		decoders.execute(task);
+	}
+
+	/**
+	 * Get the number of payloads decoding or waiting to be routed.
+	 *
+	 * @return
+	 */
+	public int getBacklog() {
+		return pending.size();
+	}
+
+	/**
+	 * Decodes a single payload on a worker thread.
+	 *
+	 * @author Derek
+	 */
+	private class DecodeTask extends FutureTask<List<IDecodedDeviceEventRequest>> {
+
+		/** Encoded payload */
+		private final T payload;
+
+		/** Time the payload was received */
+		private final long receiveStart;
+
+		public DecodeTask(final T payload, final Map context, final long receiveStart) {
+			super(new Callable<List<IDecodedDeviceEventRequest>>() {
+
+				public List<IDecodedDeviceEventRequest> call() throws Exception {
+					long start = System.nanoTime();
+					List<IDecodedDeviceEventRequest> decoded = source.decodePayload(payload, context);
+					if (decodeLatency != null) {
+						decodeLatency.record(System.nanoTime() - start);
+					}
+					return decoded;
+				}
+			});
+			this.payload = payload;
+			this.receiveStart = receiveStart;
+		}
+	}
+
+	/**
+	 * Routes decoded events to the processing strategy in arrival order.
+	 *
+	 * @author Derek
+	 */
+	private class Router implements Runnable {
+
+		public void run() {
+			while (!Thread.currentThread().isInterrupted()) {
+				DecodeTask task;
+				try {
+					task = pending.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					List<IDecodedDeviceEventRequest> requests = task.get();
+					if (requests != null) {
+						for (IDecodedDeviceEventRequest decoded : requests) {
+							source.routeDecodedEvent(decoded);
+						}
+					}
+					if (receiveLatency != null) {
+						receiveLatency.record(System.nanoTime() - task.receiveStart);
+					}
+				} catch (InterruptedException e) {
+					return;
+				} catch (ExecutionException e) {
+					source.onEventDecodeFailed(task.payload, e.getCause());
+				} catch (Throwable e) {
+					source.onEventDecodeFailed(task.payload, e);
+				} finally {
+					inFlight.release();
+				}
+			}
+		}
+	}
+}
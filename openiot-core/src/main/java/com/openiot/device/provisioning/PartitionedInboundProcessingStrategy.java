@@ -0,0 +1,715 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.openiot.OpenIoT;
+import com.openiot.device.provisioning.overload.DropCounter;
+import com.openiot.device.provisioning.overload.FlowControlGate;
+import com.openiot.device.provisioning.overload.OverloadHandler;
+import com.openiot.device.provisioning.overload.OverloadPolicy;
+import com.openiot.server.concurrent.ExecutorFactory;
+import com.openiot.server.concurrent.ThreadingMode;
+import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.server.metrics.PipelineLatencyMetrics;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.processor.IInboundEventProcessorChain;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+import com.openiot.spi.device.provisioning.IInboundFlowControl;
+import com.openiot.spi.device.provisioning.IInboundProcessingStrategy;
+import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import com.openiot.spi.system.ILatencyHistogram;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of {@link IInboundProcessingStrategy} that partitions events by
+ * hardware id onto a fixed number of lanes. Each lane has its own bounded queue and a
+ * single processing thread, so events from a given device are always delivered to the
+ * {@link IInboundEventProcessorChain} in the order they were received and lanes never
+ * contend with each other. When a lane is full, the configured {@link OverloadPolicy}
+ * decides whether to wait or which event to drop.
+ *
+ * @author Derek
+ */
+public class PartitionedInboundProcessingStrategy extends LifecycleComponent implements
+		IInboundProcessingStrategy, IInboundFlowControl {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(PartitionedInboundProcessingStrategy.class);
+
+	/** Default number of lanes */
+	private static final int DEFAULT_LANE_COUNT = 16;
+
+	/** Default maximum size of each lane queue */
+	private static final int DEFAULT_LANE_QUEUE_SIZE = 1000;
+
+	/** Default wait for a batch to fill */
+	private static final long MAX_BATCH_WAIT_MS = 50;
+
+	/** Interval between monitoring log output messages */
+	private static final int MONITORING_INTERVAL_SEC = 5;
+
+	/** Event types shed first by default */
+	private static final String DEFAULT_SHED_EVENT_TYPES = "Measurements,Location";
+
+	/** Number of lanes (and processing threads) */
+	private int laneCount = DEFAULT_LANE_COUNT;
+
+	/** Indicates whether lane threads are platform or virtual threads */
+	private ThreadingMode threadingMode = ThreadingMode.Platform;
+
+	/** Maximum number of events queued per lane */
+	private int laneQueueSize = DEFAULT_LANE_QUEUE_SIZE;
+
+	/** Maximum number of events delivered to the chain at once (1 disables batching) */
+	private int maxBatchSize = 1;
+
+	/** Maximum time to wait for a batch to fill */
+	private long maxBatchWaitMs = MAX_BATCH_WAIT_MS;
+
+	/** Policy applied when a lane is full */
+	private OverloadPolicy overloadPolicy = OverloadPolicy.Block;
+
+	/** Milliseconds to wait for space when blocking (0 waits forever) */
+	private long blockTimeoutMs = 0;
+
+	/** Comma-delimited event types that may be dropped by the shed policy */
+	private String shedEventTypes = DEFAULT_SHED_EVENT_TYPES;
+
+	/** Deepest lane backlog at which receivers are asked to pause (defaults to 90% of lane) */
+	private int highWaterMark = -1;
+
+	/** Deepest lane backlog at which paused receivers resume (defaults to 50% of lane) */
+	private int lowWaterMark = -1;
+
+	/** Indicates whether monitoring messages should be logged */
+	private boolean enableMonitoring = false;
+
+	/** Number of seconds between monitoring messages */
+	private int monitoringIntervalSec = MONITORING_INTERVAL_SEC;
+
+	/** Counter for number of errors */
+	private AtomicLong errorCount = new AtomicLong();
+
+	/** Lanes events are partitioned onto */
+	private List<Lane> lanes = new ArrayList<Lane>();
+
+	/** Names of metrics registered by this strategy */
+	private List<String> metricNames = new ArrayList<String>();
+
+	/** Applies overload policy when adding to a lane */
+	private OverloadHandler<IDecodedDeviceEventRequest> overloadHandler;
+
+	/** Tells receivers when to pause consumption */
+	private FlowControlGate flowControl;
+
+	/** Counts events dropped per event source */
+	private DropCounter dropCounter = new DropCounter(getClass());
+
+	/** Time events wait in a lane */
+	private ILatencyHistogram queueWaitLatency;
+
+	/** Time spent in the inbound processor chain */
+	private ILatencyHistogram chainLatency;
+
+	/** Thread pool with one thread per lane */
+	private ExecutorService processorPool;
+
+	/** Pool for monitoring thread */
+	private ExecutorService monitorPool;
+
+	public PartitionedInboundProcessingStrategy() {
+		super(LifecycleComponentType.InboundProcessingStrategy);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		if (getLaneCount() < 1) {
+			throw new OpenIoTException("Partitioned inbound processing strategy requires at least one lane.");
+		}
+		lanes.clear();
+		queueWaitLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+						PipelineLatencyMetrics.STAGE_QUEUE_WAIT);
+		chainLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+						PipelineLatencyMetrics.STAGE_INBOUND_CHAIN);
+		overloadHandler =
+				new OverloadHandler<IDecodedDeviceEventRequest>(getOverloadPolicy(), getBlockTimeoutMs(),
+						InboundProcessingUtils.parseEventTypes(getShedEventTypes())) {
+
+					@Override
+					protected String getEventType(IDecodedDeviceEventRequest entry) {
+						return InboundProcessingUtils.getEventType(entry);
+					}
+
+					@Override
+					protected void onDropped(IDecodedDeviceEventRequest entry) {
+						dropCounter.increment(entry.getSourceId());
+					}
+				};
+		int high = (getHighWaterMark() > 0) ? getHighWaterMark() : getLaneQueueSize() * 9 / 10;
+		int low = (getLowWaterMark() >= 0) ? getLowWaterMark() : getLaneQueueSize() / 2;
+		flowControl = new FlowControlGate(high, low) {
+
+			@Override
+			protected long getBacklog() {
+				return getMaxLaneDepth();
+			}
+		};
+		processorPool =
+				ExecutorFactory.newExecutor(getThreadingMode(), getLaneCount(),
+						"OpenIoT PartitionedInboundProcessingStrategy Lane ");
+		for (int i = 0; i < getLaneCount(); i++) {
+			Lane lane = new Lane(i, getLaneQueueSize());
+			lanes.add(lane);
+			processorPool.execute(new LaneProcessor(lane));
+		}
+		registerMetrics();
+		LOGGER.info("Started partitioned inbound processing strategy with " + getLaneCount() + " "
+				+ getThreadingMode().getName() + " lanes of queue size " + getLaneQueueSize() + " and '"
+				+ getOverloadPolicy().getName() + "' overload policy.");
+
+		// Only show monitoring data if enabled.
+		if (isEnableMonitoring()) {
+			monitorPool = Executors.newSingleThreadExecutor();
+			monitorPool.execute(new MonitorOutput());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		if (processorPool != null) {
+			processorPool.shutdownNow();
+		}
+		if (monitorPool != null) {
+			monitorPool.shutdownNow();
+		}
+		unregisterMetrics();
+		dropCounter.unregister();
+		LOGGER.info("Stopped partitioned inbound processing strategy.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * IInboundProcessingStrategy#processRegistration
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processRegistration(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		addRequestToLane(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IInboundProcessingStrategy#
+	 * processDeviceCommandResponse
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processDeviceCommandResponse(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		addRequestToLane(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IInboundProcessingStrategy#
+	 * processDeviceMeasurements
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processDeviceMeasurements(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		addRequestToLane(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * IInboundProcessingStrategy#processDeviceLocation
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processDeviceLocation(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		addRequestToLane(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * IInboundProcessingStrategy#processDeviceAlert
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processDeviceAlert(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		addRequestToLane(request);
+	}
+
+	/**
+	 * Adds an {@link IDecodedDeviceEventRequest} to the lane for its hardware id, applying
+	 * the overload policy if the lane is full.
+	 *
+	 * @param request
+	 * @throws OpenIoTException
+	 */
+	protected void addRequestToLane(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		if (lanes.isEmpty()) {
+			throw new OpenIoTException("Partitioned inbound processing strategy has not been started.");
+		}
+		Lane lane = lanes.get(getLaneIndex(request.getHardwareId(), lanes.size()));
+		try {
+			lane.getEventCount().incrementAndGet();
+			overloadHandler.submit(lane.getQueue(), request);
+		} catch (InterruptedException e) {
+			errorCount.incrementAndGet();
+			Thread.currentThread().interrupt();
+			throw new OpenIoTException(e);
+		}
+	}
+
+	/**
+	 * Record how long a request waited in its lane. Requests that were not queued by an
+	 * event source carry no timestamp and are skipped.
+	 *
+	 * @param request
+	 * @param processingStart
+	 */
+	protected void recordQueueWait(IDecodedDeviceEventRequest request, long processingStart) {
+		if (request.getQueuedNanos() != 0) {
+			queueWaitLatency.record(processingStart - request.getQueuedNanos());
+		}
+	}
+
+	/**
+	 * Map a hardware id onto a lane index. Requests without a hardware id always use the
+	 * first lane.
+	 *
+	 * @param hardwareId
+	 * @param count
+	 * @return
+	 */
+	public static int getLaneIndex(String hardwareId, int count) {
+		if (hardwareId == null) {
+			return 0;
+		}
+		int hash = hardwareId.hashCode();
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % count;
+	}
+
+	/**
+	 * Register lane gauges with the server metric registry.
+	 */
+	protected void registerMetrics() {
+		MetricRegistry registry = OpenIoT.getServer().getMetricRegistry();
+		for (final Lane lane : lanes) {
+			String depth = MetricRegistry.name(getClass(), "lane", String.valueOf(lane.getIndex()), "depth");
+			registry.register(depth, new Gauge<Integer>() {
+				public Integer getValue() {
+					return lane.getQueue().size();
+				}
+			});
+			metricNames.add(depth);
+		}
+		String maxDepth = MetricRegistry.name(getClass(), "maxLaneDepth");
+		registry.register(maxDepth, new Gauge<Integer>() {
+			public Integer getValue() {
+				return getMaxLaneDepth();
+			}
+		});
+		metricNames.add(maxDepth);
+		String skew = MetricRegistry.name(getClass(), "laneSkew");
+		registry.register(skew, new Gauge<Double>() {
+			public Double getValue() {
+				return getLaneSkew();
+			}
+		});
+		metricNames.add(skew);
+	}
+
+	/**
+	 * Remove gauges registered by {@link #registerMetrics()}.
+	 */
+	protected void unregisterMetrics() {
+		MetricRegistry registry = OpenIoT.getServer().getMetricRegistry();
+		for (String name : metricNames) {
+			registry.remove(name);
+		}
+		metricNames.clear();
+	}
+
+	/**
+	 * Get the number of events received.
+	 *
+	 * @return
+	 */
+	public long getEventCount() {
+		long total = 0;
+		for (Lane lane : lanes) {
+			total += lane.getEventCount().get();
+		}
+		return total;
+	}
+
+	/**
+	 * Get the number of errors in processing.
+	 *
+	 * @return
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	/**
+	 * Get the total number of backlogged requests across all lanes.
+	 *
+	 * @return
+	 */
+	public long getBacklog() {
+		long total = 0;
+		for (Lane lane : lanes) {
+			total += lane.getQueue().size();
+		}
+		return total;
+	}
+
+	/**
+	 * Get the number of events dropped by the overload policy.
+	 *
+	 * @return
+	 */
+	public long getDroppedCount() {
+		return dropCounter.getTotal();
+	}
+
+	/**
+	 * Get the number of events dropped by the overload policy for each event source.
+	 *
+	 * @return
+	 */
+	public Map<String, Long> getDroppedCountsBySource() {
+		return dropCounter.getCounts();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.device.provisioning.IInboundFlowControl#isAcceptingEvents()
+	 */
+	@Override
+	public boolean isAcceptingEvents() {
+		return (flowControl == null) || flowControl.isAcceptingEvents();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.device.provisioning.IInboundFlowControl#awaitCapacity(long)
+	 */
+	@Override
+	public boolean awaitCapacity(long timeoutMs) throws InterruptedException {
+		return (flowControl == null) || flowControl.awaitCapacity(timeoutMs);
+	}
+
+	/**
+	 * Get the current queue depth of each lane.
+	 *
+	 * @return
+	 */
+	public int[] getLaneDepths() {
+		int[] depths = new int[lanes.size()];
+		for (int i = 0; i < depths.length; i++) {
+			depths[i] = lanes.get(i).getQueue().size();
+		}
+		return depths;
+	}
+
+	/**
+	 * Get the depth of the most backlogged lane.
+	 *
+	 * @return
+	 */
+	public int getMaxLaneDepth() {
+		int max = 0;
+		for (Lane lane : lanes) {
+			max = Math.max(max, lane.getQueue().size());
+		}
+		return max;
+	}
+
+	/**
+	 * Get the ratio of events received by the busiest lane to the average per lane. A
+	 * value of 1.0 indicates events are spread evenly.
+	 *
+	 * @return
+	 */
+	public double getLaneSkew() {
+		if (lanes.isEmpty()) {
+			return 0;
+		}
+		long max = 0;
+		long total = 0;
+		for (Lane lane : lanes) {
+			long count = lane.getEventCount().get();
+			max = Math.max(max, count);
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		return ((double) max * lanes.size()) / total;
+	}
+
+	public int getLaneCount() {
+		return laneCount;
+	}
+
+	public void setLaneCount(int laneCount) {
+		this.laneCount = laneCount;
+	}
+
+	public ThreadingMode getThreadingMode() {
+		return threadingMode;
+	}
+
+	public void setThreadingMode(ThreadingMode threadingMode) {
+		this.threadingMode = threadingMode;
+	}
+
+	public int getLaneQueueSize() {
+		return laneQueueSize;
+	}
+
+	public void setLaneQueueSize(int laneQueueSize) {
+		this.laneQueueSize = laneQueueSize;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public long getMaxBatchWaitMs() {
+		return maxBatchWaitMs;
+	}
+
+	public void setMaxBatchWaitMs(long maxBatchWaitMs) {
+		this.maxBatchWaitMs = maxBatchWaitMs;
+	}
+
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	public void setOverloadPolicy(OverloadPolicy overloadPolicy) {
+		this.overloadPolicy = overloadPolicy;
+	}
+
+	public long getBlockTimeoutMs() {
+		return blockTimeoutMs;
+	}
+
+	public void setBlockTimeoutMs(long blockTimeoutMs) {
+		this.blockTimeoutMs = blockTimeoutMs;
+	}
+
+	public String getShedEventTypes() {
+		return shedEventTypes;
+	}
+
+	public void setShedEventTypes(String shedEventTypes) {
+		this.shedEventTypes = shedEventTypes;
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public void setHighWaterMark(int highWaterMark) {
+		this.highWaterMark = highWaterMark;
+	}
+
+	public int getLowWaterMark() {
+		return lowWaterMark;
+	}
+
+	public void setLowWaterMark(int lowWaterMark) {
+		this.lowWaterMark = lowWaterMark;
+	}
+
+	public boolean isEnableMonitoring() {
+		return enableMonitoring;
+	}
+
+	public void setEnableMonitoring(boolean enableMonitoring) {
+		this.enableMonitoring = enableMonitoring;
+	}
+
+	public int getMonitoringIntervalSec() {
+		return monitoringIntervalSec;
+	}
+
+	public void setMonitoringIntervalSec(int monitoringIntervalSec) {
+		this.monitoringIntervalSec = monitoringIntervalSec;
+	}
+
+	/**
+	 * A single partition with its own queue and counters.
+	 *
+	 * @author Derek
+	 */
+	private static class Lane {
+
+		/** Lane index */
+		private int index;
+
+		/** Events waiting to be processed */
+		private BlockingQueue<IDecodedDeviceEventRequest> queue;
+
+		/** Number of events routed to the lane */
+		private AtomicLong eventCount = new AtomicLong();
+
+		public Lane(int index, int queueSize) {
+			this.index = index;
+			this.queue = new ArrayBlockingQueue<IDecodedDeviceEventRequest>(queueSize);
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public BlockingQueue<IDecodedDeviceEventRequest> getQueue() {
+			return queue;
+		}
+
+		public AtomicLong getEventCount() {
+			return eventCount;
+		}
+	}
+
+	/**
+	 * Logs monitor output at a given time interval.
+	 *
+	 * @author Derek
+	 */
+	private class MonitorOutput implements Runnable {
+
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					String message =
+							String.format(
+									"Count(%5d) Errors(%5d) Backlog(%5d) Dropped(%5d) MaxLane(%5d) Skew(%.2f) %s %s",
+									getEventCount(), getErrorCount(), getBacklog(), getDroppedCount(),
+									getMaxLaneDepth(), getLaneSkew(),
+									PipelineLatencyMetrics.format(queueWaitLatency.getSummary()),
+									PipelineLatencyMetrics.format(chainLatency.getSummary()));
+					LOGGER.info(message);
+				} catch (Throwable e) {
+					LOGGER.error(e);
+				}
+				try {
+					Thread.sleep(getMonitoringIntervalSec() * 1000);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Single thread that processes the {@link IDecodedDeviceEventRequest} queue for one
+	 * lane in order.
+	 *
+	 * @author Derek
+	 */
+	private class LaneProcessor implements Runnable {
+
+		/** Lane being processed */
+		private Lane lane;
+
+		public LaneProcessor(Lane lane) {
+			this.lane = lane;
+		}
+
+		@Override
+		public void run() {
+			InboundProcessingUtils.setSystemAuthentication();
+			while (true) {
+				try {
+					if (getMaxBatchSize() > 1) {
+						List<IDecodedDeviceEventRequest> batch =
+								InboundProcessingUtils.drain(lane.getQueue(), getMaxBatchSize(),
+										getMaxBatchWaitMs());
+						long processingStart = System.nanoTime();
+						for (int i = 0; i < batch.size(); i++) {
+							recordQueueWait(batch.get(i), processingStart);
+						}
+						InboundProcessingUtils.dispatchBatch(batch,
+								OpenIoT.getServer().getInboundEventProcessorChain());
+						chainLatency.record(System.nanoTime() - processingStart);
+					} else {
+						IDecodedDeviceEventRequest request = lane.getQueue().take();
+						long processingStart = System.nanoTime();
+						recordQueueWait(request, processingStart);
+						InboundProcessingUtils.dispatch(request,
+								OpenIoT.getServer().getInboundEventProcessorChain());
+						chainLatency.record(System.nanoTime() - processingStart);
+					}
+				} catch (OpenIoTException e) {
+					errorCount.incrementAndGet();
+					LOGGER.error("Error processing inbound device event.", e);
+				} catch (InterruptedException e) {
+					break;
+				} catch (Throwable e) {
+					errorCount.incrementAndGet();
+					LOGGER.error("Unhandled exception in inbound event processing.", e);
+				}
+			}
+		}
+	}
+}
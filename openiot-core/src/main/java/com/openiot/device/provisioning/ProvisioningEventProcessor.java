@@ -14,14 +14,20 @@ import com.openiot.spi.device.batch.IBatchOperation;
 import com.openiot.spi.device.event.IDeviceCommandInvocation;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Event processor that hands off {@link IDeviceCommandInvocation} events after they have
- * been saved so that provisioning can process them.
+ * been saved so that provisioning can process them. Invocations that queue up while the
+ * processor threads are busy are delivered together, so their targets are resolved in a
+ * single query.
  * 
  * @author Derek
  */
@@ -33,9 +39,18 @@ public class ProvisioningEventProcessor extends OutboundEventProcessor {
 	/** Number of invocations to buffer before blocking calls */
 	private static final int DEFAULT_NUM_THREADS = 10;
 
+	/** Default maximum number of invocations delivered together */
+	private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
 	/** Number of threads used for processing provisioning requests */
 	private int numThreads = DEFAULT_NUM_THREADS;
 
+	/** Maximum number of invocations delivered together */
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	/** Invocations waiting to be delivered */
+	private BlockingQueue<IDeviceCommandInvocation> pending = new LinkedBlockingQueue<IDeviceCommandInvocation>();
+
 	/** Used to execute Solr indexing in a separate thread */
 	private ExecutorService executor;
 
@@ -78,7 +93,8 @@ public class ProvisioningEventProcessor extends OutboundEventProcessor {
 	 */
 	@Override
 	public void onCommandInvocation(IDeviceCommandInvocation invocation) throws OpenIoTException {
-		executor.execute(new CommandInvocationProcessor(invocation));
+		pending.add(invocation);
+		executor.execute(new CommandInvocationProcessor());
 	}
 
 	/*
@@ -94,21 +110,28 @@ public class ProvisioningEventProcessor extends OutboundEventProcessor {
 	}
 
 	/**
-	 * Processes command invocations asynchronously.
+	 * Processes command invocations asynchronously. One processor is scheduled for each
+	 * invocation, and each takes every pending invocation (up to the batch size) when it
+	 * runs. Processors that find nothing pending have had their invocations taken by an
+	 * earlier processor and exit immediately.
 	 */
 	private class CommandInvocationProcessor implements Runnable {
 
-		private IDeviceCommandInvocation command;
-
-		public CommandInvocationProcessor(IDeviceCommandInvocation command) {
-			this.command = command;
-		}
-
 		@Override
 		public void run() {
+			List<IDeviceCommandInvocation> commands = new ArrayList<IDeviceCommandInvocation>();
+			pending.drainTo(commands, getMaxBatchSize());
+			if (commands.isEmpty()) {
+				return;
+			}
 			try {
-				LOGGER.debug("Provisioning processor thread processing command invocation.");
-				OpenIoT.getServer().getDeviceProvisioning().deliverCommand(command);
+				LOGGER.debug("Provisioning processor thread processing " + commands.size()
+						+ " command invocations.");
+				if (commands.size() == 1) {
+					OpenIoT.getServer().getDeviceProvisioning().deliverCommand(commands.get(0));
+				} else {
+					OpenIoT.getServer().getDeviceProvisioning().deliverCommands(commands);
+				}
 			} catch (OpenIoTException e) {
 				LOGGER.error("Exception thrown in provisioning operation.", e);
 			} catch (Throwable e) {
@@ -159,4 +182,12 @@ public class ProvisioningEventProcessor extends OutboundEventProcessor {
 	public void setNumThreads(int numThreads) {
 		this.numThreads = numThreads;
 	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
 }
\ No newline at end of file
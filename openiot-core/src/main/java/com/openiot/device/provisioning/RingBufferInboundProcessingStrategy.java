@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning;
+
+import com.openiot.OpenIoT;
+import com.openiot.device.provisioning.overload.FlowControlGate;
+import com.openiot.device.provisioning.ringbuffer.InboundEventRingBuffer;
+import com.openiot.device.provisioning.ringbuffer.InboundEventSlot;
+import com.openiot.device.provisioning.ringbuffer.WaitStrategy;
+import com.openiot.server.concurrent.ExecutorFactory;
+import com.openiot.server.concurrent.ThreadingMode;
+import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.server.metrics.PipelineLatencyMetrics;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.processor.IInboundEventProcessorChain;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+import com.openiot.spi.device.provisioning.IInboundFlowControl;
+import com.openiot.spi.device.provisioning.IInboundProcessingStrategy;
+import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import com.openiot.spi.system.ILatencyHistogram;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of {@link IInboundProcessingStrategy} that hands decoded events to the
+ * {@link IInboundEventProcessorChain} through a preallocated
+ * {@link InboundEventRingBuffer} rather than a lock-based queue. Publishers always wait
+ * for a free slot, so receivers should use {@link IInboundFlowControl} to pause before
+ * the ring fills.
+ *
+ * @author Derek
+ */
+public class RingBufferInboundProcessingStrategy extends LifecycleComponent implements
+		IInboundProcessingStrategy, IInboundFlowControl {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(RingBufferInboundProcessingStrategy.class);
+
+	/** Default number of slots in the ring buffer */
+	private static final int DEFAULT_RING_BUFFER_SIZE = 16384;
+
+	/** Default number of threads used for event processing */
+	private static final int DEFAULT_EVENT_PROCESSOR_THREAD_COUNT = 20;
+
+	/** Interval between monitoring log output messages */
+	private static final int MONITORING_INTERVAL_SEC = 5;
+
+	/** Number of slots in the ring buffer (must be a power of two) */
+	private int ringBufferSize = DEFAULT_RING_BUFFER_SIZE;
+
+	/** Number of threads used for event processing */
+	private int eventProcessorThreadCount = DEFAULT_EVENT_PROCESSOR_THREAD_COUNT;
+
+	/** Indicates whether processing threads are platform or virtual threads */
+	private ThreadingMode threadingMode = ThreadingMode.Platform;
+
+	/** Strategy used by threads waiting on the ring buffer */
+	private WaitStrategy waitStrategy = WaitStrategy.Blocking;
+
+	/** Backlog at which receivers are asked to pause (defaults to 90% of ring) */
+	private int highWaterMark = -1;
+
+	/** Backlog at which paused receivers resume (defaults to 50% of ring) */
+	private int lowWaterMark = -1;
+
+	/** Indicates whether monitoring messages should be logged */
+	private boolean enableMonitoring = false;
+
+	/** Number of seconds between monitoring messages */
+	private int monitoringIntervalSec = MONITORING_INTERVAL_SEC;
+
+	/** Counter for number of events */
+	private AtomicLong eventCount = new AtomicLong();
+
+	/** Counter for number of errors */
+	private AtomicLong errorCount = new AtomicLong();
+
+	/** Time events wait in the ring buffer */
+	private ILatencyHistogram queueWaitLatency;
+
+	/** Time spent in the inbound processor chain */
+	private ILatencyHistogram chainLatency;
+
+	/** Ring buffer holding events waiting to be processed */
+	private InboundEventRingBuffer ringBuffer;
+
+	/** Tells receivers when to pause consumption */
+	private FlowControlGate flowControl;
+
+	/** Thread pool for processing events */
+	private ExecutorService processorPool;
+
+	/** Pool for monitoring thread */
+	private ExecutorService monitorPool;
+
+	public RingBufferInboundProcessingStrategy() {
+		super(LifecycleComponentType.InboundProcessingStrategy);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		queueWaitLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+						PipelineLatencyMetrics.STAGE_QUEUE_WAIT);
+		chainLatency =
+				OpenIoT.getServer().getPipelineLatencyMetrics().getHistogram(
+						PipelineLatencyMetrics.STAGE_INBOUND_CHAIN);
+		try {
+			ringBuffer = new InboundEventRingBuffer(getRingBufferSize(), getWaitStrategy());
+		} catch (IllegalArgumentException e) {
+			throw new OpenIoTException(e.getMessage(), e);
+		}
+		int high = (getHighWaterMark() > 0) ? getHighWaterMark() : getRingBufferSize() * 9 / 10;
+		int low = (getLowWaterMark() >= 0) ? getLowWaterMark() : getRingBufferSize() / 2;
+		flowControl = new FlowControlGate(high, low) {
+
+			@Override
+			protected long getBacklog() {
+				return ringBuffer.getBacklog();
+			}
+		};
+		if ((getThreadingMode() == ThreadingMode.Virtual) && (getWaitStrategy() != WaitStrategy.Blocking)) {
+			LOGGER.warn("Virtual processing threads spin on their carrier threads with the '"
+					+ getWaitStrategy().getName() + "' wait strategy. Use 'blocking' instead.");
+		}
+		processorPool =
+				ExecutorFactory.newExecutor(getThreadingMode(), getEventProcessorThreadCount(),
+						"OpenIoT RingBufferInboundProcessingStrategy Processor ");
+		for (int i = 0; i < getEventProcessorThreadCount(); i++) {
+			processorPool.execute(new RingBufferEventProcessor());
+		}
+		LOGGER.info("Started ring buffer inbound processing strategy with " + getRingBufferSize()
+				+ " slots, " + getEventProcessorThreadCount() + " " + getThreadingMode().getName()
+				+ " threads and '" + getWaitStrategy().getName() + "' wait strategy.");
+
+		// Only show monitoring data if enabled.
+		if (isEnableMonitoring()) {
+			monitorPool = Executors.newSingleThreadExecutor();
+			monitorPool.execute(new MonitorOutput());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		if (processorPool != null) {
+			processorPool.shutdownNow();
+		}
+		if (monitorPool != null) {
+			monitorPool.shutdownNow();
+		}
+		LOGGER.info("Stopped ring buffer inbound processing strategy.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * IInboundProcessingStrategy#processRegistration
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processRegistration(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		publish(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IInboundProcessingStrategy#
+	 * processDeviceCommandResponse
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processDeviceCommandResponse(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		publish(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IInboundProcessingStrategy#
+	 * processDeviceMeasurements
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processDeviceMeasurements(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		publish(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * IInboundProcessingStrategy#processDeviceLocation
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processDeviceLocation(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		publish(request);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * IInboundProcessingStrategy#processDeviceAlert
+	 * (IDecodedDeviceEventRequest)
+	 */
+	@Override
+	public void processDeviceAlert(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		publish(request);
+	}
+
+	/**
+	 * Publishes an {@link IDecodedDeviceEventRequest} to the ring buffer, waiting if no
+	 * slot is available.
+	 *
+	 * @param request
+	 * @throws OpenIoTException
+	 */
+	protected void publish(IDecodedDeviceEventRequest request) throws OpenIoTException {
+		if (ringBuffer == null) {
+			throw new OpenIoTException("Ring buffer inbound processing strategy has not been started.");
+		}
+		try {
+			eventCount.incrementAndGet();
+			ringBuffer.publish(request);
+		} catch (InterruptedException e) {
+			errorCount.incrementAndGet();
+			Thread.currentThread().interrupt();
+			throw new OpenIoTException(e);
+		}
+	}
+
+	/**
+	 * Get the number of events processed.
+	 *
+	 * @return
+	 */
+	public long getEventCount() {
+		return eventCount.get();
+	}
+
+	/**
+	 * Get the number of errors in processing.
+	 *
+	 * @return
+	 */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	/**
+	 * Get the number of backlogged requests.
+	 *
+	 * @return
+	 */
+	public long getBacklog() {
+		return (ringBuffer != null) ? ringBuffer.getBacklog() : 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.device.provisioning.IInboundFlowControl#isAcceptingEvents()
+	 */
+	@Override
+	public boolean isAcceptingEvents() {
+		return (flowControl == null) || flowControl.isAcceptingEvents();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.device.provisioning.IInboundFlowControl#awaitCapacity(long)
+	 */
+	@Override
+	public boolean awaitCapacity(long timeoutMs) throws InterruptedException {
+		return (flowControl == null) || flowControl.awaitCapacity(timeoutMs);
+	}
+
+	public int getRingBufferSize() {
+		return ringBufferSize;
+	}
+
+	public void setRingBufferSize(int ringBufferSize) {
+		this.ringBufferSize = ringBufferSize;
+	}
+
+	public int getEventProcessorThreadCount() {
+		return eventProcessorThreadCount;
+	}
+
+	public void setEventProcessorThreadCount(int eventProcessorThreadCount) {
+		this.eventProcessorThreadCount = eventProcessorThreadCount;
+	}
+
+	public ThreadingMode getThreadingMode() {
+		return threadingMode;
+	}
+
+	public void setThreadingMode(ThreadingMode threadingMode) {
+		this.threadingMode = threadingMode;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	public int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public void setHighWaterMark(int highWaterMark) {
+		this.highWaterMark = highWaterMark;
+	}
+
+	public int getLowWaterMark() {
+		return lowWaterMark;
+	}
+
+	public void setLowWaterMark(int lowWaterMark) {
+		this.lowWaterMark = lowWaterMark;
+	}
+
+	public boolean isEnableMonitoring() {
+		return enableMonitoring;
+	}
+
+	public void setEnableMonitoring(boolean enableMonitoring) {
+		this.enableMonitoring = enableMonitoring;
+	}
+
+	public int getMonitoringIntervalSec() {
+		return monitoringIntervalSec;
+	}
+
+	public void setMonitoringIntervalSec(int monitoringIntervalSec) {
+		this.monitoringIntervalSec = monitoringIntervalSec;
+	}
+
+	/**
+	 * Logs monitor output at a given time interval.
+	 *
+	 * @author Derek
+	 */
+	private class MonitorOutput implements Runnable {
+
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					String message =
+							String.format("Count(%5d) Errors(%5d) Backlog(%5d) %s %s", getEventCount(),
+									getErrorCount(), getBacklog(),
+									PipelineLatencyMetrics.format(queueWaitLatency.getSummary()),
+									PipelineLatencyMetrics.format(chainLatency.getSummary()));
+					LOGGER.info(message);
+				} catch (Throwable e) {
+					LOGGER.error(e);
+				}
+				try {
+					Thread.sleep(getMonitoringIntervalSec() * 1000);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Thread that claims {@link IDecodedDeviceEventRequest} slots from the ring buffer
+	 * and processes them in place.
+	 *
+	 * @author Derek
+	 */
+	private class RingBufferEventProcessor implements Runnable {
+
+		@Override
+		public void run() {
+			InboundProcessingUtils.setSystemAuthentication();
+			while (true) {
+				long sequence;
+				try {
+					sequence = ringBuffer.take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				try {
+					InboundEventSlot slot = ringBuffer.get(sequence);
+					long processingStart = System.nanoTime();
+					queueWaitLatency.record(processingStart - slot.getPublishTime());
+
+					InboundProcessingUtils.dispatch(slot.getRequest(),
+							OpenIoT.getServer().getInboundEventProcessorChain());
+
+					chainLatency.record(System.nanoTime() - processingStart);
+				} catch (OpenIoTException e) {
+					errorCount.incrementAndGet();
+					LOGGER.error("Error processing inbound device event.", e);
+				} catch (Throwable e) {
+					errorCount.incrementAndGet();
+					LOGGER.error("Unhandled exception in inbound event processing.", e);
+				} finally {
+					ringBuffer.release(sequence);
+				}
+			}
+		}
+	}
+}
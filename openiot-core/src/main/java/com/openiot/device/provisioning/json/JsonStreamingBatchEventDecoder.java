@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.openiot.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.openiot.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.openiot.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.openiot.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.request.IDeviceEventCreateRequest;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventHandler;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+import com.openiot.spi.device.provisioning.IStreamingDeviceEventDecoder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the same JSON batch format as {@link JsonBatchEventDecoder}, but walks the
+ * payload with the Jackson token API. Each event object is bound on its own, so a
+ * complete batch object is never built. As with {@link JsonBatchEventDecoder}, a
+ * payload is accepted or rejected as a whole: events are held until the payload has
+ * parsed cleanly and are then handed off in document order, and unknown batch fields
+ * are rejected.
+ *
+ * @author Derek
+ */
+public class JsonStreamingBatchEventDecoder implements IStreamingDeviceEventDecoder<byte[]> {
+
+	/** Batch field containing the hardware id */
+	private static final String HARDWARE_ID = "hardwareId";
+
+	/** Batch field containing measurements */
+	private static final String MEASUREMENTS = "measurements";
+
+	/** Batch field containing locations */
+	private static final String LOCATIONS = "locations";
+
+	/** Batch field containing alerts */
+	private static final String ALERTS = "alerts";
+
+	/** Shared mapper */
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/** Factory that recycles parser buffers per thread */
+	private static final JsonFactory FACTORY = MAPPER.getJsonFactory();
+
+	/** Reader for measurements */
+	private static final ObjectReader MEASUREMENTS_READER = MAPPER.reader(DeviceMeasurementsCreateRequest.class);
+
+	/** Reader for locations */
+	private static final ObjectReader LOCATIONS_READER = MAPPER.reader(DeviceLocationCreateRequest.class);
+
+	/** Reader for alerts */
+	private static final ObjectReader ALERTS_READER = MAPPER.reader(DeviceAlertCreateRequest.class);
+
+	/** Per-thread list of events waiting for the payload to finish parsing */
+	private static final ThreadLocal<List<DecodedDeviceEventRequest>> PENDING =
+			new ThreadLocal<List<DecodedDeviceEventRequest>>() {
+
+				protected List<DecodedDeviceEventRequest> initialValue() {
+					return new ArrayList<DecodedDeviceEventRequest>();
+				}
+			};
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IDeviceEventDecoder#decode(java.lang.Object, java.util.Map)
+	 */
+	@Override
+	public List<IDecodedDeviceEventRequest> decode(byte[] payload, Map context) throws OpenIoTException {
+		final List<IDecodedDeviceEventRequest> events = new ArrayList<IDecodedDeviceEventRequest>();
+		decode(payload, context, new IDecodedDeviceEventHandler() {
+
+			@Override
+			public void onDecodedEvent(IDecodedDeviceEventRequest decoded) throws OpenIoTException {
+				events.add(decoded);
+			}
+		});
+		return events;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IStreamingDeviceEventDecoder#decode(java.lang.Object, java.util.Map,
+	 * IDecodedDeviceEventHandler)
+	 */
+	@Override
+	public void decode(byte[] payload, Map context, IDecodedDeviceEventHandler handler) throws OpenIoTException {
+		List<DecodedDeviceEventRequest> pending = PENDING.get();
+		pending.clear();
+		JsonParser parser = null;
+		try {
+			parser = FACTORY.createJsonParser(payload);
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new OpenIoTException("Expected JSON object for event batch.");
+			}
+			String hardwareId = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (HARDWARE_ID.equals(field)) {
+					hardwareId = (value == JsonToken.VALUE_NULL) ? null : parser.getText();
+				} else if (MEASUREMENTS.equals(field)) {
+					readEvents(parser, MEASUREMENTS_READER, pending);
+				} else if (LOCATIONS.equals(field)) {
+					readEvents(parser, LOCATIONS_READER, pending);
+				} else if (ALERTS.equals(field)) {
+					readEvents(parser, ALERTS_READER, pending);
+				} else {
+					throw new OpenIoTException("Unrecognized field in event batch: " + field);
+				}
+			}
+			if (parser.getCurrentToken() != JsonToken.END_OBJECT) {
+				throw new OpenIoTException("Unexpected end of event batch.");
+			}
+			for (DecodedDeviceEventRequest decoded : pending) {
+				decoded.setHardwareId(hardwareId);
+				handler.onDecodedEvent(decoded);
+			}
+		} catch (IOException e) {
+			throw new OpenIoTException(e);
+		} finally {
+			pending.clear();
+			if (parser != null) {
+				try {
+					parser.close();
+				} catch (IOException e) {
+					// Nothing to release for an in-memory payload.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bind each object in an array of events and add it to the list of pending events.
+	 *
+	 * @param parser
+	 * @param reader
+	 * @param pending
+	 * @throws IOException
+	 * @throws OpenIoTException
+	 */
+	protected void readEvents(JsonParser parser, ObjectReader reader, List<DecodedDeviceEventRequest> pending)
+			throws IOException, OpenIoTException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+			return;
+		}
+		if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+			throw new OpenIoTException("Expected JSON array of events.");
+		}
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			IDeviceEventCreateRequest request = reader.readValue(parser);
+			DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
+			decoded.setRequest(request);
+			pending.add(decoded);
+		}
+		if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+			throw new OpenIoTException("Expected JSON object for event.");
+		}
+	}
+}
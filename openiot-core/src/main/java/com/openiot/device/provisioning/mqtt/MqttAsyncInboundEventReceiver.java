@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.mqtt;
+
+import com.openiot.spi.OpenIoTException;
+import org.apache.log4j.Logger;
+import org.fusesource.hawtbuf.Buffer;
+import org.fusesource.hawtbuf.UTF8Buffer;
+import org.fusesource.mqtt.client.Callback;
+import org.fusesource.mqtt.client.CallbackConnection;
+import org.fusesource.mqtt.client.Listener;
+import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.Topic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * MQTT receiver built on the fusesource callback connection. The broker pushes messages
+ * to the connection. Up to {@link #getMaxInFlight()} messages per connection are held
+ * without being acknowledged. Each message is acknowledged only after it has been handed
+ * to the event source. While the in-flight window is full, reading from the socket is
+ * suspended, so the backlog stays on the broker.
+ *
+ * Several connections may be opened. When a shared subscription group is configured,
+ * each connection subscribes as a member of that group and the broker spreads messages
+ * across them. Messages for a connection are handed off in the order they arrive.
+ *
+ * @author Derek
+ */
+public class MqttAsyncInboundEventReceiver extends MqttInboundEventReceiver {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(MqttAsyncInboundEventReceiver.class);
+
+	/** Default number of unacknowledged messages per connection */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+	/** Context key for the topic a message was published on */
+	public static final String TOPIC_KEY = "mqttTopic";
+
+	/** Time to wait for connect and subscribe to complete */
+	private static final long CONNECT_TIMEOUT_MS = 30000;
+
+	/** Maximum number of unacknowledged messages per connection */
+	private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+	/** Number of broker connections */
+	private int connectionCount = 1;
+
+	/** Shared subscription group (null for a normal subscription) */
+	private String sharedSubscriptionGroup;
+
+	/** Active consumers */
+	private List<Consumer> consumers = new ArrayList<Consumer>();
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.provisioning.mqtt.MqttInboundEventReceiver#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		if ((getConnectionCount() > 1) && (getSharedSubscriptionGroup() == null)) {
+			LOGGER.warn("Multiple MQTT connections without a shared subscription group will each "
+					+ "receive every message.");
+		}
+		Topic[] topics = getSubscriptions();
+		try {
+			for (int i = 0; i < getConnectionCount(); i++) {
+				String id = getClientId();
+				if ((id != null) && (getConnectionCount() > 1)) {
+					id = id + "-" + i;
+				}
+				Consumer consumer = new Consumer(i, createMqtt(id));
+				consumers.add(consumer);
+				consumer.connect(topics);
+			}
+		} catch (OpenIoTException e) {
+			// Close connections already made since stop() is not called after a failed start.
+			stop();
+			throw e;
+		}
+		LOGGER.info("Receiver subscribed to MQTT topics '" + getTopic() + "' with " + getConnectionCount()
+				+ " connection(s).");
+	}
+
+	/**
+	 * Get subscriptions, adding the shared subscription prefix if a group is configured.
+	 *
+	 * @see com.openiot.device.provisioning.mqtt.MqttInboundEventReceiver#getSubscriptions()
+	 */
+	@Override
+	protected Topic[] getSubscriptions() {
+		Topic[] topics = super.getSubscriptions();
+		if (getSharedSubscriptionGroup() == null) {
+			return topics;
+		}
+		for (int i = 0; i < topics.length; i++) {
+			topics[i] =
+					new Topic("$share/" + getSharedSubscriptionGroup() + "/" + topics[i].name().toString(),
+							topics[i].qos());
+		}
+		return topics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.provisioning.mqtt.MqttInboundEventReceiver#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		for (Consumer consumer : consumers) {
+			consumer.disconnect();
+		}
+		consumers.clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.device.provisioning.mqtt.MqttInboundEventReceiver#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/**
+	 * Get the number of messages received but not yet acknowledged.
+	 *
+	 * @return
+	 */
+	public int getInFlightCount() {
+		int total = 0;
+		for (Consumer consumer : consumers) {
+			total += consumer.inFlight.get();
+		}
+		return total;
+	}
+
+	/**
+	 * A single broker connection and the thread that hands its messages to the event
+	 * source.
+	 *
+	 * @author Derek
+	 */
+	private class Consumer implements Listener {
+
+		/** Connection index */
+		private final int index;
+
+		/** Callback connection */
+		private final CallbackConnection connection;
+
+		/** Hands messages to the event source in arrival order */
+		private final ExecutorService worker;
+
+		/** Messages received but not yet acknowledged */
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		/** Indicates whether socket reads are suspended */
+		private final AtomicBoolean suspended = new AtomicBoolean();
+
+		public Consumer(int index, MQTT mqtt) {
+			this.index = index;
+			this.connection = mqtt.callbackConnection();
+			this.worker = Executors.newSingleThreadExecutor(new ConsumerThreadFactory(index));
+			connection.listener(this);
+		}
+
+		/**
+		 * Connect and subscribe, waiting for both to complete.
+		 *
+		 * @param topics
+		 * @throws OpenIoTException
+		 */
+		public void connect(final Topic[] topics) throws OpenIoTException {
+			final CountDownLatch done = new CountDownLatch(1);
+			final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			connection.connect(new Callback<Void>() {
+
+				public void onSuccess(Void value) {
+					connection.subscribe(topics, new Callback<byte[]>() {
+
+						public void onSuccess(byte[] qos) {
+							done.countDown();
+						}
+
+						public void onFailure(Throwable e) {
+							failure.set(e);
+							done.countDown();
+						}
+					});
+				}
+
+				public void onFailure(Throwable e) {
+					failure.set(e);
+					done.countDown();
+				}
+			});
+			try {
+				if (!done.await(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+					throw new OpenIoTException("Timed out connecting to MQTT broker at " + getHostname() + ":"
+							+ getPort());
+				}
+			} catch (InterruptedException e) {
+				throw new OpenIoTException("Interrupted while connecting to MQTT broker.", e);
+			}
+			if (failure.get() != null) {
+				throw new OpenIoTException("Unable to connect and subscribe to MQTT broker.", failure.get());
+			}
+		}
+
+		/**
+		 * Disconnect from the broker and stop handing off messages. Messages that arrive
+		 * before the disconnect completes are left unacknowledged.
+		 */
+		public void disconnect() {
+			connection.disconnect(new Callback<Void>() {
+
+				public void onSuccess(Void value) {
+				}
+
+				public void onFailure(Throwable e) {
+					LOGGER.error("Error shutting down MQTT device event receiver.", e);
+				}
+			});
+			worker.shutdownNow();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.fusesource.mqtt.client.Listener#onPublish(org.fusesource.hawtbuf.UTF8Buffer,
+		 * org.fusesource.hawtbuf.Buffer, java.lang.Runnable)
+		 */
+		public void onPublish(UTF8Buffer topic, Buffer body, final Runnable ack) {
+			final byte[] payload = body.toByteArray();
+			final String name = topic.toString();
+			if ((inFlight.incrementAndGet() >= getMaxInFlight()) && suspended.compareAndSet(false, true)) {
+				connection.suspend();
+			}
+			try {
+				worker.execute(new Runnable() {
+
+					public void run() {
+						try {
+							waitForCapacity();
+							Map<String, Object> context = new HashMap<String, Object>();
+							context.put(TOPIC_KEY, name);
+							onEventPayloadReceived(payload, context);
+							connection.getDispatchQueue().execute(ack);
+						} catch (InterruptedException e) {
+							// Leave unacknowledged so the broker redelivers it.
+							return;
+						} catch (Throwable e) {
+							LOGGER.error("Unable to process MQTT message.", e);
+							connection.getDispatchQueue().execute(ack);
+						} finally {
+							onHandedOff();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// Stopping, so leave unacknowledged for the broker to redeliver.
+				inFlight.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Resume reading once the in-flight window has drained to half.
+		 */
+		protected void onHandedOff() {
+			if ((inFlight.decrementAndGet() <= (getMaxInFlight() / 2)) && suspended.compareAndSet(true, false)) {
+				connection.getDispatchQueue().execute(new Runnable() {
+
+					public void run() {
+						connection.resume();
+					}
+				});
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.fusesource.mqtt.client.Listener#onConnected()
+		 */
+		public void onConnected() {
+			LOGGER.info("MQTT connection " + index + " connected to " + getHostname() + ":" + getPort() + ".");
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.fusesource.mqtt.client.Listener#onDisconnected()
+		 */
+		public void onDisconnected() {
+			LOGGER.warn("MQTT connection " + index + " disconnected from " + getHostname() + ":" + getPort()
+					+ ".");
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.fusesource.mqtt.client.Listener#onFailure(java.lang.Throwable)
+		 */
+		public void onFailure(Throwable e) {
+			LOGGER.error("MQTT connection " + index + " failed.", e);
+		}
+	}
+
+	/** Used for naming consumer threads */
+	private class ConsumerThreadFactory implements ThreadFactory {
+
+		/** Connection index */
+		private final int index;
+
+		public ConsumerThreadFactory(int index) {
+			this.index = index;
+		}
+
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "OpenIoT MQTT(" + getEventSource().getSourceId() + " - " + getTopic()
+					+ ") Consumer " + index);
+		}
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	public int getConnectionCount() {
+		return connectionCount;
+	}
+
+	public void setConnectionCount(int connectionCount) {
+		this.connectionCount = connectionCount;
+	}
+
+	public String getSharedSubscriptionGroup() {
+		return sharedSubscriptionGroup;
+	}
+
+	public void setSharedSubscriptionGroup(String sharedSubscriptionGroup) {
+		this.sharedSubscriptionGroup = sharedSubscriptionGroup;
+	}
+}
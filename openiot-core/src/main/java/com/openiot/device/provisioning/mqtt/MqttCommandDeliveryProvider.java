@@ -62,12 +62,7 @@ public class MqttCommandDeliveryProvider extends LifecycleComponent implements
 	 */
 	@Override
 	public void start() throws OpenIoTException {
-		this.mqtt = new MQTT();
-		try {
-			mqtt.setHost(getHostname(), getPort());
-		} catch (URISyntaxException e) {
-			throw new OpenIoTException("Invalid hostname for MQTT server.", e);
-		}
+		this.mqtt = createMqtt();
 		LOGGER.info("Connecting to MQTT broker at '" + getHostname() + ":" + getPort() + "'...");
 		connection = mqtt.blockingConnection();
 		try {
@@ -78,6 +73,22 @@ public class MqttCommandDeliveryProvider extends LifecycleComponent implements
 		LOGGER.info("Connected to MQTT broker.");
 	}
 
+	/**
+	 * Create MQTT client configured for the broker.
+	 * 
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	protected MQTT createMqtt() throws OpenIoTException {
+		MQTT result = new MQTT();
+		try {
+			result.setHost(getHostname(), getPort());
+		} catch (URISyntaxException e) {
+			throw new OpenIoTException("Invalid hostname for MQTT server.", e);
+		}
+		return result;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -95,6 +106,14 @@ public class MqttCommandDeliveryProvider extends LifecycleComponent implements
 	 */
 	@Override
 	public void stop() throws OpenIoTException {
+		if (connection != null) {
+			try {
+				connection.disconnect();
+			} catch (Exception e) {
+				LOGGER.error("Error disconnecting from MQTT broker.", e);
+			}
+			connection = null;
+		}
 	}
 
 	/*
@@ -11,6 +11,8 @@ import com.openiot.server.lifecycle.LifecycleComponent;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.device.provisioning.IInboundEventReceiver;
 import com.openiot.spi.device.provisioning.IInboundEventSource;
+import com.openiot.spi.device.provisioning.IInboundFlowControl;
+import com.openiot.spi.device.provisioning.IInboundProcessingStrategy;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
 import org.apache.log4j.Logger;
 import org.fusesource.mqtt.client.*;
@@ -25,7 +27,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of {@link IInboundEventReceiver} that subscribes to an MQTT topic and
- * pulls the message contents into OpenIoT for processing.
+ * pulls the message contents into OpenIoT for processing. Messages are acknowledged
+ * only after they have been handed to the inbound processing strategy, or once handing
+ * them off has failed so they are not redelivered forever. If the strategy
+ * supports {@link IInboundFlowControl}, consumption pauses while it is overloaded so the
+ * broker holds the backlog rather than the server.
  * 
  * @author Derek
  */
@@ -43,6 +49,9 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 	/** Default subscribed topic name */
 	public static final String DEFAULT_TOPIC = "OpenIoT/input/protobuf";
 
+	/** Time to wait for processing capacity before logging that consumption is paused */
+	private static final long FLOW_CONTROL_WAIT_MS = 1000;
+
 	/** Parent event source */
 	private IInboundEventSource<byte[]> eventSource;
 
@@ -52,9 +61,15 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 	/** Port */
 	private int port = DEFAULT_PORT;
 
-	/** Topic name */
+	/** Topic filter, or a comma-separated list of filters (wildcards are allowed) */
 	private String topic = DEFAULT_TOPIC;
 
+	/** Client id for a persistent session (null for a clean session with a generated id) */
+	private String clientId;
+
+	/** Indicates whether consumption pauses while the processing strategy is overloaded */
+	private boolean pauseWhenOverloaded = true;
+
 	/** MQTT client */
 	private MQTT mqtt;
 
@@ -75,12 +90,7 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 	 */
 	@Override
 	public void start() throws OpenIoTException {
-		this.mqtt = new MQTT();
-		try {
-			mqtt.setHost(getHostname(), getPort());
-		} catch (URISyntaxException e) {
-			throw new OpenIoTException("Invalid hostname for MQTT server.", e);
-		}
+		this.mqtt = createMqtt(getClientId());
 		LOGGER.info("Receiver connecting to MQTT broker at '" + getHostname() + ":" + getPort() + "'...");
 		connection = mqtt.blockingConnection();
 		try {
@@ -90,8 +100,8 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 		}
 		LOGGER.info("Receiver connected to MQTT broker.");
 
-		// Subscribe to chosen topic.
-		Topic[] topics = { new Topic(getTopic(), QoS.AT_LEAST_ONCE) };
+		// Subscribe to chosen topics.
+		Topic[] topics = getSubscriptions();
 		try {
 			connection.subscribe(topics);
 			LOGGER.info("Subscribed to events on MQTT topic: " + getTopic());
@@ -104,6 +114,55 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 		executor.execute(new MqttSubscriptionProcessor());
 	}
 
+	/**
+	 * Create an MQTT client configured for the broker. A client id turns off clean
+	 * sessions so the broker keeps unacknowledged messages while the server is down.
+	 * 
+	 * @param clientId
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	protected MQTT createMqtt(String clientId) throws OpenIoTException {
+		MQTT client = new MQTT();
+		try {
+			client.setHost(getHostname(), getPort());
+		} catch (URISyntaxException e) {
+			throw new OpenIoTException("Invalid hostname for MQTT server.", e);
+		}
+		if (clientId != null) {
+			client.setClientId(clientId);
+			client.setCleanSession(false);
+		}
+		return client;
+	}
+
+	/**
+	 * Get the topic filters to subscribe to.
+	 * 
+	 * @return
+	 */
+	protected String[] getTopicFilters() {
+		String[] filters = getTopic().split(",");
+		for (int i = 0; i < filters.length; i++) {
+			filters[i] = filters[i].trim();
+		}
+		return filters;
+	}
+
+	/**
+	 * Get subscriptions for all topic filters.
+	 * 
+	 * @return
+	 */
+	protected Topic[] getSubscriptions() {
+		String[] filters = getTopicFilters();
+		Topic[] topics = new Topic[filters.length];
+		for (int i = 0; i < filters.length; i++) {
+			topics[i] = new Topic(filters[i], QoS.AT_LEAST_ONCE);
+		}
+		return topics;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -159,19 +218,54 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 		public void run() {
 			LOGGER.info("Started MQTT subscription processing thread.");
 			while (true) {
+				Message message;
 				try {
-					Message message = connection.receive();
-					message.ack();
+					message = connection.receive();
+				} catch (InterruptedException e) {
+					break;
+				} catch (Throwable e) {
+					LOGGER.error("Unable to receive MQTT message.", e);
+					continue;
+				}
+				try {
+					waitForCapacity();
 					onEventPayloadReceived(message.getPayload(), new HashMap());
 				} catch (InterruptedException e) {
+					// Not acknowledged, so the broker redelivers it to the next session.
 					break;
 				} catch (Throwable e) {
-					LOGGER.error(e);
+					// Acknowledge anyway so a message that can not be processed is not
+					// redelivered forever.
+					LOGGER.error("Unable to process MQTT message. Message will be dropped.", e);
 				}
+				message.ack();
 			}
 		}
 	}
 
+	/**
+	 * Blocks while the inbound processing strategy reports that it is overloaded.
+	 * 
+	 * @throws InterruptedException
+	 */
+	protected void waitForCapacity() throws InterruptedException {
+		if (!isPauseWhenOverloaded()) {
+			return;
+		}
+		IInboundProcessingStrategy strategy = getEventSource().getInboundProcessingStrategy();
+		if (!(strategy instanceof IInboundFlowControl)) {
+			return;
+		}
+		IInboundFlowControl flow = (IInboundFlowControl) strategy;
+		if (flow.awaitCapacity(FLOW_CONTROL_WAIT_MS)) {
+			return;
+		}
+		LOGGER.warn("Inbound processing overloaded. Pausing consumption from MQTT topic: " + getTopic());
+		while (!flow.awaitCapacity(FLOW_CONTROL_WAIT_MS)) {
+		}
+		LOGGER.info("Resuming consumption from MQTT topic: " + getTopic());
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -231,4 +325,20 @@ public class MqttInboundEventReceiver extends LifecycleComponent implements IInb
 	public void setTopic(String topic) {
 		this.topic = topic;
 	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	public void setClientId(String clientId) {
+		this.clientId = clientId;
+	}
+
+	public boolean isPauseWhenOverloaded() {
+		return pauseWhenOverloaded;
+	}
+
+	public void setPauseWhenOverloaded(boolean pauseWhenOverloaded) {
+		this.pauseWhenOverloaded = pauseWhenOverloaded;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.mqtt;
+
+import com.openiot.device.provisioning.CommandResponseDeliveryListener;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDeviceAssignment;
+import com.openiot.spi.device.IDeviceNestingContext;
+import com.openiot.spi.device.command.IDeviceCommandExecution;
+import com.openiot.spi.device.provisioning.IAsynchronousCommandDeliveryProvider;
+import com.openiot.spi.device.provisioning.ICommandDeliveryListener;
+import org.apache.log4j.Logger;
+import org.fusesource.mqtt.client.Callback;
+import org.fusesource.mqtt.client.CallbackConnection;
+import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.QoS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * MQTT delivery provider that publishes over a pool of callback connections without
+ * waiting for each PUBACK. Up to {@link #getMaxInFlight()} publishes per connection may
+ * be unacknowledged at once. When the window is full, {@link #deliver} blocks until the
+ * broker acknowledges an earlier publish.
+ * 
+ * Delivery outcomes are passed to the configured {@link ICommandDeliveryListener} on a
+ * notifier thread once the broker responds, or to the callback given for the delivery
+ * if one was passed. Commands for a topic always use the same
+ * connection, so they reach the broker in the order they were delivered.
+ * 
+ * @author Derek
+ */
+public class MqttPipelinedCommandDeliveryProvider extends MqttCommandDeliveryProvider implements
+		IAsynchronousCommandDeliveryProvider<byte[], MqttParameters> {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(MqttPipelinedCommandDeliveryProvider.class);
+
+	/** Default number of broker connections */
+	public static final int DEFAULT_CONNECTION_COUNT = 4;
+
+	/** Default number of unacknowledged publishes per connection */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+
+	/** Time to wait for connect to complete */
+	private static final long CONNECT_TIMEOUT_MS = 30000;
+
+	/** Default time to wait for space in the in-flight window */
+	public static final long DEFAULT_WINDOW_TIMEOUT_MS = 30000;
+
+	/** Number of broker connections */
+	private int connectionCount = DEFAULT_CONNECTION_COUNT;
+
+	/** Maximum number of unacknowledged publishes per connection */
+	private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+	/** Time to wait for space in the in-flight window */
+	private long windowTimeoutMs = DEFAULT_WINDOW_TIMEOUT_MS;
+
+	/** Receives delivery outcomes */
+	private ICommandDeliveryListener deliveryListener = new CommandResponseDeliveryListener();
+
+	/** Active publishers */
+	private List<Publisher> publishers = new ArrayList<Publisher>();
+
+	/** Passes delivery outcomes to the listener off the connection threads */
+	private ExecutorService notifier;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.device.provisioning.mqtt.MqttCommandDeliveryProvider#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		notifier = Executors.newSingleThreadExecutor(new NotifierThreadFactory());
+		LOGGER.info("Connecting to MQTT broker at '" + getHostname() + ":" + getPort() + "' with "
+				+ getConnectionCount() + " connection(s)...");
+		for (int i = 0; i < getConnectionCount(); i++) {
+			Publisher publisher = new Publisher(i, createMqtt());
+			publishers.add(publisher);
+			publisher.connect();
+		}
+		LOGGER.info("Connected to MQTT broker.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.device.provisioning.mqtt.MqttCommandDeliveryProvider#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		for (Publisher publisher : publishers) {
+			publisher.disconnect();
+		}
+		publishers.clear();
+		if (notifier != null) {
+			notifier.shutdown();
+			try {
+				notifier.awaitTermination(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				LOGGER.warn("Interrupted while waiting for delivery notifications.");
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.device.provisioning.mqtt.MqttCommandDeliveryProvider#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.openiot.device.provisioning.mqtt.MqttCommandDeliveryProvider#deliver(IDeviceNestingContext
+	 * , IDeviceAssignment, IDeviceCommandExecution, byte[], MqttParameters)
+	 */
+	@Override
+	public void deliver(IDeviceNestingContext nested, IDeviceAssignment assignment,
+			IDeviceCommandExecution execution, byte[] encoded, MqttParameters params)
+			throws OpenIoTException {
+		publish(params.getCommandTopic(), encoded, execution, assignment, getDeliveryListener());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * IAsynchronousCommandDeliveryProvider#deliver(IDeviceNestingContext, IDeviceAssignment,
+	 * IDeviceCommandExecution, java.lang.Object, java.lang.Object, ICommandDeliveryListener)
+	 */
+	@Override
+	public void deliver(IDeviceNestingContext nested, IDeviceAssignment assignment,
+			IDeviceCommandExecution execution, byte[] encoded, MqttParameters params,
+			ICommandDeliveryListener callback) throws OpenIoTException {
+		publish(params.getCommandTopic(), encoded, execution, assignment, callback);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.openiot.device.provisioning.mqtt.MqttCommandDeliveryProvider#deliverSystemCommand(
+	 * IDeviceNestingContext, IDeviceAssignment, byte[], MqttParameters)
+	 */
+	@Override
+	public void deliverSystemCommand(IDeviceNestingContext nested, IDeviceAssignment assignment,
+			byte[] encoded, MqttParameters params) throws OpenIoTException {
+		publish(params.getSystemTopic(), encoded, null, assignment, getDeliveryListener());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * IAsynchronousCommandDeliveryProvider#deliverSystemCommand(IDeviceNestingContext,
+	 * IDeviceAssignment, java.lang.Object, java.lang.Object, ICommandDeliveryListener)
+	 */
+	@Override
+	public void deliverSystemCommand(IDeviceNestingContext nested, IDeviceAssignment assignment,
+			byte[] encoded, MqttParameters params, ICommandDeliveryListener callback)
+			throws OpenIoTException {
+		publish(params.getSystemTopic(), encoded, null, assignment, callback);
+	}
+
+	/**
+	 * Queue a publish on the connection for the topic once there is space in its window.
+	 * 
+	 * @param topic
+	 * @param encoded
+	 * @param execution
+	 * @param assignment
+	 * @param listener receives the outcome (may be null)
+	 * @throws OpenIoTException
+	 */
+	protected void publish(String topic, byte[] encoded, IDeviceCommandExecution execution,
+			IDeviceAssignment assignment, ICommandDeliveryListener listener) throws OpenIoTException {
+		if (publishers.isEmpty()) {
+			throw new OpenIoTException("MQTT command delivery provider is not started.");
+		}
+		Publisher publisher = publishers.get((topic.hashCode() & Integer.MAX_VALUE) % publishers.size());
+		try {
+			if (!publisher.window.tryAcquire(getWindowTimeoutMs(), TimeUnit.MILLISECONDS)) {
+				throw new OpenIoTException("Timed out waiting for MQTT in-flight window on connection "
+						+ publisher.index + ".");
+			}
+		} catch (InterruptedException e) {
+			throw new OpenIoTException("Interrupted while waiting for MQTT in-flight window.", e);
+		}
+		publisher.publish(topic, encoded, execution, assignment, listener);
+	}
+
+	/**
+	 * Get the number of publishes waiting for broker acknowledgement.
+	 * 
+	 * @return
+	 */
+	public int getInFlightCount() {
+		int total = 0;
+		for (Publisher publisher : publishers) {
+			total += getMaxInFlight() - publisher.window.availablePermits();
+		}
+		return total;
+	}
+
+	/**
+	 * Pass a delivery outcome to a listener on the notifier thread. If the provider has
+	 * been stopped, the listener is called on the current thread instead.
+	 * 
+	 * @param listener
+	 * @param execution
+	 * @param assignment
+	 * @param error null if delivery succeeded
+	 */
+	protected void notifyOutcome(final ICommandDeliveryListener listener,
+			final IDeviceCommandExecution execution, final IDeviceAssignment assignment,
+			final Throwable error) {
+		if (listener == null) {
+			if (error != null) {
+				LOGGER.error("Unable to publish command to MQTT topic.", error);
+			}
+			return;
+		}
+		Runnable notification = new Runnable() {
+
+			public void run() {
+				try {
+					if (error == null) {
+						listener.onDelivered(execution, assignment);
+					} else {
+						listener.onDeliveryFailed(execution, assignment, error);
+					}
+				} catch (Throwable e) {
+					LOGGER.error("Command delivery listener failed.", e);
+				}
+			}
+		};
+		try {
+			notifier.execute(notification);
+		} catch (RejectedExecutionException e) {
+			notification.run();
+		}
+	}
+
+	/**
+	 * A single broker connection and its in-flight window.
+	 * 
+	 * @author Derek
+	 */
+	private class Publisher {
+
+		/** Connection index */
+		private final int index;
+
+		/** Callback connection */
+		private final CallbackConnection connection;
+
+		/** Limits the number of unacknowledged publishes */
+		private final Semaphore window;
+
+		public Publisher(int index, MQTT mqtt) {
+			this.index = index;
+			this.connection = mqtt.callbackConnection();
+			this.window = new Semaphore(getMaxInFlight());
+		}
+
+		/**
+		 * Connect, waiting for the connection to complete.
+		 * 
+		 * @throws OpenIoTException
+		 */
+		public void connect() throws OpenIoTException {
+			final CountDownLatch done = new CountDownLatch(1);
+			final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			connection.connect(new Callback<Void>() {
+
+				public void onSuccess(Void value) {
+					done.countDown();
+				}
+
+				public void onFailure(Throwable e) {
+					failure.set(e);
+					done.countDown();
+				}
+			});
+			try {
+				if (!done.await(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+					throw new OpenIoTException("Timed out connecting to MQTT broker at " + getHostname() + ":"
+							+ getPort());
+				}
+			} catch (InterruptedException e) {
+				throw new OpenIoTException("Interrupted while connecting to MQTT broker.", e);
+			}
+			if (failure.get() != null) {
+				throw new OpenIoTException("Unable to establish MQTT connection.", failure.get());
+			}
+		}
+
+		/**
+		 * Publish on the connection dispatch queue. The window permit must already be held
+		 * and is released when the broker responds.
+		 * 
+		 * @param topic
+		 * @param encoded
+		 * @param execution
+		 * @param assignment
+		 * @param listener
+		 */
+		public void publish(final String topic, final byte[] encoded, final IDeviceCommandExecution execution,
+				final IDeviceAssignment assignment, final ICommandDeliveryListener listener) {
+			connection.getDispatchQueue().execute(new Runnable() {
+
+				public void run() {
+					connection.publish(topic, encoded, QoS.AT_LEAST_ONCE, false, new Callback<Void>() {
+
+						public void onSuccess(Void value) {
+							window.release();
+							notifyOutcome(listener, execution, assignment, null);
+						}
+
+						public void onFailure(Throwable e) {
+							window.release();
+							notifyOutcome(listener, execution, assignment, e);
+						}
+					});
+				}
+			});
+		}
+
+		/**
+		 * Disconnect from the broker. Unacknowledged publishes are reported as failed by the
+		 * connection.
+		 */
+		public void disconnect() {
+			connection.getDispatchQueue().execute(new Runnable() {
+
+				public void run() {
+					connection.disconnect(new Callback<Void>() {
+
+						public void onSuccess(Void value) {
+						}
+
+						public void onFailure(Throwable e) {
+							LOGGER.error("Error disconnecting MQTT connection " + index + ".", e);
+						}
+					});
+				}
+			});
+		}
+	}
+
+	/** Used for naming the notifier thread */
+	private class NotifierThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "OpenIoT MQTT Command Delivery (" + getHostname() + ":" + getPort()
+					+ ") Notifier");
+		}
+	}
+
+	public int getConnectionCount() {
+		return connectionCount;
+	}
+
+	public void setConnectionCount(int connectionCount) {
+		this.connectionCount = connectionCount;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	public long getWindowTimeoutMs() {
+		return windowTimeoutMs;
+	}
+
+	public void setWindowTimeoutMs(long windowTimeoutMs) {
+		this.windowTimeoutMs = windowTimeoutMs;
+	}
+
+	public ICommandDeliveryListener getDeliveryListener() {
+		return deliveryListener;
+	}
+
+	public void setDeliveryListener(ICommandDeliveryListener deliveryListener) {
+		this.deliveryListener = deliveryListener;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.overload;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.openiot.OpenIoT;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Counts events dropped by an {@link OverloadHandler}, keyed by the source of the event.
+ * Each key is registered as a counter in the server {@link MetricRegistry} under
+ * <code>[owner class].dropped.[key]</code>.
+ * 
+ * @author Derek
+ */
+public class DropCounter {
+
+	/** Key used when the source is not known */
+	public static final String UNKNOWN = "unknown";
+
+	/** Class that owns the counters */
+	private Class<?> owner;
+
+	/** Counters indexed by key */
+	private ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+	public DropCounter(Class<?> owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * Count a dropped event.
+	 * 
+	 * @param key
+	 */
+	public void increment(String key) {
+		key = (key != null) ? key : UNKNOWN;
+		Counter counter = counters.get(key);
+		if (counter == null) {
+			Counter created = OpenIoT.getServer().getMetricRegistry().counter(getMetricName(key));
+			counter = counters.putIfAbsent(key, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.inc();
+	}
+
+	/**
+	 * Get number of dropped events for each key.
+	 * 
+	 * @return
+	 */
+	public Map<String, Long> getCounts() {
+		Map<String, Long> counts = new HashMap<String, Long>();
+		for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().getCount());
+		}
+		return counts;
+	}
+
+	/**
+	 * Get total number of dropped events.
+	 * 
+	 * @return
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (Counter counter : counters.values()) {
+			total += counter.getCount();
+		}
+		return total;
+	}
+
+	/**
+	 * Remove all counters from the metric registry.
+	 */
+	public void unregister() {
+		for (String key : counters.keySet()) {
+			OpenIoT.getServer().getMetricRegistry().remove(getMetricName(key));
+		}
+		counters.clear();
+	}
+
+	/**
+	 * Get metric name for a key.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	protected String getMetricName(String key) {
+		return MetricRegistry.name(owner, "dropped", key);
+	}
+}
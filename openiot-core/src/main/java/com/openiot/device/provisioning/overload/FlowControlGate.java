@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.overload;
+
+import com.openiot.spi.device.provisioning.IInboundFlowControl;
+
+/**
+ * Implementation of {@link IInboundFlowControl} driven by a backlog with high and low
+ * water marks. Once the backlog reaches the high water mark, events are not accepted
+ * again until it falls to the low water mark.
+ * 
+ * @author Derek
+ */
+public abstract class FlowControlGate implements IInboundFlowControl {
+
+	/** Longest sleep between backlog checks while waiting */
+	private static final long POLL_INTERVAL_MS = 10;
+
+	/** Backlog at which events stop being accepted */
+	private long highWaterMark;
+
+	/** Backlog at which events are accepted again */
+	private long lowWaterMark;
+
+	/** Indicates backlog has reached the high water mark */
+	private volatile boolean paused;
+
+	public FlowControlGate(long highWaterMark, long lowWaterMark) {
+		this.highWaterMark = highWaterMark;
+		this.lowWaterMark = Math.min(lowWaterMark, highWaterMark);
+	}
+
+	/**
+	 * Get the current backlog.
+	 * 
+	 * @return
+	 */
+	protected abstract long getBacklog();
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.device.provisioning.IInboundFlowControl#isAcceptingEvents()
+	 */
+	@Override
+	public boolean isAcceptingEvents() {
+		long backlog = getBacklog();
+		if (paused) {
+			if (backlog <= lowWaterMark) {
+				paused = false;
+			}
+		} else if (backlog >= highWaterMark) {
+			paused = true;
+		}
+		return !paused;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.device.provisioning.IInboundFlowControl#awaitCapacity(long)
+	 */
+	@Override
+	public boolean awaitCapacity(long timeoutMs) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		while (!isAcceptingEvents()) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			Thread.sleep(Math.min(POLL_INTERVAL_MS, remaining));
+		}
+		return true;
+	}
+
+	public long getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public long getLowWaterMark() {
+		return lowWaterMark;
+	}
+}
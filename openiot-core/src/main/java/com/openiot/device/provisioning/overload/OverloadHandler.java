@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.overload;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds entries to a bounded {@link BlockingQueue} according to an
+ * {@link OverloadPolicy}. Subclasses classify entries by event type and are notified of
+ * every entry that is dropped so drops can be counted.
+ * 
+ * @author Derek
+ * 
+ * @param <T>
+ */
+public abstract class OverloadHandler<T> {
+
+	/** Policy applied when the queue is full */
+	private OverloadPolicy policy;
+
+	/** Milliseconds to wait for space when blocking (0 waits forever) */
+	private long blockTimeoutMs;
+
+	/** Event types that may be dropped by the shed policy */
+	private Set<String> sheddableTypes = new HashSet<String>();
+
+	public OverloadHandler(OverloadPolicy policy, long blockTimeoutMs, Collection<String> sheddableTypes) {
+		this.policy = policy;
+		this.blockTimeoutMs = blockTimeoutMs;
+		if (sheddableTypes != null) {
+			this.sheddableTypes.addAll(sheddableTypes);
+		}
+	}
+
+	/**
+	 * Get the event type used to decide whether an entry may be shed.
+	 * 
+	 * @param entry
+	 * @return
+	 */
+	protected abstract String getEventType(T entry);
+
+	/**
+	 * Called for each entry dropped because the queue was full.
+	 * 
+	 * @param entry
+	 */
+	protected abstract void onDropped(T entry);
+
+	/**
+	 * Add an entry to the queue, applying the overload policy if it is full.
+	 * 
+	 * @param queue
+	 * @param entry
+	 * @return true if the entry was queued, false if it was dropped
+	 * @throws InterruptedException
+	 */
+	public boolean submit(BlockingQueue<T> queue, T entry) throws InterruptedException {
+		if (queue.offer(entry)) {
+			return true;
+		}
+		switch (policy) {
+		case Block: {
+			return block(queue, entry);
+		}
+		case DropOldest: {
+			while (!queue.offer(entry)) {
+				T oldest = queue.poll();
+				if (oldest != null) {
+					onDropped(oldest);
+				}
+			}
+			return true;
+		}
+		case DropNewest: {
+			onDropped(entry);
+			return false;
+		}
+		case ShedByType: {
+			if (isSheddable(entry)) {
+				onDropped(entry);
+				return false;
+			}
+			T victim = removeSheddable(queue);
+			if (victim != null) {
+				onDropped(victim);
+				if (queue.offer(entry)) {
+					return true;
+				}
+			}
+			return block(queue, entry);
+		}
+		}
+		return block(queue, entry);
+	}
+
+	/**
+	 * Wait for space in the queue, dropping the entry if the timeout expires.
+	 * 
+	 * @param queue
+	 * @param entry
+	 * @return
+	 * @throws InterruptedException
+	 */
+	protected boolean block(BlockingQueue<T> queue, T entry) throws InterruptedException {
+		if (blockTimeoutMs <= 0) {
+			queue.put(entry);
+			return true;
+		}
+		if (queue.offer(entry, blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+			return true;
+		}
+		onDropped(entry);
+		return false;
+	}
+
+	/**
+	 * Remove the oldest queued entry whose type may be shed.
+	 * 
+	 * @param queue
+	 * @return removed entry or null if none could be removed
+	 */
+	protected T removeSheddable(BlockingQueue<T> queue) {
+		Iterator<T> it = queue.iterator();
+		while (it.hasNext()) {
+			T candidate = it.next();
+			if (isSheddable(candidate) && queue.remove(candidate)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Indicates whether an entry may be dropped by the shed policy.
+	 * 
+	 * @param entry
+	 * @return
+	 */
+	protected boolean isSheddable(T entry) {
+		return sheddableTypes.contains(getEventType(entry));
+	}
+
+	public OverloadPolicy getPolicy() {
+		return policy;
+	}
+
+	public long getBlockTimeoutMs() {
+		return blockTimeoutMs;
+	}
+
+	public Set<String> getSheddableTypes() {
+		return sheddableTypes;
+	}
+}
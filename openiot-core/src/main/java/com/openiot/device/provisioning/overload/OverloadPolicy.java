@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.overload;
+
+/**
+ * Enumerates what a processing strategy does with an event when its queue is full.
+ * 
+ * @author Derek
+ */
+public enum OverloadPolicy {
+
+	/** Wait for space, dropping the event if the block timeout expires */
+	Block("block"),
+
+	/** Drop the oldest queued event to make room */
+	DropOldest("dropOldest"),
+
+	/** Drop the incoming event */
+	DropNewest("dropNewest"),
+
+	/** Drop events of sheddable types first, blocking for all other types */
+	ShedByType("shedByType");
+
+	/** Name used in configuration */
+	private String name;
+
+	private OverloadPolicy(String name) {
+		this.name = name;
+	}
+
+	public static OverloadPolicy getByName(String name) {
+		for (OverloadPolicy value : OverloadPolicy.values()) {
+			if (value.getName().equals(name)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.ringbuffer;
+
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring of preallocated {@link InboundEventSlot} entries shared between event
+ * receivers (producers) and processing threads (consumers). Each slot carries its own
+ * sequence number so producers and consumers only contend on the position counters,
+ * never on a shared lock. Each published event is consumed by exactly one consumer.
+ *
+ * Consumers process an event in place and must call {@link #release(long)} when
+ * done so the slot can be reused.
+ *
+ * @author Derek
+ */
+public class InboundEventRingBuffer {
+
+	/** Number of spins before a yielding wait gives up the processor */
+	private static final int YIELD_SPIN_TRIES = 100;
+
+	/** Bit mask used to map a sequence to a slot index */
+	private final int mask;
+
+	/** Preallocated slots */
+	private final InboundEventSlot[] slots;
+
+	/** Per-slot sequence used to track whether a slot is free or published */
+	private final AtomicLongArray sequences;
+
+	/** Next position to be claimed by a producer */
+	private final AtomicLong producerPosition = new AtomicLong();
+
+	/** Next position to be claimed by a consumer */
+	private final AtomicLong consumerPosition = new AtomicLong();
+
+	/** Strategy used when a thread has to wait */
+	private final WaitStrategy waitStrategy;
+
+	/** Lock used by the blocking wait strategy */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signaled whenever a slot sequence changes */
+	private final Condition sequenceChanged = lock.newCondition();
+
+	/** Number of threads parked on the condition */
+	private final AtomicInteger waiters = new AtomicInteger();
+
+	public InboundEventRingBuffer(int size, WaitStrategy waitStrategy) {
+		if ((size < 2) || (Integer.bitCount(size) != 1)) {
+			throw new IllegalArgumentException("Ring buffer size must be a power of two: " + size);
+		}
+		this.mask = size - 1;
+		this.waitStrategy = waitStrategy;
+		this.slots = new InboundEventSlot[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			slots[i] = new InboundEventSlot();
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Publish a request into the next free slot, waiting if the buffer is full.
+	 *
+	 * @param request
+	 * @throws InterruptedException
+	 */
+	public void publish(IDecodedDeviceEventRequest request) throws InterruptedException {
+		int tries = 0;
+		while (true) {
+			long position = producerPosition.get();
+			int index = (int) (position & mask);
+			long sequence = sequences.get(index);
+			long difference = sequence - position;
+			if (difference == 0) {
+				if (producerPosition.compareAndSet(position, position + 1)) {
+					InboundEventSlot slot = slots[index];
+					slot.setRequest(request);
+					slot.setPublishTime(System.nanoTime());
+					sequences.set(index, position + 1);
+					signalWaiters();
+					return;
+				}
+			} else if (difference < 0) {
+				// Slot still held by a consumer from the previous lap.
+				tries = waitForChange(index, sequence, tries);
+			}
+		}
+	}
+
+	/**
+	 * Claim the next published slot, waiting if none is available.
+	 *
+	 * @return sequence of the claimed slot
+	 * @throws InterruptedException
+	 */
+	public long take() throws InterruptedException {
+		int tries = 0;
+		while (true) {
+			long position = consumerPosition.get();
+			int index = (int) (position & mask);
+			long sequence = sequences.get(index);
+			long difference = sequence - (position + 1);
+			if (difference == 0) {
+				if (consumerPosition.compareAndSet(position, position + 1)) {
+					return position;
+				}
+			} else if (difference < 0) {
+				// Nothing published at this position yet.
+				tries = waitForChange(index, sequence, tries);
+			}
+		}
+	}
+
+	/**
+	 * Get the slot for a sequence returned by {@link #take()}.
+	 *
+	 * @param sequence
+	 * @return
+	 */
+	public InboundEventSlot get(long sequence) {
+		return slots[(int) (sequence & mask)];
+	}
+
+	/**
+	 * Return a slot claimed by {@link #take()} to producers.
+	 *
+	 * @param sequence
+	 */
+	public void release(long sequence) {
+		int index = (int) (sequence & mask);
+		slots[index].clear();
+		sequences.set(index, sequence + slots.length);
+		signalWaiters();
+	}
+
+	/**
+	 * Get the number of slots in the buffer.
+	 *
+	 * @return
+	 */
+	public int getSize() {
+		return slots.length;
+	}
+
+	/**
+	 * Get the approximate number of published events not yet claimed by a consumer.
+	 *
+	 * @return
+	 */
+	public long getBacklog() {
+		return Math.max(0, producerPosition.get() - consumerPosition.get());
+	}
+
+	/**
+	 * Wait for the sequence of a slot to move away from the observed value using the
+	 * configured {@link WaitStrategy}.
+	 *
+	 * @param index
+	 * @param observed
+	 * @param tries
+	 * @return updated number of tries
+	 * @throws InterruptedException
+	 */
+	protected int waitForChange(int index, long observed, int tries) throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		switch (waitStrategy) {
+		case BusySpin: {
+			return tries;
+		}
+		case Yielding: {
+			if (tries < YIELD_SPIN_TRIES) {
+				return tries + 1;
+			}
+			Thread.yield();
+			return tries;
+		}
+		case Blocking: {
+			lock.lockInterruptibly();
+			try {
+				waiters.incrementAndGet();
+				try {
+					// Checked after registering as a waiter so a concurrent publish either
+					// sees the waiter or is seen here.
+					while (sequences.get(index) == observed) {
+						sequenceChanged.await(1, TimeUnit.SECONDS);
+					}
+				} finally {
+					waiters.decrementAndGet();
+				}
+			} finally {
+				lock.unlock();
+			}
+			return tries;
+		}
+		}
+		return tries;
+	}
+
+	/**
+	 * Wake threads parked by the blocking wait strategy.
+	 */
+	protected void signalWaiters() {
+		if (waiters.get() > 0) {
+			lock.lock();
+			try {
+				sequenceChanged.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.ringbuffer;
+
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+
+/**
+ * Preallocated entry in an {@link InboundEventRingBuffer}. Slots are reused for the
+ * life of the buffer so that publishing an event does not allocate.
+ * 
+ * @author Derek
+ */
+public class InboundEventSlot {
+
+	/** Event request */
+	private IDecodedDeviceEventRequest request;
+
+	/** Time (in nanoseconds) at which the event was published */
+	private long publishTime;
+
+	/**
+	 * Drop references held by the slot so the request can be collected.
+	 */
+	public void clear() {
+		this.request = null;
+		this.publishTime = 0;
+	}
+
+	public IDecodedDeviceEventRequest getRequest() {
+		return request;
+	}
+
+	public void setRequest(IDecodedDeviceEventRequest request) {
+		this.request = request;
+	}
+
+	public long getPublishTime() {
+		return publishTime;
+	}
+
+	public void setPublishTime(long publishTime) {
+		this.publishTime = publishTime;
+	}
+}
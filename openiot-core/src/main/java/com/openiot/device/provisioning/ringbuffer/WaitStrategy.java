@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.ringbuffer;
+
+/**
+ * Enumerates the ways a thread may wait on an {@link InboundEventRingBuffer} when no
+ * slot is available.
+ * 
+ * @author Derek
+ */
+public enum WaitStrategy {
+
+	/** Spin on the sequence. Lowest latency, but burns a core per waiting thread */
+	BusySpin("busySpin"),
+
+	/** Spin briefly, then yield the processor between checks */
+	Yielding("yielding"),
+
+	/** Park on a lock condition until signaled. Lowest CPU usage */
+	Blocking("blocking");
+
+	/** Name used in configuration */
+	private String name;
+
+	private WaitStrategy(String name) {
+		this.name = name;
+	}
+
+	public static WaitStrategy getByName(String name) {
+		for (WaitStrategy value : WaitStrategy.values()) {
+			if (value.getName().equals(name)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
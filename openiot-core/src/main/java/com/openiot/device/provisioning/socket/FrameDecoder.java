@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.socket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Splits the bytes read from a single connection into payloads based on a
+ * {@link FrameFormat}. Bytes may arrive in arbitrary chunks, so the decoder keeps the
+ * partially read header and payload between calls. Not thread safe; each connection
+ * needs its own instance.
+ *
+ * @author Derek
+ */
+public class FrameDecoder {
+
+	/** Number of bytes in a length-prefixed header */
+	private static final int LENGTH_HEADER_SIZE = 4;
+
+	/** Maximum shift for a varint that still fits in an int */
+	private static final int MAX_VARINT_SHIFT = 28;
+
+	/** Format of the incoming bytes */
+	private final FrameFormat format;
+
+	/** Largest payload accepted */
+	private final int maxFrameSize;
+
+	/** Length value decoded so far */
+	private int length;
+
+	/** Number of header bytes read so far */
+	private int headerBytes;
+
+	/** Payload being filled, or null if reading a header */
+	private byte[] frame;
+
+	/** Number of payload bytes read so far */
+	private int position;
+
+	/** Collects the whole stream for {@link FrameFormat#EndOfStream} */
+	private ByteArrayOutputStream stream;
+
+	public FrameDecoder(FrameFormat format, int maxFrameSize) {
+		this.format = format;
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	/**
+	 * Consume all remaining bytes from the buffer, adding each completed payload to the
+	 * list. Empty frames are skipped so clients may send them as keepalives.
+	 *
+	 * @param in
+	 * @param frames
+	 * @throws IOException if the framing is invalid or a payload is too large
+	 */
+	public void decode(ByteBuffer in, List<byte[]> frames) throws IOException {
+		if (format == FrameFormat.EndOfStream) {
+			appendToStream(in);
+			return;
+		}
+		while (in.hasRemaining()) {
+			if (frame == null) {
+				if (!readHeader(in)) {
+					return;
+				}
+				int size = length;
+				length = 0;
+				headerBytes = 0;
+				if ((size < 0) || (size > maxFrameSize)) {
+					throw new IOException("Frame length " + size + " exceeds maximum of " + maxFrameSize + ".");
+				}
+				if (size == 0) {
+					continue;
+				}
+				frame = new byte[size];
+				position = 0;
+			}
+			int count = Math.min(in.remaining(), frame.length - position);
+			in.get(frame, position, count);
+			position += count;
+			if (position == frame.length) {
+				frames.add(frame);
+				frame = null;
+			}
+		}
+	}
+
+	/**
+	 * Called when the client closes the connection. Returns the payload for
+	 * {@link FrameFormat#EndOfStream}, or null if there is nothing to deliver.
+	 *
+	 * @return
+	 */
+	public byte[] finish() {
+		if ((format == FrameFormat.EndOfStream) && (stream != null) && (stream.size() > 0)) {
+			byte[] payload = stream.toByteArray();
+			stream = null;
+			return payload;
+		}
+		return null;
+	}
+
+	/**
+	 * Indicates whether a payload has been partially read.
+	 *
+	 * @return
+	 */
+	public boolean hasPartialFrame() {
+		return (frame != null) || (headerBytes > 0);
+	}
+
+	/**
+	 * Read header bytes until the payload length is known.
+	 *
+	 * @param in
+	 * @return true if the header is complete
+	 * @throws IOException
+	 */
+	protected boolean readHeader(ByteBuffer in) throws IOException {
+		switch (format) {
+		case LengthPrefixed: {
+			while ((headerBytes < LENGTH_HEADER_SIZE) && in.hasRemaining()) {
+				length = (length << 8) | (in.get() & 0xff);
+				headerBytes++;
+			}
+			return headerBytes == LENGTH_HEADER_SIZE;
+		}
+		case Varint: {
+			while (in.hasRemaining()) {
+				int shift = headerBytes * 7;
+				if (shift > MAX_VARINT_SHIFT) {
+					throw new IOException("Malformed varint frame length.");
+				}
+				byte value = in.get();
+				length |= (value & 0x7f) << shift;
+				headerBytes++;
+				if ((value & 0x80) == 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+		default: {
+			throw new IOException("Unsupported frame format: " + format.getName());
+		}
+		}
+	}
+
+	/**
+	 * Collect bytes until the end of the stream.
+	 *
+	 * @param in
+	 * @throws IOException
+	 */
+	protected void appendToStream(ByteBuffer in) throws IOException {
+		if (stream == null) {
+			stream = new ByteArrayOutputStream();
+		}
+		if (stream.size() + in.remaining() > maxFrameSize) {
+			throw new IOException("Payload exceeds maximum of " + maxFrameSize + " bytes.");
+		}
+		byte[] chunk = new byte[in.remaining()];
+		in.get(chunk);
+		stream.write(chunk, 0, chunk.length);
+	}
+}
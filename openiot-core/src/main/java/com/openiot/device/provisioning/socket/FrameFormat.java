@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.socket;
+
+/**
+ * Indicates how payloads are delimited on a socket connection. See {@link FrameDecoder}.
+ *
+ * @author Derek
+ */
+public enum FrameFormat {
+
+	/** Each payload is preceded by a four byte big-endian length */
+	LengthPrefixed("length"),
+
+	/**
+	 * Each payload is preceded by a varint length, as written by protobuf
+	 * <code>writeDelimitedTo()</code>
+	 */
+	Varint("varint"),
+
+	/** The connection carries a single payload that ends when the client closes it */
+	EndOfStream("eos");
+
+	/** Name used in configuration */
+	private String name;
+
+	private FrameFormat(String name) {
+		this.name = name;
+	}
+
+	public static FrameFormat getByName(String name) {
+		for (FrameFormat value : FrameFormat.values()) {
+			if (value.getName().equals(name)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,556 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.socket;
+
+import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.provisioning.IInboundEventReceiver;
+import com.openiot.spi.device.provisioning.IInboundEventSource;
+import com.openiot.spi.device.provisioning.IInboundFlowControl;
+import com.openiot.spi.device.provisioning.IInboundProcessingStrategy;
+import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implementation of {@link IInboundEventReceiver} that accepts device connections on a
+ * non-blocking server socket. Connections are spread across a small number of selector
+ * threads, so thousands of long-lived connections can stay open without a thread each.
+ * Each connection may carry any number of payloads, split by a {@link FrameDecoder}.
+ * Every selector thread reads into a single direct buffer that is reused for all of its
+ * connections, so idle connections only hold their partially read frame.
+ *
+ * Payloads are delivered to the event source on the selector thread, in the order they
+ * were read from each connection. If the inbound processing strategy supports
+ * {@link IInboundFlowControl}, reading pauses while it is overloaded and TCP flow control
+ * pushes back on the devices.
+ *
+ * @author Derek
+ */
+public class NioSocketInboundEventReceiver extends LifecycleComponent implements
+		IInboundEventReceiver<byte[]> {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(NioSocketInboundEventReceiver.class);
+
+	/** Default ip binding for server socket */
+	private static final String DEFAULT_BIND_ADDRESS = "localhost";
+
+	/** Default port for server socket */
+	private static final int DEFAULT_PORT = 8484;
+
+	/** Default number of selector threads */
+	private static final int DEFAULT_NUM_SELECTORS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	/** Default largest payload accepted */
+	private static final int DEFAULT_MAX_FRAME_SIZE = 1024 * 1024;
+
+	/** Default size of the direct buffer used by each selector thread */
+	private static final int DEFAULT_READ_BUFFER_SIZE = 64 * 1024;
+
+	/** Number of pending connections allowed by the server socket */
+	private static final int ACCEPT_BACKLOG = 1024;
+
+	/** Milliseconds to wait for capacity before logging that reads are paused */
+	private static final long FLOW_CONTROL_WAIT_MS = 1000;
+
+	/** Address the server socket binds to */
+	private String bindAddress = DEFAULT_BIND_ADDRESS;
+
+	/** Port used for server socket */
+	private int port = DEFAULT_PORT;
+
+	/** Number of selector threads */
+	private int numSelectors = DEFAULT_NUM_SELECTORS;
+
+	/** Format used to split payloads */
+	private FrameFormat frameFormat = FrameFormat.LengthPrefixed;
+
+	/** Largest payload accepted */
+	private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+	/** Size of the direct buffer used by each selector thread */
+	private int readBufferSize = DEFAULT_READ_BUFFER_SIZE;
+
+	/** Indicates whether reads pause while inbound processing is overloaded */
+	private boolean pauseWhenOverloaded = true;
+
+	/** Parent event source */
+	private IInboundEventSource<byte[]> eventSource;
+
+	/** Server socket channel */
+	private ServerSocketChannel server;
+
+	/** Selector loops */
+	private List<SelectorLoop> loops = new ArrayList<SelectorLoop>();
+
+	/** Threads running selector loops */
+	private List<Thread> threads = new ArrayList<Thread>();
+
+	/** Used to assign accepted connections to loops */
+	private AtomicInteger nextLoop = new AtomicInteger();
+
+	/** Number of open connections */
+	private AtomicInteger connectionCount = new AtomicInteger();
+
+	public NioSocketInboundEventReceiver() {
+		super(LifecycleComponentType.InboundEventReceiver);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		try {
+			server = ServerSocketChannel.open();
+			server.configureBlocking(false);
+			server.socket().setReuseAddress(true);
+			server.socket().bind(SocketInboundEventReceiver.getSocketAddress(getBindAddress(), getPort()),
+					ACCEPT_BACKLOG);
+			loops.clear();
+			threads.clear();
+			for (int i = 0; i < getNumSelectors(); i++) {
+				loops.add(new SelectorLoop());
+			}
+			loops.get(0).registerServer(server);
+			for (int i = 0; i < loops.size(); i++) {
+				Thread thread =
+						new Thread(loops.get(i), "OpenIoT NIO Socket Receiver " + getPort() + " Selector "
+								+ (i + 1));
+				threads.add(thread);
+				thread.start();
+			}
+			LOGGER.info("NIO socket receiver listening on " + getDisplayName() + " with " + loops.size()
+					+ " selector threads and '" + getFrameFormat().getName() + "' framing.");
+		} catch (IOException e) {
+			throw new OpenIoTException("Unable to bind server socket for NIO event receiver.", e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		for (SelectorLoop loop : loops) {
+			loop.shutdown();
+		}
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+		if (server != null) {
+			try {
+				server.close();
+			} catch (IOException e) {
+				throw new OpenIoTException("Error shutting down server socket for NIO event receiver.", e);
+			}
+		}
+		LOGGER.info("NIO socket receiver processing stopped.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IInboundEventReceiver#getDisplayName()
+	 */
+	@Override
+	public String getDisplayName() {
+		return getBindAddress() + ":" + getPort();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IInboundEventReceiver#onEventPayloadReceived(java.lang.Object, java.util.Map)
+	 */
+	@Override
+	public void onEventPayloadReceived(byte[] payload, Map context) {
+		getEventSource().onEncodedEventReceived(NioSocketInboundEventReceiver.this, payload, context);
+	}
+
+	/**
+	 * Blocks while the inbound processing strategy reports that it is overloaded.
+	 *
+	 * @throws InterruptedException
+	 */
+	protected void waitForCapacity() throws InterruptedException {
+		if (!isPauseWhenOverloaded()) {
+			return;
+		}
+		IInboundProcessingStrategy strategy = getEventSource().getInboundProcessingStrategy();
+		if (!(strategy instanceof IInboundFlowControl)) {
+			return;
+		}
+		IInboundFlowControl flow = (IInboundFlowControl) strategy;
+		if (flow.awaitCapacity(FLOW_CONTROL_WAIT_MS)) {
+			return;
+		}
+		LOGGER.warn("Inbound processing overloaded. Pausing reads on " + getDisplayName() + ".");
+		while (!flow.awaitCapacity(FLOW_CONTROL_WAIT_MS)) {
+		}
+		LOGGER.info("Resuming reads on " + getDisplayName() + ".");
+	}
+
+	/**
+	 * Get the number of open connections.
+	 *
+	 * @return
+	 */
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	/**
+	 * Get the loop that should own the next accepted connection.
+	 *
+	 * @return
+	 */
+	protected SelectorLoop nextLoop() {
+		int index = (nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.size();
+		return loops.get(index);
+	}
+
+	/**
+	 * Runs a selector over a set of connections. The first loop also accepts new
+	 * connections and hands them out to all loops.
+	 *
+	 * @author Derek
+	 */
+	private class SelectorLoop implements Runnable {
+
+		/** Selector for owned channels */
+		private Selector selector;
+
+		/** Accepted channels waiting to be registered with this selector */
+		private Queue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+
+		/** Buffer reused for every read on this loop */
+		private ByteBuffer readBuffer;
+
+		/** Frames decoded from the current read */
+		private List<byte[]> frames = new ArrayList<byte[]>();
+
+		/** Indicates the loop should exit */
+		private volatile boolean terminate = false;
+
+		public SelectorLoop() throws IOException {
+			this.selector = Selector.open();
+			this.readBuffer = ByteBuffer.allocateDirect(getReadBufferSize());
+		}
+
+		/**
+		 * Register the server channel for accept events.
+		 *
+		 * @param channel
+		 * @throws IOException
+		 */
+		public void registerServer(ServerSocketChannel channel) throws IOException {
+			channel.register(selector, SelectionKey.OP_ACCEPT);
+		}
+
+		/**
+		 * Hand an accepted channel to this loop.
+		 *
+		 * @param channel
+		 */
+		public void assign(SocketChannel channel) {
+			pending.add(channel);
+			selector.wakeup();
+		}
+
+		/**
+		 * Ask the loop to exit.
+		 */
+		public void shutdown() {
+			terminate = true;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!terminate) {
+					selector.select();
+					registerPending();
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept((ServerSocketChannel) key.channel());
+						} else if (key.isReadable()) {
+							waitForCapacity();
+							read(key);
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				// Stopped while waiting for capacity.
+			} catch (ClosedSelectorException e) {
+				// Stopped while selecting.
+			} catch (IOException e) {
+				if (!terminate) {
+					LOGGER.error("Selector failed in NIO event receiver.", e);
+				}
+			} finally {
+				closeAll();
+			}
+		}
+
+		/**
+		 * Accept all pending connections and assign them to loops.
+		 *
+		 * @param channel
+		 */
+		protected void accept(ServerSocketChannel channel) {
+			while (true) {
+				SocketChannel client;
+				try {
+					client = channel.accept();
+				} catch (IOException e) {
+					if (!terminate) {
+						LOGGER.error("Exception while accepting connection in NIO event receiver.", e);
+					}
+					return;
+				}
+				if (client == null) {
+					return;
+				}
+				nextLoop().assign(client);
+			}
+		}
+
+		/**
+		 * Register channels assigned to this loop.
+		 */
+		protected void registerPending() {
+			SocketChannel channel;
+			while ((channel = pending.poll()) != null) {
+				try {
+					channel.configureBlocking(false);
+					channel.socket().setTcpNoDelay(true);
+					channel.socket().setKeepAlive(true);
+					channel.register(selector, SelectionKey.OP_READ, new FrameDecoder(getFrameFormat(),
+							getMaxFrameSize()));
+					connectionCount.incrementAndGet();
+				} catch (IOException e) {
+					LOGGER.warn("Unable to register connection in NIO event receiver.", e);
+					closeQuietly(channel);
+				}
+			}
+		}
+
+		/**
+		 * Read available bytes from a connection and deliver completed payloads.
+		 *
+		 * @param key
+		 */
+		protected void read(SelectionKey key) {
+			SocketChannel channel = (SocketChannel) key.channel();
+			FrameDecoder decoder = (FrameDecoder) key.attachment();
+			try {
+				int count;
+				do {
+					readBuffer.clear();
+					count = channel.read(readBuffer);
+					if (count > 0) {
+						readBuffer.flip();
+						decoder.decode(readBuffer, frames);
+						deliver(frames);
+					}
+				} while (count == readBuffer.capacity());
+				if (count < 0) {
+					byte[] last = decoder.finish();
+					if (last != null) {
+						frames.add(last);
+						deliver(frames);
+					}
+					if (decoder.hasPartialFrame()) {
+						LOGGER.warn("Connection from " + channel.socket().getRemoteSocketAddress()
+								+ " closed with a partial frame.");
+					}
+					close(key);
+				}
+			} catch (IOException e) {
+				LOGGER.warn("Closing connection from " + channel.socket().getRemoteSocketAddress() + ": "
+						+ e.getMessage());
+				frames.clear();
+				close(key);
+			}
+		}
+
+		/**
+		 * Deliver decoded payloads to the event source.
+		 *
+		 * @param decoded
+		 */
+		protected void deliver(List<byte[]> decoded) {
+			for (byte[] payload : decoded) {
+				try {
+					onEventPayloadReceived(payload, new HashMap());
+				} catch (Throwable e) {
+					LOGGER.error("Exception delivering payload from NIO event receiver.", e);
+				}
+			}
+			decoded.clear();
+		}
+
+		/**
+		 * Close a connection.
+		 *
+		 * @param key
+		 */
+		protected void close(SelectionKey key) {
+			key.cancel();
+			closeQuietly((SocketChannel) key.channel());
+			connectionCount.decrementAndGet();
+		}
+
+		/**
+		 * Close all channels owned by this loop.
+		 */
+		protected void closeAll() {
+			try {
+				for (SelectionKey key : selector.keys()) {
+					if (key.channel() instanceof SocketChannel) {
+						close(key);
+					}
+				}
+				selector.close();
+			} catch (ClosedSelectorException e) {
+				// Already closed.
+			} catch (IOException e) {
+				LOGGER.warn("Error closing selector in NIO event receiver.", e);
+			}
+			SocketChannel channel;
+			while ((channel = pending.poll()) != null) {
+				closeQuietly(channel);
+			}
+		}
+
+		/**
+		 * Close a channel, ignoring errors.
+		 *
+		 * @param channel
+		 */
+		protected void closeQuietly(SocketChannel channel) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Ignore.
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IInboundEventReceiver#getEventSource()
+	 */
+	public IInboundEventSource<byte[]> getEventSource() {
+		return eventSource;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see IInboundEventReceiver#setEventSource(IInboundEventSource)
+	 */
+	public void setEventSource(IInboundEventSource<byte[]> eventSource) {
+		this.eventSource = eventSource;
+	}
+
+	public String getBindAddress() {
+		return bindAddress;
+	}
+
+	public void setBindAddress(String bindAddress) {
+		this.bindAddress = bindAddress;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public int getNumSelectors() {
+		return numSelectors;
+	}
+
+	public void setNumSelectors(int numSelectors) {
+		this.numSelectors = numSelectors;
+	}
+
+	public FrameFormat getFrameFormat() {
+		return frameFormat;
+	}
+
+	public void setFrameFormat(FrameFormat frameFormat) {
+		this.frameFormat = frameFormat;
+	}
+
+	public int getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	public void setMaxFrameSize(int maxFrameSize) {
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	public int getReadBufferSize() {
+		return readBufferSize;
+	}
+
+	public void setReadBufferSize(int readBufferSize) {
+		this.readBufferSize = readBufferSize;
+	}
+
+	public boolean isPauseWhenOverloaded() {
+		return pauseWhenOverloaded;
+	}
+
+	public void setPauseWhenOverloaded(boolean pauseWhenOverloaded) {
+		this.pauseWhenOverloaded = pauseWhenOverloaded;
+	}
+}
@@ -7,6 +7,8 @@
  */
 package com.openiot.device.provisioning.socket;
 
+import com.openiot.server.concurrent.ExecutorFactory;
+import com.openiot.server.concurrent.ThreadingMode;
 import com.openiot.server.lifecycle.LifecycleComponent;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.device.provisioning.IInboundEventReceiver;
@@ -17,6 +19,7 @@ import com.openiot.spi.server.lifecycle.LifecycleComponentType;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.HashMap;
@@ -41,12 +44,18 @@ public class SocketInboundEventReceiver<T> extends LifecycleComponent implements
 	/** Default ip binding for server socket */
 	private static final String DEFAULT_BIND_ADDRESS = "localhost";
 
+	/** Bind address that binds the server socket to all interfaces */
+	public static final String ALL_INTERFACES = "*";
+
 	/** Default port for server socket */
 	private static final int DEFAULT_PORT = 8484;
 
 	/** Number of threads used to service requests */
 	private int numThreads = DEFAULT_NUM_THREADS;
 
+	/** Indicates whether connections are serviced by a fixed pool or a thread each */
+	private ThreadingMode threadingMode = ThreadingMode.Platform;
+
 	/** Bind address used for server socket */
 	private String bindAddress = DEFAULT_BIND_ADDRESS;
 
@@ -87,12 +96,20 @@ public class SocketInboundEventReceiver<T> extends LifecycleComponent implements
 				throw new OpenIoTException(
 						"No socket interaction handler factory configured for socket event source.");
 			}
-			LOGGER.info("Receiver creating server socket on " + getBindAddress() + ":" + getPort() + ".");
-			this.server = new ServerSocket(getPort());
+			LOGGER.info("Receiver creating server socket on " + getDisplayName() + ".");
+			this.server = new ServerSocket();
+			server.setReuseAddress(true);
+			server.bind(getSocketAddress(getBindAddress(), getPort()));
 			this.processing = new ServerProcessingThread();
 			this.processingService = Executors.newSingleThreadExecutor();
-			this.pool = Executors.newFixedThreadPool(getNumThreads());
-			LOGGER.info("Socket receiver creating processing pool of " + getNumThreads() + " threads.");
+			this.pool =
+					ExecutorFactory.newExecutor(getThreadingMode(), getNumThreads(), "OpenIoT Socket Receiver "
+							+ getPort() + " Connection ");
+			if (getThreadingMode() == ThreadingMode.Virtual) {
+				LOGGER.info("Socket receiver servicing each connection on its own virtual thread.");
+			} else {
+				LOGGER.info("Socket receiver creating processing pool of " + getNumThreads() + " threads.");
+			}
 			processingService.execute(processing);
 			LOGGER.info("Socket receiver processing started.");
 		} catch (IOException e) {
@@ -120,6 +137,21 @@ public class SocketInboundEventReceiver<T> extends LifecycleComponent implements
 		return getBindAddress() + ":" + getPort();
 	}
 
+	/**
+	 * Get the address a server socket binds to. Only binds all interfaces if
+	 * {@link #ALL_INTERFACES} is configured explicitly.
+	 * 
+	 * @param bindAddress
+	 * @param port
+	 * @return
+	 */
+	public static InetSocketAddress getSocketAddress(String bindAddress, int port) {
+		if (ALL_INTERFACES.equals(bindAddress)) {
+			return new InetSocketAddress(port);
+		}
+		return new InetSocketAddress(bindAddress, port);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -242,6 +274,14 @@ public class SocketInboundEventReceiver<T> extends LifecycleComponent implements
 		this.numThreads = numThreads;
 	}
 
+	public ThreadingMode getThreadingMode() {
+		return threadingMode;
+	}
+
+	public void setThreadingMode(ThreadingMode threadingMode) {
+		this.threadingMode = threadingMode;
+	}
+
 	public String getBindAddress() {
 		return bindAddress;
 	}
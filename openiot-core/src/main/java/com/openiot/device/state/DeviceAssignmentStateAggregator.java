@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.state;
+
+import com.openiot.core.OpenIoTPersistence;
+import com.openiot.rest.model.device.DeviceAssignmentState;
+import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDeviceAssignment;
+import com.openiot.spi.device.IDeviceAssignmentStateAggregator;
+import com.openiot.spi.device.IDeviceManagement;
+import com.openiot.spi.device.event.IDeviceAlert;
+import com.openiot.spi.device.event.IDeviceLocation;
+import com.openiot.spi.device.event.IDeviceMeasurements;
+import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Default implementation of {@link IDeviceAssignmentStateAggregator}. The latest state
+ * for each active assignment is kept in memory and events are merged into it as they
+ * arrive. Changed states are written by a background thread every
+ * <code>flushIntervalMs</code> milliseconds, or sooner once <code>dirtyThreshold</code>
+ * assignments have pending changes. Pending changes are flushed when the component is
+ * stopped and, if enabled, from a JVM shutdown hook.
+ *
+ * @author Derek
+ */
+public class DeviceAssignmentStateAggregator extends LifecycleComponent implements
+		IDeviceAssignmentStateAggregator {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(DeviceAssignmentStateAggregator.class);
+
+	/** Default interval between flushes */
+	private static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+	/** Default number of dirty assignments that forces an early flush */
+	private static final int DEFAULT_DIRTY_THRESHOLD = 1000;
+
+	/** Device management implementation state is written to */
+	private IDeviceManagement deviceManagement;
+
+	/** Interval between flushes */
+	private long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+
+	/** Number of dirty assignments that forces an early flush */
+	private int dirtyThreshold = DEFAULT_DIRTY_THRESHOLD;
+
+	/** Indicates whether a JVM shutdown hook should flush pending state */
+	private boolean flushOnShutdown = true;
+
+	/** Pending state indexed by assignment token */
+	private ConcurrentMap<String, PendingState> states = new ConcurrentHashMap<String, PendingState>();
+
+	/** Number of assignments with unwritten changes */
+	private AtomicInteger dirtyCount = new AtomicInteger();
+
+	/** Serializes flushes so states for an assignment are written in order */
+	private ReentrantLock flushLock = new ReentrantLock();
+
+	/** Lock used to wake the flusher thread */
+	private ReentrantLock signalLock = new ReentrantLock();
+
+	/** Signaled when the dirty threshold is reached */
+	private Condition thresholdReached = signalLock.newCondition();
+
+	/** Runs the flusher thread */
+	private ExecutorService executor;
+
+	/** Hook that flushes pending state on JVM shutdown */
+	private Thread shutdownHook;
+
+	public DeviceAssignmentStateAggregator() {
+		super(LifecycleComponentType.AssignmentStateAggregator);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		if (getDeviceManagement() == null) {
+			throw new OpenIoTException("No device management implementation set for state aggregator.");
+		}
+		executor = Executors.newSingleThreadExecutor(new FlusherThreadFactory());
+		executor.execute(new Flusher());
+		if (isFlushOnShutdown()) {
+			shutdownHook = new Thread(new ShutdownFlusher(), "OpenIoT Assignment State Shutdown Flusher");
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+		}
+		LOGGER.info("Assignment state aggregator flushing every " + getFlushIntervalMs()
+				+ "ms or when " + getDirtyThreshold() + " assignments have changed.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		if (executor != null) {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (shutdownHook != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				// JVM is already shutting down and the hook is running.
+			}
+			shutdownHook = null;
+		}
+		flush();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.spi.device.IDeviceAssignmentStateAggregator#addMeasurements(com.openiot
+	 * .spi.device.IDeviceAssignment, com.openiot.spi.device.event.IDeviceMeasurements)
+	 */
+	@Override
+	public void addMeasurements(IDeviceAssignment assignment, IDeviceMeasurements measurements)
+			throws OpenIoTException {
+		while (true) {
+			PendingState pending = getPendingState(assignment);
+			synchronized (pending) {
+				if (pending.isRemoved()) {
+					continue;
+				}
+				OpenIoTPersistence.applyMeasurementsToState(pending.getState(), measurements);
+				markDirty(pending);
+				return;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.spi.device.IDeviceAssignmentStateAggregator#addLocation(com.openiot.
+	 * spi.device.IDeviceAssignment, com.openiot.spi.device.event.IDeviceLocation)
+	 */
+	@Override
+	public void addLocation(IDeviceAssignment assignment, IDeviceLocation location)
+			throws OpenIoTException {
+		while (true) {
+			PendingState pending = getPendingState(assignment);
+			synchronized (pending) {
+				if (pending.isRemoved()) {
+					continue;
+				}
+				OpenIoTPersistence.applyLocationToState(pending.getState(), location);
+				markDirty(pending);
+				return;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.spi.device.IDeviceAssignmentStateAggregator#addAlert(com.openiot.spi
+	 * .device.IDeviceAssignment, com.openiot.spi.device.event.IDeviceAlert)
+	 */
+	@Override
+	public void addAlert(IDeviceAssignment assignment, IDeviceAlert alert) throws OpenIoTException {
+		while (true) {
+			PendingState pending = getPendingState(assignment);
+			synchronized (pending) {
+				if (pending.isRemoved()) {
+					continue;
+				}
+				OpenIoTPersistence.applyAlertToState(pending.getState(), alert);
+				markDirty(pending);
+				return;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.device.IDeviceAssignmentStateAggregator#flush()
+	 */
+	@Override
+	public void flush() throws OpenIoTException {
+		flushLock.lock();
+		try {
+			int written = 0;
+			for (Map.Entry<String, PendingState> entry : states.entrySet()) {
+				PendingState pending = entry.getValue();
+				DeviceAssignmentState snapshot;
+				synchronized (pending) {
+					if (!pending.isDirty()) {
+						// Idle for a full interval, so stop tracking the assignment.
+						pending.setRemoved(true);
+						states.remove(entry.getKey(), pending);
+						continue;
+					}
+					snapshot = DeviceAssignmentState.copy(pending.getState());
+					pending.setDirty(false);
+					dirtyCount.decrementAndGet();
+				}
+				try {
+					getDeviceManagement().updateDeviceAssignmentState(entry.getKey(), snapshot);
+					written++;
+				} catch (OpenIoTException e) {
+					LOGGER.error("Unable to write state for assignment '" + entry.getKey() + "'.", e);
+					synchronized (pending) {
+						markDirty(pending);
+					}
+				}
+			}
+			if (LOGGER.isDebugEnabled() && (written > 0)) {
+				LOGGER.debug("Flushed state for " + written + " assignments.");
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the pending state for an assignment, seeding it from the stored state the first
+	 * time the assignment is seen. The assignment passed in may be stale, for instance
+	 * when its state was flushed after it was loaded, so the stored state is reloaded from
+	 * device management before seeding.
+	 *
+	 * @param assignment
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	protected PendingState getPendingState(IDeviceAssignment assignment) throws OpenIoTException {
+		PendingState pending = states.get(assignment.getToken());
+		if (pending == null) {
+			IDeviceAssignment stored =
+					getDeviceManagement().getDeviceAssignmentByToken(assignment.getToken());
+			PendingState created =
+					new PendingState(OpenIoTPersistence.assureState((stored != null) ? stored : assignment));
+			pending = states.putIfAbsent(assignment.getToken(), created);
+			if (pending == null) {
+				pending = created;
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Mark a pending state as dirty and wake the flusher if the threshold is reached.
+	 * Caller must hold the lock on the pending state.
+	 *
+	 * @param pending
+	 */
+	protected void markDirty(PendingState pending) {
+		if (!pending.isDirty()) {
+			pending.setDirty(true);
+			if (dirtyCount.incrementAndGet() == getDirtyThreshold()) {
+				signalLock.lock();
+				try {
+					thresholdReached.signal();
+				} finally {
+					signalLock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of assignments with unwritten changes.
+	 *
+	 * @return
+	 */
+	public int getDirtyCount() {
+		return dirtyCount.get();
+	}
+
+	public IDeviceManagement getDeviceManagement() {
+		return deviceManagement;
+	}
+
+	public void setDeviceManagement(IDeviceManagement deviceManagement) {
+		this.deviceManagement = deviceManagement;
+	}
+
+	public long getFlushIntervalMs() {
+		return flushIntervalMs;
+	}
+
+	public void setFlushIntervalMs(long flushIntervalMs) {
+		this.flushIntervalMs = flushIntervalMs;
+	}
+
+	public int getDirtyThreshold() {
+		return dirtyThreshold;
+	}
+
+	public void setDirtyThreshold(int dirtyThreshold) {
+		this.dirtyThreshold = dirtyThreshold;
+	}
+
+	public boolean isFlushOnShutdown() {
+		return flushOnShutdown;
+	}
+
+	public void setFlushOnShutdown(boolean flushOnShutdown) {
+		this.flushOnShutdown = flushOnShutdown;
+	}
+
+	/**
+	 * Merged state for a single assignment.
+	 *
+	 * @author Derek
+	 */
+	protected static class PendingState {
+
+		/** Latest merged state */
+		private DeviceAssignmentState state;
+
+		/** Indicates changes have not been written */
+		private boolean dirty;
+
+		/** Indicates entry has been evicted and must not be updated */
+		private boolean removed;
+
+		public PendingState(DeviceAssignmentState state) {
+			this.state = state;
+		}
+
+		public DeviceAssignmentState getState() {
+			return state;
+		}
+
+		public boolean isDirty() {
+			return dirty;
+		}
+
+		public void setDirty(boolean dirty) {
+			this.dirty = dirty;
+		}
+
+		public boolean isRemoved() {
+			return removed;
+		}
+
+		public void setRemoved(boolean removed) {
+			this.removed = removed;
+		}
+	}
+
+	/** Used for naming the flusher thread */
+	private class FlusherThreadFactory implements ThreadFactory {
+
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "OpenIoT Assignment State Flusher");
+		}
+	}
+
+	/**
+	 * Flushes pending state on an interval or when the dirty threshold is reached.
+	 *
+	 * @author Derek
+	 */
+	private class Flusher implements Runnable {
+
+		@Override
+		public void run() {
+			while (true) {
+				signalLock.lock();
+				try {
+					if (dirtyCount.get() < getDirtyThreshold()) {
+						thresholdReached.await(getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+					}
+				} catch (InterruptedException e) {
+					return;
+				} finally {
+					signalLock.unlock();
+				}
+				try {
+					flush();
+				} catch (Throwable e) {
+					LOGGER.error("Unable to flush assignment state.", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Flushes pending state when the JVM shuts down without the component being stopped.
+	 *
+	 * @author Derek
+	 */
+	private class ShutdownFlusher implements Runnable {
+
+		@Override
+		public void run() {
+			try {
+				flush();
+			} catch (Throwable e) {
+				LOGGER.error("Unable to flush assignment state on shutdown.", e);
+			}
+		}
+	}
+}
@@ -11,6 +11,9 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.health.HealthCheckRegistry;
 import com.openiot.configuration.ExternalConfigurationResolver;
 import com.openiot.configuration.TomcatConfigurationResolver;
+import com.openiot.device.DeviceChangeNotifier;
+import com.openiot.device.DeviceManagementListenerRegistry;
+import com.openiot.device.SpecificationChangeNotifier;
 import com.openiot.device.event.processor.OutboundProcessingStrategyDecorator;
 import com.openiot.rest.model.search.SearchCriteria;
 import com.openiot.rest.model.user.User;
@@ -19,12 +22,15 @@ import com.openiot.security.SitewhereAuthentication;
 import com.openiot.security.SitewhereUserDetails;
 import com.openiot.server.debug.NullTracer;
 import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.server.metrics.PipelineLatencyMetrics;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.asset.IAssetModuleManager;
 import com.openiot.spi.configuration.IConfigurationResolver;
 import com.openiot.spi.device.ICachingDeviceManagement;
+import com.openiot.spi.device.IDeviceAssignmentStateAggregator;
 import com.openiot.spi.device.IDeviceManagement;
 import com.openiot.spi.device.IDeviceManagementCacheProvider;
+import com.openiot.spi.device.IStateAggregatingDeviceManagement;
 import com.openiot.spi.device.ISite;
 import com.openiot.spi.device.event.processor.IInboundEventProcessorChain;
 import com.openiot.spi.device.event.processor.IOutboundEventProcessorChain;
@@ -87,6 +93,9 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 	/** Device management cache provider implementation */
 	private IDeviceManagementCacheProvider deviceManagementCacheProvider;
 
+	/** Device assignment state aggregator implementation */
+	private IDeviceAssignmentStateAggregator assignmentStateAggregator;
+
 	/** Interface to device management implementation */
 	private IDeviceManagement deviceManagement;
 
@@ -118,6 +127,13 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 	/** Health check registry */
 	private HealthCheckRegistry healthCheckRegistry = new HealthCheckRegistry();
 
+	/** Latency histograms for event pipeline stages */
+	private PipelineLatencyMetrics pipelineLatencyMetrics = new PipelineLatencyMetrics();
+
+	/** Listeners told when device management data changes */
+	private DeviceManagementListenerRegistry deviceManagementListeners =
+			new DeviceManagementListenerRegistry();
+
 	public OpenIoTServer() {
 		super(LifecycleComponentType.System);
 	}
@@ -194,6 +210,15 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 		return deviceManagementCacheProvider;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IOpenIoTServer#getAssignmentStateAggregator()
+	 */
+	public IDeviceAssignmentStateAggregator getAssignmentStateAggregator() {
+		return assignmentStateAggregator;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -266,6 +291,24 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 		return healthCheckRegistry;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IOpenIoTServer#getPipelineLatencyMetrics()
+	 */
+	public PipelineLatencyMetrics getPipelineLatencyMetrics() {
+		return pipelineLatencyMetrics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IOpenIoTServer#getDeviceManagementListeners()
+	 */
+	public DeviceManagementListenerRegistry getDeviceManagementListeners() {
+		return deviceManagementListeners;
+	}
+
 	/**
 	 * Returns a fake account used for operations on the data model done by the system.
 	 * 
@@ -290,6 +333,9 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 		// Clear the component list.
 		getLifecycleComponents().clear();
 
+		// Expose pipeline latency histograms via JMX.
+		getPipelineLatencyMetrics().registerMBean();
+
 		// Start all lifecycle components.
 		for (ILifecycleComponent component : getRegisteredLifecycleComponents()) {
 			startNestedComponent(component, component.getComponentName() + " startup failed.", true);
@@ -304,6 +350,12 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 					"Device management cache provider startup failed.", true);
 		}
 
+		// Start assignment state aggregator if specified.
+		if (getAssignmentStateAggregator() != null) {
+			startNestedComponent(getAssignmentStateAggregator(),
+					"Assignment state aggregator startup failed.", true);
+		}
+
 		// Start user management.
 		startNestedComponent(getUserManagement(), "User management startup failed.", true);
 
@@ -395,7 +447,10 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 		getOutboundEventProcessorChain().setProcessingEnabled(false);
 		getOutboundEventProcessorChain().lifecycleStop();
 
-		// Stop core management implementations.
+		// Stop core management implementations. Aggregator flushes before datastore stops.
+		if (getAssignmentStateAggregator() != null) {
+			getAssignmentStateAggregator().lifecycleStop();
+		}
 		if (getDeviceManagementCacheProvider() != null) {
 			getDeviceManagementCacheProvider().lifecycleStop();
 		}
@@ -408,6 +463,8 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 		for (ILifecycleComponent component : getRegisteredLifecycleComponents()) {
 			component.lifecycleStop();
 		}
+
+		getPipelineLatencyMetrics().unregisterMBean();
 	}
 
 	/*
@@ -522,6 +579,16 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 			LOGGER.info("No device management cache provider configured. Caching disabled.");
 		}
 
+		// Load assignment state aggregator if configured.
+		try {
+			this.assignmentStateAggregator =
+					(IDeviceAssignmentStateAggregator) SERVER_SPRING_CONTEXT.getBean(OpenIoTServerBeans.BEAN_ASSIGNMENT_STATE_AGGREGATOR);
+			LOGGER.info("Assignment state aggregator using: "
+					+ assignmentStateAggregator.getClass().getName());
+		} catch (NoSuchBeanDefinitionException e) {
+			LOGGER.info("No assignment state aggregator configured. State written for each event.");
+		}
+
 		// Verify that a device management implementation exists.
 		try {
 			IDeviceManagement deviceManagementImpl =
@@ -556,6 +623,23 @@ public class OpenIoTServer extends LifecycleComponent implements IOpenIoTServer
 			}
 		}
 
+		// Inject assignment state aggregator if available.
+		if (getAssignmentStateAggregator() != null) {
+			if (management instanceof IStateAggregatingDeviceManagement) {
+				getAssignmentStateAggregator().setDeviceManagement(management);
+				((IStateAggregatingDeviceManagement) management).setAssignmentStateAggregator(getAssignmentStateAggregator());
+				LOGGER.info("Device management implementation is using assignment state aggregator.");
+			} else {
+				LOGGER.info("Device management implementation not using assignment state aggregator.");
+			}
+		}
+
+		// Tell listeners when specifications or their commands change.
+		management = new SpecificationChangeNotifier(management, getDeviceManagementListeners());
+
+		// Tell listeners when devices, their mappings or their assignments change.
+		management = new DeviceChangeNotifier(management, getDeviceManagementListeners());
+
 		// If device event processor chain is defined, use it.
 		try {
 			outboundEventProcessorChain =
@@ -54,6 +54,13 @@ public interface OpenIoTServerBeans {
 	/** Bean id for device management cache provider */
 	public static final String BEAN_DEVICE_MANAGEMENT_CACHE_PROVIDER = "deviceManagementCacheProvider";
 
+	/********************
+	 * STATE MANAGEMENT *
+	 ********************/
+
+	/** Bean id for device assignment state aggregator */
+	public static final String BEAN_ASSIGNMENT_STATE_AGGREGATOR = "assignmentStateAggregator";
+
 	/*****************************
 	 * SEARCH PROVIDER MANAGMENT *
 	 *****************************/
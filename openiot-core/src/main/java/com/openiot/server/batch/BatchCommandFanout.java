@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.server.batch;
+
+import com.openiot.OpenIoT;
+import com.openiot.rest.model.device.event.request.DeviceCommandInvocationCreateRequest;
+import com.openiot.rest.model.device.request.BatchElementUpdateRequest;
+import com.openiot.security.SitewhereAuthentication;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDevice;
+import com.openiot.spi.device.IDeviceManagement;
+import com.openiot.spi.device.batch.ElementProcessingStatus;
+import com.openiot.spi.device.batch.IBatchElement;
+import com.openiot.spi.device.batch.IBatchOperation;
+import com.openiot.spi.device.command.IDeviceCommand;
+import com.openiot.spi.device.event.IDeviceCommandInvocation;
+import com.openiot.spi.device.request.IBatchCommandInvocationRequest;
+import com.openiot.spi.device.request.IBatchElementUpdateRequest;
+import com.openiot.spi.server.lifecycle.LifecycleStatus;
+import org.apache.log4j.Logger;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes the elements of a batch command invocation in chunks instead of one at a
+ * time. For each chunk, all elements are marked as processing with one bulk update.
+ * Target devices are then resolved concurrently. Invocations are created concurrently,
+ * ordered by device specification so that each command destination receives a
+ * contiguous run of commands. Invocation creation is paced by a rate limit shared by all
+ * operations. Element results are written with one bulk update per chunk.
+ * 
+ * @author Derek
+ */
+public class BatchCommandFanout {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(BatchCommandFanout.class);
+
+	/** Orders targets by specification token with unresolved targets last */
+	private static final Comparator<Target> BY_SPECIFICATION = new Comparator<Target>() {
+
+		public int compare(Target a, Target b) {
+			if (a.specificationToken == null) {
+				return (b.specificationToken == null) ? 0 : 1;
+			}
+			if (b.specificationToken == null) {
+				return -1;
+			}
+			return a.specificationToken.compareTo(b.specificationToken);
+		}
+	};
+
+	/** Manager that owns the fan-out */
+	private final BatchOperationManager manager;
+
+	/** Workers that resolve targets and create invocations */
+	private final ExecutorService workers;
+
+	/** Paces invocation creation (null for no limit) */
+	private final Pacer pacer;
+
+	public BatchCommandFanout(BatchOperationManager manager, ExecutorService workers) {
+		this.manager = manager;
+		this.workers = workers;
+		this.pacer =
+				(manager.getMaxInvocationsPerSecond() > 0) ? new Pacer(manager.getMaxInvocationsPerSecond())
+						: null;
+	}
+
+	/**
+	 * Process all unprocessed elements of a batch command invocation.
+	 * 
+	 * @param operation
+	 * @param elements
+	 * @param systemUser
+	 * @return number of elements that failed
+	 * @throws OpenIoTException
+	 */
+	public long process(IBatchOperation operation, List<IBatchElement> elements,
+			SitewhereAuthentication systemUser) throws OpenIoTException {
+		List<IBatchElement> pending = new ArrayList<IBatchElement>();
+		for (IBatchElement element : elements) {
+			if (element.getProcessingStatus() == ElementProcessingStatus.Unprocessed) {
+				pending.add(element);
+			}
+		}
+
+		// Look up the command once for the whole operation.
+		IDeviceManagement management = OpenIoT.getServer().getDeviceManagement();
+		String commandToken = operation.getParameters().get(IBatchCommandInvocationRequest.PARAM_COMMAND_TOKEN);
+		IDeviceCommand command =
+				(commandToken != null) ? management.getDeviceCommandByToken(commandToken) : null;
+		if (command == null) {
+			LOGGER.error("Invalid command token referenced by batch command invocation: " + commandToken);
+		}
+
+		long failed = 0;
+		int chunkSize = Math.max(1, manager.getFanoutChunkSize());
+		for (int start = 0; start < pending.size(); start += chunkSize) {
+			waitWhilePaused();
+			List<IBatchElement> chunk = pending.subList(start, Math.min(start + chunkSize, pending.size()));
+			failed += processChunk(operation, command, chunk, systemUser);
+		}
+		LOGGER.info("Batch operation '" + operation.getToken() + "' invoked command for " + pending.size()
+				+ " elements with " + failed + " failures.");
+		return failed;
+	}
+
+	/**
+	 * Process a chunk of elements.
+	 * 
+	 * @param operation
+	 * @param command
+	 * @param chunk
+	 * @param systemUser
+	 * @return number of elements that failed
+	 * @throws OpenIoTException
+	 */
+	protected long processChunk(final IBatchOperation operation, final IDeviceCommand command,
+			List<IBatchElement> chunk, final SitewhereAuthentication systemUser) throws OpenIoTException {
+		IDeviceManagement management = OpenIoT.getServer().getDeviceManagement();
+		String token = operation.getToken();
+
+		// Mark the chunk as processing.
+		Map<Long, IBatchElementUpdateRequest> processing = new LinkedHashMap<Long, IBatchElementUpdateRequest>();
+		for (IBatchElement element : chunk) {
+			BatchElementUpdateRequest request = new BatchElementUpdateRequest();
+			request.setProcessingStatus(ElementProcessingStatus.Processing);
+			processing.put(element.getIndex(), request);
+		}
+		management.updateBatchElements(token, processing);
+
+		// Resolve target devices concurrently.
+		List<Future<Target>> resolving = new ArrayList<Future<Target>>();
+		for (final IBatchElement element : chunk) {
+			resolving.add(workers.submit(new Callable<Target>() {
+
+				public Target call() throws Exception {
+					SecurityContextHolder.getContext().setAuthentication(systemUser);
+					return resolve(element);
+				}
+			}));
+		}
+		List<Target> targets = new ArrayList<Target>();
+		for (Future<Target> future : resolving) {
+			targets.add(await(future));
+		}
+
+		// Create invocations grouped by specification.
+		List<Target> bySpecification = new ArrayList<Target>(targets);
+		Collections.sort(bySpecification, BY_SPECIFICATION);
+		List<Future<Target>> invoking = new ArrayList<Future<Target>>();
+		for (final Target target : bySpecification) {
+			if ((target.error != null) || (command == null)) {
+				continue;
+			}
+			invoking.add(workers.submit(new Callable<Target>() {
+
+				public Target call() throws Exception {
+					SecurityContextHolder.getContext().setAuthentication(systemUser);
+					if (pacer != null) {
+						pacer.acquire();
+					}
+					invoke(operation, command, target, systemUser.getName());
+					return target;
+				}
+			}));
+		}
+		for (Future<Target> future : invoking) {
+			await(future);
+		}
+
+		// Write results in element order.
+		Map<Long, IBatchElementUpdateRequest> results = new LinkedHashMap<Long, IBatchElementUpdateRequest>();
+		long failed = 0;
+		for (Target target : targets) {
+			BatchElementUpdateRequest request = new BatchElementUpdateRequest();
+			if ((command != null) && (target.error == null) && (target.invocationId != null)) {
+				request.setProcessingStatus(ElementProcessingStatus.Succeeded);
+				request.setProcessedDate(new Date());
+				request.addOrReplaceMetadata(IBatchCommandInvocationRequest.META_INVOCATION_EVENT_ID,
+						target.invocationId);
+			} else {
+				request.setProcessingStatus(ElementProcessingStatus.Failed);
+				failed++;
+			}
+			results.put(target.element.getIndex(), request);
+		}
+		management.updateBatchElements(token, results);
+		return failed;
+	}
+
+	/**
+	 * Find the device and assignment an element targets.
+	 * 
+	 * @param element
+	 * @return
+	 */
+	protected Target resolve(IBatchElement element) {
+		Target target = new Target(element);
+		try {
+			IDevice device = OpenIoT.getServer().getDeviceManagement().getDeviceByHardwareId(element.getHardwareId());
+			if (device == null) {
+				throw new OpenIoTException("Invalid device hardware id in command invocation.");
+			}
+			if (device.getAssignmentToken() == null) {
+				throw new OpenIoTException("Device is not currently assigned. Command can not be invoked.");
+			}
+			target.assignmentToken = device.getAssignmentToken();
+			target.specificationToken = device.getSpecificationToken();
+		} catch (Throwable e) {
+			target.error = e;
+			LOGGER.debug("Unable to resolve batch element '" + element.getHardwareId() + "'.", e);
+		}
+		return target;
+	}
+
+	/**
+	 * Create the command invocation for a resolved target.
+	 * 
+	 * @param operation
+	 * @param command
+	 * @param target
+	 * @param initiatorId
+	 */
+	protected void invoke(IBatchOperation operation, IDeviceCommand command, Target target, String initiatorId) {
+		try {
+			DeviceCommandInvocationCreateRequest request =
+					BatchOperationManager.createInvocationRequest(operation, command.getToken(),
+							target.assignmentToken, initiatorId);
+			IDeviceCommandInvocation invocation =
+					OpenIoT.getServer().getDeviceManagement().addDeviceCommandInvocation(
+							target.assignmentToken, command, request);
+			target.invocationId = invocation.getId();
+		} catch (Throwable e) {
+			target.error = e;
+			LOGGER.debug("Unable to invoke command for batch element '" + target.element.getHardwareId() + "'.",
+					e);
+		}
+	}
+
+	/**
+	 * Wait for a worker task to complete.
+	 * 
+	 * @param future
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	protected Target await(Future<Target> future) throws OpenIoTException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new OpenIoTException("Interrupted while processing batch operation.", e);
+		} catch (ExecutionException e) {
+			throw new OpenIoTException("Unexpected error processing batch element.", e.getCause());
+		}
+	}
+
+	/**
+	 * Block while the batch operation manager is paused.
+	 */
+	protected void waitWhilePaused() {
+		while (manager.getLifecycleStatus() == LifecycleStatus.Paused) {
+			try {
+				Thread.sleep(1000);
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	/**
+	 * Resolution and invocation state for a single element.
+	 * 
+	 * @author Derek
+	 */
+	private static class Target {
+
+		/** Element being processed */
+		private final IBatchElement element;
+
+		/** Token of the current device assignment */
+		private String assignmentToken;
+
+		/** Token of the device specification */
+		private String specificationToken;
+
+		/** Id of the created invocation */
+		private String invocationId;
+
+		/** Error that prevented the invocation */
+		private Throwable error;
+
+		public Target(IBatchElement element) {
+			this.element = element;
+		}
+	}
+
+	/**
+	 * Spaces calls to {@link #acquire()} evenly to enforce a maximum rate.
+	 * 
+	 * @author Derek
+	 */
+	private static class Pacer {
+
+		/** Nanoseconds between permits */
+		private final long intervalNanos;
+
+		/** Time the next permit is available */
+		private long next = System.nanoTime();
+
+		public Pacer(int perSecond) {
+			this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / perSecond;
+		}
+
+		/**
+		 * Wait for the next permit.
+		 * 
+		 * @throws InterruptedException
+		 */
+		public void acquire() throws InterruptedException {
+			long wait;
+			synchronized (this) {
+				long now = System.nanoTime();
+				if (next - now < 0) {
+					next = now;
+				}
+				wait = next - now;
+				next += intervalNanos;
+			}
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+	}
+}
@@ -15,6 +15,8 @@ import com.openiot.rest.model.search.SearchResults;
 import com.openiot.rest.model.search.device.BatchElementSearchCriteria;
 import com.openiot.security.SitewhereAuthentication;
 import com.openiot.server.OpenIoTServer;
+import com.openiot.server.concurrent.ExecutorFactory;
+import com.openiot.server.concurrent.ThreadingMode;
 import com.openiot.server.lifecycle.LifecycleComponent;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.common.IMetadataProvider;
@@ -36,14 +38,12 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Default implementation of {@link IBatchOperationManager}. Uses multiple threads to
- * process batch operations.
+ * process batch operations. When fan-out threads are configured, command invocations
+ * are processed by {@link BatchCommandFanout} instead of one element at a time.
  * 
  * @author Derek
  */
@@ -61,19 +61,26 @@ public class BatchOperationManager extends LifecycleComponent implements IBatchO
 	/** Throttling delay in milliseconds */
 	private long throttleDelayMs;
 
-	public BatchOperationManager() {
-		super(LifecycleComponentType.BatchOperationManager);
-	}
+	/** Indicates whether batches run on a fixed pool or a thread each */
+	private ThreadingMode threadingMode = ThreadingMode.Platform;
 
-	/** Used for naming batch operation processor threads */
-	private class ProcessorsThreadFactory implements ThreadFactory {
+	/** Number of threads used to fan out command invocations (0 to process serially) */
+	private int fanoutThreads = 0;
 
-		/** Counts threads */
-		private AtomicInteger counter = new AtomicInteger();
+	/** Maximum number of invocations created per second when fanning out (0 for no limit) */
+	private int maxInvocationsPerSecond = 0;
 
-		public Thread newThread(Runnable r) {
-			return new Thread(r, "Batch Operation Processor " + counter.incrementAndGet());
-		}
+	/** Number of elements processed together when fanning out */
+	private int fanoutChunkSize = 500;
+
+	/** Thread pool for fanning out command invocations */
+	private ExecutorService fanoutPool;
+
+	/** Fans out batch command invocations */
+	private BatchCommandFanout fanout;
+
+	public BatchOperationManager() {
+		super(LifecycleComponentType.BatchOperationManager);
 	}
 
 	/*
@@ -84,7 +91,13 @@ public class BatchOperationManager extends LifecycleComponent implements IBatchO
 	@Override
 	public void start() throws OpenIoTException {
 		processorPool =
-				Executors.newFixedThreadPool(BATCH_PROCESSOR_THREAD_COUNT, new ProcessorsThreadFactory());
+				ExecutorFactory.newExecutor(getThreadingMode(), BATCH_PROCESSOR_THREAD_COUNT,
+						"Batch Operation Processor ");
+		if (getFanoutThreads() > 0) {
+			fanoutPool =
+					ExecutorFactory.newExecutor(getThreadingMode(), getFanoutThreads(), "Batch Command Fan-out ");
+			fanout = new BatchCommandFanout(this, fanoutPool);
+		}
 	}
 
 	/*
@@ -104,6 +117,11 @@ public class BatchOperationManager extends LifecycleComponent implements IBatchO
 	@Override
 	public void stop() throws OpenIoTException {
 		processorPool.shutdownNow();
+		if (fanoutPool != null) {
+			fanoutPool.shutdownNow();
+			fanoutPool = null;
+			fanout = null;
+		}
 	}
 
 	/*
@@ -136,6 +154,62 @@ public class BatchOperationManager extends LifecycleComponent implements IBatchO
 		this.throttleDelayMs = throttleDelayMs;
 	}
 
+	public ThreadingMode getThreadingMode() {
+		return threadingMode;
+	}
+
+	public void setThreadingMode(ThreadingMode threadingMode) {
+		this.threadingMode = threadingMode;
+	}
+
+	public int getFanoutThreads() {
+		return fanoutThreads;
+	}
+
+	public void setFanoutThreads(int fanoutThreads) {
+		this.fanoutThreads = fanoutThreads;
+	}
+
+	public int getMaxInvocationsPerSecond() {
+		return maxInvocationsPerSecond;
+	}
+
+	public void setMaxInvocationsPerSecond(int maxInvocationsPerSecond) {
+		this.maxInvocationsPerSecond = maxInvocationsPerSecond;
+	}
+
+	public int getFanoutChunkSize() {
+		return fanoutChunkSize;
+	}
+
+	public void setFanoutChunkSize(int fanoutChunkSize) {
+		this.fanoutChunkSize = fanoutChunkSize;
+	}
+
+	/**
+	 * Create the invocation request for one device in a batch command invocation.
+	 * 
+	 * @param operation
+	 * @param commandToken
+	 * @param assignmentToken
+	 * @param initiatorId
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	static DeviceCommandInvocationCreateRequest createInvocationRequest(IBatchOperation operation,
+			String commandToken, String assignmentToken, String initiatorId) throws OpenIoTException {
+		DeviceCommandInvocationCreateRequest request = new DeviceCommandInvocationCreateRequest();
+		request.setCommandToken(commandToken);
+		request.setInitiator(CommandInitiator.BatchOperation);
+		request.setInitiatorId(initiatorId);
+		request.setTarget(CommandTarget.Assignment);
+		request.setTargetId(assignmentToken);
+		request.setParameterValues(operation.getMetadata());
+		request.addOrReplaceMetadata(IBatchOperationCreateRequest.META_BATCH_OPERATION_ID,
+				operation.getToken());
+		return request;
+	}
+
 	/**
 	 * Processes a batch in a separate thread.
 	 * 
@@ -170,13 +244,19 @@ public class BatchOperationManager extends LifecycleComponent implements IBatchO
 				SearchResults<IBatchElement> matches =
 						OpenIoT.getServer().getDeviceManagement().listBatchElements(operation.getToken(),
 								criteria);
-				BatchProcessingResults result = processBatchElements(operation, matches.getResults());
+				long errors;
+				BatchCommandFanout current = fanout;
+				if ((current != null) && (operation.getOperationType() == OperationType.InvokeCommand)) {
+					errors = current.process(operation, matches.getResults(), systemUser);
+				} else {
+					errors = processBatchElements(operation, matches.getResults()).getErrorCount();
+				}
 
 				// Update operation to reflect processing results.
 				request = new BatchOperationUpdateRequest();
 				request.setProcessingStatus(BatchOperationStatus.FinishedSuccessfully);
 				request.setProcessingEndedDate(new Date());
-				if (result.getErrorCount() > 0) {
+				if (errors > 0) {
 					request.setProcessingStatus(BatchOperationStatus.FinishedWithErrors);
 				}
 				OpenIoT.getServer().getDeviceManagement().updateBatchOperation(operation.getToken(),
@@ -297,15 +377,8 @@ public class BatchOperationManager extends LifecycleComponent implements IBatchO
 			}
 
 			// Create the request.
-			DeviceCommandInvocationCreateRequest request = new DeviceCommandInvocationCreateRequest();
-			request.setCommandToken(commandToken);
-			request.setInitiator(CommandInitiator.BatchOperation);
-			request.setInitiatorId(systemUser.getName());
-			request.setTarget(CommandTarget.Assignment);
-			request.setTargetId(assignment.getToken());
-			request.setParameterValues(operation.getMetadata());
-			request.addOrReplaceMetadata(IBatchOperationCreateRequest.META_BATCH_OPERATION_ID,
-					operation.getToken());
+			DeviceCommandInvocationCreateRequest request =
+					createInvocationRequest(operation, commandToken, assignment.getToken(), systemUser.getName());
 
 			// Invoke the command.
 			IDeviceCommandInvocation invocation =
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.server.concurrent;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for components that can run in either {@link ThreadingMode}.
+ *
+ * In {@link ThreadingMode#Platform} mode a fixed pool of platform threads is used, so
+ * at most that many tasks run at once. In {@link ThreadingMode#Virtual} mode every task
+ * gets its own virtual thread, so tasks that block on I/O or sleep do not hold an OS
+ * thread. Virtual threads need a Java 21 or newer runtime and are looked up
+ * reflectively since the code base targets Java 7. On older runtimes the virtual mode
+ * falls back to an unbounded pool of small-stack platform threads.
+ *
+ * @author Derek
+ */
+public class ExecutorFactory {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(ExecutorFactory.class);
+
+	/** Stack size for fallback thread-per-task threads */
+	private static final long FALLBACK_STACK_SIZE = 256 * 1024;
+
+	/** Thread.ofVirtual() if available */
+	private static final Method OF_VIRTUAL;
+
+	/** Thread.Builder.name(String, long) if available */
+	private static final Method BUILDER_NAME;
+
+	/** Thread.Builder.factory() if available */
+	private static final Method BUILDER_FACTORY;
+
+	/** Executors.newThreadPerTaskExecutor(ThreadFactory) if available */
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+	/** Indicates the missing virtual thread support has been logged */
+	private static volatile boolean fallbackLogged = false;
+
+	static {
+		Method ofVirtual = null;
+		Method builderName = null;
+		Method builderFactory = null;
+		Method newThreadPerTask = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			builderName = builder.getMethod("name", String.class, long.class);
+			builderFactory = builder.getMethod("factory");
+			newThreadPerTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		} catch (Exception e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = builderName;
+		BUILDER_FACTORY = builderFactory;
+		NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTask;
+	}
+
+	/**
+	 * Indicates whether the runtime supports virtual threads.
+	 *
+	 * @return
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Create an executor for the given mode.
+	 *
+	 * @param mode
+	 * @param platformThreads number of threads in {@link ThreadingMode#Platform} mode
+	 * @param namePrefix prefix for thread names
+	 * @return
+	 */
+	public static ExecutorService newExecutor(ThreadingMode mode, int platformThreads, String namePrefix) {
+		if (mode == ThreadingMode.Virtual) {
+			return newThreadPerTaskExecutor(namePrefix);
+		}
+		return Executors.newFixedThreadPool(platformThreads, new NamedThreadFactory(namePrefix, 0));
+	}
+
+	/**
+	 * Create an executor that starts a new virtual thread for each task, falling back to
+	 * small-stack platform threads if virtual threads are not supported.
+	 *
+	 * @param namePrefix
+	 * @return
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+		if (isVirtualThreadSupported()) {
+			try {
+				Object builder = OF_VIRTUAL.invoke(null);
+				builder = BUILDER_NAME.invoke(builder, namePrefix, 1L);
+				ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+				return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+			} catch (Exception e) {
+				LOGGER.warn("Unable to create virtual thread executor. Using platform threads.", e);
+			}
+		} else if (!fallbackLogged) {
+			fallbackLogged = true;
+			LOGGER.warn("Virtual threads require Java 21 or newer. Using a platform thread for each task.");
+		}
+		return Executors.newCachedThreadPool(new NamedThreadFactory(namePrefix, FALLBACK_STACK_SIZE));
+	}
+
+	/**
+	 * Creates platform threads named with a prefix and a counter.
+	 *
+	 * @author Derek
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+
+		/** Prefix for thread names */
+		private String prefix;
+
+		/** Stack size (0 uses the default) */
+		private long stackSize;
+
+		/** Counts threads */
+		private AtomicInteger counter = new AtomicInteger();
+
+		public NamedThreadFactory(String prefix, long stackSize) {
+			this.prefix = prefix;
+			this.stackSize = stackSize;
+		}
+
+		public Thread newThread(Runnable r) {
+			return new Thread(null, r, prefix + counter.incrementAndGet(), stackSize);
+		}
+	}
+}
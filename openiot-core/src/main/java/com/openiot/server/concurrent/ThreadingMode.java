@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.server.concurrent;
+
+/**
+ * Indicates how a component runs its tasks. See {@link ExecutorFactory}.
+ *
+ * @author Derek
+ */
+public enum ThreadingMode {
+
+	/** Fixed pool of platform threads */
+	Platform("platform"),
+
+	/** New virtual thread for each task */
+	Virtual("virtual");
+
+	/** Name used in configuration */
+	private String name;
+
+	private ThreadingMode(String name) {
+		this.name = name;
+	}
+
+	public static ThreadingMode getByName(String name) {
+		for (ThreadingMode value : ThreadingMode.values()) {
+			if (value.getName().equals(name)) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.server.metrics;
+
+import com.openiot.rest.model.system.LatencySummary;
+import com.openiot.spi.system.ILatencyHistogram;
+import com.openiot.spi.system.ILatencySummary;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram. Values below
+ * {@link #LINEAR_LIMIT} nanoseconds get a bucket each. Larger values are split into
+ * power-of-two ranges that each hold {@link #SUB_BUCKETS} buckets, which keeps the error
+ * of any percentile below about 3%. Buckets are preallocated, so {@link #record(long)}
+ * only updates atomic counters and never allocates.
+ * 
+ * @author Derek
+ */
+public class LatencyHistogram implements ILatencyHistogram {
+
+	/** Number of sub-buckets in each power-of-two range */
+	private static final int SUB_BUCKETS = 32;
+
+	/** Number of bits needed to index a sub-bucket */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/** Values below this are counted exactly */
+	private static final long LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+	/** Largest value tracked (about 18 minutes) before values are clamped */
+	private static final long MAX_TRACKABLE = (1L << 40) - 1;
+
+	/** Total number of buckets */
+	private static final int BUCKET_COUNT = getBucketIndex(MAX_TRACKABLE) + 1;
+
+	/** Stage name */
+	private final String stage;
+
+	/** Count per bucket */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+	/** Total number of values */
+	private final AtomicLong count = new AtomicLong();
+
+	/** Sum of all values */
+	private final AtomicLong sum = new AtomicLong();
+
+	/** Largest value */
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram(String stage) {
+		this.stage = stage;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencyHistogram#record(long)
+	 */
+	@Override
+	public void record(long elapsedNanos) {
+		long value = (elapsedNanos < 0) ? 0 : Math.min(elapsedNanos, MAX_TRACKABLE);
+		buckets.incrementAndGet(getBucketIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current = max.get();
+		while ((value > current) && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Record the time elapsed since a start time taken from {@link System#nanoTime()}.
+	 * 
+	 * @param startNanos
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Get the value at a given percentile in nanoseconds.
+	 * 
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil((percentile / 100.0) * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets.get(i);
+			if (seen >= target) {
+				return Math.min(getBucketMidpoint(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencyHistogram#getSummary()
+	 */
+	@Override
+	public ILatencySummary getSummary() {
+		LatencySummary summary = new LatencySummary();
+		long total = count.get();
+		summary.setStage(getStage());
+		summary.setCount(total);
+		summary.setMeanMicros((total == 0) ? 0 : toMicros(sum.get() / total));
+		summary.setP50Micros(toMicros(getValueAtPercentile(50.0)));
+		summary.setP99Micros(toMicros(getValueAtPercentile(99.0)));
+		summary.setP999Micros(toMicros(getValueAtPercentile(99.9)));
+		summary.setMaxMicros(toMicros(max.get()));
+		return summary;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.ILatencyHistogram#reset()
+	 */
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	public String getStage() {
+		return stage;
+	}
+
+	/**
+	 * Get the bucket a value falls into.
+	 * 
+	 * @param value
+	 * @return
+	 */
+	protected static int getBucketIndex(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int shift = msb - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) - SUB_BUCKETS;
+		return (int) LINEAR_LIMIT + ((shift - 1) * SUB_BUCKETS) + sub;
+	}
+
+	/**
+	 * Get the value in the middle of a bucket.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	protected static long getBucketMidpoint(int index) {
+		if (index < LINEAR_LIMIT) {
+			return index;
+		}
+		int offset = index - (int) LINEAR_LIMIT;
+		int shift = (offset / SUB_BUCKETS) + 1;
+		long lower = ((long) ((offset % SUB_BUCKETS) + SUB_BUCKETS)) << shift;
+		return lower + ((1L << shift) >>> 1);
+	}
+
+	/**
+	 * Convert nanoseconds to microseconds.
+	 * 
+	 * @param nanos
+	 * @return
+	 */
+	protected static long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.server.metrics;
+
+import com.openiot.spi.system.ILatencySummary;
+
+import javax.management.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JMX view of {@link PipelineLatencyMetrics}. Stages are created as events flow, so the
+ * attribute list is rebuilt on each request. Each stage exposes attributes named
+ * <code>[stage].count</code>, <code>[stage].p50Micros</code>,
+ * <code>[stage].p99Micros</code>, <code>[stage].p999Micros</code>,
+ * <code>[stage].meanMicros</code> and <code>[stage].maxMicros</code>.
+ * 
+ * @author Derek
+ */
+public class PipelineLatencyMBean implements DynamicMBean {
+
+	/** Operation that clears all histograms */
+	private static final String OPERATION_RESET = "reset";
+
+	/** Attribute name suffixes */
+	private static final String[] SUFFIXES = { "count", "p50Micros", "p99Micros", "p999Micros",
+			"meanMicros", "maxMicros" };
+
+	/** Metrics being exposed */
+	private PipelineLatencyMetrics metrics;
+
+	public PipelineLatencyMBean(PipelineLatencyMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.management.DynamicMBean#getAttribute(java.lang.String)
+	 */
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		int dot = attribute.lastIndexOf('.');
+		if (dot < 1) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		String stage = attribute.substring(0, dot);
+		String suffix = attribute.substring(dot + 1);
+		for (ILatencySummary summary : metrics.getLatencySummaries()) {
+			if (summary.getStage().equals(stage)) {
+				return getValue(summary, suffix, attribute);
+			}
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	/**
+	 * Get a single value from a summary.
+	 * 
+	 * @param summary
+	 * @param suffix
+	 * @param attribute
+	 * @return
+	 * @throws AttributeNotFoundException
+	 */
+	protected Long getValue(ILatencySummary summary, String suffix, String attribute)
+			throws AttributeNotFoundException {
+		if ("count".equals(suffix)) {
+			return summary.getCount();
+		} else if ("p50Micros".equals(suffix)) {
+			return summary.getP50Micros();
+		} else if ("p99Micros".equals(suffix)) {
+			return summary.getP99Micros();
+		} else if ("p999Micros".equals(suffix)) {
+			return summary.getP999Micros();
+		} else if ("meanMicros".equals(suffix)) {
+			return summary.getMeanMicros();
+		} else if ("maxMicros".equals(suffix)) {
+			return summary.getMaxMicros();
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.management.DynamicMBean#setAttribute(javax.management.Attribute)
+	 */
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Pipeline latency attributes are read-only.");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.management.DynamicMBean#getAttributes(java.lang.String[])
+	 */
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		for (String name : attributes) {
+			try {
+				list.add(new Attribute(name, getAttribute(name)));
+			} catch (AttributeNotFoundException e) {
+				// Unknown attributes are omitted from the result.
+			}
+		}
+		return list;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.management.DynamicMBean#setAttributes(javax.management.AttributeList)
+	 */
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.management.DynamicMBean#invoke(java.lang.String, java.lang.Object[],
+	 * java.lang.String[])
+	 */
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException,
+			ReflectionException {
+		if (OPERATION_RESET.equals(actionName)) {
+			metrics.reset();
+			return null;
+		}
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see javax.management.DynamicMBean#getMBeanInfo()
+	 */
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (ILatencySummary summary : metrics.getLatencySummaries()) {
+			for (String suffix : SUFFIXES) {
+				attributes.add(new MBeanAttributeInfo(summary.getStage() + "." + suffix, Long.class.getName(),
+						suffix + " for pipeline stage '" + summary.getStage() + "'.", true, false, false));
+			}
+		}
+		MBeanOperationInfo reset =
+				new MBeanOperationInfo(OPERATION_RESET, "Discard all recorded latencies.",
+						new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+		return new MBeanInfo(getClass().getName(), "Latency percentiles for each event pipeline stage.",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+				new MBeanOperationInfo[] { reset }, null);
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.server.metrics;
+
+import com.openiot.spi.system.ILatencyHistogram;
+import com.openiot.spi.system.ILatencySummary;
+import com.openiot.spi.system.IPipelineLatencyMetrics;
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Default implementation of {@link IPipelineLatencyMetrics} backed by
+ * {@link LatencyHistogram}. Values can be read through the REST API or through JMX under
+ * {@link #OBJECT_NAME}.
+ * 
+ * @author Derek
+ */
+public class PipelineLatencyMetrics implements IPipelineLatencyMetrics {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(PipelineLatencyMetrics.class);
+
+	/** Name the JMX bean is registered under */
+	public static final String OBJECT_NAME = "com.openiot:type=PipelineLatency";
+
+	/** Time from payload arrival at an event source until all decoded events are queued */
+	public static final String STAGE_RECEIVE = "receive";
+
+	/** Time spent decoding a payload */
+	public static final String STAGE_DECODE = "decode";
+
+	/** Time a decoded event waits for an inbound processing thread */
+	public static final String STAGE_QUEUE_WAIT = "queueWait";
+
+	/** Time spent delivering an event (or batch) to the whole inbound processor chain */
+	public static final String STAGE_INBOUND_CHAIN = "inboundChain";
+
+	/** Prefix for time spent in each inbound event processor */
+	public static final String STAGE_INBOUND_PROCESSOR_PREFIX = "inboundProcessor.";
+
+	/** Time spent storing events */
+	public static final String STAGE_PERSISTENCE = "persistence";
+
+	/** Time spent delivering an event to the outbound processor chain */
+	public static final String STAGE_OUTBOUND_DISPATCH = "outboundDispatch";
+
+	/** Prefix for time spent in each outbound event processor */
+	public static final String STAGE_OUTBOUND_PROCESSOR_PREFIX = "outboundProcessor.";
+
+	/** Histograms indexed by stage name */
+	private ConcurrentMap<String, LatencyHistogram> histograms =
+			new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+	/** Name of the registered JMX bean */
+	private ObjectName objectName;
+
+	/**
+	 * Get the stage name for a processor in a chain. The position in the chain is part of
+	 * the name so processors that share a component name are not merged.
+	 * 
+	 * @param prefix
+	 * @param index
+	 * @param name
+	 * @return
+	 */
+	public static String getProcessorStage(String prefix, int index, String name) {
+		return prefix + index + "." + name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.IPipelineLatencyMetrics#getHistogram(java.lang.String)
+	 */
+	@Override
+	public LatencyHistogram getHistogram(String stage) {
+		LatencyHistogram histogram = histograms.get(stage);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram(stage);
+			histogram = histograms.putIfAbsent(stage, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.IPipelineLatencyMetrics#getLatencySummaries()
+	 */
+	@Override
+	public List<ILatencySummary> getLatencySummaries() {
+		List<ILatencySummary> summaries = new ArrayList<ILatencySummary>();
+		for (ILatencyHistogram histogram : histograms.values()) {
+			summaries.add(histogram.getSummary());
+		}
+		return summaries;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.system.IPipelineLatencyMetrics#reset()
+	 */
+	@Override
+	public void reset() {
+		for (ILatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Get a one-line description of a summary for log output.
+	 * 
+	 * @param summary
+	 * @return
+	 */
+	public static String format(ILatencySummary summary) {
+		return String.format("%s(p50 %d us, p99 %d us, p999 %d us)", summary.getStage(),
+				summary.getP50Micros(), summary.getP99Micros(), summary.getP999Micros());
+	}
+
+	/**
+	 * Register the JMX bean with the platform MBean server.
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(new PipelineLatencyMBean(this), name);
+			objectName = name;
+		} catch (JMException e) {
+			LOGGER.warn("Unable to register pipeline latency JMX bean.", e);
+		}
+	}
+
+	/**
+	 * Remove the JMX bean from the platform MBean server.
+	 */
+	public void unregisterMBean() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			LOGGER.warn("Unable to unregister pipeline latency JMX bean.", e);
+		}
+		objectName = null;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.server.concurrent;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares how many idle socket connections are serviced at once, and at what thread and
+ * heap cost, when connection handlers run on a fixed platform pool versus a virtual
+ * thread per connection. Mirrors the way the socket event receiver hands accepted
+ * connections to its pool. Set <code>benchmark.connections</code> to change the number of
+ * client connections (defaults to 1000). Excluded from the default test run; use the
+ * <code>benchmark</code> profile to run it.
+ *
+ * @author Derek
+ */
+public class ThreadingModeBenchmark {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(ThreadingModeBenchmark.class);
+
+	/** Number of platform threads, same as the socket receiver default */
+	private static final int PLATFORM_THREADS = 5;
+
+	/** Time allowed for accepted connections to be picked up by handlers */
+	private static final long SETTLE_MS = 2000;
+
+	@Test
+	public void compareThreadingModes() throws Exception {
+		int connections = Integer.getInteger("benchmark.connections", 1000);
+		LOGGER.info("Virtual threads supported: " + ExecutorFactory.isVirtualThreadSupported());
+		LOGGER.info("Mode        Connections  Serviced  Threads  Heap (KB)");
+		for (ThreadingMode mode : ThreadingMode.values()) {
+			Result result = run(mode, connections);
+			LOGGER.info(String.format("%-10s  %11d  %8d  %7d  %9d", mode.getName(), connections,
+					result.serviced, result.threads, result.heapBytes / 1024));
+		}
+	}
+
+	/**
+	 * Open idle connections against a server whose handlers block reading the socket.
+	 *
+	 * @param mode
+	 * @param connections
+	 * @return
+	 * @throws Exception
+	 */
+	protected Result run(ThreadingMode mode, int connections) throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		System.gc();
+		int threadsBefore = threads.getThreadCount();
+		long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+		final ServerSocket server = new ServerSocket(0, connections, InetAddress.getLoopbackAddress());
+		final ExecutorService pool =
+				ExecutorFactory.newExecutor(mode, PLATFORM_THREADS, "Benchmark Handler ");
+		final AtomicInteger active = new AtomicInteger();
+		Thread acceptor = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (!server.isClosed()) {
+					try {
+						final Socket socket = server.accept();
+						pool.execute(new Runnable() {
+
+							@Override
+							public void run() {
+								active.incrementAndGet();
+								try {
+									InputStream input = socket.getInputStream();
+									while (input.read() != -1) {
+									}
+								} catch (IOException e) {
+								} finally {
+									active.decrementAndGet();
+									try {
+										socket.close();
+									} catch (IOException e) {
+									}
+								}
+							}
+						});
+					} catch (IOException e) {
+						return;
+					}
+				}
+			}
+		}, "Benchmark Acceptor");
+		acceptor.start();
+
+		List<Socket> clients = new ArrayList<Socket>();
+		try {
+			for (int i = 0; i < connections; i++) {
+				Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+				client.getOutputStream().write(1);
+				clients.add(client);
+			}
+			Thread.sleep(SETTLE_MS);
+			System.gc();
+			Result result = new Result();
+			result.serviced = active.get();
+			result.threads = threads.getThreadCount() - threadsBefore;
+			result.heapBytes = Math.max(0, memory.getHeapMemoryUsage().getUsed() - heapBefore);
+			return result;
+		} finally {
+			for (Socket client : clients) {
+				client.close();
+			}
+			server.close();
+			pool.shutdown();
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	/** Measurements for a single run */
+	private static class Result {
+
+		/** Connections being serviced by a handler */
+		private int serviced;
+
+		/** Platform threads added during the run */
+		private int threads;
+
+		/** Heap growth during the run */
+		private long heapBytes;
+	}
+}
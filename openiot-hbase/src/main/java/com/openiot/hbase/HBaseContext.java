@@ -9,6 +9,7 @@ package com.openiot.hbase;
 
 import com.openiot.hbase.device.IDeviceEventBuffer;
 import com.openiot.hbase.encoder.IPayloadMarshaler;
+import com.openiot.spi.device.IDeviceAssignmentStateAggregator;
 import com.openiot.spi.device.IDeviceManagementCacheProvider;
 
 /**
@@ -30,6 +31,9 @@ public class HBaseContext implements IHBaseContext {
 	/** Device event buffer */
 	private IDeviceEventBuffer deviceEventBuffer;
 
+	/** Assignment state aggregator */
+	private IDeviceAssignmentStateAggregator assignmentStateAggregator;
+
 	public IOpenIoTHBaseClient getClient() {
 		return client;
 	}
@@ -61,4 +65,12 @@ public class HBaseContext implements IHBaseContext {
 	public void setDeviceEventBuffer(IDeviceEventBuffer deviceEventBuffer) {
 		this.deviceEventBuffer = deviceEventBuffer;
 	}
+
+	public IDeviceAssignmentStateAggregator getAssignmentStateAggregator() {
+		return assignmentStateAggregator;
+	}
+
+	public void setAssignmentStateAggregator(IDeviceAssignmentStateAggregator assignmentStateAggregator) {
+		this.assignmentStateAggregator = assignmentStateAggregator;
+	}
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ package com.openiot.hbase;
 
 import com.openiot.hbase.device.IDeviceEventBuffer;
 import com.openiot.hbase.encoder.IPayloadMarshaler;
+import com.openiot.spi.device.IDeviceAssignmentStateAggregator;
 import com.openiot.spi.device.IDeviceManagementCacheProvider;
 
 /**
@@ -45,4 +46,12 @@ public interface IHBaseContext {
 	 * @return
 	 */
 	public IDeviceEventBuffer getDeviceEventBuffer();
+
+	/**
+	 * Get aggregator for assignment state updates. Returns null if state is written for
+	 * each event.
+	 * 
+	 * @return
+	 */
+	public IDeviceAssignmentStateAggregator getAssignmentStateAggregator();
 }
\ No newline at end of file
@@ -35,6 +35,12 @@ public interface IOpenIoTHBase {
 	/** Users table name */
 	public static final byte[] USERS_TABLE_NAME = Bytes.toBytes("users");
 
+	/** Measurement rollups table name */
+	public static final byte[] ROLLUPS_TABLE_NAME = Bytes.toBytes("rollups");
+
+	/** Command deliveries table name */
+	public static final byte[] DELIVERIES_TABLE_NAME = Bytes.toBytes("deliveries");
+
 	/*******************
 	 * COLUMN FAMILIES *
 	 *******************/
@@ -35,14 +35,30 @@ public class OpenIoTTables {
 	 */
 	public static void assureTable(IOpenIoTHBaseClient hbase, byte[] tableName, BloomType bloom)
 			throws OpenIoTException {
+		HColumnDescriptor family = new HColumnDescriptor(IOpenIoTHBase.FAMILY_ID);
+		family.setBloomFilterType(bloom);
+		assureTable(hbase, tableName, family);
+	}
+
+	/**
+	 * Assure that the given table exists and create it with the given column families if
+	 * not. Families of an existing table are not changed.
+	 * 
+	 * @param hbase
+	 * @param tableName
+	 * @param families
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static void assureTable(IOpenIoTHBaseClient hbase, byte[] tableName, HColumnDescriptor... families)
+			throws OpenIoTException {
 		try {
 			String tnameStr = new String(tableName);
 			if (!hbase.getAdmin().tableExists(tableName)) {
 				LOGGER.info("Table '" + tnameStr + "' does not exist. Creating table...");
 				HTableDescriptor table = new HTableDescriptor(TableName.valueOf(tableName));
-				HColumnDescriptor family = new HColumnDescriptor(IOpenIoTHBase.FAMILY_ID);
-				family.setBloomFilterType(bloom);
-				table.addFamily(family);
+				for (HColumnDescriptor family : families) {
+					table.addFamily(family);
+				}
 				hbase.getAdmin().createTable(table);
 				LOGGER.info("Table '" + tnameStr + "' created successfully.");
 			} else {
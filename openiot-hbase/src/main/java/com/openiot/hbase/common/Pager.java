@@ -13,7 +13,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Encapsulates paging functionality.
+ * Encapsulates paging functionality. By default the page is located by skipping records
+ * according to the page number. In seek mode the caller only passes records that come
+ * after the previous page, so nothing is skipped, and records before it may be counted with
+ * {@link #skip(long)}.
  * 
  * @author Derek
  */
@@ -34,6 +37,12 @@ public class Pager<T> {
 	/** Total records matched */
 	private long total;
 
+	/** Indicates whether every record is counted */
+	private boolean countAll = true;
+
+	/** Indicates whether a record was offered after the page was full */
+	private boolean more;
+
 	public Pager(ISearchCriteria criteria) {
 		this.criteria = criteria;
 		if (criteria.getPageNumber() >= 1) {
@@ -44,6 +53,14 @@ public class Pager<T> {
 		this.total = 0;
 	}
 
+	public Pager(ISearchCriteria criteria, boolean seek, boolean countAll) {
+		this(criteria);
+		if (seek) {
+			this.toSkip = 0;
+		}
+		this.countAll = countAll;
+	}
+
 	/**
 	 * Process a record. Return false if no more processing is needed (page of records has
 	 * been found).
@@ -57,9 +74,40 @@ public class Pager<T> {
 		} else if ((criteria.getPageSize() == 0) || (matched < criteria.getPageSize())) {
 			results.add(record);
 			matched++;
+		} else {
+			more = true;
 		}
 	}
 
+	/**
+	 * Count records that are not passed to the pager, such as records before the page in
+	 * seek mode or records dropped by the caller once the page is known to be full.
+	 * 
+	 * @param count
+	 */
+	public void skip(long count) {
+		total += count;
+	}
+
+	/**
+	 * Indicates whether the page is full and records are not being counted, so no more
+	 * records need to be processed.
+	 * 
+	 * @return
+	 */
+	public boolean isComplete() {
+		return more && !countAll;
+	}
+
+	/**
+	 * Indicates whether records were processed after the page was full.
+	 * 
+	 * @return
+	 */
+	public boolean hasMore() {
+		return more;
+	}
+
 	public ISearchCriteria getSearchCriteria() {
 		return criteria;
 	}
@@ -72,7 +120,12 @@ public class Pager<T> {
 		this.results = results;
 	}
 
+	/**
+	 * Get the number of records processed.
+	 * 
+	 * @return -1 if not every record was counted
+	 */
 	public long getTotal() {
-		return total;
+		return countAll ? total : -1;
 	}
-}
\ No newline at end of file
+}
@@ -96,6 +96,21 @@ public class DeviceEventBuffer implements IDeviceEventBuffer {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.hbase.device.IDeviceEventBuffer#addAll(java.util.List)
+	 */
+	public void addAll(List<Put> puts) {
+		try {
+			for (Put put : puts) {
+				buffer.put(put);
+			}
+		} catch (InterruptedException e) {
+			LOGGER.error("Interrupted while trying to put data.", e);
+		}
+	}
+
 	/**
 	 * Thread that sends {@link Put} commands to HBase in batches.
 	 * 
@@ -16,8 +16,11 @@ import com.openiot.hbase.encoder.PayloadMarshalerResolver;
 import com.openiot.rest.model.device.batch.BatchElement;
 import com.openiot.rest.model.search.SearchResults;
 import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.OpenIoTSystemException;
 import com.openiot.spi.device.batch.IBatchElement;
 import com.openiot.spi.device.request.IBatchElementUpdateRequest;
+import com.openiot.spi.error.ErrorCode;
+import com.openiot.spi.error.ErrorLevel;
 import com.openiot.spi.search.device.IBatchElementSearchCriteria;
 import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -27,6 +30,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * HBase specifics for dealing with OpenIoT batch operation elements.
@@ -117,6 +121,61 @@ public class HBaseBatchElement {
 		}
 	}
 
+	/**
+	 * Updates many elements of a batch operation. Existing elements are read with a single
+	 * multi-get and written back with a single batched put.
+	 * 
+	 * @param context
+	 * @param operationToken
+	 * @param requests
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static List<IBatchElement> updateBatchElements(IHBaseContext context, String operationToken,
+			Map<Long, IBatchElementUpdateRequest> requests) throws OpenIoTException {
+		HTableInterface devices = null;
+		try {
+			devices = context.getClient().getTableInterface(IOpenIoTHBase.DEVICES_TABLE_NAME);
+			List<Get> gets = new ArrayList<Get>();
+			for (Long index : requests.keySet()) {
+				Get get = new Get(getElementRowKey(operationToken, index));
+				HBaseUtils.addPayloadFields(get);
+				gets.add(get);
+			}
+			Result[] found = devices.get(gets);
+
+			List<IBatchElement> results = new ArrayList<IBatchElement>();
+			List<Put> puts = new ArrayList<Put>();
+			int i = 0;
+			for (Map.Entry<Long, IBatchElementUpdateRequest> entry : requests.entrySet()) {
+				Result result = found[i++];
+				byte[] type = result.getValue(IOpenIoTHBase.FAMILY_ID, IOpenIoTHBase.PAYLOAD_TYPE);
+				byte[] payload = result.getValue(IOpenIoTHBase.FAMILY_ID, IOpenIoTHBase.PAYLOAD);
+				if ((type == null) || (payload == null)) {
+					throw new OpenIoTSystemException(ErrorCode.InvalidBatchElement, ErrorLevel.ERROR);
+				}
+				BatchElement element =
+						PayloadMarshalerResolver.getInstance().getMarshaler(type).decodeBatchElement(payload);
+				OpenIoTPersistence.batchElementUpdateLogic(entry.getValue(), element);
+				byte[] updated = context.getPayloadMarshaler().encodeBatchElement(element);
+
+				Put put = new Put(result.getRow());
+				HBaseUtils.addPayloadFields(context.getPayloadMarshaler().getEncoding(), put, updated);
+				put.add(IOpenIoTHBase.FAMILY_ID, HARDWARE_ID, Bytes.toBytes(element.getHardwareId()));
+				put.add(IOpenIoTHBase.FAMILY_ID, PROCESSING_STATUS,
+						Bytes.toBytes(String.valueOf(element.getProcessingStatus().getCode())));
+				puts.add(put);
+				results.add(element);
+			}
+			devices.put(puts);
+			return results;
+		} catch (IOException e) {
+			throw new OpenIoTException("Unable to update batch elements.", e);
+		} finally {
+			HBaseUtils.closeCleanly(devices);
+		}
+	}
+
 	/**
 	 * Gets the batch operation element given the parent operation token and unique index.
 	 * 
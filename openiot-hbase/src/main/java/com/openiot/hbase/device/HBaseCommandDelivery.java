@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.hbase.device;
+
+import com.openiot.hbase.IHBaseContext;
+import com.openiot.hbase.IOpenIoTHBase;
+import com.openiot.hbase.common.HBaseUtils;
+import com.openiot.rest.model.device.command.CommandDelivery;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.command.CommandDeliveryStatus;
+import com.openiot.spi.device.command.ICommandDelivery;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * HBase specifics for dealing with command deliveries. Rows are keyed by destination id,
+ * invocation id and assignment token separated by zero bytes, so the deliveries for a
+ * destination can be read with a single scan.
+ *
+ * @author Derek
+ */
+public class HBaseCommandDelivery {
+
+	/** Column qualifier for invocation id */
+	public static final byte[] INVOCATION_ID = Bytes.toBytes("i");
+
+	/** Column qualifier for assignment token */
+	public static final byte[] ASSIGNMENT_TOKEN = Bytes.toBytes("a");
+
+	/** Column qualifier for delivery status code */
+	public static final byte[] STATUS = Bytes.toBytes("t");
+
+	/** Column qualifier for number of attempts */
+	public static final byte[] ATTEMPTS = Bytes.toBytes("n");
+
+	/** Column qualifier for delivery error */
+	public static final byte[] ERROR = Bytes.toBytes("e");
+
+	/** Column qualifier for date delivery was queued */
+	public static final byte[] CREATED_DATE = Bytes.toBytes("c");
+
+	/** Column qualifier for date status last changed */
+	public static final byte[] UPDATED_DATE = Bytes.toBytes("u");
+
+	/** Separates the parts of a row key */
+	private static final byte SEPARATOR = 0;
+
+	/**
+	 * Create or replace a stored delivery.
+	 *
+	 * @param context
+	 * @param delivery
+	 * @throws OpenIoTException
+	 */
+	public static void save(IHBaseContext context, ICommandDelivery delivery) throws OpenIoTException {
+		byte[] row =
+				getRowKey(delivery.getDestinationId(), delivery.getInvocationId(),
+						delivery.getAssignmentToken());
+		Put put = new Put(row);
+		put.add(IOpenIoTHBase.FAMILY_ID, INVOCATION_ID, Bytes.toBytes(delivery.getInvocationId()));
+		put.add(IOpenIoTHBase.FAMILY_ID, ASSIGNMENT_TOKEN, Bytes.toBytes(delivery.getAssignmentToken()));
+		put.add(IOpenIoTHBase.FAMILY_ID, STATUS, new byte[] { (byte) delivery.getStatus().getCode() });
+		put.add(IOpenIoTHBase.FAMILY_ID, ATTEMPTS, Bytes.toBytes(delivery.getAttempts()));
+		if (delivery.getUpdatedDate() != null) {
+			put.add(IOpenIoTHBase.FAMILY_ID, UPDATED_DATE,
+					Bytes.toBytes(delivery.getUpdatedDate().getTime()));
+		}
+		byte[] error = (delivery.getError() != null) ? Bytes.toBytes(delivery.getError()) : new byte[0];
+		put.add(IOpenIoTHBase.FAMILY_ID, ERROR, error);
+		HTableInterface table = null;
+		try {
+			table = context.getClient().getTableInterface(IOpenIoTHBase.DELIVERIES_TABLE_NAME);
+			if (delivery.getCreatedDate() != null) {
+				Put created = new Put(row);
+				created.add(IOpenIoTHBase.FAMILY_ID, CREATED_DATE,
+						Bytes.toBytes(delivery.getCreatedDate().getTime()));
+				table.checkAndPut(row, IOpenIoTHBase.FAMILY_ID, CREATED_DATE, null, created);
+			}
+			table.put(put);
+		} catch (IOException e) {
+			throw new OpenIoTException("Unable to save command delivery.", e);
+		} finally {
+			HBaseUtils.closeCleanly(table);
+		}
+	}
+
+	/**
+	 * Delete a stored delivery.
+	 *
+	 * @param context
+	 * @param destinationId
+	 * @param invocationId
+	 * @param assignmentToken
+	 * @throws OpenIoTException
+	 */
+	public static void delete(IHBaseContext context, String destinationId, String invocationId,
+			String assignmentToken) throws OpenIoTException {
+		HTableInterface table = null;
+		try {
+			table = context.getClient().getTableInterface(IOpenIoTHBase.DELIVERIES_TABLE_NAME);
+			table.delete(new Delete(getRowKey(destinationId, invocationId, assignmentToken)));
+		} catch (IOException e) {
+			throw new OpenIoTException("Unable to delete command delivery.", e);
+		} finally {
+			HBaseUtils.closeCleanly(table);
+		}
+	}
+
+	/**
+	 * List deliveries for a destination with the given status.
+	 *
+	 * @param context
+	 * @param destinationId
+	 * @param status
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public static List<ICommandDelivery> list(IHBaseContext context, String destinationId,
+			CommandDeliveryStatus status) throws OpenIoTException {
+		byte[] destination = Bytes.toBytes(destinationId);
+		HTableInterface table = null;
+		ResultScanner scanner = null;
+		try {
+			table = context.getClient().getTableInterface(IOpenIoTHBase.DELIVERIES_TABLE_NAME);
+			Scan scan = new Scan();
+			scan.setStartRow(getPrefix(destination, SEPARATOR));
+			scan.setStopRow(getPrefix(destination, (byte) (SEPARATOR + 1)));
+			scan.addFamily(IOpenIoTHBase.FAMILY_ID);
+			scanner = table.getScanner(scan);
+
+			List<ICommandDelivery> results = new ArrayList<ICommandDelivery>();
+			for (Result current : scanner) {
+				byte[] code = current.getValue(IOpenIoTHBase.FAMILY_ID, STATUS);
+				if ((code == null) || (code.length != 1) || (code[0] != (byte) status.getCode())) {
+					continue;
+				}
+				CommandDelivery delivery = new CommandDelivery();
+				delivery.setDestinationId(destinationId);
+				delivery.setInvocationId(getString(current, INVOCATION_ID));
+				delivery.setAssignmentToken(getString(current, ASSIGNMENT_TOKEN));
+				delivery.setStatus(status);
+				byte[] attempts = current.getValue(IOpenIoTHBase.FAMILY_ID, ATTEMPTS);
+				if (attempts != null) {
+					delivery.setAttempts(Bytes.toInt(attempts));
+				}
+				delivery.setError(getString(current, ERROR));
+				delivery.setCreatedDate(getDate(current, CREATED_DATE));
+				delivery.setUpdatedDate(getDate(current, UPDATED_DATE));
+				results.add(delivery);
+			}
+			return results;
+		} catch (IOException e) {
+			throw new OpenIoTException("Error scanning command deliveries.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(table);
+		}
+	}
+
+	/**
+	 * Get the row key for a delivery.
+	 *
+	 * @param destinationId
+	 * @param invocationId
+	 * @param assignmentToken
+	 * @return
+	 */
+	public static byte[] getRowKey(String destinationId, String invocationId, String assignmentToken) {
+		byte[] destination = Bytes.toBytes(destinationId);
+		byte[] invocation = Bytes.toBytes(invocationId);
+		byte[] assignment = Bytes.toBytes(assignmentToken);
+		ByteBuffer buffer = ByteBuffer.allocate(destination.length + invocation.length + assignment.length + 2);
+		buffer.put(destination);
+		buffer.put(SEPARATOR);
+		buffer.put(invocation);
+		buffer.put(SEPARATOR);
+		buffer.put(assignment);
+		return buffer.array();
+	}
+
+	/**
+	 * Get a destination id followed by a single byte.
+	 *
+	 * @param destination
+	 * @param last
+	 * @return
+	 */
+	protected static byte[] getPrefix(byte[] destination, byte last) {
+		ByteBuffer buffer = ByteBuffer.allocate(destination.length + 1);
+		buffer.put(destination);
+		buffer.put(last);
+		return buffer.array();
+	}
+
+	/**
+	 * Get a string column value.
+	 *
+	 * @param result
+	 * @param qualifier
+	 * @return value or null if not set or empty
+	 */
+	protected static String getString(Result result, byte[] qualifier) {
+		byte[] value = result.getValue(IOpenIoTHBase.FAMILY_ID, qualifier);
+		return ((value != null) && (value.length > 0)) ? Bytes.toString(value) : null;
+	}
+
+	/**
+	 * Get a date column value.
+	 *
+	 * @param result
+	 * @param qualifier
+	 * @return value or null if not set
+	 */
+	protected static Date getDate(Result result, byte[] qualifier) {
+		byte[] value = result.getValue(IOpenIoTHBase.FAMILY_ID, qualifier);
+		return (value != null) ? new Date(Bytes.toLong(value)) : null;
+	}
+}
@@ -36,7 +36,11 @@ import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * HBase specifics for dealing with OpenIoT device assignments.
@@ -187,6 +191,80 @@ public class HBaseDeviceAssignment {
 		}
 	}
 
+	/**
+	 * Get many device assignments by token. Cached assignments are used where available
+	 * and the rest are read with a single multi-get.
+	 * 
+	 * @param context
+	 * @param tokens
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static List<IDeviceAssignment> getDeviceAssignments(IHBaseContext context, List<String> tokens)
+			throws OpenIoTException {
+		Map<String, IDeviceAssignment> found = new HashMap<String, IDeviceAssignment>();
+		List<String> missing = new ArrayList<String>();
+		List<Get> gets = new ArrayList<Get>();
+		for (String token : tokens) {
+			if (context.getCacheProvider() != null) {
+				IDeviceAssignment cached = context.getCacheProvider().getDeviceAssignmentCache().get(token);
+				if (cached != null) {
+					found.put(token,
+							ASSIGNMENT_HELPER.convert(cached, OpenIoT.getServer().getAssetModuleManager()));
+					continue;
+				}
+			}
+			byte[] rowkey = IdManager.getInstance().getAssignmentKeys().getValue(token);
+			if (rowkey != null) {
+				Get get = new Get(rowkey);
+				HBaseUtils.addPayloadFields(get);
+				get.addColumn(IOpenIoTHBase.FAMILY_ID, ASSIGNMENT_STATE);
+				gets.add(get);
+				missing.add(token);
+			}
+		}
+		if (!gets.isEmpty()) {
+			HTableInterface sites = null;
+			try {
+				sites = context.getClient().getTableInterface(IOpenIoTHBase.SITES_TABLE_NAME);
+				Result[] results = sites.get(gets);
+				for (int i = 0; i < results.length; i++) {
+					byte[] type = results[i].getValue(IOpenIoTHBase.FAMILY_ID, IOpenIoTHBase.PAYLOAD_TYPE);
+					byte[] payload = results[i].getValue(IOpenIoTHBase.FAMILY_ID, IOpenIoTHBase.PAYLOAD);
+					byte[] state = results[i].getValue(IOpenIoTHBase.FAMILY_ID, ASSIGNMENT_STATE);
+					if ((type == null) || (payload == null)) {
+						continue;
+					}
+					DeviceAssignment assignment =
+							PayloadMarshalerResolver.getInstance().getMarshaler(type).decodeDeviceAssignment(
+									payload);
+					if (state != null) {
+						DeviceAssignmentState assnState =
+								PayloadMarshalerResolver.getInstance().getMarshaler(type).decodeDeviceAssignmentState(
+										state);
+						assignment.setState(assnState);
+					}
+					if (context.getCacheProvider() != null) {
+						context.getCacheProvider().getDeviceAssignmentCache().put(missing.get(i), assignment);
+					}
+					found.put(missing.get(i), assignment);
+				}
+			} catch (IOException e) {
+				throw new OpenIoTException("Unable to load device assignments by token.", e);
+			} finally {
+				HBaseUtils.closeCleanly(sites);
+			}
+		}
+		List<IDeviceAssignment> results = new ArrayList<IDeviceAssignment>();
+		for (String token : tokens) {
+			IDeviceAssignment assignment = found.get(token);
+			if (assignment != null) {
+				results.add(assignment);
+			}
+		}
+		return results;
+	}
+
 	/**
 	 * Update metadata associated with a device assignment.
 	 * 
@@ -10,34 +10,44 @@ package com.openiot.hbase.device;
 import com.google.bitcoin.core.AddressFormatException;
 import com.google.bitcoin.core.Base58;
 import com.openiot.core.OpenIoTPersistence;
+import com.openiot.device.charting.MeasurementAggregator;
 import com.openiot.hbase.IHBaseContext;
 import com.openiot.hbase.IOpenIoTHBase;
 import com.openiot.hbase.common.HBaseUtils;
 import com.openiot.hbase.common.Pager;
+import com.openiot.hbase.encoder.IPayloadMarshaler;
 import com.openiot.hbase.encoder.PayloadEncoding;
 import com.openiot.hbase.encoder.PayloadMarshalerResolver;
 import com.openiot.hbase.uid.IdManager;
 import com.openiot.rest.model.device.DeviceAssignmentState;
 import com.openiot.rest.model.device.event.*;
+import com.openiot.rest.model.search.ContinuationToken;
 import com.openiot.rest.model.search.SearchResults;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.OpenIoTSystemException;
 import com.openiot.spi.device.IDeviceAssignment;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
 import com.openiot.spi.device.command.IDeviceCommand;
 import com.openiot.spi.device.event.*;
 import com.openiot.spi.device.event.request.*;
 import com.openiot.spi.error.ErrorCode;
 import com.openiot.spi.error.ErrorLevel;
 import com.openiot.spi.search.IDateRangeSearchCriteria;
+import com.openiot.spi.search.device.IMeasurementAggregationCriteria;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.QualifierFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.log4j.Logger;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * HBase specifics for dealing with OpenIoT device events.
@@ -52,6 +62,18 @@ public class HBaseDeviceEvent {
 	/** Size of a row in milliseconds */
 	private static final long ROW_IN_MS = (1 << 24);
 
+	/** Length of the assignment key that prefixes event rows */
+	private static final int ASSIGNMENT_KEY_LENGTH = 7;
+
+	/** Number of results fetched per round trip when scanning events */
+	private static final int EVENT_SCAN_CACHING = 100;
+
+	/** Maximum number of cells in a single result when scanning events */
+	private static final int EVENT_SCAN_BATCH = 500;
+
+	/** Maps each qualifier byte to one character so qualifiers can be matched by regex */
+	private static final Charset QUALIFIER_CHARSET = Charset.forName("ISO-8859-1");
+
 	/**
 	 * List measurements associated with an assignment based on the given criteria.
 	 * 
@@ -67,6 +89,79 @@ public class HBaseDeviceEvent {
 		return convertMatches(context, matches);
 	}
 
+	/**
+	 * Create all events in a batch for an assignment. Puts for every event are handed to
+	 * the event buffer together, so they are written with the same buffering as single
+	 * events, and assignment state is updated once for the batch rather than once per
+	 * event.
+	 * 
+	 * @param context
+	 * @param assignment
+	 * @param batch
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static IDeviceEventBatchResponse createDeviceEventBatch(IHBaseContext context,
+			IDeviceAssignment assignment, IDeviceEventBatch batch) throws OpenIoTException {
+		DeviceEventBatchResponse response = new DeviceEventBatchResponse();
+		List<Put> puts = new ArrayList<Put>();
+		for (IDeviceMeasurementsCreateRequest request : batch.getMeasurements()) {
+			long time = getEventTime(request);
+			byte[] rowkey = getEventRowKey(assignment, time);
+			byte[] qualifier =
+					getQualifier(EventRecordType.Measurement, time, context.getPayloadMarshaler().getEncoding());
+			DeviceMeasurements measurements =
+					OpenIoTPersistence.deviceMeasurementsCreateLogic(request, assignment);
+			measurements.setId(getEncodedEventId(rowkey, qualifier));
+			Put put = new Put(rowkey);
+			put.add(IOpenIoTHBase.FAMILY_ID, qualifier,
+					context.getPayloadMarshaler().encodeDeviceMeasurements(measurements));
+			puts.add(put);
+			response.getCreatedMeasurements().add(measurements);
+		}
+		for (IDeviceLocationCreateRequest request : batch.getLocations()) {
+			long time = getEventTime(request);
+			byte[] rowkey = getEventRowKey(assignment, time);
+			byte[] qualifier =
+					getQualifier(EventRecordType.Location, time, context.getPayloadMarshaler().getEncoding());
+			DeviceLocation location = OpenIoTPersistence.deviceLocationCreateLogic(assignment, request);
+			location.setId(getEncodedEventId(rowkey, qualifier));
+			Put put = new Put(rowkey);
+			put.add(IOpenIoTHBase.FAMILY_ID, qualifier,
+					context.getPayloadMarshaler().encodeDeviceLocation(location));
+			puts.add(put);
+			response.getCreatedLocations().add(location);
+		}
+		for (IDeviceAlertCreateRequest request : batch.getAlerts()) {
+			long time = getEventTime(request);
+			byte[] rowkey = getEventRowKey(assignment, time);
+			byte[] qualifier =
+					getQualifier(EventRecordType.Alert, time, context.getPayloadMarshaler().getEncoding());
+			DeviceAlert alert = OpenIoTPersistence.deviceAlertCreateLogic(assignment, request);
+			alert.setId(getEncodedEventId(rowkey, qualifier));
+			Put put = new Put(rowkey);
+			put.add(IOpenIoTHBase.FAMILY_ID, qualifier,
+					context.getPayloadMarshaler().encodeDeviceAlert(alert));
+			puts.add(put);
+			response.getCreatedAlerts().add(alert);
+		}
+		context.getDeviceEventBuffer().addAll(puts);
+
+		// Apply requested state changes through the aggregator or in a single update.
+		if (context.getAssignmentStateAggregator() != null) {
+			OpenIoTPersistence.assignmentStateBatchAggregateLogic(assignment, batch, response,
+					context.getAssignmentStateAggregator());
+		} else {
+			DeviceAssignmentState updated =
+					OpenIoTPersistence.assignmentStateBatchUpdateLogic(assignment, batch, response);
+			if (updated != null) {
+				HBaseDeviceAssignment.updateDeviceAssignmentState(context, assignment.getToken(), updated);
+			}
+		}
+
+		return response;
+	}
+
 	/**
 	 * Create a new device measurements entry for an assignment.
 	 * 
@@ -100,9 +195,13 @@ public class HBaseDeviceEvent {
 
 		// Update state if requested.
 		if (request.isUpdateState()) {
-			DeviceAssignmentState updated =
-					OpenIoTPersistence.assignmentStateMeasurementsUpdateLogic(assignment, measurements);
-			HBaseDeviceAssignment.updateDeviceAssignmentState(context, assignment.getToken(), updated);
+			if (context.getAssignmentStateAggregator() != null) {
+				context.getAssignmentStateAggregator().addMeasurements(assignment, measurements);
+			} else {
+				DeviceAssignmentState updated =
+						OpenIoTPersistence.assignmentStateMeasurementsUpdateLogic(assignment, measurements);
+				HBaseDeviceAssignment.updateDeviceAssignmentState(context, assignment.getToken(), updated);
+			}
 		}
 
 		return measurements;
@@ -140,6 +239,52 @@ public class HBaseDeviceEvent {
 		return convertMatches(context, matches);
 	}
 
+	/**
+	 * Aggregate measurements for an assignment. Only the rows for the requested range are
+	 * scanned and values are added to the aggregator as they are read.
+	 * 
+	 * @param context
+	 * @param assnToken
+	 * @param criteria
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public static List<IMeasurementAggregateSeries> aggregateDeviceMeasurements(IHBaseContext context,
+			String assnToken, IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assnToken);
+		if (assnKey == null) {
+			throw new OpenIoTSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		MeasurementAggregator aggregator = new MeasurementAggregator(criteria);
+
+		// Note: Because time values are inverted, start and end keys are reversed.
+		byte[] startKey = getRowKey(assnKey, aggregator.getEnd());
+		byte[] endKey = getRowKey(assnKey, aggregator.getStart() - ROW_IN_MS);
+		aggregateMeasurementRows(context, startKey, endKey, aggregator);
+		return aggregator.getSeries();
+	}
+
+	/**
+	 * Aggregate measurements for all assignments in a site.
+	 * 
+	 * @param context
+	 * @param siteToken
+	 * @param criteria
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public static List<IMeasurementAggregateSeries> aggregateDeviceMeasurementsForSite(IHBaseContext context,
+			String siteToken, IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		Long siteId = IdManager.getInstance().getSiteKeys().getValue(siteToken);
+		if (siteId == null) {
+			throw new OpenIoTSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+		}
+		MeasurementAggregator aggregator = new MeasurementAggregator(criteria);
+		aggregateMeasurementRows(context, HBaseSite.getAssignmentRowKey(siteId),
+				HBaseSite.getAfterAssignmentRowKey(siteId), aggregator);
+		return aggregator.getSeries();
+	}
+
 	/**
 	 * Create a new device location entry for an assignment.
 	 * 
@@ -167,9 +312,13 @@ public class HBaseDeviceEvent {
 
 		// Update state if requested.
 		if (request.isUpdateState()) {
-			DeviceAssignmentState updated =
-					OpenIoTPersistence.assignmentStateLocationUpdateLogic(assignment, location);
-			HBaseDeviceAssignment.updateDeviceAssignmentState(context, assignment.getToken(), updated);
+			if (context.getAssignmentStateAggregator() != null) {
+				context.getAssignmentStateAggregator().addLocation(assignment, location);
+			} else {
+				DeviceAssignmentState updated =
+						OpenIoTPersistence.assignmentStateLocationUpdateLogic(assignment, location);
+				HBaseDeviceAssignment.updateDeviceAssignmentState(context, assignment.getToken(), updated);
+			}
 		}
 
 		return location;
@@ -236,9 +385,13 @@ public class HBaseDeviceEvent {
 
 		// Update state if requested.
 		if (request.isUpdateState()) {
-			DeviceAssignmentState updated =
-					OpenIoTPersistence.assignmentStateAlertUpdateLogic(assignment, alert);
-			HBaseDeviceAssignment.updateDeviceAssignmentState(context, assignment.getToken(), updated);
+			if (context.getAssignmentStateAggregator() != null) {
+				context.getAssignmentStateAggregator().addAlert(assignment, alert);
+			} else {
+				DeviceAssignmentState updated =
+						OpenIoTPersistence.assignmentStateAlertUpdateLogic(assignment, alert);
+				HBaseDeviceAssignment.updateDeviceAssignmentState(context, assignment.getToken(), updated);
+			}
 		}
 
 		return alert;
@@ -599,8 +752,9 @@ public class HBaseDeviceEvent {
 	}
 
 	/**
-	 * Find all event rows associated with a device assignment and return cells that match
-	 * the search criteria.
+	 * Find event rows associated with a device assignment and return a page of cells that
+	 * match the search criteria. Rows and cells are stored newest first, so the scan stops
+	 * once the page is full unless a total was requested.
 	 * 
 	 * @param context
 	 * @param assnToken
@@ -616,9 +770,14 @@ public class HBaseDeviceEvent {
 			throw new OpenIoTSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
 		}
 
+		ContinuationToken token = getContinuationToken(criteria);
+
 		// Note: Because time values are inverted, start and end keys are reversed.
 		byte[] startKey = null, endKey = null;
-		if (criteria.getEndDate() != null) {
+		if ((token != null) && (!criteria.isIncludeTotal())
+				&& ((criteria.getEndDate() == null) || (token.getEventDate().before(criteria.getEndDate())))) {
+			startKey = getRowKey(assnKey, token.getEventDate().getTime());
+		} else if (criteria.getEndDate() != null) {
 			startKey = getRowKey(assnKey, criteria.getEndDate().getTime());
 		} else {
 			startKey = getAbsoluteStartKey(assnKey);
@@ -633,38 +792,15 @@ public class HBaseDeviceEvent {
 		ResultScanner scanner = null;
 		try {
 			events = context.getClient().getTableInterface(IOpenIoTHBase.EVENTS_TABLE_NAME);
-			Scan scan = new Scan();
-			scan.setStartRow(startKey);
-			scan.setStopRow(endKey);
-			scanner = events.getScanner(scan);
+			scanner = events.getScanner(createEventScan(startKey, endKey, eventType));
 
-			List<EventMatch> matches = new ArrayList<EventMatch>();
-			Iterator<Result> results = scanner.iterator();
-			while (results.hasNext()) {
-				Result current = results.next();
-				Map<byte[], byte[]> cells = current.getFamilyMap(IOpenIoTHBase.FAMILY_ID);
-				for (byte[] qual : cells.keySet()) {
-					byte[] value = cells.get(qual);
-					if ((qual.length > 3) && ((eventType == null) || (qual[3] == eventType.getType()))) {
-						Date eventDate = getDateForEventKeyValue(current.getRow(), qual);
-						if ((criteria.getStartDate() != null) && (eventDate.before(criteria.getStartDate()))) {
-							continue;
-						}
-						if ((criteria.getEndDate() != null) && (eventDate.after(criteria.getEndDate()))) {
-							continue;
-						}
-						EventRecordType type = EventRecordType.decode(qual[3]);
-						byte[] encoding = getEncodingFromQualifier(qual);
-						matches.add(new EventMatch(type, eventDate, value, encoding));
-					}
+			MatchCollector matches = new MatchCollector(criteria, token);
+			for (Result current : scanner) {
+				if (!addMatches(current, criteria, matches)) {
+					break;
 				}
 			}
-			Collections.sort(matches, Collections.reverseOrder());
-			Pager<EventMatch> pager = new Pager<EventMatch>(criteria);
-			for (EventMatch match : matches) {
-				pager.process(match);
-			}
-			return pager;
+			return matches.getPager();
 		} catch (IOException e) {
 			throw new OpenIoTException("Error scanning event rows.", e);
 		} finally {
@@ -696,10 +832,10 @@ public class HBaseDeviceEvent {
 	}
 
 	/**
-	 * Find all event rows associated with a site and return values that match the search
-	 * criteria. TODO: This is not optimized at all and will take forever in cases where
-	 * there are ton of assignments and events. It has to go through every record
-	 * associated with the site. It works for now though.
+	 * Find event rows associated with a site and return a page of values that match the
+	 * search criteria. Rows are ordered by assignment, so every assignment in the site is
+	 * visited, but once the page is full the older events of an assignment are skipped by
+	 * restarting the scan at the next assignment unless a total was requested.
 	 * 
 	 * @param context
 	 * @param siteToken
@@ -721,42 +857,153 @@ public class HBaseDeviceEvent {
 		ResultScanner scanner = null;
 		try {
 			events = context.getClient().getTableInterface(IOpenIoTHBase.EVENTS_TABLE_NAME);
-			Scan scan = new Scan();
-			scan.setStartRow(startPrefix);
-			scan.setStopRow(afterPrefix);
-			scanner = events.getScanner(scan);
+			MatchCollector matches = new MatchCollector(criteria, getContinuationToken(criteria));
+			byte[] startRow = startPrefix;
+			while (startRow != null) {
+				scanner = events.getScanner(createEventScan(startRow, afterPrefix, eventType));
+				startRow = null;
+				for (Result current : scanner) {
+					byte[] key = current.getRow();
+					if (key.length <= ASSIGNMENT_KEY_LENGTH) {
+						continue;
+					}
+					if (!addMatches(current, criteria, matches)) {
+						startRow = getAfterAssignmentKey(Bytes.head(key, ASSIGNMENT_KEY_LENGTH));
+						if ((startRow != null) && (Bytes.compareTo(startRow, afterPrefix) >= 0)) {
+							startRow = null;
+						}
+						break;
+					}
+				}
+				scanner.close();
+				scanner = null;
+			}
+			return matches.getPager();
+		} catch (IOException e) {
+			throw new OpenIoTException("Error scanning event rows.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(events);
+		}
+	}
+
+	/**
+	 * Create a scan over event rows. If an event type is given, only cells for that type
+	 * are returned by the region servers. The type is the fourth byte of the qualifier,
+	 * after the low bytes of the inverted event time, so it is matched with a regular
+	 * expression over the raw qualifier bytes rather than a prefix.
+	 * 
+	 * @param startRow
+	 * @param stopRow
+	 * @param eventType
+	 * @return
+	 */
+	protected static Scan createEventScan(byte[] startRow, byte[] stopRow, EventRecordType eventType) {
+		Scan scan = new Scan();
+		scan.setStartRow(startRow);
+		scan.setStopRow(stopRow);
+		scan.addFamily(IOpenIoTHBase.FAMILY_ID);
+		scan.setCaching(EVENT_SCAN_CACHING);
+		scan.setBatch(EVENT_SCAN_BATCH);
+		if (eventType != null) {
+			RegexStringComparator comparator =
+					new RegexStringComparator(String.format("^.{3}\\x%02x", eventType.getType() & 0xff),
+							Pattern.DOTALL);
+			comparator.setCharset(QUALIFIER_CHARSET);
+			scan.setFilter(new QualifierFilter(CompareOp.EQUAL, comparator));
+		}
+		return scan;
+	}
+
+	/**
+	 * Add cells from an event row that match the search criteria. Cells are visited newest
+	 * first. Returns false if no later cell for the same assignment can appear in the
+	 * results, either because the rest are before the start date or because the page is
+	 * full and no total was requested.
+	 * 
+	 * @param current
+	 * @param criteria
+	 * @param matches
+	 * @return
+	 */
+	protected static boolean addMatches(Result current, IDateRangeSearchCriteria criteria,
+			MatchCollector matches) {
+		byte[] key = current.getRow();
+		Map<byte[], byte[]> cells = current.getFamilyMap(IOpenIoTHBase.FAMILY_ID);
+		if (cells == null) {
+			return true;
+		}
+		for (Map.Entry<byte[], byte[]> cell : cells.entrySet()) {
+			byte[] qual = cell.getKey();
+			if (qual.length <= 3) {
+				continue;
+			}
+			Date eventDate = getDateForEventKeyValue(key, qual);
+			if ((criteria.getEndDate() != null) && (eventDate.after(criteria.getEndDate()))) {
+				continue;
+			}
+			if ((criteria.getStartDate() != null) && (eventDate.before(criteria.getStartDate()))) {
+				return false;
+			}
+			EventRecordType type = EventRecordType.decode(qual[3]);
+			byte[] encoding = getEncodingFromQualifier(qual);
+			if (!matches.offer(new EventMatch(type, eventDate, key, qual, cell.getValue(), encoding))
+					&& (!criteria.isIncludeTotal())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Scan event rows and add the values of measurement cells to an aggregator. Cells are
+	 * decoded one at a time, so matches are never collected or sorted.
+	 * 
+	 * @param context
+	 * @param startKey
+	 * @param endKey
+	 * @param aggregator
+	 * @throws OpenIoTException
+	 */
+	protected static void aggregateMeasurementRows(IHBaseContext context, byte[] startKey, byte[] endKey,
+			MeasurementAggregator aggregator) throws OpenIoTException {
+		HTableInterface events = null;
+		ResultScanner scanner = null;
+		try {
+			events = context.getClient().getTableInterface(IOpenIoTHBase.EVENTS_TABLE_NAME);
+			scanner = events.getScanner(createEventScan(startKey, endKey, EventRecordType.Measurement));
 
-			List<EventMatch> matches = new ArrayList<EventMatch>();
 			Iterator<Result> results = scanner.iterator();
 			while (results.hasNext()) {
 				Result current = results.next();
 				byte[] key = current.getRow();
-				if (key.length > 7) {
-					Map<byte[], byte[]> cells = current.getFamilyMap(IOpenIoTHBase.FAMILY_ID);
-					for (byte[] qual : cells.keySet()) {
-						byte[] value = cells.get(qual);
-						if ((qual.length > 3) && (qual[3] == eventType.getType())) {
-							Date eventDate = getDateForEventKeyValue(key, qual);
-							if ((criteria.getStartDate() != null)
-									&& (eventDate.before(criteria.getStartDate()))) {
-								continue;
-							}
-							if ((criteria.getEndDate() != null) && (eventDate.after(criteria.getEndDate()))) {
-								continue;
-							}
-							EventRecordType type = EventRecordType.decode(qual[3]);
-							byte[] encoding = getEncodingFromQualifier(qual);
-							matches.add(new EventMatch(type, eventDate, value, encoding));
+				if (key.length <= ASSIGNMENT_KEY_LENGTH) {
+					continue;
+				}
+				Map<byte[], byte[]> cells = current.getFamilyMap(IOpenIoTHBase.FAMILY_ID);
+				for (byte[] qual : cells.keySet()) {
+					if (qual.length <= 3) {
+						continue;
+					}
+					long time = getDateForEventKeyValue(key, qual).getTime();
+					if ((time < aggregator.getStart()) || (time >= aggregator.getEnd())) {
+						continue;
+					}
+					try {
+						IPayloadMarshaler marshaler =
+								PayloadMarshalerResolver.getInstance().getMarshaler(getEncodingFromQualifier(qual));
+						IDeviceMeasurements measurements =
+								marshaler.decode(cells.get(qual), DeviceMeasurements.class);
+						for (Map.Entry<String, Double> entry : measurements.getMeasurements().entrySet()) {
+							aggregator.add(entry.getKey(), time, entry.getValue());
 						}
+					} catch (Throwable e) {
+						LOGGER.error("Unable to read payload value into event object.", e);
 					}
 				}
 			}
-			Collections.sort(matches, Collections.reverseOrder());
-			Pager<EventMatch> pager = new Pager<EventMatch>(criteria);
-			for (EventMatch match : matches) {
-				pager.process(match);
-			}
-			return pager;
 		} catch (IOException e) {
 			throw new OpenIoTException("Error scanning event rows.", e);
 		} finally {
@@ -767,6 +1014,103 @@ public class HBaseDeviceEvent {
 		}
 	}
 
+	/**
+	 * Get the continuation token passed in the search criteria.
+	 * 
+	 * @param criteria
+	 * @return null if no token was passed
+	 * @throws OpenIoTException
+	 */
+	protected static ContinuationToken getContinuationToken(IDateRangeSearchCriteria criteria)
+			throws OpenIoTException {
+		if (criteria.getContinuationToken() == null) {
+			return null;
+		}
+		return ContinuationToken.decode(criteria.getContinuationToken());
+	}
+
+	/**
+	 * Collects matches while event rows are scanned. Only the newest matches that can
+	 * appear on or before the requested page are kept, so a scan never holds more than a
+	 * page worth of payloads past the skipped pages. Other matches are only counted. If a
+	 * continuation token was passed, the page starts after the event it identifies.
+	 * 
+	 * @author Derek
+	 */
+	private static class MatchCollector {
+
+		/** Search criteria */
+		private IDateRangeSearchCriteria criteria;
+
+		/** Continuation token or null if paging by page number */
+		private ContinuationToken token;
+
+		/** Number of matches kept, or -1 to keep all of them */
+		private long limit;
+
+		/** Newest matches, with the oldest at the head */
+		private PriorityQueue<EventMatch> newest = new PriorityQueue<EventMatch>();
+
+		/** Number of matches counted but not kept */
+		private long counted;
+
+		public MatchCollector(IDateRangeSearchCriteria criteria, ContinuationToken token) {
+			this.criteria = criteria;
+			this.token = token;
+			if (criteria.getPageSize() > 0) {
+				long pages = (token != null) ? 1 : Math.max(1, criteria.getPageNumber());
+
+				// One extra match shows whether there is a following page.
+				this.limit = (pages * criteria.getPageSize()) + 1;
+			} else {
+				this.limit = -1;
+			}
+		}
+
+		/**
+		 * Offer a match. Returns false if the match is older than every kept match and
+		 * the collector is full, in which case older matches are not needed either.
+		 * 
+		 * @param match
+		 * @return
+		 */
+		public boolean offer(EventMatch match) {
+			if ((token != null) && (!token.isFollowedBy(match.getDate(), match.getId()))) {
+				counted++;
+				return true;
+			}
+			if ((limit < 0) || (newest.size() < limit)) {
+				newest.add(match);
+				return true;
+			}
+			counted++;
+			EventMatch oldest = newest.peek();
+			if (match.compareTo(oldest) > 0) {
+				newest.poll();
+				newest.add(match);
+				return true;
+			}
+			return !match.getDate().before(oldest.getDate());
+		}
+
+		/**
+		 * Page the kept matches newest first.
+		 * 
+		 * @return
+		 */
+		public Pager<EventMatch> getPager() {
+			Pager<EventMatch> pager =
+					new Pager<EventMatch>(criteria, (token != null), criteria.isIncludeTotal());
+			pager.skip(counted);
+			List<EventMatch> matches = new ArrayList<EventMatch>(newest);
+			Collections.sort(matches, Collections.reverseOrder());
+			for (EventMatch match : matches) {
+				pager.process(match);
+			}
+			return pager;
+		}
+	}
+
 	/**
 	 * Used for ordering events without having to unmarshal all of the byte arrays to do
 	 * it.
@@ -779,13 +1123,22 @@ public class HBaseDeviceEvent {
 
 		private Date date;
 
+		private byte[] rowkey;
+
+		private byte[] qualifier;
+
+		private String id;
+
 		private byte[] payload;
 
 		private byte[] encoding;
 
-		public EventMatch(EventRecordType type, Date date, byte[] payload, byte[] encoding) {
+		public EventMatch(EventRecordType type, Date date, byte[] rowkey, byte[] qualifier, byte[] payload,
+				byte[] encoding) {
 			this.type = type;
 			this.date = date;
+			this.rowkey = rowkey;
+			this.qualifier = qualifier;
 			this.payload = payload;
 			this.encoding = encoding;
 		}
@@ -806,8 +1159,24 @@ public class HBaseDeviceEvent {
 			return encoding;
 		}
 
+		/**
+		 * Get the event id, which is only encoded when needed to break ties on date.
+		 * 
+		 * @return
+		 */
+		public String getId() {
+			if (id == null) {
+				id = getEncodedEventId(rowkey, qualifier);
+			}
+			return id;
+		}
+
 		public int compareTo(EventMatch other) {
-			return this.getDate().compareTo(other.getDate());
+			int byDate = this.getDate().compareTo(other.getDate());
+			if (byDate != 0) {
+				return byDate;
+			}
+			return this.getId().compareTo(other.getId());
 		}
 	}
 
@@ -832,7 +1201,12 @@ public class HBaseDeviceEvent {
 				LOGGER.error("Unable to read payload value into event object.", e);
 			}
 		}
-		return new SearchResults<I>(results, matches.getTotal());
+		SearchResults<I> found = new SearchResults<I>(results, matches.getTotal());
+		if (matches.hasMore() && (!matches.getResults().isEmpty())) {
+			EventMatch last = matches.getResults().get(matches.getResults().size() - 1);
+			found.setContinuationToken(new ContinuationToken(last.getDate(), last.getId()).encode());
+		}
+		return found;
 	}
 
 	/**
@@ -869,6 +1243,23 @@ public class HBaseDeviceEvent {
 		return buffer.array();
 	}
 
+	/**
+	 * Gets the first key after every event row for an assignment by incrementing the
+	 * assignment key as an unsigned number.
+	 * 
+	 * @param assnKey
+	 * @return the key, or null if no key can follow the assignment
+	 */
+	protected static byte[] getAfterAssignmentKey(byte[] assnKey) {
+		byte[] after = Arrays.copyOf(assnKey, assnKey.length);
+		for (int i = after.length - 1; i >= 0; i--) {
+			if (++after[i] != 0) {
+				return after;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Get the event time used to calculate row key and qualifier.
 	 * 
@@ -8,6 +8,7 @@
 package com.openiot.hbase.device;
 
 import com.openiot.core.OpenIoTPersistence;
+import com.openiot.device.charting.MeasurementAggregator;
 import com.openiot.hbase.HBaseContext;
 import com.openiot.hbase.IOpenIoTHBase;
 import com.openiot.hbase.IOpenIoTHBaseClient;
@@ -23,6 +24,11 @@ import com.openiot.spi.common.IMetadataProvider;
 import com.openiot.spi.device.*;
 import com.openiot.spi.device.batch.IBatchElement;
 import com.openiot.spi.device.batch.IBatchOperation;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
+import com.openiot.spi.device.charting.IMeasurementRollup;
+import com.openiot.spi.device.charting.MeasurementRollupResolution;
+import com.openiot.spi.device.command.CommandDeliveryStatus;
+import com.openiot.spi.device.command.ICommandDelivery;
 import com.openiot.spi.device.command.IDeviceCommand;
 import com.openiot.spi.device.event.*;
 import com.openiot.spi.device.event.request.*;
@@ -36,11 +42,13 @@ import com.openiot.spi.search.ISearchCriteria;
 import com.openiot.spi.search.ISearchResults;
 import com.openiot.spi.search.device.IBatchElementSearchCriteria;
 import com.openiot.spi.search.device.IDeviceSearchCriteria;
+import com.openiot.spi.search.device.IMeasurementAggregationCriteria;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
 import org.apache.hadoop.hbase.regionserver.BloomType;
 import org.apache.log4j.Logger;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -49,7 +57,7 @@ import java.util.UUID;
  * @author Derek
  */
 public class HBaseDeviceManagement extends LifecycleComponent implements IDeviceManagement,
-		ICachingDeviceManagement {
+		ICachingDeviceManagement, IStateAggregatingDeviceManagement {
 
 	/** Static logger instance */
 	private static final Logger LOGGER = Logger.getLogger(HBaseDeviceManagement.class);
@@ -60,6 +68,9 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 	/** Injected cache provider */
 	private IDeviceManagementCacheProvider cacheProvider;
 
+	/** Injected assignment state aggregator */
+	private IDeviceAssignmentStateAggregator assignmentStateAggregator;
+
 	/** Injected payload encoder */
 	private IPayloadMarshaler payloadMarshaler = new ProtobufPayloadMarshaler();
 
@@ -69,6 +80,15 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 	/** Allows puts to be buffered for device events */
 	private DeviceEventBuffer buffer;
 
+	/** Number of days one minute rollups are kept (0 keeps them forever) */
+	private int minuteRollupRetentionDays = MeasurementRollupResolution.Minute.getDefaultRetentionDays();
+
+	/** Number of days one hour rollups are kept (0 keeps them forever) */
+	private int hourRollupRetentionDays = MeasurementRollupResolution.Hour.getDefaultRetentionDays();
+
+	/** Number of days one day rollups are kept (0 keeps them forever) */
+	private int dayRollupRetentionDays = MeasurementRollupResolution.Day.getDefaultRetentionDays();
+
 	public HBaseDeviceManagement() {
 		super(LifecycleComponentType.DataStore);
 	}
@@ -88,6 +108,7 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 		context.setClient(getClient());
 		context.setCacheProvider(getCacheProvider());
 		context.setPayloadMarshaler(getPayloadMarshaler());
+		context.setAssignmentStateAggregator(getAssignmentStateAggregator());
 
 		// Start buffer for saving device events.
 		buffer = new DeviceEventBuffer(context);
@@ -115,6 +136,14 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 		OpenIoTTables.assureTable(client, IOpenIoTHBase.SITES_TABLE_NAME, BloomType.ROW);
 		OpenIoTTables.assureTable(client, IOpenIoTHBase.EVENTS_TABLE_NAME, BloomType.ROW);
 		OpenIoTTables.assureTable(client, IOpenIoTHBase.DEVICES_TABLE_NAME, BloomType.ROW);
+		OpenIoTTables.assureTable(client, IOpenIoTHBase.DELIVERIES_TABLE_NAME, BloomType.ROW);
+		OpenIoTTables.assureTable(client, IOpenIoTHBase.ROLLUPS_TABLE_NAME,
+				HBaseMeasurementRollup.createFamily(MeasurementRollupResolution.Minute,
+						getMinuteRollupRetentionDays()),
+				HBaseMeasurementRollup.createFamily(MeasurementRollupResolution.Hour,
+						getHourRollupRetentionDays()),
+				HBaseMeasurementRollup.createFamily(MeasurementRollupResolution.Day,
+						getDayRollupRetentionDays()));
 	}
 
 	/*
@@ -142,6 +171,22 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 		return cacheProvider;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * IStateAggregatingDeviceManagement#setAssignmentStateAggregator(com.openiot
+	 * .spi.device.IDeviceAssignmentStateAggregator)
+	 */
+	@Override
+	public void setAssignmentStateAggregator(IDeviceAssignmentStateAggregator assignmentStateAggregator) {
+		this.assignmentStateAggregator = assignmentStateAggregator;
+	}
+
+	public IDeviceAssignmentStateAggregator getAssignmentStateAggregator() {
+		return assignmentStateAggregator;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -315,6 +360,16 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 		return HBaseDeviceAssignment.getDeviceAssignment(context, token);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDeviceManagement#getDeviceAssignmentsByTokens(java.util.List)
+	 */
+	@Override
+	public List<IDeviceAssignment> getDeviceAssignmentsByTokens(List<String> tokens) throws OpenIoTException {
+		return HBaseDeviceAssignment.getDeviceAssignments(context, tokens);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -462,7 +517,8 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 	 */
 	public IDeviceEventBatchResponse addDeviceEventBatch(String assignmentToken, IDeviceEventBatch batch)
 			throws OpenIoTException {
-		return OpenIoTPersistence.deviceEventBatchLogic(assignmentToken, batch, this);
+		IDeviceAssignment assignment = assertDeviceAssignment(assignmentToken);
+		return HBaseDeviceEvent.createDeviceEventBatch(context, assignment, batch);
 	}
 
 	/*
@@ -562,6 +618,59 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 		return HBaseDeviceEvent.listDeviceMeasurementsForSite(context, siteToken, criteria);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.openiot.spi.device.IDeviceManagement#aggregateDeviceMeasurements(java.lang.String,
+	 * com.openiot.spi.search.device.IMeasurementAggregationCriteria)
+	 */
+	@Override
+	public List<IMeasurementAggregateSeries> aggregateDeviceMeasurements(String assignmentToken,
+			IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		return HBaseDeviceEvent.aggregateDeviceMeasurements(context, assignmentToken, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.openiot.spi.device.IDeviceManagement#aggregateDeviceMeasurementsForSite(java.lang
+	 * .String, com.openiot.spi.search.device.IMeasurementAggregationCriteria)
+	 */
+	@Override
+	public List<IMeasurementAggregateSeries> aggregateDeviceMeasurementsForSite(String siteToken,
+			IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		return HBaseDeviceEvent.aggregateDeviceMeasurementsForSite(context, siteToken, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.device.IDeviceManagement#addMeasurementRollups(java.util.List)
+	 */
+	@Override
+	public void addMeasurementRollups(List<IMeasurementRollup> rollups) throws OpenIoTException {
+		HBaseMeasurementRollup.merge(context, rollups);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.openiot.spi.device.IDeviceManagement#listMeasurementRollups(java.lang.String,
+	 * com.openiot.spi.device.charting.MeasurementRollupResolution,
+	 * com.openiot.spi.search.device.IMeasurementAggregationCriteria)
+	 */
+	@Override
+	public List<IMeasurementAggregateSeries> listMeasurementRollups(String assignmentToken,
+			MeasurementRollupResolution resolution, IMeasurementAggregationCriteria criteria)
+			throws OpenIoTException {
+		MeasurementAggregator aggregator = new MeasurementAggregator(criteria);
+		HBaseMeasurementRollup.aggregate(context, assignmentToken, resolution, aggregator);
+		return aggregator.getSeries();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -705,6 +814,41 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 		return HBaseDeviceEvent.listDeviceCommandInvocationResponses(context, invocationId);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * IDeviceManagement#saveCommandDelivery(com.openiot.spi.device.command.ICommandDelivery)
+	 */
+	@Override
+	public void saveCommandDelivery(ICommandDelivery delivery) throws OpenIoTException {
+		HBaseCommandDelivery.save(context, delivery);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDeviceManagement#listCommandDeliveries(java.lang.String,
+	 * com.openiot.spi.device.command.CommandDeliveryStatus)
+	 */
+	@Override
+	public List<ICommandDelivery> listCommandDeliveries(String destinationId, CommandDeliveryStatus status)
+			throws OpenIoTException {
+		return HBaseCommandDelivery.list(context, destinationId, status);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDeviceManagement#deleteCommandDelivery(java.lang.String, java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public void deleteCommandDelivery(String destinationId, String invocationId, String assignmentToken)
+			throws OpenIoTException {
+		HBaseCommandDelivery.delete(context, destinationId, invocationId, assignmentToken);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1090,6 +1234,17 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 		return HBaseBatchElement.updateBatchElement(context, operationToken, index, request);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDeviceManagement#updateBatchElements(java.lang.String, java.util.Map)
+	 */
+	@Override
+	public List<IBatchElement> updateBatchElements(String operationToken,
+			Map<Long, IBatchElementUpdateRequest> requests) throws OpenIoTException {
+		return HBaseBatchElement.updateBatchElements(context, operationToken, requests);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1136,4 +1291,28 @@ public class HBaseDeviceManagement extends LifecycleComponent implements IDevice
 	public void setPayloadMarshaler(IPayloadMarshaler payloadMarshaler) {
 		this.payloadMarshaler = payloadMarshaler;
 	}
+
+	public int getMinuteRollupRetentionDays() {
+		return minuteRollupRetentionDays;
+	}
+
+	public void setMinuteRollupRetentionDays(int minuteRollupRetentionDays) {
+		this.minuteRollupRetentionDays = minuteRollupRetentionDays;
+	}
+
+	public int getHourRollupRetentionDays() {
+		return hourRollupRetentionDays;
+	}
+
+	public void setHourRollupRetentionDays(int hourRollupRetentionDays) {
+		this.hourRollupRetentionDays = hourRollupRetentionDays;
+	}
+
+	public int getDayRollupRetentionDays() {
+		return dayRollupRetentionDays;
+	}
+
+	public void setDayRollupRetentionDays(int dayRollupRetentionDays) {
+		this.dayRollupRetentionDays = dayRollupRetentionDays;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.hbase.device;
+
+import com.openiot.device.charting.MeasurementAggregator;
+import com.openiot.hbase.IHBaseContext;
+import com.openiot.hbase.IOpenIoTHBase;
+import com.openiot.hbase.common.HBaseUtils;
+import com.openiot.hbase.uid.IdManager;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.OpenIoTSystemException;
+import com.openiot.spi.device.charting.IMeasurementRollup;
+import com.openiot.spi.device.charting.MeasurementRollupResolution;
+import com.openiot.spi.error.ErrorCode;
+import com.openiot.spi.error.ErrorLevel;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HBase specifics for dealing with measurement rollups. Rows are keyed by assignment and
+ * interval start, each resolution has its own column family and each measurement is a
+ * column. Cells are written with the interval start as their timestamp so the time to
+ * live of a family removes rollups based on the interval they cover.
+ *
+ * @author Derek
+ */
+public class HBaseMeasurementRollup {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(HBaseMeasurementRollup.class);
+
+	/** Column family for one minute rollups */
+	public static final byte[] FAMILY_MINUTE = Bytes.toBytes("m");
+
+	/** Column family for one hour rollups */
+	public static final byte[] FAMILY_HOUR = Bytes.toBytes("h");
+
+	/** Column family for one day rollups */
+	public static final byte[] FAMILY_DAY = Bytes.toBytes("d");
+
+	/** Length of an encoded rollup value */
+	private static final int VALUE_LENGTH = 48;
+
+	/** Number of times a concurrently modified rollup is read and written again */
+	private static final int MAX_UPDATE_ATTEMPTS = 10;
+
+	/**
+	 * Get the column family that holds rollups for a resolution.
+	 *
+	 * @param resolution
+	 * @return
+	 */
+	public static byte[] getFamily(MeasurementRollupResolution resolution) {
+		switch (resolution) {
+		case Minute:
+			return FAMILY_MINUTE;
+		case Hour:
+			return FAMILY_HOUR;
+		default:
+			return FAMILY_DAY;
+		}
+	}
+
+	/**
+	 * Create the column family descriptor for a resolution.
+	 *
+	 * @param resolution
+	 * @param retentionDays number of days rollups are kept or 0 to keep them forever
+	 * @return
+	 */
+	public static HColumnDescriptor createFamily(MeasurementRollupResolution resolution, int retentionDays) {
+		HColumnDescriptor family = new HColumnDescriptor(getFamily(resolution));
+		family.setBloomFilterType(BloomType.ROW);
+		family.setTimeToLive((retentionDays > 0) ? retentionDays * 24 * 60 * 60 : HConstants.FOREVER);
+		return family;
+	}
+
+	/**
+	 * Merge rollups into the stored rollups for the same intervals.
+	 *
+	 * @param context
+	 * @param rollups
+	 * @throws OpenIoTException
+	 */
+	public static void merge(IHBaseContext context, List<IMeasurementRollup> rollups)
+			throws OpenIoTException {
+		HTableInterface table = null;
+		try {
+			table = context.getClient().getTableInterface(IOpenIoTHBase.ROLLUPS_TABLE_NAME);
+			for (IMeasurementRollup rollup : rollups) {
+				if (rollup.getCount() == 0) {
+					continue;
+				}
+				byte[] assnKey =
+						IdManager.getInstance().getAssignmentKeys().getValue(rollup.getAssignmentToken());
+				if (assnKey == null) {
+					LOGGER.warn("Skipping rollup for unknown assignment: " + rollup.getAssignmentToken());
+					continue;
+				}
+				mergeCell(table, getRowKey(assnKey, rollup.getStartDate().getTime()), rollup);
+			}
+		} catch (IOException e) {
+			throw new OpenIoTException("Unable to update measurement rollups.", e);
+		} finally {
+			HBaseUtils.closeCleanly(table);
+		}
+	}
+
+	/**
+	 * Merge a rollup into a single cell. The cell is only written if it has not changed
+	 * since it was read, so concurrent updates are retried rather than lost.
+	 *
+	 * @param table
+	 * @param row
+	 * @param rollup
+	 * @throws IOException
+	 * @throws OpenIoTException
+	 */
+	protected static void mergeCell(HTableInterface table, byte[] row, IMeasurementRollup rollup)
+			throws IOException, OpenIoTException {
+		byte[] family = getFamily(rollup.getResolution());
+		byte[] qualifier = Bytes.toBytes(rollup.getMeasurementId());
+		for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+			Get get = new Get(row);
+			get.addColumn(family, qualifier);
+			byte[] current = table.get(get).getValue(family, qualifier);
+
+			Put put = new Put(row);
+			put.add(family, qualifier, rollup.getStartDate().getTime(), encode(current, rollup));
+			if (table.checkAndPut(row, family, qualifier, current, put)) {
+				return;
+			}
+		}
+		throw new OpenIoTException("Measurement rollup '" + rollup.getMeasurementId()
+				+ "' was modified concurrently too many times.");
+	}
+
+	/**
+	 * Encode the result of merging a rollup into an encoded value.
+	 *
+	 * @param current encoded value or null if none is stored
+	 * @param rollup
+	 * @return
+	 */
+	protected static byte[] encode(byte[] current, IMeasurementRollup rollup) {
+		long count = rollup.getCount();
+		double min = rollup.getMin();
+		double max = rollup.getMax();
+		double sum = rollup.getSum();
+		double last = rollup.getLast();
+		long lastTime = rollup.getLastDate().getTime();
+		if ((current != null) && (current.length == VALUE_LENGTH)) {
+			ByteBuffer stored = ByteBuffer.wrap(current);
+			count += stored.getLong();
+			min = Math.min(min, stored.getDouble());
+			max = Math.max(max, stored.getDouble());
+			sum += stored.getDouble();
+			double storedLast = stored.getDouble();
+			long storedLastTime = stored.getLong();
+			if (storedLastTime > lastTime) {
+				last = storedLast;
+				lastTime = storedLastTime;
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(VALUE_LENGTH);
+		buffer.putLong(count);
+		buffer.putDouble(min);
+		buffer.putDouble(max);
+		buffer.putDouble(sum);
+		buffer.putDouble(last);
+		buffer.putLong(lastTime);
+		return buffer.array();
+	}
+
+	/**
+	 * Merge stored rollups for an assignment into an aggregator.
+	 *
+	 * @param context
+	 * @param assnToken
+	 * @param resolution
+	 * @param aggregator
+	 * @throws OpenIoTException
+	 */
+	public static void aggregate(IHBaseContext context, String assnToken,
+			MeasurementRollupResolution resolution, MeasurementAggregator aggregator) throws OpenIoTException {
+		byte[] assnKey = IdManager.getInstance().getAssignmentKeys().getValue(assnToken);
+		if (assnKey == null) {
+			throw new OpenIoTSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+		}
+		byte[] family = getFamily(resolution);
+		HTableInterface table = null;
+		ResultScanner scanner = null;
+		try {
+			table = context.getClient().getTableInterface(IOpenIoTHBase.ROLLUPS_TABLE_NAME);
+			Scan scan = new Scan();
+			scan.setStartRow(getRowKey(assnKey, aggregator.getStart()));
+			scan.setStopRow(getRowKey(assnKey, aggregator.getEnd()));
+			if (aggregator.getMeasurementIds() != null) {
+				for (String id : aggregator.getMeasurementIds()) {
+					scan.addColumn(family, Bytes.toBytes(id));
+				}
+			} else {
+				scan.addFamily(family);
+			}
+			scanner = table.getScanner(scan);
+
+			Iterator<Result> results = scanner.iterator();
+			while (results.hasNext()) {
+				Result current = results.next();
+				byte[] row = current.getRow();
+				long start = Bytes.toLong(row, row.length - 8);
+				Map<byte[], byte[]> cells = current.getFamilyMap(family);
+				if (cells == null) {
+					continue;
+				}
+				for (Map.Entry<byte[], byte[]> cell : cells.entrySet()) {
+					if (cell.getValue().length != VALUE_LENGTH) {
+						continue;
+					}
+					ByteBuffer value = ByteBuffer.wrap(cell.getValue());
+					aggregator.mergeAt(Bytes.toString(cell.getKey()), start, value.getLong(),
+							value.getDouble(), value.getDouble(), value.getDouble(), value.getDouble(),
+							value.getLong());
+				}
+			}
+		} catch (IOException e) {
+			throw new OpenIoTException("Error scanning measurement rollups.", e);
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+			HBaseUtils.closeCleanly(table);
+		}
+	}
+
+	/**
+	 * Get the row key for an assignment and interval start.
+	 *
+	 * @param assnKey
+	 * @param start
+	 * @return
+	 */
+	public static byte[] getRowKey(byte[] assnKey, long start) {
+		ByteBuffer buffer = ByteBuffer.allocate(assnKey.length + 8);
+		buffer.put(assnKey);
+		buffer.putLong(start);
+		return buffer.array();
+	}
+}
@@ -10,6 +10,8 @@ package com.openiot.hbase.device;
 import com.openiot.spi.OpenIoTException;
 import org.apache.hadoop.hbase.client.Put;
 
+import java.util.List;
+
 /**
  * Interface for buffer used for saving device events.
  * 
@@ -38,4 +40,12 @@ public interface IDeviceEventBuffer {
 	 * @throws com.openiot.spi.OpenIoTException
 	 */
 	public void add(Put put) throws OpenIoTException;
+
+	/**
+	 * Add a list of {@link Put} to be buffered. Puts are queued in list order.
+	 * 
+	 * @param puts
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public void addAll(List<Put> puts) throws OpenIoTException;
 }
\ No newline at end of file
@@ -43,6 +43,15 @@ public interface IDeviceManagementMongoClient {
 	/** Default collection name for OpenIoT events */
 	public static final String DEFAULT_EVENTS_COLLECTION_NAME = "events";
 
+	/** Default collection name for OpenIoT measurement buckets */
+	public static final String DEFAULT_MEASUREMENT_BUCKETS_COLLECTION_NAME = "measurementbuckets";
+
+	/** Default collection name for OpenIoT measurement rollups */
+	public static final String DEFAULT_MEASUREMENT_ROLLUPS_COLLECTION_NAME = "measurementrollups";
+
+	/** Default collection name for OpenIoT command deliveries */
+	public static final String DEFAULT_COMMAND_DELIVERIES_COLLECTION_NAME = "commanddeliveries";
+
 	/** Default collection name for OpenIoT batch operations */
 	public static final String DEFAULT_BATCH_OPERATIONS_COLLECTION_NAME = "batchoperations";
 
@@ -67,6 +76,12 @@ public interface IDeviceManagementMongoClient {
 
 	public DBCollection getEventsCollection();
 
+	public DBCollection getMeasurementBucketsCollection();
+
+	public DBCollection getMeasurementRollupsCollection();
+
+	public DBCollection getCommandDeliveriesCollection();
+
 	public DBCollection getBatchOperationsCollection();
 
 	public DBCollection getBatchOperationElementsCollection();
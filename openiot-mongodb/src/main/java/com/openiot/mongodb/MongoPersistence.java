@@ -9,10 +9,14 @@ package com.openiot.mongodb;
 
 import com.mongodb.*;
 import com.openiot.mongodb.device.*;
+import com.openiot.rest.model.search.ContinuationToken;
 import com.openiot.rest.model.search.SearchResults;
 import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.OpenIoTSystemException;
 import com.openiot.spi.device.event.DeviceEventType;
 import com.openiot.spi.device.event.IDeviceEvent;
+import com.openiot.spi.error.ErrorCode;
+import com.openiot.spi.error.ErrorLevel;
 import com.openiot.spi.search.IDateRangeSearchCriteria;
 import com.openiot.spi.search.ISearchCriteria;
 import org.apache.log4j.Logger;
@@ -50,6 +54,24 @@ public class MongoPersistence {
 		}
 	}
 
+	/**
+	 * Common handler for inserting many objects in a single round trip. Assures that
+	 * errors are handled in a consistent way.
+	 * 
+	 * @param collection
+	 * @param objects
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static void insert(DBCollection collection, List<DBObject> objects) throws OpenIoTException {
+		if (objects.isEmpty()) {
+			return;
+		}
+		WriteResult result = collection.insert(objects);
+		if (!result.getLastError().ok()) {
+			throw new OpenIoTException("Error during bulk insert: " + result.getLastError().toString());
+		}
+	}
+
 	/**
 	 * Common handler for updating existing objects. Assures that errors are handled in a
 	 * consistent way.
@@ -66,6 +88,39 @@ public class MongoPersistence {
 		}
 	}
 
+	/**
+	 * Common handler for applying an update to the object that matches a query, creating
+	 * it if no object matches. Assures that errors are handled in a consistent way.
+	 * 
+	 * @param collection
+	 * @param query
+	 * @param update
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static void upsert(DBCollection collection, DBObject query, DBObject update) throws OpenIoTException {
+		WriteResult result = collection.update(query, update, true, false);
+		if (!result.getLastError().ok()) {
+			throw new OpenIoTException("Error during upsert: " + result.getLastError().toString());
+		}
+	}
+
+	/**
+	 * Common handler for applying an update to every object that matches a query.
+	 * Assures that errors are handled in a consistent way.
+	 * 
+	 * @param collection
+	 * @param query
+	 * @param update
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static void updateMulti(DBCollection collection, DBObject query, DBObject update)
+			throws OpenIoTException {
+		WriteResult result = collection.update(query, update, false, true);
+		if (!result.getLastError().ok()) {
+			throw new OpenIoTException("Error during multi update: " + result.getLastError().toString());
+		}
+	}
+
 	/**
 	 * Common handler for deleting objects. Assures that errors are handled in a
 	 * consistent way.
@@ -165,6 +220,66 @@ public class MongoPersistence {
 		return results;
 	}
 
+	/**
+	 * Search the events collection, newest first. If the criteria contain a continuation
+	 * token, the page starts after the event it identifies and no documents are skipped.
+	 * Otherwise the page number is used as before. Ties on event date are ordered by id so
+	 * that every event has a fixed place in the sequence. One extra event is read to find
+	 * out whether a continuation token should be returned. The query is only counted if
+	 * the criteria ask for the total.
+	 * 
+	 * @param api
+	 * @param collection
+	 * @param query
+	 * @param criteria
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static <T extends IDeviceEvent> SearchResults<T> searchEvents(Class<T> api, DBCollection collection,
+			BasicDBObject query, IDateRangeSearchCriteria criteria) throws OpenIoTException {
+		long total = (criteria.isIncludeTotal()) ? collection.count(query) : -1;
+		BasicDBObject sort = new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append("_id", -1);
+		BasicDBObject pageQuery = query;
+		int offset = Math.max(0, criteria.getPageNumber() - 1) * criteria.getPageSize();
+		if (criteria.getContinuationToken() != null) {
+			ContinuationToken token = ContinuationToken.decode(criteria.getContinuationToken());
+			if (!ObjectId.isValid(token.getId())) {
+				throw new OpenIoTSystemException(ErrorCode.InvalidContinuationToken, ErrorLevel.ERROR);
+			}
+			BasicDBList after = new BasicDBList();
+			after.add(new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, new BasicDBObject("$lt",
+					token.getEventDate())));
+			after.add(new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, token.getEventDate()).append("_id",
+					new BasicDBObject("$lt", new ObjectId(token.getId()))));
+			pageQuery = new BasicDBObject(query);
+			pageQuery.put("$or", after);
+			offset = 0;
+		}
+		DBCursor cursor = collection.find(pageQuery).sort(sort);
+		if (criteria.getPageSize() > 0) {
+			cursor = cursor.skip(offset).limit(criteria.getPageSize() + 1);
+		}
+		List<T> matches = new ArrayList<T>();
+		boolean more = false;
+		try {
+			while (cursor.hasNext()) {
+				DBObject match = cursor.next();
+				if ((criteria.getPageSize() > 0) && (matches.size() == criteria.getPageSize())) {
+					more = true;
+					break;
+				}
+				matches.add(api.cast(unmarshalEvent(match)));
+			}
+		} finally {
+			cursor.close();
+		}
+		SearchResults<T> results = new SearchResults<T>(matches, total);
+		if (more) {
+			results.setContinuationToken(ContinuationToken.after(matches));
+		}
+		return results;
+	}
+
 	/**
 	 * Search using the default lookup.
 	 * 
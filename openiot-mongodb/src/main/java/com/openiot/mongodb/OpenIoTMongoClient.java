@@ -86,6 +86,15 @@ public class OpenIoTMongoClient extends LifecycleComponent implements Initializi
 	/** Injected name used for events collection */
 	private String eventsCollectionName = DEFAULT_EVENTS_COLLECTION_NAME;
 
+	/** Injected name used for measurement buckets collection */
+	private String measurementBucketsCollectionName = DEFAULT_MEASUREMENT_BUCKETS_COLLECTION_NAME;
+
+	/** Injected name used for measurement rollups collection */
+	private String measurementRollupsCollectionName = DEFAULT_MEASUREMENT_ROLLUPS_COLLECTION_NAME;
+
+	/** Injected name used for command deliveries collection */
+	private String commandDeliveriesCollectionName = DEFAULT_COMMAND_DELIVERIES_COLLECTION_NAME;
+
 	/** Injected name used for batch operations collection */
 	private String batchOperationsCollectionName =
             DEFAULT_BATCH_OPERATIONS_COLLECTION_NAME;
@@ -143,6 +152,9 @@ public class OpenIoTMongoClient extends LifecycleComponent implements Initializi
 			messages.add("Sites collection name: " + getSitesCollectionName());
 			messages.add("Zones collection name: " + getZonesCollectionName());
 			messages.add("Events collection name: " + getEventsCollectionName());
+			messages.add("Measurement buckets collection name: " + getMeasurementBucketsCollectionName());
+			messages.add("Measurement rollups collection name: " + getMeasurementRollupsCollectionName());
+			messages.add("Command deliveries collection name: " + getCommandDeliveriesCollectionName());
 			messages.add("Batch operations collection name: " + getBatchOperationsCollectionName());
 			messages.add("Batch operation elements collection name: "
 					+ getBatchOperationElementsCollectionName());
@@ -229,6 +241,18 @@ public class OpenIoTMongoClient extends LifecycleComponent implements Initializi
 		return getOpenIoTDatabase().getCollection(getEventsCollectionName());
 	}
 
+	public DBCollection getMeasurementBucketsCollection() {
+		return getOpenIoTDatabase().getCollection(getMeasurementBucketsCollectionName());
+	}
+
+	public DBCollection getMeasurementRollupsCollection() {
+		return getOpenIoTDatabase().getCollection(getMeasurementRollupsCollectionName());
+	}
+
+	public DBCollection getCommandDeliveriesCollection() {
+		return getOpenIoTDatabase().getCollection(getCommandDeliveriesCollectionName());
+	}
+
 	public DBCollection getBatchOperationsCollection() {
 		return getOpenIoTDatabase().getCollection(getBatchOperationsCollectionName());
 	}
@@ -341,6 +365,30 @@ public class OpenIoTMongoClient extends LifecycleComponent implements Initializi
 		this.eventsCollectionName = eventsCollectionName;
 	}
 
+	public String getMeasurementBucketsCollectionName() {
+		return measurementBucketsCollectionName;
+	}
+
+	public void setMeasurementBucketsCollectionName(String measurementBucketsCollectionName) {
+		this.measurementBucketsCollectionName = measurementBucketsCollectionName;
+	}
+
+	public String getMeasurementRollupsCollectionName() {
+		return measurementRollupsCollectionName;
+	}
+
+	public void setMeasurementRollupsCollectionName(String measurementRollupsCollectionName) {
+		this.measurementRollupsCollectionName = measurementRollupsCollectionName;
+	}
+
+	public String getCommandDeliveriesCollectionName() {
+		return commandDeliveriesCollectionName;
+	}
+
+	public void setCommandDeliveriesCollectionName(String commandDeliveriesCollectionName) {
+		this.commandDeliveriesCollectionName = commandDeliveriesCollectionName;
+	}
+
 	public String getBatchOperationsCollectionName() {
 		return batchOperationsCollectionName;
 	}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.mongodb.device;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.openiot.mongodb.MongoConverter;
+import com.openiot.rest.model.device.command.CommandDelivery;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.command.CommandDeliveryStatus;
+import com.openiot.spi.device.command.ICommandDelivery;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Used to load or save command delivery data to MongoDB. There is one document for each
+ * destination, invocation and assignment.
+ * 
+ * @author Derek
+ */
+public class MongoCommandDelivery implements MongoConverter<ICommandDelivery> {
+
+	/** Property for destination id */
+	public static final String PROP_DESTINATION_ID = "destination";
+
+	/** Property for invocation id */
+	public static final String PROP_INVOCATION_ID = "invocation";
+
+	/** Property for assignment token */
+	public static final String PROP_ASSIGNMENT_TOKEN = "assignment";
+
+	/** Property for delivery status */
+	public static final String PROP_STATUS = "status";
+
+	/** Property for number of attempts */
+	public static final String PROP_ATTEMPTS = "attempts";
+
+	/** Property for delivery error */
+	public static final String PROP_ERROR = "error";
+
+	/** Property for date delivery was queued */
+	public static final String PROP_CREATED_DATE = "createdDate";
+
+	/** Property for date status last changed */
+	public static final String PROP_UPDATED_DATE = "updatedDate";
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see MongoConverter#convert(java.lang.Object)
+	 */
+	@Override
+	public BasicDBObject convert(ICommandDelivery source) {
+		return MongoCommandDelivery.toDBObject(source);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see MongoConverter#convert(com.mongodb.DBObject)
+	 */
+	@Override
+	public ICommandDelivery convert(DBObject source) {
+		return MongoCommandDelivery.fromDBObject(source);
+	}
+
+	/**
+	 * Ensure that the unique delivery index and the status index exist.
+	 * 
+	 * @param deliveries
+	 */
+	public static void ensureIndexes(DBCollection deliveries) {
+		deliveries.ensureIndex(getKey(new BasicDBObject(), 1, 1, 1), new BasicDBObject("unique", true));
+		deliveries.ensureIndex(new BasicDBObject(PROP_DESTINATION_ID, 1).append(PROP_STATUS, 1));
+	}
+
+	/**
+	 * Create or replace a stored delivery.
+	 * 
+	 * @param deliveries
+	 * @param delivery
+	 * @throws OpenIoTException
+	 */
+	public static void save(DBCollection deliveries, ICommandDelivery delivery) throws OpenIoTException {
+		BasicDBObject key =
+				getKey(new BasicDBObject(), delivery.getDestinationId(), delivery.getInvocationId(),
+						delivery.getAssignmentToken());
+		BasicDBObject fields = new BasicDBObject();
+		fields.append(PROP_STATUS, delivery.getStatus().name());
+		fields.append(PROP_ATTEMPTS, delivery.getAttempts());
+		fields.append(PROP_ERROR, delivery.getError());
+		fields.append(PROP_UPDATED_DATE, delivery.getUpdatedDate());
+		BasicDBObject update = new BasicDBObject("$set", fields);
+		if (delivery.getCreatedDate() != null) {
+			update.append("$setOnInsert", new BasicDBObject(PROP_CREATED_DATE, delivery.getCreatedDate()));
+		}
+		try {
+			deliveries.update(key, update, true, false);
+		} catch (MongoException e) {
+			throw new OpenIoTException("Unable to save command delivery.", e);
+		}
+	}
+
+	/**
+	 * Delete a stored delivery.
+	 * 
+	 * @param deliveries
+	 * @param destinationId
+	 * @param invocationId
+	 * @param assignmentToken
+	 * @throws OpenIoTException
+	 */
+	public static void delete(DBCollection deliveries, String destinationId, String invocationId,
+			String assignmentToken) throws OpenIoTException {
+		try {
+			deliveries.remove(getKey(new BasicDBObject(), destinationId, invocationId, assignmentToken));
+		} catch (MongoException e) {
+			throw new OpenIoTException("Unable to delete command delivery.", e);
+		}
+	}
+
+	/**
+	 * List deliveries for a destination with the given status.
+	 * 
+	 * @param deliveries
+	 * @param destinationId
+	 * @param status
+	 * @return
+	 */
+	public static List<ICommandDelivery> list(DBCollection deliveries, String destinationId,
+			CommandDeliveryStatus status) {
+		BasicDBObject query =
+				new BasicDBObject(PROP_DESTINATION_ID, destinationId).append(PROP_STATUS, status.name());
+		List<ICommandDelivery> results = new ArrayList<ICommandDelivery>();
+		DBCursor cursor = deliveries.find(query).sort(new BasicDBObject(PROP_CREATED_DATE, 1));
+		try {
+			while (cursor.hasNext()) {
+				results.add(fromDBObject(cursor.next()));
+			}
+		} finally {
+			cursor.close();
+		}
+		return results;
+	}
+
+	/**
+	 * Add the properties that identify a delivery.
+	 * 
+	 * @param target
+	 * @param destinationId
+	 * @param invocationId
+	 * @param assignmentToken
+	 * @return
+	 */
+	protected static BasicDBObject getKey(BasicDBObject target, Object destinationId, Object invocationId,
+			Object assignmentToken) {
+		target.append(PROP_DESTINATION_ID, destinationId);
+		target.append(PROP_INVOCATION_ID, invocationId);
+		target.append(PROP_ASSIGNMENT_TOKEN, assignmentToken);
+		return target;
+	}
+
+	/**
+	 * Copy information from SPI into Mongo DBObject.
+	 * 
+	 * @param source
+	 * @param target
+	 */
+	public static void toDBObject(ICommandDelivery source, BasicDBObject target) {
+		getKey(target, source.getDestinationId(), source.getInvocationId(), source.getAssignmentToken());
+		if (source.getStatus() != null) {
+			target.append(PROP_STATUS, source.getStatus().name());
+		}
+		target.append(PROP_ATTEMPTS, source.getAttempts());
+		target.append(PROP_ERROR, source.getError());
+		target.append(PROP_CREATED_DATE, source.getCreatedDate());
+		target.append(PROP_UPDATED_DATE, source.getUpdatedDate());
+	}
+
+	/**
+	 * Copy information from Mongo DBObject to model object.
+	 * 
+	 * @param source
+	 * @param target
+	 */
+	public static void fromDBObject(DBObject source, CommandDelivery target) {
+		String status = (String) source.get(PROP_STATUS);
+		Number attempts = (Number) source.get(PROP_ATTEMPTS);
+
+		target.setDestinationId((String) source.get(PROP_DESTINATION_ID));
+		target.setInvocationId((String) source.get(PROP_INVOCATION_ID));
+		target.setAssignmentToken((String) source.get(PROP_ASSIGNMENT_TOKEN));
+		if (status != null) {
+			target.setStatus(CommandDeliveryStatus.valueOf(status));
+		}
+		if (attempts != null) {
+			target.setAttempts(attempts.intValue());
+		}
+		target.setError((String) source.get(PROP_ERROR));
+		target.setCreatedDate((Date) source.get(PROP_CREATED_DATE));
+		target.setUpdatedDate((Date) source.get(PROP_UPDATED_DATE));
+	}
+
+	/**
+	 * Convert SPI object to Mongo DBObject.
+	 * 
+	 * @param source
+	 * @return
+	 */
+	public static BasicDBObject toDBObject(ICommandDelivery source) {
+		BasicDBObject result = new BasicDBObject();
+		MongoCommandDelivery.toDBObject(source, result);
+		return result;
+	}
+
+	/**
+	 * Convert a DBObject into the SPI equivalent.
+	 * 
+	 * @param source
+	 * @return
+	 */
+	public static CommandDelivery fromDBObject(DBObject source) {
+		CommandDelivery result = new CommandDelivery();
+		MongoCommandDelivery.fromDBObject(source, result);
+		return result;
+	}
+}
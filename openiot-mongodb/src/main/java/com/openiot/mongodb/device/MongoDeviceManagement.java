@@ -9,6 +9,7 @@ package com.openiot.mongodb.device;
 
 import com.mongodb.*;
 import com.openiot.core.OpenIoTPersistence;
+import com.openiot.device.charting.MeasurementAggregator;
 import com.openiot.mongodb.IDeviceManagementMongoClient;
 import com.openiot.mongodb.MongoPersistence;
 import com.openiot.mongodb.common.MongoMetadataProvider;
@@ -26,8 +27,14 @@ import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.OpenIoTSystemException;
 import com.openiot.spi.common.IMetadataProvider;
 import com.openiot.spi.device.*;
+import com.openiot.spi.device.batch.ElementProcessingStatus;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
+import com.openiot.spi.device.charting.IMeasurementRollup;
+import com.openiot.spi.device.charting.MeasurementRollupResolution;
 import com.openiot.spi.device.batch.IBatchElement;
 import com.openiot.spi.device.batch.IBatchOperation;
+import com.openiot.spi.device.command.CommandDeliveryStatus;
+import com.openiot.spi.device.command.ICommandDelivery;
 import com.openiot.spi.device.command.IDeviceCommand;
 import com.openiot.spi.device.event.*;
 import com.openiot.spi.device.event.request.*;
@@ -41,14 +48,21 @@ import com.openiot.spi.search.ISearchCriteria;
 import com.openiot.spi.search.ISearchResults;
 import com.openiot.spi.search.device.IBatchElementSearchCriteria;
 import com.openiot.spi.search.device.IDeviceSearchCriteria;
+import com.openiot.spi.search.device.IMeasurementAggregationCriteria;
 import com.openiot.spi.server.lifecycle.LifecycleComponentType;
 import org.apache.log4j.Logger;
 import org.bson.types.ObjectId;
 
 import javax.servlet.http.HttpServletResponse;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -57,7 +71,7 @@ import java.util.UUID;
  * @author dadams
  */
 public class MongoDeviceManagement extends LifecycleComponent implements IDeviceManagement,
-		ICachingDeviceManagement {
+		ICachingDeviceManagement, IStateAggregatingDeviceManagement {
 
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(MongoDeviceManagement.class);
@@ -68,6 +82,24 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 	/** Provides caching for device management entities */
 	private IDeviceManagementCacheProvider cacheProvider;
 
+	/** Coalesces assignment state updates if configured */
+	private IDeviceAssignmentStateAggregator assignmentStateAggregator;
+
+	/** Indicates whether measurements are stored in hourly buckets */
+	private boolean useMeasurementBuckets = false;
+
+	/** Maximum number of events stored in a measurement bucket */
+	private int maxEventsPerBucket = MongoDeviceMeasurementBuckets.DEFAULT_MAX_EVENTS_PER_BUCKET;
+
+	/** Number of days one minute rollups are kept (0 keeps them forever) */
+	private int minuteRollupRetentionDays = MeasurementRollupResolution.Minute.getDefaultRetentionDays();
+
+	/** Number of days one hour rollups are kept (0 keeps them forever) */
+	private int hourRollupRetentionDays = MeasurementRollupResolution.Hour.getDefaultRetentionDays();
+
+	/** Number of days one day rollups are kept (0 keeps them forever) */
+	private int dayRollupRetentionDays = MeasurementRollupResolution.Day.getDefaultRetentionDays();
+
 	public MongoDeviceManagement() {
 		super(LifecycleComponentType.DataStore);
 	}
@@ -107,6 +139,22 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		return cacheProvider;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * IStateAggregatingDeviceManagement#setAssignmentStateAggregator(com.openiot
+	 * .spi.device.IDeviceAssignmentStateAggregator)
+	 */
+	@Override
+	public void setAssignmentStateAggregator(IDeviceAssignmentStateAggregator assignmentStateAggregator) {
+		this.assignmentStateAggregator = assignmentStateAggregator;
+	}
+
+	public IDeviceAssignmentStateAggregator getAssignmentStateAggregator() {
+		return assignmentStateAggregator;
+	}
+
 	/**
 	 * Ensure that expected collection indexes exist.
 	 * 
@@ -127,6 +175,17 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		getMongoClient().getEventsCollection().ensureIndex(
 				new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, 1).append(
 						MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_EVENT_TYPE, 1));
+		getMongoClient().getEventsCollection().ensureIndex(
+				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1).append(
+						MongoDeviceEvent.PROP_EVENT_DATE, -1).append("_id", -1));
+		getMongoClient().getEventsCollection().ensureIndex(
+				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1).append(
+						MongoDeviceEvent.PROP_EVENT_TYPE, 1).append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
+						"_id", -1));
+		getMongoClient().getEventsCollection().ensureIndex(
+				new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, 1).append(
+						MongoDeviceEvent.PROP_EVENT_TYPE, 1).append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
+						"_id", -1));
 		getMongoClient().getDeviceGroupsCollection().ensureIndex(
 				new BasicDBObject(MongoDeviceGroup.PROP_TOKEN, 1), new BasicDBObject("unique", true));
 		getMongoClient().getDeviceGroupsCollection().ensureIndex(
@@ -142,6 +201,11 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoBatchOperation.PROP_TOKEN, 1), new BasicDBObject("unique", true));
 		getMongoClient().getBatchOperationElementsCollection().ensureIndex(
 				new BasicDBObject(MongoBatchElement.PROP_BATCH_OPERATION_TOKEN, 1));
+		if (isUseMeasurementBuckets()) {
+			MongoDeviceMeasurementBuckets.ensureIndexes(getMongoClient().getMeasurementBucketsCollection());
+		}
+		MongoMeasurementRollups.ensureIndexes(getMongoClient().getMeasurementRollupsCollection());
+		MongoCommandDelivery.ensureIndexes(getMongoClient().getCommandDeliveriesCollection());
 	}
 
 	/*
@@ -711,6 +775,51 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		return null;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDeviceManagement#getDeviceAssignmentsByTokens(java.util.List)
+	 */
+	@Override
+	public List<IDeviceAssignment> getDeviceAssignmentsByTokens(List<String> tokens) throws OpenIoTException {
+		Map<String, IDeviceAssignment> found = new HashMap<String, IDeviceAssignment>();
+		List<String> missing = new ArrayList<String>();
+		for (String token : tokens) {
+			IDeviceAssignment cached =
+					(getCacheProvider() != null) ? getCacheProvider().getDeviceAssignmentCache().get(token) : null;
+			if (cached != null) {
+				found.put(token, cached);
+			} else {
+				missing.add(token);
+			}
+		}
+		if (!missing.isEmpty()) {
+			DBCollection assignments = getMongoClient().getDeviceAssignmentsCollection();
+			BasicDBObject query =
+					new BasicDBObject(MongoDeviceAssignment.PROP_TOKEN, new BasicDBObject("$in", missing));
+			DBCursor cursor = assignments.find(query);
+			try {
+				while (cursor.hasNext()) {
+					IDeviceAssignment assignment = MongoDeviceAssignment.fromDBObject(cursor.next());
+					found.put(assignment.getToken(), assignment);
+					if (getCacheProvider() != null) {
+						getCacheProvider().getDeviceAssignmentCache().put(assignment.getToken(), assignment);
+					}
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		List<IDeviceAssignment> results = new ArrayList<IDeviceAssignment>();
+		for (String token : tokens) {
+			IDeviceAssignment assignment = found.get(token);
+			if (assignment != null) {
+				results.add(assignment);
+			}
+		}
+		return results;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -840,7 +949,68 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 	@Override
 	public IDeviceEventBatchResponse addDeviceEventBatch(String assignmentToken, IDeviceEventBatch batch)
 			throws OpenIoTException {
-		return OpenIoTPersistence.deviceEventBatchLogic(assignmentToken, batch, this);
+		IDeviceAssignment assignment = assertApiDeviceAssignment(assignmentToken);
+
+		// Build all documents so they can be written in a single bulk insert.
+		List<DBObject> mObjects = new ArrayList<DBObject>();
+		List<DeviceMeasurements> bucketed = new ArrayList<DeviceMeasurements>();
+		for (IDeviceMeasurementsCreateRequest request : batch.getMeasurements()) {
+			DeviceMeasurements measurements =
+					OpenIoTPersistence.deviceMeasurementsCreateLogic(request, assignment);
+			if (isUseMeasurementBuckets()) {
+				bucketed.add(measurements);
+			} else {
+				mObjects.add(MongoDeviceMeasurements.toDBObject(measurements, false));
+			}
+		}
+		List<DBObject> locObjects = new ArrayList<DBObject>();
+		for (IDeviceLocationCreateRequest request : batch.getLocations()) {
+			DeviceLocation location = OpenIoTPersistence.deviceLocationCreateLogic(assignment, request);
+			locObjects.add(MongoDeviceLocation.toDBObject(location, false));
+		}
+		List<DBObject> alertObjects = new ArrayList<DBObject>();
+		for (IDeviceAlertCreateRequest request : batch.getAlerts()) {
+			DeviceAlert alert = OpenIoTPersistence.deviceAlertCreateLogic(assignment, request);
+			alertObjects.add(MongoDeviceAlert.toDBObject(alert, false));
+		}
+		List<DBObject> all = new ArrayList<DBObject>(mObjects.size() + locObjects.size() + alertObjects.size());
+		all.addAll(mObjects);
+		all.addAll(locObjects);
+		all.addAll(alertObjects);
+
+		DBCollection events = getMongoClient().getEventsCollection();
+		MongoPersistence.insert(events, all);
+		if (!bucketed.isEmpty()) {
+			MongoDeviceMeasurementBuckets.append(getMongoClient().getMeasurementBucketsCollection(), bucketed,
+					getMaxEventsPerBucket());
+		}
+
+		// Convert back to pick up generated ids.
+		DeviceEventBatchResponse response = new DeviceEventBatchResponse();
+		response.getCreatedMeasurements().addAll(bucketed);
+		for (DBObject mObject : mObjects) {
+			response.getCreatedMeasurements().add(MongoDeviceMeasurements.fromDBObject(mObject, false));
+		}
+		for (DBObject locObject : locObjects) {
+			response.getCreatedLocations().add(MongoDeviceLocation.fromDBObject(locObject, false));
+		}
+		for (DBObject alertObject : alertObjects) {
+			response.getCreatedAlerts().add(MongoDeviceAlert.fromDBObject(alertObject, false));
+		}
+
+		// Apply requested state changes through the aggregator or in a single update.
+		if (getAssignmentStateAggregator() != null) {
+			OpenIoTPersistence.assignmentStateBatchAggregateLogic(assignment, batch, response,
+					getAssignmentStateAggregator());
+		} else {
+			DeviceAssignmentState updated =
+					OpenIoTPersistence.assignmentStateBatchUpdateLogic(assignment, batch, response);
+			if (updated != null) {
+				updateDeviceAssignmentState(assignmentToken, updated);
+			}
+		}
+
+		return response;
 	}
 
 	/*
@@ -957,24 +1127,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		BasicDBObject query =
 				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken);
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-
-		int offset = Math.max(0, criteria.getPageNumber() - 1) * criteria.getPageSize();
-		DBCursor cursor = events.find(query).skip(offset).limit(criteria.getPageSize()).sort(sort);
-		List<IDeviceEvent> matches = new ArrayList<IDeviceEvent>();
-		SearchResults<IDeviceEvent> results = new SearchResults<IDeviceEvent>(matches);
-		try {
-			results.setNumResults(cursor.count());
-			while (cursor.hasNext()) {
-				DBObject match = cursor.next();
-				matches.add(MongoPersistence.unmarshalEvent(match));
-			}
-		} finally {
-			cursor.close();
-		}
-		return results;
+		return MongoPersistence.searchEvents(IDeviceEvent.class, events, query, criteria);
 	}
 
 	/*
@@ -991,16 +1144,25 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		DeviceMeasurements measurements =
 				OpenIoTPersistence.deviceMeasurementsCreateLogic(request, assignment);
 
-		DBCollection events = getMongoClient().getEventsCollection();
-		DBObject mObject = MongoDeviceMeasurements.toDBObject(measurements, false);
-		MongoPersistence.insert(events, mObject);
+		if (isUseMeasurementBuckets()) {
+			MongoDeviceMeasurementBuckets.append(getMongoClient().getMeasurementBucketsCollection(),
+					Collections.singletonList(measurements), getMaxEventsPerBucket());
+		} else {
+			DBCollection events = getMongoClient().getEventsCollection();
+			DBObject mObject = MongoDeviceMeasurements.toDBObject(measurements, false);
+			MongoPersistence.insert(events, mObject);
+			measurements = MongoDeviceMeasurements.fromDBObject(mObject, false);
+		}
 
 		// Update assignment state if requested.
-		measurements = MongoDeviceMeasurements.fromDBObject(mObject, false);
 		if (request.isUpdateState()) {
-			DeviceAssignmentState updated =
-					OpenIoTPersistence.assignmentStateMeasurementsUpdateLogic(assignment, measurements);
-			updateDeviceAssignmentState(assignmentToken, updated);
+			if (getAssignmentStateAggregator() != null) {
+				getAssignmentStateAggregator().addMeasurements(assignment, measurements);
+			} else {
+				DeviceAssignmentState updated =
+						OpenIoTPersistence.assignmentStateMeasurementsUpdateLogic(assignment, measurements);
+				updateDeviceAssignmentState(assignmentToken, updated);
+			}
 		}
 
 		return measurements;
@@ -1016,15 +1178,17 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 	@Override
 	public SearchResults<IDeviceMeasurements> listDeviceMeasurements(String token,
 			IDateRangeSearchCriteria criteria) throws OpenIoTException {
+		if (isUseMeasurementBuckets()) {
+			BasicDBObject query = new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, token);
+			return MongoDeviceMeasurementBuckets.search(getMongoClient().getMeasurementBucketsCollection(),
+					query, criteria);
+		}
 		DBCollection events = getMongoClient().getEventsCollection();
 		BasicDBObject query =
 				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, token).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Measurements.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceMeasurements.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceMeasurements.class, events, query, criteria);
 	}
 
 	/*
@@ -1037,15 +1201,118 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 	@Override
 	public SearchResults<IDeviceMeasurements> listDeviceMeasurementsForSite(String siteToken,
 			IDateRangeSearchCriteria criteria) throws OpenIoTException {
+		if (isUseMeasurementBuckets()) {
+			BasicDBObject query = new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken);
+			return MongoDeviceMeasurementBuckets.search(getMongoClient().getMeasurementBucketsCollection(),
+					query, criteria);
+		}
 		DBCollection events = getMongoClient().getEventsCollection();
 		BasicDBObject query =
 				new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Measurements.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceMeasurements.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceMeasurements.class, events, query, criteria);
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.openiot.spi.device.IDeviceManagement#aggregateDeviceMeasurements(java.lang.String,
+	 * com.openiot.spi.search.device.IMeasurementAggregationCriteria)
+	 */
+	@Override
+	public List<IMeasurementAggregateSeries> aggregateDeviceMeasurements(String assignmentToken,
+			IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		BasicDBObject query =
+				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken);
+		return aggregateMeasurements(query, criteria);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.openiot.spi.device.IDeviceManagement#aggregateDeviceMeasurementsForSite(java.lang
+	 * .String, com.openiot.spi.search.device.IMeasurementAggregationCriteria)
+	 */
+	@Override
+	public List<IMeasurementAggregateSeries> aggregateDeviceMeasurementsForSite(String siteToken,
+			IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		BasicDBObject query = new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken);
+		return aggregateMeasurements(query, criteria);
+	}
+
+	/**
+	 * Aggregate measurements matching a query from buckets or events, depending on how
+	 * measurements are stored.
+	 * 
+	 * @param query
+	 * @param criteria
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	protected List<IMeasurementAggregateSeries> aggregateMeasurements(BasicDBObject query,
+			IMeasurementAggregationCriteria criteria) throws OpenIoTException {
+		MeasurementAggregator aggregator = new MeasurementAggregator(criteria);
+		if (isUseMeasurementBuckets()) {
+			MongoDeviceMeasurementBuckets.aggregate(getMongoClient().getMeasurementBucketsCollection(), query,
+					aggregator);
+		} else {
+			MongoDeviceMeasurements.aggregate(getMongoClient().getEventsCollection(), query, aggregator);
+		}
+		return aggregator.getSeries();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.openiot.spi.device.IDeviceManagement#addMeasurementRollups(java.util.List)
+	 */
+	@Override
+	public void addMeasurementRollups(List<IMeasurementRollup> rollups) throws OpenIoTException {
+		DBCollection collection = getMongoClient().getMeasurementRollupsCollection();
+		for (IMeasurementRollup rollup : rollups) {
+			long retentionMs = getRollupRetentionDays(rollup.getResolution()) * 24L * 60 * 60 * 1000;
+			Date expires = (retentionMs > 0) ? new Date(rollup.getStartDate().getTime() + retentionMs) : null;
+			MongoMeasurementRollups.merge(collection, rollup, expires);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.openiot.spi.device.IDeviceManagement#listMeasurementRollups(java.lang.String,
+	 * com.openiot.spi.device.charting.MeasurementRollupResolution,
+	 * com.openiot.spi.search.device.IMeasurementAggregationCriteria)
+	 */
+	@Override
+	public List<IMeasurementAggregateSeries> listMeasurementRollups(String assignmentToken,
+			MeasurementRollupResolution resolution, IMeasurementAggregationCriteria criteria)
+			throws OpenIoTException {
+		MeasurementAggregator aggregator = new MeasurementAggregator(criteria);
+		MongoMeasurementRollups.aggregate(getMongoClient().getMeasurementRollupsCollection(), assignmentToken,
+				resolution, aggregator);
+		return aggregator.getSeries();
+	}
+
+	/**
+	 * Get the number of days rollups with the given resolution are kept.
+	 * 
+	 * @param resolution
+	 * @return
+	 */
+	protected int getRollupRetentionDays(MeasurementRollupResolution resolution) {
+		switch (resolution) {
+		case Minute:
+			return getMinuteRollupRetentionDays();
+		case Hour:
+			return getHourRollupRetentionDays();
+		default:
+			return getDayRollupRetentionDays();
+		}
 	}
 
 	/*
@@ -1067,9 +1334,13 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		// Update assignment state if requested.
 		location = MongoDeviceLocation.fromDBObject(locObject, false);
 		if (request.isUpdateState()) {
-			DeviceAssignmentState updated =
-					OpenIoTPersistence.assignmentStateLocationUpdateLogic(assignment, location);
-			updateDeviceAssignmentState(assignment.getToken(), updated);
+			if (getAssignmentStateAggregator() != null) {
+				getAssignmentStateAggregator().addLocation(assignment, location);
+			} else {
+				DeviceAssignmentState updated =
+						OpenIoTPersistence.assignmentStateLocationUpdateLogic(assignment, location);
+				updateDeviceAssignmentState(assignment.getToken(), updated);
+			}
 		}
 
 		return location;
@@ -1090,10 +1361,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Location.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceLocation.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceLocation.class, events, query, criteria);
 	}
 
 	/*
@@ -1111,10 +1379,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Location.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceLocation.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceLocation.class, events, query, criteria);
 	}
 
 	/*
@@ -1131,10 +1396,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		query.put(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, new BasicDBObject("$in", assignmentTokens));
 		query.append(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Location.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceLocation.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceLocation.class, events, query, criteria);
 	}
 
 	/*
@@ -1156,9 +1418,13 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		// Update assignment state if requested.
 		alert = MongoDeviceAlert.fromDBObject(alertObject, false);
 		if (request.isUpdateState()) {
-			DeviceAssignmentState updated =
-					OpenIoTPersistence.assignmentStateAlertUpdateLogic(assignment, alert);
-			updateDeviceAssignmentState(assignment.getToken(), updated);
+			if (getAssignmentStateAggregator() != null) {
+				getAssignmentStateAggregator().addAlert(assignment, alert);
+			} else {
+				DeviceAssignmentState updated =
+						OpenIoTPersistence.assignmentStateAlertUpdateLogic(assignment, alert);
+				updateDeviceAssignmentState(assignment.getToken(), updated);
+			}
 		}
 
 		return alert;
@@ -1178,10 +1444,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Alert.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceAlert.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceAlert.class, events, query, criteria);
 	}
 
 	/*
@@ -1199,10 +1462,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Alert.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceAlert.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceAlert.class, events, query, criteria);
 	}
 
 	/*
@@ -1241,10 +1501,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.CommandInvocation.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceCommandInvocation.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceCommandInvocation.class, events, query, criteria);
 	}
 
 	/*
@@ -1262,10 +1519,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.CommandInvocation.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceCommandInvocation.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceCommandInvocation.class, events, query, criteria);
 	}
 
 	/*
@@ -1288,6 +1542,43 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		return MongoPersistence.search(IDeviceCommandResponse.class, events, query, sort);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * IDeviceManagement#saveCommandDelivery(com.openiot.spi.device.command.ICommandDelivery)
+	 */
+	@Override
+	public void saveCommandDelivery(ICommandDelivery delivery) throws OpenIoTException {
+		MongoCommandDelivery.save(getMongoClient().getCommandDeliveriesCollection(), delivery);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDeviceManagement#listCommandDeliveries(java.lang.String,
+	 * com.openiot.spi.device.command.CommandDeliveryStatus)
+	 */
+	@Override
+	public List<ICommandDelivery> listCommandDeliveries(String destinationId, CommandDeliveryStatus status)
+			throws OpenIoTException {
+		return MongoCommandDelivery.list(getMongoClient().getCommandDeliveriesCollection(), destinationId,
+				status);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDeviceManagement#deleteCommandDelivery(java.lang.String, java.lang.String,
+	 * java.lang.String)
+	 */
+	@Override
+	public void deleteCommandDelivery(String destinationId, String invocationId, String assignmentToken)
+			throws OpenIoTException {
+		MongoCommandDelivery.delete(getMongoClient().getCommandDeliveriesCollection(), destinationId,
+				invocationId, assignmentToken);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1323,10 +1614,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.CommandResponse.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceCommandResponse.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceCommandResponse.class, events, query, criteria);
 	}
 
 	/*
@@ -1344,10 +1632,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.CommandResponse.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceCommandResponse.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceCommandResponse.class, events, query, criteria);
 	}
 
 	/*
@@ -1384,10 +1669,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.StateChange.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceStateChange.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceStateChange.class, events, query, criteria);
 	}
 
 	/*
@@ -1405,10 +1687,7 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 				new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, siteToken).append(
 						MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.StateChange.name());
 		MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
-		BasicDBObject sort =
-				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
-						MongoDeviceEvent.PROP_RECEIVED_DATE, -1);
-		return MongoPersistence.search(IDeviceStateChange.class, events, query, sort, criteria);
+		return MongoPersistence.searchEvents(IDeviceStateChange.class, events, query, criteria);
 	}
 
 	/*
@@ -1964,6 +2243,79 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 		return MongoBatchElement.fromDBObject(updated);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see IDeviceManagement#updateBatchElements(java.lang.String, java.util.Map)
+	 */
+	@Override
+	public List<IBatchElement> updateBatchElements(String operationToken,
+			Map<Long, IBatchElementUpdateRequest> requests) throws OpenIoTException {
+		DBCollection elements = getMongoClient().getBatchOperationElementsCollection();
+
+		// Load all referenced elements in one query.
+		BasicDBObject query =
+				new BasicDBObject(MongoBatchElement.PROP_BATCH_OPERATION_TOKEN, operationToken).append(
+						MongoBatchElement.PROP_INDEX,
+						new BasicDBObject("$in", new ArrayList<Long>(requests.keySet())));
+		Map<Long, BatchElement> existing = new HashMap<Long, BatchElement>();
+		DBCursor cursor = elements.find(query);
+		try {
+			while (cursor.hasNext()) {
+				BatchElement element = MongoBatchElement.fromDBObject(cursor.next());
+				existing.put(element.getIndex(), element);
+			}
+		} finally {
+			cursor.close();
+		}
+
+		// Updates without metadata that set the same status and date share a multi-update.
+		Map<List<Object>, List<Long>> shared = new LinkedHashMap<List<Object>, List<Long>>();
+		List<IBatchElement> results = new ArrayList<IBatchElement>();
+		for (Map.Entry<Long, IBatchElementUpdateRequest> entry : requests.entrySet()) {
+			BatchElement element = existing.get(entry.getKey());
+			if (element == null) {
+				throw new OpenIoTSystemException(ErrorCode.InvalidBatchElement, ErrorLevel.ERROR);
+			}
+			IBatchElementUpdateRequest request = entry.getValue();
+			OpenIoTPersistence.batchElementUpdateLogic(request, element);
+			if (request.getMetadata().isEmpty()) {
+				List<Object> key = Arrays.<Object> asList(request.getProcessingStatus(), request.getProcessedDate());
+				List<Long> indexes = shared.get(key);
+				if (indexes == null) {
+					indexes = new ArrayList<Long>();
+					shared.put(key, indexes);
+				}
+				indexes.add(entry.getKey());
+			} else {
+				BasicDBObject single =
+						new BasicDBObject(MongoBatchElement.PROP_BATCH_OPERATION_TOKEN, operationToken).append(
+								MongoBatchElement.PROP_INDEX, entry.getKey());
+				MongoPersistence.update(elements, single, MongoBatchElement.toDBObject(element));
+			}
+			results.add(element);
+		}
+		for (Map.Entry<List<Object>, List<Long>> entry : shared.entrySet()) {
+			ElementProcessingStatus status = (ElementProcessingStatus) entry.getKey().get(0);
+			Date processed = (Date) entry.getKey().get(1);
+			BasicDBObject fields = new BasicDBObject();
+			if (status != null) {
+				fields.append(MongoBatchElement.PROP_PROCESSING_STATUS, status.name());
+			}
+			if (processed != null) {
+				fields.append(MongoBatchElement.PROP_PROCESSED_DATE, processed);
+			}
+			if (fields.isEmpty()) {
+				continue;
+			}
+			BasicDBObject matching =
+					new BasicDBObject(MongoBatchElement.PROP_BATCH_OPERATION_TOKEN, operationToken).append(
+							MongoBatchElement.PROP_INDEX, new BasicDBObject("$in", entry.getValue()));
+			MongoPersistence.updateMulti(elements, matching, new BasicDBObject("$set", fields));
+		}
+		return results;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -2180,4 +2532,44 @@ public class MongoDeviceManagement extends LifecycleComponent implements IDevice
 	public void setMongoClient(IDeviceManagementMongoClient mongoClient) {
 		this.mongoClient = mongoClient;
 	}
+
+	public boolean isUseMeasurementBuckets() {
+		return useMeasurementBuckets;
+	}
+
+	public void setUseMeasurementBuckets(boolean useMeasurementBuckets) {
+		this.useMeasurementBuckets = useMeasurementBuckets;
+	}
+
+	public int getMaxEventsPerBucket() {
+		return maxEventsPerBucket;
+	}
+
+	public void setMaxEventsPerBucket(int maxEventsPerBucket) {
+		this.maxEventsPerBucket = maxEventsPerBucket;
+	}
+
+	public int getMinuteRollupRetentionDays() {
+		return minuteRollupRetentionDays;
+	}
+
+	public void setMinuteRollupRetentionDays(int minuteRollupRetentionDays) {
+		this.minuteRollupRetentionDays = minuteRollupRetentionDays;
+	}
+
+	public int getHourRollupRetentionDays() {
+		return hourRollupRetentionDays;
+	}
+
+	public void setHourRollupRetentionDays(int hourRollupRetentionDays) {
+		this.hourRollupRetentionDays = hourRollupRetentionDays;
+	}
+
+	public int getDayRollupRetentionDays() {
+		return dayRollupRetentionDays;
+	}
+
+	public void setDayRollupRetentionDays(int dayRollupRetentionDays) {
+		this.dayRollupRetentionDays = dayRollupRetentionDays;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.mongodb.device;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.openiot.mongodb.IDeviceManagementMongoClient;
+import com.openiot.mongodb.MongoPersistence;
+import com.openiot.mongodb.OpenIoTMongoClient;
+import com.openiot.rest.model.device.event.DeviceMeasurements;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.DeviceEventType;
+import org.apache.log4j.Logger;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Copies measurement events from the events collection into hourly measurement buckets
+ * so an existing datastore can be switched to bucketed storage. Events keep their ids.
+ * Events are read in index order and written one assignment and hour at a time. A group
+ * is checked against the bucket before it is written, so the migration can be run again
+ * after a failure without duplicating events. Migrated events are only removed from the
+ * events collection if requested.
+ *
+ * Usage: <code>MongoDeviceMeasurementBucketMigration hostname port databaseName [delete]</code>
+ *
+ * @author Derek
+ */
+public class MongoDeviceMeasurementBucketMigration {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(MongoDeviceMeasurementBucketMigration.class);
+
+	/** Default maximum number of events written in one update */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/** Number of events between progress messages */
+	private static final int PROGRESS_INTERVAL = 100000;
+
+	/** Client for events and buckets collections */
+	private IDeviceManagementMongoClient mongoClient;
+
+	/** Maximum number of events written in one update */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/** Maximum number of events stored in a bucket */
+	private int maxEventsPerBucket = MongoDeviceMeasurementBuckets.DEFAULT_MAX_EVENTS_PER_BUCKET;
+
+	/** Indicates whether migrated events are removed from the events collection */
+	private boolean deleteMigrated = false;
+
+	public MongoDeviceMeasurementBucketMigration(IDeviceManagementMongoClient mongoClient) {
+		this.mongoClient = mongoClient;
+	}
+
+	/**
+	 * Migrate all measurement events.
+	 *
+	 * @return number of events copied to buckets
+	 * @throws OpenIoTException
+	 */
+	public long migrate() throws OpenIoTException {
+		DBCollection events = getMongoClient().getEventsCollection();
+		DBCollection buckets = getMongoClient().getMeasurementBucketsCollection();
+		MongoDeviceMeasurementBuckets.ensureIndexes(buckets);
+
+		BasicDBObject query =
+				new BasicDBObject(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Measurements.name());
+		BasicDBObject sort =
+				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1).append(
+						MongoDeviceEvent.PROP_EVENT_TYPE, 1).append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(
+						"_id", -1);
+		DBCursor cursor = events.find(query).sort(sort);
+		cursor.addOption(Bytes.QUERYOPTION_NOTIMEOUT);
+
+		long read = 0;
+		long migrated = 0;
+		List<DBObject> group = new ArrayList<DBObject>();
+		String groupAssignment = null;
+		Date groupBucket = null;
+		try {
+			while (cursor.hasNext()) {
+				DBObject event = cursor.next();
+				String assignment = (String) event.get(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN);
+				Date eventDate = (Date) event.get(MongoDeviceEvent.PROP_EVENT_DATE);
+				Date bucket = MongoDeviceMeasurementBuckets.getBucketDate(eventDate);
+				boolean sameGroup =
+						assignment.equals(groupAssignment) && bucket.equals(groupBucket)
+								&& (group.size() < getBatchSize());
+				if ((!group.isEmpty()) && (!sameGroup)) {
+					migrated += migrateGroup(events, buckets, groupAssignment, groupBucket, group);
+					group.clear();
+				}
+				groupAssignment = assignment;
+				groupBucket = bucket;
+				group.add(event);
+				if ((++read % PROGRESS_INTERVAL) == 0) {
+					LOGGER.info("Read " + read + " measurement events, " + migrated + " copied to buckets.");
+				}
+			}
+			if (!group.isEmpty()) {
+				migrated += migrateGroup(events, buckets, groupAssignment, groupBucket, group);
+			}
+		} finally {
+			cursor.close();
+		}
+		LOGGER.info("Measurement migration complete. Read " + read + " events, " + migrated
+				+ " copied to buckets.");
+		return migrated;
+	}
+
+	/**
+	 * Copy a group of events for one assignment and hour into a bucket, skipping events
+	 * that an earlier run already copied.
+	 *
+	 * @param events
+	 * @param buckets
+	 * @param assignment
+	 * @param bucket
+	 * @param group
+	 * @return number of events copied
+	 * @throws OpenIoTException
+	 */
+	@SuppressWarnings("unchecked")
+	protected int migrateGroup(DBCollection events, DBCollection buckets, String assignment, Date bucket,
+			List<DBObject> group) throws OpenIoTException {
+		BasicDBList ids = new BasicDBList();
+		for (DBObject event : group) {
+			ids.add(event.get("_id"));
+		}
+
+		// Find events already present in buckets for the hour.
+		Set<ObjectId> existing = new HashSet<ObjectId>();
+		BasicDBObject copied =
+				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignment).append(
+						MongoDeviceMeasurementBuckets.PROP_BUCKET_DATE, bucket).append(
+						MongoDeviceMeasurementBuckets.PROP_EVENTS + "._id", new BasicDBObject("$in", ids));
+		BasicDBObject fields = new BasicDBObject(MongoDeviceMeasurementBuckets.PROP_EVENTS + "._id", 1);
+		DBCursor matches = buckets.find(copied, fields);
+		try {
+			while (matches.hasNext()) {
+				List<DBObject> headers =
+						(List<DBObject>) matches.next().get(MongoDeviceMeasurementBuckets.PROP_EVENTS);
+				for (DBObject header : headers) {
+					existing.add((ObjectId) header.get("_id"));
+				}
+			}
+		} finally {
+			matches.close();
+		}
+
+		List<DeviceMeasurements> measurements = new ArrayList<DeviceMeasurements>();
+		for (DBObject event : group) {
+			if (!existing.contains(event.get("_id"))) {
+				measurements.add(MongoDeviceMeasurements.fromDBObject(event, false));
+			}
+		}
+		if (!measurements.isEmpty()) {
+			MongoDeviceMeasurementBuckets.append(buckets, measurements, getMaxEventsPerBucket());
+		}
+		if (isDeleteMigrated()) {
+			MongoPersistence.delete(events, new BasicDBObject("_id", new BasicDBObject("$in", ids)));
+		}
+		return measurements.size();
+	}
+
+	/**
+	 * Run the migration against a MongoDB database.
+	 *
+	 * @param args hostname, port, database name and optionally 'delete' to remove migrated
+	 *        events
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: MongoDeviceMeasurementBucketMigration hostname port databaseName "
+					+ "[delete]");
+			System.exit(1);
+		}
+		OpenIoTMongoClient client = new OpenIoTMongoClient();
+		client.setHostname(args[0]);
+		client.setPort(Integer.parseInt(args[1]));
+		client.setDatabaseName(args[2]);
+		client.start();
+		try {
+			MongoDeviceMeasurementBucketMigration migration =
+					new MongoDeviceMeasurementBucketMigration(client);
+			migration.setDeleteMigrated((args.length > 3) && ("delete".equals(args[3])));
+			migration.migrate();
+		} finally {
+			client.stop();
+		}
+	}
+
+	public IDeviceManagementMongoClient getMongoClient() {
+		return mongoClient;
+	}
+
+	public void setMongoClient(IDeviceManagementMongoClient mongoClient) {
+		this.mongoClient = mongoClient;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getMaxEventsPerBucket() {
+		return maxEventsPerBucket;
+	}
+
+	public void setMaxEventsPerBucket(int maxEventsPerBucket) {
+		this.maxEventsPerBucket = maxEventsPerBucket;
+	}
+
+	public boolean isDeleteMigrated() {
+		return deleteMigrated;
+	}
+
+	public void setDeleteMigrated(boolean deleteMigrated) {
+		this.deleteMigrated = deleteMigrated;
+	}
+}
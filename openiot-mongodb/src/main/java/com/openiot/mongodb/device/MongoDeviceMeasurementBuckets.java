@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.mongodb.device;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.openiot.device.charting.MeasurementAggregator;
+import com.openiot.mongodb.MongoPersistence;
+import com.openiot.mongodb.common.MongoMetadataProvider;
+import com.openiot.rest.model.device.event.DeviceMeasurements;
+import com.openiot.rest.model.search.ContinuationToken;
+import com.openiot.rest.model.search.SearchResults;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.OpenIoTSystemException;
+import com.openiot.spi.device.event.DeviceEventType;
+import com.openiot.spi.device.event.IDeviceMeasurements;
+import com.openiot.spi.error.ErrorCode;
+import com.openiot.spi.error.ErrorLevel;
+import com.openiot.spi.search.IDateRangeSearchCriteria;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores device measurements in hourly buckets instead of one document per event. A
+ * bucket holds measurements for one assignment and one hour. Each metric has an array of
+ * event dates and a matching array of values. Each event has a header with its id, dates,
+ * metadata and the names of the metrics it carries. The n-th value of a metric belongs to
+ * the n-th header that names the metric, because headers and values for a group of events
+ * are appended by the same <code>$push</code> upsert.
+ *
+ * A bucket is closed once it holds the maximum number of events, and later events for the
+ * same hour start a new bucket. This keeps documents for high frequency devices well under
+ * the document size limit. Readers merge all buckets for an hour.
+ *
+ * @author Derek
+ */
+public class MongoDeviceMeasurementBuckets {
+
+	/** Length of a bucket in milliseconds */
+	public static final long BUCKET_LENGTH_MS = 60 * 60 * 1000;
+
+	/** Default maximum number of events in a bucket */
+	public static final int DEFAULT_MAX_EVENTS_PER_BUCKET = 3600;
+
+	/** Property for start of the hour covered by a bucket */
+	public static final String PROP_BUCKET_DATE = "bucketDate";
+
+	/** Property for number of events in a bucket */
+	public static final String PROP_COUNT = "count";
+
+	/** Property for event headers */
+	public static final String PROP_EVENTS = "events";
+
+	/** Property for names of the metrics carried by an event */
+	public static final String PROP_NAMES = "names";
+
+	/** Property for per-metric arrays */
+	public static final String PROP_METRICS = "metrics";
+
+	/** Property for event dates of a metric */
+	public static final String PROP_DATES = "t";
+
+	/** Property for values of a metric */
+	public static final String PROP_VALUES = "v";
+
+	/** Orders measurements newest first with ties broken by id */
+	private static final Comparator<IDeviceMeasurements> NEWEST_FIRST =
+			new Comparator<IDeviceMeasurements>() {
+
+		public int compare(IDeviceMeasurements a, IDeviceMeasurements b) {
+			int byDate = b.getEventDate().compareTo(a.getEventDate());
+			if (byDate != 0) {
+				return byDate;
+			}
+			return b.getId().compareTo(a.getId());
+		}
+	};
+
+	/**
+	 * Ensure that indexes used to find buckets exist.
+	 *
+	 * @param buckets
+	 */
+	public static void ensureIndexes(DBCollection buckets) {
+		buckets.ensureIndex(new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1).append(
+				PROP_BUCKET_DATE, -1));
+		buckets.ensureIndex(new BasicDBObject(MongoDeviceEvent.PROP_SITE_TOKEN, 1).append(PROP_BUCKET_DATE,
+				-1));
+	}
+
+	/**
+	 * Get the start of the hour that contains a date.
+	 *
+	 * @param date
+	 * @return
+	 */
+	public static Date getBucketDate(Date date) {
+		long time = date.getTime();
+		return new Date(time - (((time % BUCKET_LENGTH_MS) + BUCKET_LENGTH_MS) % BUCKET_LENGTH_MS));
+	}
+
+	/**
+	 * Append measurements to buckets. Measurements without an id are given one. All
+	 * measurements must belong to the same assignment. One upsert is issued for each hour
+	 * covered.
+	 *
+	 * @param buckets
+	 * @param measurements
+	 * @param maxEventsPerBucket
+	 * @throws OpenIoTException
+	 */
+	public static void append(DBCollection buckets, List<DeviceMeasurements> measurements,
+			int maxEventsPerBucket) throws OpenIoTException {
+		Map<Date, List<DeviceMeasurements>> byBucket = new LinkedHashMap<Date, List<DeviceMeasurements>>();
+		for (DeviceMeasurements current : measurements) {
+			if (current.getId() == null) {
+				current.setId(new ObjectId().toString());
+			}
+			Date bucketDate = getBucketDate(current.getEventDate());
+			List<DeviceMeasurements> group = byBucket.get(bucketDate);
+			if (group == null) {
+				group = new ArrayList<DeviceMeasurements>();
+				byBucket.put(bucketDate, group);
+			}
+			group.add(current);
+		}
+		for (Map.Entry<Date, List<DeviceMeasurements>> entry : byBucket.entrySet()) {
+			String assignmentToken = entry.getValue().get(0).getDeviceAssignmentToken();
+			BasicDBObject query =
+					new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken).append(
+							PROP_BUCKET_DATE, entry.getKey()).append(PROP_COUNT,
+							new BasicDBObject("$lt", maxEventsPerBucket));
+			MongoPersistence.upsert(buckets, query, createUpdate(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Create the update that appends a group of measurements to a bucket.
+	 *
+	 * @param group
+	 * @return
+	 */
+	protected static BasicDBObject createUpdate(List<? extends IDeviceMeasurements> group) {
+		IDeviceMeasurements first = group.get(0);
+		BasicDBObject created = new BasicDBObject(MongoDeviceEvent.PROP_EVENT_TYPE,
+				DeviceEventType.Measurements.name());
+		created.append(MongoDeviceEvent.PROP_SITE_TOKEN, first.getSiteToken());
+		created.append(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TYPE, first.getAssignmentType().name());
+		created.append(MongoDeviceEvent.PROP_ASSET_MODULE_ID, first.getAssetModuleId());
+		created.append(MongoDeviceEvent.PROP_ASSET_ID, first.getAssetId());
+
+		BasicDBList headers = new BasicDBList();
+		Map<String, BasicDBList> dates = new LinkedHashMap<String, BasicDBList>();
+		Map<String, BasicDBList> values = new HashMap<String, BasicDBList>();
+		for (IDeviceMeasurements current : group) {
+			BasicDBObject header = new BasicDBObject("_id", new ObjectId(current.getId()));
+			header.append(MongoDeviceEvent.PROP_EVENT_DATE, current.getEventDate());
+			header.append(MongoDeviceEvent.PROP_RECEIVED_DATE, current.getReceivedDate());
+			BasicDBList names = new BasicDBList();
+			for (Map.Entry<String, Double> measurement : current.getMeasurements().entrySet()) {
+				String field = encodeName(measurement.getKey());
+				if (!dates.containsKey(field)) {
+					dates.put(field, new BasicDBList());
+					values.put(field, new BasicDBList());
+				}
+				dates.get(field).add(current.getEventDate());
+				values.get(field).add(measurement.getValue());
+				names.add(measurement.getKey());
+			}
+			header.append(PROP_NAMES, names);
+			if (!current.getMetadata().isEmpty()) {
+				MongoMetadataProvider.toDBObject(current, header);
+			}
+			headers.add(header);
+		}
+
+		BasicDBObject push = new BasicDBObject(PROP_EVENTS, new BasicDBObject("$each", headers));
+		for (String field : dates.keySet()) {
+			String prefix = PROP_METRICS + "." + field + ".";
+			push.append(prefix + PROP_DATES, new BasicDBObject("$each", dates.get(field)));
+			push.append(prefix + PROP_VALUES, new BasicDBObject("$each", values.get(field)));
+		}
+		BasicDBObject update = new BasicDBObject("$setOnInsert", created);
+		update.append("$inc", new BasicDBObject(PROP_COUNT, group.size()));
+		update.append("$push", push);
+		return update;
+	}
+
+	/**
+	 * Unpack the measurements held in a bucket.
+	 *
+	 * @param bucket
+	 * @param target
+	 */
+	@SuppressWarnings("unchecked")
+	public static void fromDBObject(DBObject bucket, List<DeviceMeasurements> target) {
+		List<DBObject> headers = (List<DBObject>) bucket.get(PROP_EVENTS);
+		DBObject metrics = (DBObject) bucket.get(PROP_METRICS);
+		if ((headers == null) || (metrics == null)) {
+			return;
+		}
+		Map<String, Integer> positions = new HashMap<String, Integer>();
+		for (DBObject header : headers) {
+			DeviceMeasurements measurements = new DeviceMeasurements();
+			MongoDeviceEvent.fromDBObject(bucket, measurements, false);
+			measurements.setId(header.get("_id").toString());
+			measurements.setEventDate((Date) header.get(MongoDeviceEvent.PROP_EVENT_DATE));
+			measurements.setReceivedDate((Date) header.get(MongoDeviceEvent.PROP_RECEIVED_DATE));
+			MongoMetadataProvider.fromDBObject(header, measurements);
+
+			List<String> names = (List<String>) header.get(PROP_NAMES);
+			for (String name : names) {
+				String field = encodeName(name);
+				Integer position = positions.get(field);
+				int index = (position != null) ? position : 0;
+				positions.put(field, index + 1);
+				DBObject metric = (DBObject) metrics.get(field);
+				List<Object> values = (List<Object>) metric.get(PROP_VALUES);
+				Object value = (index < values.size()) ? values.get(index) : null;
+				measurements.addOrReplaceMeasurement(name,
+						(value != null) ? ((Number) value).doubleValue() : null);
+			}
+			target.add(measurements);
+		}
+	}
+
+	/**
+	 * Search bucketed measurements, newest first. Paging works the same way as
+	 * {@link MongoPersistence#searchEvents}, including continuation tokens.
+	 *
+	 * @param buckets
+	 * @param query
+	 * @param criteria
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public static SearchResults<IDeviceMeasurements> search(DBCollection buckets, BasicDBObject query,
+			IDateRangeSearchCriteria criteria) throws OpenIoTException {
+		ContinuationToken token = null;
+		if (criteria.getContinuationToken() != null) {
+			token = ContinuationToken.decode(criteria.getContinuationToken());
+			if (!ObjectId.isValid(token.getId())) {
+				throw new OpenIoTSystemException(ErrorCode.InvalidContinuationToken, ErrorLevel.ERROR);
+			}
+		}
+
+		// Buckets before the token only need to be read if they are counted.
+		Date end = criteria.getEndDate();
+		if ((token != null) && (!criteria.isIncludeTotal())
+				&& ((end == null) || (token.getEventDate().before(end)))) {
+			end = token.getEventDate();
+		}
+		BasicDBObject range = new BasicDBObject();
+		if (criteria.getStartDate() != null) {
+			range.append("$gte", getBucketDate(criteria.getStartDate()));
+		}
+		if (end != null) {
+			range.append("$lte", getBucketDate(end));
+		}
+		BasicDBObject bucketQuery = new BasicDBObject(query);
+		if (!range.isEmpty()) {
+			bucketQuery.append(PROP_BUCKET_DATE, range);
+		}
+
+		// Only bucket counts are read up front. Events are unpacked for an hour only when
+		// it is at the edge of the range or token, or overlaps the page.
+		PageBuilder page = new PageBuilder(criteria, token);
+		BasicDBObject fields = new BasicDBObject(PROP_BUCKET_DATE, 1).append(PROP_COUNT, 1);
+		DBCursor cursor =
+				buckets.find(bucketQuery, fields).sort(new BasicDBObject(PROP_BUCKET_DATE, -1));
+		try {
+			Date hour = null;
+			long count = 0;
+			BasicDBList ids = new BasicDBList();
+			while (cursor.hasNext() && (!page.isComplete())) {
+				DBObject bucket = cursor.next();
+				Date bucketDate = (Date) bucket.get(PROP_BUCKET_DATE);
+				if ((hour != null) && (!hour.equals(bucketDate))) {
+					addHour(buckets, page, hour, count, ids);
+					count = 0;
+					ids = new BasicDBList();
+				}
+				hour = bucketDate;
+				Number bucketCount = (Number) bucket.get(PROP_COUNT);
+				count += (bucketCount != null) ? bucketCount.longValue() : 0;
+				ids.add(bucket.get("_id"));
+			}
+			if ((hour != null) && (!page.isComplete())) {
+				addHour(buckets, page, hour, count, ids);
+			}
+		} finally {
+			cursor.close();
+		}
+		return page.getResults();
+	}
+
+	/**
+	 * Add all buckets for an hour to a page. The stored counts are used if the hour can be
+	 * skipped or counted as a whole. Otherwise the buckets are loaded and unpacked.
+	 *
+	 * @param buckets
+	 * @param page
+	 * @param hour
+	 * @param count
+	 * @param ids
+	 */
+	protected static void addHour(DBCollection buckets, PageBuilder page, Date hour, long count,
+			BasicDBList ids) {
+		if (page.addCount(hour, count)) {
+			return;
+		}
+		List<DeviceMeasurements> unpacked = new ArrayList<DeviceMeasurements>();
+		DBCursor cursor = buckets.find(new BasicDBObject("_id", new BasicDBObject("$in", ids)));
+		try {
+			while (cursor.hasNext()) {
+				fromDBObject(cursor.next(), unpacked);
+			}
+		} finally {
+			cursor.close();
+		}
+		page.add(unpacked);
+	}
+
+	/**
+	 * Aggregate bucketed measurements. Only the metric arrays are read from each bucket,
+	 * and values are reduced while the cursor is read rather than unpacked into events.
+	 *
+	 * @param buckets
+	 * @param query
+	 * @param aggregator
+	 */
+	@SuppressWarnings("unchecked")
+	public static void aggregate(DBCollection buckets, BasicDBObject query,
+			MeasurementAggregator aggregator) {
+		BasicDBObject bucketQuery = new BasicDBObject(query);
+		bucketQuery.append(PROP_BUCKET_DATE,
+				new BasicDBObject("$gte", getBucketDate(new Date(aggregator.getStart()))).append("$lt",
+						new Date(aggregator.getEnd())));
+		BasicDBObject fields = new BasicDBObject(PROP_METRICS, 1);
+		if (aggregator.getMeasurementIds() != null) {
+			fields = new BasicDBObject();
+			for (String id : aggregator.getMeasurementIds()) {
+				fields.append(PROP_METRICS + "." + encodeName(id), 1);
+			}
+		}
+		DBCursor cursor = buckets.find(bucketQuery, fields);
+		try {
+			while (cursor.hasNext()) {
+				DBObject metrics = (DBObject) cursor.next().get(PROP_METRICS);
+				if (metrics == null) {
+					continue;
+				}
+				for (String field : metrics.keySet()) {
+					String name = decodeName(field);
+					if (!aggregator.includes(name)) {
+						continue;
+					}
+					DBObject metric = (DBObject) metrics.get(field);
+					List<Object> dates = (List<Object>) metric.get(PROP_DATES);
+					List<Object> values = (List<Object>) metric.get(PROP_VALUES);
+					int count = Math.min(dates.size(), values.size());
+					for (int i = 0; i < count; i++) {
+						Object value = values.get(i);
+						aggregator.add(name, ((Date) dates.get(i)).getTime(),
+								(value != null) ? ((Number) value).doubleValue() : null);
+					}
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Encode a metric name so it can be used as a field name.
+	 *
+	 * @param name
+	 * @return
+	 */
+	protected static String encodeName(String name) {
+		return name.replace("%", "%25").replace(".", "%2E").replace("$", "%24");
+	}
+
+	/**
+	 * Decode a field name created by {@link #encodeName(String)}.
+	 *
+	 * @param field
+	 * @return
+	 */
+	protected static String decodeName(String field) {
+		return field.replace("%24", "$").replace("%2E", ".").replace("%25", "%");
+	}
+
+	/**
+	 * Collects a page of measurements from the hours read so far.
+	 *
+	 * @author Derek
+	 */
+	private static class PageBuilder {
+
+		/** Search criteria */
+		private IDateRangeSearchCriteria criteria;
+
+		/** Continuation token or null if paging by page number */
+		private ContinuationToken token;
+
+		/** Number of measurements left to skip */
+		private int toSkip;
+
+		/** Measurements on the page */
+		private List<IDeviceMeasurements> page = new ArrayList<IDeviceMeasurements>();
+
+		/** Number of measurements matched */
+		private long total;
+
+		/** Indicates whether measurements were matched after the page was full */
+		private boolean more;
+
+		public PageBuilder(IDateRangeSearchCriteria criteria, ContinuationToken token) {
+			this.criteria = criteria;
+			this.token = token;
+			if (token == null) {
+				this.toSkip = Math.max(0, criteria.getPageNumber() - 1) * criteria.getPageSize();
+			}
+		}
+
+		/**
+		 * Add the measurements unpacked from all buckets for an hour.
+		 *
+		 * @param hour
+		 */
+		public void add(List<DeviceMeasurements> hour) {
+			Collections.sort(hour, NEWEST_FIRST);
+			for (DeviceMeasurements current : hour) {
+				if ((criteria.getStartDate() != null)
+						&& (current.getEventDate().before(criteria.getStartDate()))) {
+					continue;
+				}
+				if ((criteria.getEndDate() != null)
+						&& (current.getEventDate().after(criteria.getEndDate()))) {
+					continue;
+				}
+				total++;
+				if ((token != null) && (!token.isFollowedBy(current.getEventDate(), current.getId()))) {
+					continue;
+				}
+				if (toSkip > 0) {
+					toSkip--;
+				} else if ((criteria.getPageSize() == 0) || (page.size() < criteria.getPageSize())) {
+					page.add(current);
+				} else {
+					more = true;
+					if (isComplete()) {
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Account for an hour using only its stored count. This is possible if the whole
+		 * hour is inside the date range, is entirely before or after the continuation
+		 * token, and is either skipped or falls after a full page.
+		 *
+		 * @param hour
+		 * @param count
+		 * @return false if the measurements for the hour have to be unpacked
+		 */
+		public boolean addCount(Date hour, long count) {
+			Date last = new Date(hour.getTime() + BUCKET_LENGTH_MS - 1);
+			if ((criteria.getStartDate() != null) && (hour.before(criteria.getStartDate()))) {
+				return false;
+			}
+			if ((criteria.getEndDate() != null) && (last.after(criteria.getEndDate()))) {
+				return false;
+			}
+			if (token != null) {
+				if (hour.after(token.getEventDate())) {
+					total += count;
+					return true;
+				}
+				if (!last.before(token.getEventDate())) {
+					return false;
+				}
+			}
+			if (toSkip >= count) {
+				toSkip -= count;
+			} else if ((criteria.getPageSize() > 0) && (page.size() >= criteria.getPageSize())) {
+				more = more || (count > 0);
+			} else {
+				return false;
+			}
+			total += count;
+			return true;
+		}
+
+		/**
+		 * Indicates whether no more measurements need to be read.
+		 *
+		 * @return
+		 */
+		public boolean isComplete() {
+			return more && !criteria.isIncludeTotal();
+		}
+
+		/**
+		 * Get the page of results.
+		 *
+		 * @return
+		 */
+		public SearchResults<IDeviceMeasurements> getResults() {
+			SearchResults<IDeviceMeasurements> results =
+					new SearchResults<IDeviceMeasurements>(page, criteria.isIncludeTotal() ? total : -1);
+			if (more) {
+				results.setContinuationToken(ContinuationToken.after(page));
+			}
+			return results;
+		}
+	}
+}
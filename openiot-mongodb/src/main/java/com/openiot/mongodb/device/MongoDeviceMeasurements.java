@@ -7,13 +7,22 @@
  */
 package com.openiot.mongodb.device;
 
+import com.mongodb.AggregationOutput;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.openiot.device.charting.MeasurementAggregator;
 import com.openiot.mongodb.MongoConverter;
 import com.openiot.rest.model.device.event.DeviceMeasurements;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.DeviceEventType;
 import com.openiot.spi.device.event.IDeviceMeasurements;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -117,4 +126,70 @@ public class MongoDeviceMeasurements implements MongoConverter<IDeviceMeasuremen
 		MongoDeviceMeasurements.fromDBObject(source, result, isNested);
 		return result;
 	}
+
+	/**
+	 * Aggregate measurement events with the aggregation framework. Events are matched and
+	 * sorted newest first using the event indexes, then grouped by measurement name and
+	 * interval so only one document per interval is returned.
+	 *
+	 * @param events
+	 * @param query
+	 * @param aggregator
+	 * @throws OpenIoTException
+	 */
+	public static void aggregate(DBCollection events, BasicDBObject query, MeasurementAggregator aggregator)
+			throws OpenIoTException {
+		String name = "$" + PROP_MEASUREMENTS + "." + PROP_NAME;
+		String value = "$" + PROP_MEASUREMENTS + "." + PROP_VALUE;
+		String eventDate = "$" + MongoDeviceEvent.PROP_EVENT_DATE;
+		Date start = new Date(aggregator.getStart());
+
+		BasicDBObject match = new BasicDBObject(query);
+		match.append(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.Measurements.name());
+		match.append(MongoDeviceEvent.PROP_EVENT_DATE,
+				new BasicDBObject("$gte", start).append("$lt", new Date(aggregator.getEnd())));
+		BasicDBObject values =
+				new BasicDBObject(PROP_MEASUREMENTS + "." + PROP_VALUE, new BasicDBObject("$ne", null));
+		if (aggregator.getMeasurementIds() != null) {
+			BasicDBList ids = new BasicDBList();
+			ids.addAll(aggregator.getMeasurementIds());
+			match.append(PROP_MEASUREMENTS + "." + PROP_NAME, new BasicDBObject("$in", ids));
+			values.append(PROP_MEASUREMENTS + "." + PROP_NAME, new BasicDBObject("$in", ids));
+		}
+
+		// Offset of the interval containing the event, in milliseconds from the start.
+		BasicDBObject elapsed = new BasicDBObject("$subtract", Arrays.<Object> asList(eventDate, start));
+		BasicDBObject remainder =
+				new BasicDBObject("$mod", Arrays.<Object> asList(elapsed, aggregator.getInterval()));
+		BasicDBObject offset = new BasicDBObject("$subtract", Arrays.<Object> asList(elapsed, remainder));
+
+		BasicDBObject group =
+				new BasicDBObject("_id", new BasicDBObject("name", name).append("offset", offset));
+		group.append("count", new BasicDBObject("$sum", 1));
+		group.append("min", new BasicDBObject("$min", value));
+		group.append("max", new BasicDBObject("$max", value));
+		group.append("sum", new BasicDBObject("$sum", value));
+		group.append("last", new BasicDBObject("$first", value));
+		group.append("lastDate", new BasicDBObject("$first", eventDate));
+
+		BasicDBObject sort = new BasicDBObject(MongoDeviceEvent.PROP_EVENT_DATE, -1);
+		AggregationOutput output =
+				events.aggregate(new BasicDBObject("$match", match), new BasicDBObject("$sort", sort),
+						new BasicDBObject("$unwind", "$" + PROP_MEASUREMENTS),
+						new BasicDBObject("$match", values), new BasicDBObject("$group", group));
+		CommandResult result = output.getCommandResult();
+		if (!result.ok()) {
+			throw new OpenIoTException("Unable to aggregate measurements: " + result.getErrorMessage());
+		}
+		for (DBObject interval : output.results()) {
+			DBObject id = (DBObject) interval.get("_id");
+			long index = ((Number) id.get("offset")).longValue() / aggregator.getInterval();
+			aggregator.merge((String) id.get("name"), index, ((Number) interval.get("count")).longValue(),
+					((Number) interval.get("min")).doubleValue(),
+					((Number) interval.get("max")).doubleValue(),
+					((Number) interval.get("sum")).doubleValue(),
+					((Number) interval.get("last")).doubleValue(),
+					((Date) interval.get("lastDate")).getTime());
+		}
+	}
 }
\ No newline at end of file
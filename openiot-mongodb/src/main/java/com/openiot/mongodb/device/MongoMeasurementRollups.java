@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.mongodb.device;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteResult;
+import com.openiot.device.charting.MeasurementAggregator;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.charting.IMeasurementRollup;
+import com.openiot.spi.device.charting.MeasurementRollupResolution;
+
+import java.util.Date;
+
+/**
+ * Stores measurement rollups in MongoDB. There is one document for each assignment,
+ * resolution, interval and measurement. Each rollup is merged with a single upsert that
+ * increments the count and sum and applies <code>$min</code> and <code>$max</code>, so
+ * rollups from several servers can be merged without reading them first. The last value
+ * is stored with its date in a subdocument that sorts by date first, so
+ * <code>$max</code> on the subdocument keeps the most recent value. Documents are given
+ * an expiration date based on the retention for their resolution and are removed by a
+ * TTL index.
+ *
+ * @author Derek
+ */
+public class MongoMeasurementRollups {
+
+	/** Property for rollup resolution code */
+	public static final String PROP_RESOLUTION = "resolution";
+
+	/** Property for measurement name */
+	public static final String PROP_NAME = "name";
+
+	/** Property for start of interval */
+	public static final String PROP_START = "start";
+
+	/** Property for number of values */
+	public static final String PROP_COUNT = "count";
+
+	/** Property for smallest value */
+	public static final String PROP_MIN = "min";
+
+	/** Property for largest value */
+	public static final String PROP_MAX = "max";
+
+	/** Property for sum of values */
+	public static final String PROP_SUM = "sum";
+
+	/** Property for subdocument holding the most recent value and its date */
+	public static final String PROP_LAST = "last";
+
+	/** Property for date of most recent value within {@link #PROP_LAST} */
+	public static final String PROP_LAST_DATE = "date";
+
+	/** Property for most recent value within {@link #PROP_LAST} */
+	public static final String PROP_LAST_VALUE = "value";
+
+	/** Property for date after which the rollup is removed */
+	public static final String PROP_EXPIRES = "expires";
+
+	/**
+	 * Ensure that the unique rollup index and the TTL index exist.
+	 *
+	 * @param rollups
+	 */
+	public static void ensureIndexes(DBCollection rollups) {
+		BasicDBObject key = new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, 1);
+		key.append(PROP_RESOLUTION, 1).append(PROP_START, 1).append(PROP_NAME, 1);
+		rollups.ensureIndex(key, new BasicDBObject("unique", true));
+		rollups.ensureIndex(new BasicDBObject(PROP_EXPIRES, 1), new BasicDBObject("expireAfterSeconds", 0));
+	}
+
+	/**
+	 * Merge a rollup into the stored rollup for the same interval, creating it if needed.
+	 *
+	 * @param rollups
+	 * @param rollup
+	 * @param expires date after which a new rollup is removed or null to keep it
+	 * @throws OpenIoTException
+	 */
+	public static void merge(DBCollection rollups, IMeasurementRollup rollup, Date expires)
+			throws OpenIoTException {
+		if (rollup.getCount() == 0) {
+			return;
+		}
+		BasicDBObject key = new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN,
+				rollup.getAssignmentToken());
+		key.append(PROP_RESOLUTION, rollup.getResolution().getCode());
+		key.append(PROP_START, rollup.getStartDate());
+		key.append(PROP_NAME, rollup.getMeasurementId());
+
+		// The date must be the first field so later values compare as greater.
+		BasicDBObject last = new BasicDBObject(PROP_LAST_DATE, rollup.getLastDate());
+		last.append(PROP_LAST_VALUE, rollup.getLast());
+		BasicDBObject update =
+				new BasicDBObject("$inc", new BasicDBObject(PROP_COUNT, rollup.getCount()).append(PROP_SUM,
+						rollup.getSum()));
+		update.append("$min", new BasicDBObject(PROP_MIN, rollup.getMin()));
+		update.append("$max", new BasicDBObject(PROP_MAX, rollup.getMax()).append(PROP_LAST, last));
+		if (expires != null) {
+			update.append("$setOnInsert", new BasicDBObject(PROP_EXPIRES, expires));
+		}
+		upsert(rollups, key, update);
+	}
+
+	/**
+	 * Apply an upsert, retrying once if another writer created the document first.
+	 *
+	 * @param rollups
+	 * @param key
+	 * @param update
+	 * @throws OpenIoTException
+	 */
+	protected static void upsert(DBCollection rollups, DBObject key, DBObject update)
+			throws OpenIoTException {
+		for (int attempt = 0;; attempt++) {
+			try {
+				WriteResult result = rollups.update(key, update, true, false);
+				CommandResult error = result.getLastError();
+				if (!error.ok()) {
+					throw new OpenIoTException("Error during upsert: " + error.toString());
+				}
+				return;
+			} catch (MongoException.DuplicateKey e) {
+				if (attempt > 0) {
+					throw new OpenIoTException("Error during upsert.", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merge stored rollups for an assignment into an aggregator.
+	 *
+	 * @param rollups
+	 * @param assignmentToken
+	 * @param resolution
+	 * @param aggregator
+	 */
+	public static void aggregate(DBCollection rollups, String assignmentToken,
+			MeasurementRollupResolution resolution, MeasurementAggregator aggregator) {
+		BasicDBObject query =
+				new BasicDBObject(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_TOKEN, assignmentToken).append(
+						PROP_RESOLUTION, resolution.getCode()).append(PROP_START,
+						new BasicDBObject("$gte", new Date(aggregator.getStart())).append("$lt",
+								new Date(aggregator.getEnd())));
+		if (aggregator.getMeasurementIds() != null) {
+			BasicDBList ids = new BasicDBList();
+			ids.addAll(aggregator.getMeasurementIds());
+			query.append(PROP_NAME, new BasicDBObject("$in", ids));
+		}
+		DBCursor cursor = rollups.find(query);
+		try {
+			while (cursor.hasNext()) {
+				DBObject rollup = cursor.next();
+				DBObject last = (DBObject) rollup.get(PROP_LAST);
+				aggregator.mergeAt((String) rollup.get(PROP_NAME), ((Date) rollup.get(PROP_START)).getTime(),
+						((Number) rollup.get(PROP_COUNT)).longValue(),
+						((Number) rollup.get(PROP_MIN)).doubleValue(),
+						((Number) rollup.get(PROP_MAX)).doubleValue(),
+						((Number) rollup.get(PROP_SUM)).doubleValue(),
+						((Number) last.get(PROP_LAST_VALUE)).doubleValue(),
+						((Date) last.get(PROP_LAST_DATE)).getTime());
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.protobuf;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Descriptors;
+import com.openiot.spi.OpenIoTException;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the header and message for one command of a {@link CompiledSpecification}
+ * without building a {@code DynamicMessage}. The field numbers, wire types and required
+ * flags are read from the command descriptor once, when the specification is compiled.
+ * Encoding computes the exact payload size and then writes the fields directly into an
+ * array of that size.
+ *
+ * The output is the same as writing the delimited header and command messages built
+ * by {@link ProtobufMessageBuilder#createDynamicMessage}. Fields are written in field
+ * number order, and parameters whose values have the wrong type are logged and skipped.
+ *
+ * @author Derek
+ */
+public class CommandFrameEncoder {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(CommandFrameEncoder.class);
+
+	/** Header command field number */
+	private static final int HEADER_COMMAND = 1;
+
+	/** Header originator field number */
+	private static final int HEADER_ORIGINATOR = 2;
+
+	/** Header nested path field number */
+	private static final int HEADER_NESTED_PATH = 3;
+
+	/** Header nested specification field number */
+	private static final int HEADER_NESTED_SPEC = 4;
+
+	/** Enum number identifying the command in the header */
+	private final int commandNumber;
+
+	/** Field writers in field number order */
+	private final FieldWriter[] fields;
+
+	/** Field writers indexed by parameter name */
+	private final Map<String, FieldWriter> byName;
+
+	public CommandFrameEncoder(Descriptors.Descriptor message, int commandNumber) {
+		this.commandNumber = commandNumber;
+		List<Descriptors.FieldDescriptor> descriptors = message.getFields();
+		FieldWriter[] writers = new FieldWriter[descriptors.size()];
+		Map<String, FieldWriter> names = new HashMap<String, FieldWriter>();
+		for (int i = 0; i < writers.length; i++) {
+			writers[i] = new FieldWriter(descriptors.get(i));
+			names.put(writers[i].name, writers[i]);
+		}
+		Arrays.sort(writers, new Comparator<FieldWriter>() {
+
+			public int compare(FieldWriter a, FieldWriter b) {
+				return (a.number < b.number) ? -1 : ((a.number == b.number) ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < writers.length; i++) {
+			writers[i].index = i;
+		}
+		this.fields = writers;
+		this.byName = Collections.unmodifiableMap(names);
+	}
+
+	/**
+	 * Encode the header and command message as a pair of length-delimited messages.
+	 *
+	 * @param originator invocation id (may be null)
+	 * @param nestedPath path for nested devices (may be null)
+	 * @param nestedSpec specification token for nested devices (may be null)
+	 * @param parameters parameter values indexed by name
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public byte[] encode(String originator, String nestedPath, String nestedSpec, Map<String, Object> parameters)
+			throws OpenIoTException {
+		Object[] values = new Object[fields.length];
+		for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+			FieldWriter field = byName.get(entry.getKey());
+			if (field == null) {
+				throw new OpenIoTException("Command parameter '" + entry.getKey()
+						+ "' not found in specification: ");
+			}
+			Object value = field.prepare(entry.getValue());
+			if (value == null) {
+				LOGGER.error("Error setting field '" + entry.getKey() + "' with object of type: "
+						+ ((entry.getValue() != null) ? entry.getValue().getClass().getName() : null));
+				continue;
+			}
+			values[field.index] = value;
+		}
+
+		ByteString origin = (originator != null) ? ByteString.copyFromUtf8(originator) : null;
+		ByteString path = (nestedPath != null) ? ByteString.copyFromUtf8(nestedPath) : null;
+		ByteString spec = (nestedSpec != null) ? ByteString.copyFromUtf8(nestedSpec) : null;
+		int headerSize = CodedOutputStream.computeEnumSize(HEADER_COMMAND, commandNumber);
+		if (origin != null) {
+			headerSize += CodedOutputStream.computeBytesSize(HEADER_ORIGINATOR, origin);
+		}
+		if (path != null) {
+			headerSize += CodedOutputStream.computeBytesSize(HEADER_NESTED_PATH, path);
+		}
+		if (spec != null) {
+			headerSize += CodedOutputStream.computeBytesSize(HEADER_NESTED_SPEC, spec);
+		}
+
+		int messageSize = 0;
+		for (FieldWriter field : fields) {
+			Object value = values[field.index];
+			if (value == null) {
+				if (field.required) {
+					throw new OpenIoTException("Required command parameter '" + field.name
+							+ "' was not specified.");
+				}
+				continue;
+			}
+			messageSize += field.computeSize(value);
+		}
+
+		byte[] payload =
+				new byte[CodedOutputStream.computeRawVarint32Size(headerSize) + headerSize
+						+ CodedOutputStream.computeRawVarint32Size(messageSize) + messageSize];
+		CodedOutputStream output = CodedOutputStream.newInstance(payload);
+		try {
+			output.writeRawVarint32(headerSize);
+			output.writeEnum(HEADER_COMMAND, commandNumber);
+			if (origin != null) {
+				output.writeBytes(HEADER_ORIGINATOR, origin);
+			}
+			if (path != null) {
+				output.writeBytes(HEADER_NESTED_PATH, path);
+			}
+			if (spec != null) {
+				output.writeBytes(HEADER_NESTED_SPEC, spec);
+			}
+			output.writeRawVarint32(messageSize);
+			for (FieldWriter field : fields) {
+				Object value = values[field.index];
+				if (value != null) {
+					field.write(output, value);
+				}
+			}
+			output.checkNoSpaceLeft();
+			return payload;
+		} catch (IOException e) {
+			throw new OpenIoTException("Unable to encode protobuf message.", e);
+		}
+	}
+
+	/**
+	 * Writes a single command field.
+	 *
+	 * @author Derek
+	 */
+	private static class FieldWriter {
+
+		/** Index of the value slot for the field */
+		private int index;
+
+		/** Parameter name */
+		private final String name;
+
+		/** Field number */
+		private final int number;
+
+		/** Field type */
+		private final Descriptors.FieldDescriptor.Type type;
+
+		/** Indicates whether a value is required */
+		private final boolean required;
+
+		public FieldWriter(Descriptors.FieldDescriptor field) {
+			this.name = field.getName();
+			this.number = field.getNumber();
+			this.type = field.getType();
+			this.required = field.isRequired();
+		}
+
+		/**
+		 * Check a value against the field type, converting strings to the UTF-8 bytes that
+		 * are written.
+		 *
+		 * @param value
+		 * @return value to write or null if the value has the wrong type
+		 */
+		public Object prepare(Object value) {
+			switch (type) {
+			case DOUBLE:
+				return (value instanceof Double) ? value : null;
+			case FLOAT:
+				return (value instanceof Float) ? value : null;
+			case INT32:
+			case UINT32:
+			case SINT32:
+			case FIXED32:
+			case SFIXED32:
+				return (value instanceof Integer) ? value : null;
+			case INT64:
+			case UINT64:
+			case SINT64:
+			case FIXED64:
+			case SFIXED64:
+				return (value instanceof Long) ? value : null;
+			case BOOL:
+				return (value instanceof Boolean) ? value : null;
+			case STRING:
+				return (value instanceof String) ? ByteString.copyFromUtf8((String) value) : null;
+			case BYTES:
+				return (value instanceof ByteString) ? value : null;
+			default:
+				return null;
+			}
+		}
+
+		/**
+		 * Get the encoded size of the field.
+		 *
+		 * @param value prepared value
+		 * @return
+		 */
+		public int computeSize(Object value) {
+			switch (type) {
+			case DOUBLE:
+				return CodedOutputStream.computeDoubleSize(number, (Double) value);
+			case FLOAT:
+				return CodedOutputStream.computeFloatSize(number, (Float) value);
+			case INT32:
+				return CodedOutputStream.computeInt32Size(number, (Integer) value);
+			case UINT32:
+				return CodedOutputStream.computeUInt32Size(number, (Integer) value);
+			case SINT32:
+				return CodedOutputStream.computeSInt32Size(number, (Integer) value);
+			case FIXED32:
+				return CodedOutputStream.computeFixed32Size(number, (Integer) value);
+			case SFIXED32:
+				return CodedOutputStream.computeSFixed32Size(number, (Integer) value);
+			case INT64:
+				return CodedOutputStream.computeInt64Size(number, (Long) value);
+			case UINT64:
+				return CodedOutputStream.computeUInt64Size(number, (Long) value);
+			case SINT64:
+				return CodedOutputStream.computeSInt64Size(number, (Long) value);
+			case FIXED64:
+				return CodedOutputStream.computeFixed64Size(number, (Long) value);
+			case SFIXED64:
+				return CodedOutputStream.computeSFixed64Size(number, (Long) value);
+			case BOOL:
+				return CodedOutputStream.computeBoolSize(number, (Boolean) value);
+			default:
+				return CodedOutputStream.computeBytesSize(number, (ByteString) value);
+			}
+		}
+
+		/**
+		 * Write the field.
+		 *
+		 * @param output
+		 * @param value prepared value
+		 * @throws IOException
+		 */
+		public void write(CodedOutputStream output, Object value) throws IOException {
+			switch (type) {
+			case DOUBLE:
+				output.writeDouble(number, (Double) value);
+				break;
+			case FLOAT:
+				output.writeFloat(number, (Float) value);
+				break;
+			case INT32:
+				output.writeInt32(number, (Integer) value);
+				break;
+			case UINT32:
+				output.writeUInt32(number, (Integer) value);
+				break;
+			case SINT32:
+				output.writeSInt32(number, (Integer) value);
+				break;
+			case FIXED32:
+				output.writeFixed32(number, (Integer) value);
+				break;
+			case SFIXED32:
+				output.writeSFixed32(number, (Integer) value);
+				break;
+			case INT64:
+				output.writeInt64(number, (Long) value);
+				break;
+			case UINT64:
+				output.writeUInt64(number, (Long) value);
+				break;
+			case SINT64:
+				output.writeSInt64(number, (Long) value);
+				break;
+			case FIXED64:
+				output.writeFixed64(number, (Long) value);
+				break;
+			case SFIXED64:
+				output.writeSFixed64(number, (Long) value);
+				break;
+			case BOOL:
+				output.writeBool(number, (Boolean) value);
+				break;
+			default:
+				output.writeBytes(number, (ByteString) value);
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.protobuf;
+
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDeviceSpecification;
+import com.openiot.spi.device.command.IDeviceCommand;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Protobuf descriptors built once for an {@link IDeviceSpecification}, along with the
+ * lookups needed to encode each of its commands. Instances are immutable and shared by
+ * all threads encoding commands for the specification.
+ *
+ * @author Derek
+ */
+public class CompiledSpecification {
+
+	/** Specification token */
+	private final String token;
+
+	/** Version of the specification the descriptors were built from */
+	private final long version;
+
+	/** Header message type */
+	private final Descriptors.Descriptor header;
+
+	/** Header command field */
+	private final Descriptors.FieldDescriptor headerCommand;
+
+	/** Header originator field */
+	private final Descriptors.FieldDescriptor headerOriginator;
+
+	/** Header nested path field */
+	private final Descriptors.FieldDescriptor headerNestedPath;
+
+	/** Header nested specification field */
+	private final Descriptors.FieldDescriptor headerNestedSpec;
+
+	/** Compiled commands indexed by command name */
+	private final Map<String, CompiledCommand> commands;
+
+	private CompiledSpecification(String token, long version, Descriptors.Descriptor header,
+			Map<String, CompiledCommand> commands) {
+		this.token = token;
+		this.version = version;
+		this.header = header;
+		this.headerCommand = header.findFieldByName(ProtobufNaming.HEADER_COMMAND_FIELD_NAME);
+		this.headerOriginator = header.findFieldByName(ProtobufNaming.HEADER_ORIGINATOR_FIELD_NAME);
+		this.headerNestedPath = header.findFieldByName(ProtobufNaming.HEADER_NESTED_PATH_FIELD_NAME);
+		this.headerNestedSpec = header.findFieldByName(ProtobufNaming.HEADER_NESTED_SPEC_FIELD_NAME);
+		this.commands = Collections.unmodifiableMap(commands);
+	}
+
+	/**
+	 * Build descriptors for a specification and its commands.
+	 *
+	 * @param specification
+	 * @param version
+	 * @param commands
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public static CompiledSpecification compile(IDeviceSpecification specification, long version,
+			List<IDeviceCommand> commands) throws OpenIoTException {
+		DescriptorProtos.FileDescriptorProto fdproto =
+				ProtobufSpecificationBuilder.createFileDescriptor(specification, commands);
+		try {
+			Descriptors.FileDescriptor filedesc =
+					Descriptors.FileDescriptor.buildFrom(fdproto, new Descriptors.FileDescriptor[0]);
+			Descriptors.Descriptor mdesc =
+					filedesc.findMessageTypeByName(ProtobufNaming.getSpecificationIdentifier(specification));
+			Descriptors.Descriptor header = mdesc.findNestedTypeByName(ProtobufNaming.HEADER_MSG_NAME);
+			Descriptors.EnumDescriptor enumDesc = mdesc.findEnumTypeByName(ProtobufNaming.COMMAND_TYPES_ENUM);
+
+			Map<String, CompiledCommand> compiled = new HashMap<String, CompiledCommand>();
+			for (IDeviceCommand command : commands) {
+				Descriptors.Descriptor message = mdesc.findNestedTypeByName(command.getName());
+				Descriptors.EnumValueDescriptor enumValue =
+						enumDesc.findValueByName(ProtobufNaming.getCommandEnumName(command));
+				compiled.put(command.getName(), new CompiledCommand(message, enumValue));
+			}
+			return new CompiledSpecification(specification.getToken(), version, header, compiled);
+		} catch (Descriptors.DescriptorValidationException e) {
+			throw new OpenIoTException("Unable to create protobuf descriptors for specification.", e);
+		}
+	}
+
+	/**
+	 * Get the compiled command with the given name.
+	 *
+	 * @param name
+	 * @return null if the specification has no such command
+	 */
+	public CompiledCommand getCommand(String name) {
+		return commands.get(name);
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public Descriptors.Descriptor getHeader() {
+		return header;
+	}
+
+	public Descriptors.FieldDescriptor getHeaderCommand() {
+		return headerCommand;
+	}
+
+	public Descriptors.FieldDescriptor getHeaderOriginator() {
+		return headerOriginator;
+	}
+
+	public Descriptors.FieldDescriptor getHeaderNestedPath() {
+		return headerNestedPath;
+	}
+
+	public Descriptors.FieldDescriptor getHeaderNestedSpec() {
+		return headerNestedSpec;
+	}
+
+	/**
+	 * Message type, enum value and field lookups for a single command.
+	 *
+	 * @author Derek
+	 */
+	public static class CompiledCommand {
+
+		/** Command message type */
+		private final Descriptors.Descriptor message;
+
+		/** Enum value identifying the command in the header */
+		private final Descriptors.EnumValueDescriptor enumValue;
+
+		/** Fields indexed by parameter name */
+		private final Map<String, Descriptors.FieldDescriptor> fields;
+
+		/** Encoder that writes the command without a DynamicMessage */
+		private final CommandFrameEncoder frameEncoder;
+
+		public CompiledCommand(Descriptors.Descriptor message, Descriptors.EnumValueDescriptor enumValue) {
+			this.message = message;
+			this.enumValue = enumValue;
+			Map<String, Descriptors.FieldDescriptor> byName = new HashMap<String, Descriptors.FieldDescriptor>();
+			for (Descriptors.FieldDescriptor field : message.getFields()) {
+				byName.put(field.getName(), field);
+			}
+			this.fields = Collections.unmodifiableMap(byName);
+			this.frameEncoder =
+					(enumValue != null) ? new CommandFrameEncoder(message, enumValue.getNumber()) : null;
+		}
+
+		/**
+		 * Get the field for a parameter.
+		 *
+		 * @param name
+		 * @return null if the command has no such parameter
+		 */
+		public Descriptors.FieldDescriptor getField(String name) {
+			return fields.get(name);
+		}
+
+		public Descriptors.Descriptor getMessage() {
+			return message;
+		}
+
+		public Descriptors.EnumValueDescriptor getEnumValue() {
+			return enumValue;
+		}
+
+		public CommandFrameEncoder getFrameEncoder() {
+			return frameEncoder;
+		}
+	}
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.protobuf;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import com.openiot.device.provisioning.protobuf.proto.Openiot;
+import com.openiot.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.openiot.rest.model.device.event.request.DeviceCommandResponseCreateRequest;
+import com.openiot.rest.model.device.event.request.DeviceEventCreateRequest;
+import com.openiot.rest.model.device.event.request.DeviceLocationCreateRequest;
+import com.openiot.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.openiot.rest.model.device.provisioning.DecodedDeviceEventRequest;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.event.AlertLevel;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads an {@code OpenIoT.EventBatch} message field by field from a
+ * {@link CodedInputStream}, creating requests directly rather than building intermediate
+ * protobuf messages. Measurement values are read as doubles and measurement ids are
+ * resolved against the batch dictionary, so no strings are created per measurement.
+ *
+ * The dictionary and batch defaults must precede the events, which is the order in which
+ * protobuf encoders write fields.
+ *
+ * @author Derek
+ */
+public class EventBatchReader {
+
+	/** EventBatch.hardwareId */
+	public static final int BATCH_HARDWARE_ID = 1;
+
+	/** EventBatch.eventDate */
+	public static final int BATCH_EVENT_DATE = 2;
+
+	/** EventBatch.measurementId */
+	public static final int BATCH_MEASUREMENT_ID = 3;
+
+	/** EventBatch.event */
+	public static final int BATCH_EVENT = 4;
+
+	/** BatchEvent.command */
+	public static final int EVENT_COMMAND = 1;
+
+	/** BatchEvent.hardwareId */
+	public static final int EVENT_HARDWARE_ID = 2;
+
+	/** BatchEvent.originator */
+	public static final int EVENT_ORIGINATOR = 3;
+
+	/** BatchEvent.eventDate */
+	public static final int EVENT_DATE = 4;
+
+	/** BatchEvent.measurementIndex */
+	public static final int EVENT_MEASUREMENT_INDEX = 5;
+
+	/** BatchEvent.measurementValue */
+	public static final int EVENT_MEASUREMENT_VALUE = 6;
+
+	/** BatchEvent.latitude */
+	public static final int EVENT_LATITUDE = 7;
+
+	/** BatchEvent.longitude */
+	public static final int EVENT_LONGITUDE = 8;
+
+	/** BatchEvent.elevation */
+	public static final int EVENT_ELEVATION = 9;
+
+	/** BatchEvent.alertType */
+	public static final int EVENT_ALERT_TYPE = 10;
+
+	/** BatchEvent.alertMessage */
+	public static final int EVENT_ALERT_MESSAGE = 11;
+
+	/** BatchEvent.message */
+	public static final int EVENT_MESSAGE = 12;
+
+	/** BatchEvent.metadata */
+	public static final int EVENT_METADATA = 13;
+
+	/** Initial capacity of the dictionary */
+	private static final int INITIAL_DICTIONARY_SIZE = 16;
+
+	/**
+	 * Read a length-delimited EventBatch.
+	 *
+	 * @param input
+	 * @param header
+	 * @param context
+	 * @return
+	 * @throws OpenIoTException
+	 * @throws IOException
+	 */
+	public static List<IDecodedDeviceEventRequest> read(CodedInputStream input, Openiot.OpenIoT.Header header,
+			Map context) throws OpenIoTException, IOException {
+		int length = input.readRawVarint32();
+		int limit = input.pushLimit(length);
+
+		String hardwareId = null;
+		Long eventDate = null;
+		String[] dictionary = new String[INITIAL_DICTIONARY_SIZE];
+		int dictionarySize = 0;
+		List<IDecodedDeviceEventRequest> results = new ArrayList<IDecodedDeviceEventRequest>();
+
+		int tag;
+		while ((tag = input.readTag()) != 0) {
+			switch (WireFormat.getTagFieldNumber(tag)) {
+			case BATCH_HARDWARE_ID: {
+				hardwareId = input.readString();
+				break;
+			}
+			case BATCH_EVENT_DATE: {
+				eventDate = input.readFixed64();
+				break;
+			}
+			case BATCH_MEASUREMENT_ID: {
+				if (dictionarySize == dictionary.length) {
+					String[] grown = new String[dictionary.length * 2];
+					System.arraycopy(dictionary, 0, grown, 0, dictionarySize);
+					dictionary = grown;
+				}
+				dictionary[dictionarySize++] = input.readString();
+				break;
+			}
+			case BATCH_EVENT: {
+				int eventLimit = input.pushLimit(input.readRawVarint32());
+				results.add(readEvent(input, header, context, hardwareId, eventDate, dictionary, dictionarySize));
+				input.popLimit(eventLimit);
+				break;
+			}
+			default: {
+				input.skipField(tag);
+			}
+			}
+		}
+		input.popLimit(limit);
+		return results;
+	}
+
+	/**
+	 * Read a single BatchEvent. The stream limit must be set to the end of the event.
+	 *
+	 * @param input
+	 * @param header
+	 * @param context
+	 * @param batchHardwareId
+	 * @param batchEventDate
+	 * @param dictionary
+	 * @param dictionarySize
+	 * @return
+	 * @throws OpenIoTException
+	 * @throws IOException
+	 */
+	protected static IDecodedDeviceEventRequest readEvent(CodedInputStream input, Openiot.OpenIoT.Header header,
+			Map context, String batchHardwareId, Long batchEventDate, String[] dictionary, int dictionarySize)
+			throws OpenIoTException, IOException {
+		Openiot.OpenIoT.Command command = null;
+		String hardwareId = batchHardwareId;
+		String originator = header.hasOriginator() ? header.getOriginator() : null;
+		Long eventDate = batchEventDate;
+		DeviceMeasurementsCreateRequest measurements = null;
+		int[] indexes = null;
+		int indexCount = 0;
+		int valueCount = 0;
+		DeviceLocationCreateRequest location = null;
+		DeviceAlertCreateRequest alert = null;
+		DeviceCommandResponseCreateRequest response = null;
+		List<Openiot.OpenIoT.Metadata> metadata = null;
+
+		int tag;
+		while ((tag = input.readTag()) != 0) {
+			switch (WireFormat.getTagFieldNumber(tag)) {
+			case EVENT_COMMAND: {
+				command = Openiot.OpenIoT.Command.valueOf(input.readEnum());
+				break;
+			}
+			case EVENT_HARDWARE_ID: {
+				hardwareId = input.readString();
+				break;
+			}
+			case EVENT_ORIGINATOR: {
+				originator = input.readString();
+				break;
+			}
+			case EVENT_DATE: {
+				eventDate = input.readFixed64();
+				break;
+			}
+			case EVENT_MEASUREMENT_INDEX: {
+				if (isPacked(tag)) {
+					int packed = input.pushLimit(input.readRawVarint32());
+					while (input.getBytesUntilLimit() > 0) {
+						indexes = append(indexes, indexCount++, input.readUInt32());
+					}
+					input.popLimit(packed);
+				} else {
+					indexes = append(indexes, indexCount++, input.readUInt32());
+				}
+				break;
+			}
+			case EVENT_MEASUREMENT_VALUE: {
+				if (measurements == null) {
+					measurements = new DeviceMeasurementsCreateRequest();
+				}
+				if (isPacked(tag)) {
+					int packed = input.pushLimit(input.readRawVarint32());
+					while (input.getBytesUntilLimit() > 0) {
+						if (valueCount >= indexCount) {
+							throw new OpenIoTException("Measurement value has no matching measurement index.");
+						}
+						measurements.addOrReplaceMeasurement(
+								lookup(indexes[valueCount++], dictionary, dictionarySize), input.readDouble());
+					}
+					input.popLimit(packed);
+				} else {
+					if (valueCount >= indexCount) {
+						throw new OpenIoTException("Measurement value has no matching measurement index.");
+					}
+					measurements.addOrReplaceMeasurement(lookup(indexes[valueCount++], dictionary, dictionarySize),
+							input.readDouble());
+				}
+				break;
+			}
+			case EVENT_LATITUDE: {
+				location = (location == null) ? new DeviceLocationCreateRequest() : location;
+				location.setLatitude(input.readDouble());
+				break;
+			}
+			case EVENT_LONGITUDE: {
+				location = (location == null) ? new DeviceLocationCreateRequest() : location;
+				location.setLongitude(input.readDouble());
+				break;
+			}
+			case EVENT_ELEVATION: {
+				location = (location == null) ? new DeviceLocationCreateRequest() : location;
+				location.setElevation(input.readDouble());
+				break;
+			}
+			case EVENT_ALERT_TYPE: {
+				alert = (alert == null) ? new DeviceAlertCreateRequest() : alert;
+				alert.setType(input.readString());
+				break;
+			}
+			case EVENT_ALERT_MESSAGE: {
+				alert = (alert == null) ? new DeviceAlertCreateRequest() : alert;
+				alert.setMessage(input.readString());
+				break;
+			}
+			case EVENT_MESSAGE: {
+				response = new DeviceCommandResponseCreateRequest();
+				response.setResponse(input.readString());
+				break;
+			}
+			case EVENT_METADATA: {
+				int metaLimit = input.pushLimit(input.readRawVarint32());
+				Openiot.OpenIoT.Metadata meta = Openiot.OpenIoT.Metadata.PARSER.parseFrom(input);
+				input.popLimit(metaLimit);
+				if (metadata == null) {
+					metadata = new ArrayList<Openiot.OpenIoT.Metadata>();
+				}
+				metadata.add(meta);
+				break;
+			}
+			default: {
+				input.skipField(tag);
+			}
+			}
+		}
+		if (command == null) {
+			throw new OpenIoTException("Batched event is missing a supported command.");
+		}
+		if (hardwareId == null) {
+			throw new OpenIoTException("Batched event does not specify a hardware id.");
+		}
+
+		DeviceEventCreateRequest request;
+		switch (command) {
+		case DEVICEMEASUREMENT: {
+			request = (measurements != null) ? measurements : new DeviceMeasurementsCreateRequest();
+			break;
+		}
+		case DEVICELOCATION: {
+			if (location == null) {
+				throw new OpenIoTException("Batched location for " + hardwareId + " has no coordinates.");
+			}
+			request = location;
+			break;
+		}
+		case DEVICEALERT: {
+			alert = (alert == null) ? new DeviceAlertCreateRequest() : alert;
+			alert.setLevel(AlertLevel.Info);
+			request = alert;
+			break;
+		}
+		case ACKNOWLEDGE: {
+			response = (response == null) ? new DeviceCommandResponseCreateRequest() : response;
+			response.setOriginatingEventId(originator);
+			request = response;
+			break;
+		}
+		default: {
+			throw new OpenIoTException("Unable to decode batched event. Type not supported: " + command.name());
+		}
+		}
+		if (metadata != null) {
+			for (Openiot.OpenIoT.Metadata meta : metadata) {
+				request.addOrReplaceMetadata(meta.getName(), meta.getValue());
+			}
+		}
+		request.setEventDate(getEventDate(eventDate, context));
+
+		DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
+		decoded.setHardwareId(hardwareId);
+		decoded.setOriginator(originator);
+		decoded.setRequest(request);
+		return decoded;
+	}
+
+	/**
+	 * Get the date for an event, falling back to the enqueue time or the current time.
+	 *
+	 * @param eventDate
+	 * @param context
+	 * @return
+	 */
+	protected static Date getEventDate(Long eventDate, Map context) {
+		if (eventDate != null) {
+			return new Date(eventDate);
+		} else if (context.containsKey(ProtobufDeviceEventDecoder.EnqueueTimeKey)) {
+			return new Date((Long) context.get(ProtobufDeviceEventDecoder.EnqueueTimeKey));
+		}
+		return new Date();
+	}
+
+	/**
+	 * Append a value to an index array, growing it as needed.
+	 *
+	 * @param indexes
+	 * @param position
+	 * @param value
+	 * @return
+	 */
+	protected static int[] append(int[] indexes, int position, int value) {
+		if (indexes == null) {
+			indexes = new int[16];
+		} else if (position == indexes.length) {
+			int[] grown = new int[indexes.length * 2];
+			System.arraycopy(indexes, 0, grown, 0, position);
+			indexes = grown;
+		}
+		indexes[position] = value;
+		return indexes;
+	}
+
+	/**
+	 * Resolve a measurement id from the dictionary.
+	 *
+	 * @param index
+	 * @param dictionary
+	 * @param dictionarySize
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	protected static String lookup(int index, String[] dictionary, int dictionarySize) throws OpenIoTException {
+		if ((index < 0) || (index >= dictionarySize)) {
+			throw new OpenIoTException("Measurement index " + index + " is not in the batch dictionary.");
+		}
+		return dictionary[index];
+	}
+
+	/**
+	 * Indicates whether a repeated scalar field was written in packed form.
+	 *
+	 * @param tag
+	 * @return
+	 */
+	protected static boolean isPacked(int tag) {
+		return (tag & 0x7) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+	}
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.protobuf;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.openiot.device.provisioning.protobuf.proto.Openiot;
+import com.openiot.spi.OpenIoTException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a payload containing a header with command {@code EVENT_BATCH} followed by an
+ * {@code OpenIoT.EventBatch} message. Measurement ids are added to the batch dictionary
+ * the first time they are used and referenced by index afterward. Payloads may be decoded
+ * with {@link ProtobufDeviceEventDecoder}.
+ *
+ * @author Derek
+ */
+public class EventBatchWriter {
+
+	/** Default hardware id for events */
+	private String hardwareId;
+
+	/** Default event date for events */
+	private Date eventDate;
+
+	/** Measurement ids in dictionary order */
+	private List<String> dictionary = new ArrayList<String>();
+
+	/** Dictionary index by measurement id */
+	private Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+	/** Events in the batch */
+	private List<BatchEvent> events = new ArrayList<BatchEvent>();
+
+	/**
+	 * Add a measurements event.
+	 *
+	 * @param hardwareId null to use the batch hardware id
+	 * @param measurements
+	 * @param eventDate null to use the batch event date
+	 * @return
+	 */
+	public EventBatchWriter addMeasurements(String hardwareId, Map<String, Double> measurements, Date eventDate) {
+		BatchEvent event = new BatchEvent(Openiot.OpenIoT.Command.DEVICEMEASUREMENT, hardwareId, eventDate);
+		event.measurementIndexes = new int[measurements.size()];
+		event.measurementValues = new double[measurements.size()];
+		int i = 0;
+		for (Map.Entry<String, Double> entry : measurements.entrySet()) {
+			event.measurementIndexes[i] = getIndex(entry.getKey());
+			event.measurementValues[i] = entry.getValue();
+			i++;
+		}
+		events.add(event);
+		return this;
+	}
+
+	/**
+	 * Add a location event.
+	 *
+	 * @param hardwareId null to use the batch hardware id
+	 * @param latitude
+	 * @param longitude
+	 * @param elevation
+	 * @param eventDate null to use the batch event date
+	 * @return
+	 */
+	public EventBatchWriter addLocation(String hardwareId, double latitude, double longitude, Double elevation,
+			Date eventDate) {
+		BatchEvent event = new BatchEvent(Openiot.OpenIoT.Command.DEVICELOCATION, hardwareId, eventDate);
+		event.latitude = latitude;
+		event.longitude = longitude;
+		event.elevation = elevation;
+		events.add(event);
+		return this;
+	}
+
+	/**
+	 * Add an alert event.
+	 *
+	 * @param hardwareId null to use the batch hardware id
+	 * @param type
+	 * @param message
+	 * @param eventDate null to use the batch event date
+	 * @return
+	 */
+	public EventBatchWriter addAlert(String hardwareId, String type, String message, Date eventDate) {
+		BatchEvent event = new BatchEvent(Openiot.OpenIoT.Command.DEVICEALERT, hardwareId, eventDate);
+		event.alertType = type;
+		event.alertMessage = message;
+		events.add(event);
+		return this;
+	}
+
+	/**
+	 * Encode the batch.
+	 *
+	 * @param originator optional originator for the header
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public byte[] build(String originator) throws OpenIoTException {
+		Openiot.OpenIoT.Header.Builder hb = Openiot.OpenIoT.Header.newBuilder();
+		hb.setCommand(Openiot.OpenIoT.Command.EVENT_BATCH);
+		if (originator != null) {
+			hb.setOriginator(originator);
+		}
+		Openiot.OpenIoT.Header header = hb.build();
+		int headerSize = header.getSerializedSize();
+		int batchSize = getBatchSize();
+
+		byte[] payload =
+				new byte[CodedOutputStream.computeRawVarint32Size(headerSize) + headerSize
+						+ CodedOutputStream.computeRawVarint32Size(batchSize) + batchSize];
+		CodedOutputStream output = CodedOutputStream.newInstance(payload);
+		try {
+			output.writeRawVarint32(headerSize);
+			header.writeTo(output);
+			output.writeRawVarint32(batchSize);
+			if (hardwareId != null) {
+				output.writeString(EventBatchReader.BATCH_HARDWARE_ID, hardwareId);
+			}
+			if (eventDate != null) {
+				output.writeFixed64(EventBatchReader.BATCH_EVENT_DATE, eventDate.getTime());
+			}
+			for (String id : dictionary) {
+				output.writeString(EventBatchReader.BATCH_MEASUREMENT_ID, id);
+			}
+			for (BatchEvent event : events) {
+				output.writeTag(EventBatchReader.BATCH_EVENT, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+				output.writeRawVarint32(event.getSize());
+				event.writeTo(output);
+			}
+			output.checkNoSpaceLeft();
+			return payload;
+		} catch (IOException e) {
+			throw new OpenIoTException("Unable to encode event batch.", e);
+		}
+	}
+
+	/**
+	 * Get the encoded size of the EventBatch message.
+	 *
+	 * @return
+	 */
+	protected int getBatchSize() {
+		int size = 0;
+		if (hardwareId != null) {
+			size += CodedOutputStream.computeStringSize(EventBatchReader.BATCH_HARDWARE_ID, hardwareId);
+		}
+		if (eventDate != null) {
+			size += CodedOutputStream.computeFixed64Size(EventBatchReader.BATCH_EVENT_DATE, eventDate.getTime());
+		}
+		for (String id : dictionary) {
+			size += CodedOutputStream.computeStringSize(EventBatchReader.BATCH_MEASUREMENT_ID, id);
+		}
+		for (BatchEvent event : events) {
+			int eventSize = event.getSize();
+			size +=
+					CodedOutputStream.computeTagSize(EventBatchReader.BATCH_EVENT)
+							+ CodedOutputStream.computeRawVarint32Size(eventSize) + eventSize;
+		}
+		return size;
+	}
+
+	/**
+	 * Get the dictionary index for a measurement id, adding it if necessary.
+	 *
+	 * @param id
+	 * @return
+	 */
+	protected int getIndex(String id) {
+		Integer index = indexes.get(id);
+		if (index == null) {
+			index = dictionary.size();
+			dictionary.add(id);
+			indexes.put(id, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Get the number of events added.
+	 *
+	 * @return
+	 */
+	public int getEventCount() {
+		return events.size();
+	}
+
+	public String getHardwareId() {
+		return hardwareId;
+	}
+
+	public void setHardwareId(String hardwareId) {
+		this.hardwareId = hardwareId;
+	}
+
+	public Date getEventDate() {
+		return eventDate;
+	}
+
+	public void setEventDate(Date eventDate) {
+		this.eventDate = eventDate;
+	}
+
+	/**
+	 * Fields for a single BatchEvent.
+	 *
+	 * @author Derek
+	 */
+	private static class BatchEvent {
+
+		/** Event command */
+		private final Openiot.OpenIoT.Command command;
+
+		/** Optional hardware id */
+		private final String hardwareId;
+
+		/** Optional event date */
+		private final Date eventDate;
+
+		/** Measurement dictionary indexes */
+		private int[] measurementIndexes;
+
+		/** Measurement values */
+		private double[] measurementValues;
+
+		/** Location latitude */
+		private Double latitude;
+
+		/** Location longitude */
+		private Double longitude;
+
+		/** Location elevation */
+		private Double elevation;
+
+		/** Alert type */
+		private String alertType;
+
+		/** Alert message */
+		private String alertMessage;
+
+		/** Cached encoded size */
+		private int size = -1;
+
+		public BatchEvent(Openiot.OpenIoT.Command command, String hardwareId, Date eventDate) {
+			this.command = command;
+			this.hardwareId = hardwareId;
+			this.eventDate = eventDate;
+		}
+
+		/**
+		 * Get the encoded size of the event.
+		 *
+		 * @return
+		 */
+		public int getSize() {
+			if (size >= 0) {
+				return size;
+			}
+			int total = CodedOutputStream.computeEnumSize(EventBatchReader.EVENT_COMMAND, command.getNumber());
+			if (hardwareId != null) {
+				total += CodedOutputStream.computeStringSize(EventBatchReader.EVENT_HARDWARE_ID, hardwareId);
+			}
+			if (eventDate != null) {
+				total += CodedOutputStream.computeFixed64Size(EventBatchReader.EVENT_DATE, eventDate.getTime());
+			}
+			if ((measurementIndexes != null) && (measurementIndexes.length > 0)) {
+				int indexBytes = getIndexBytes();
+				total +=
+						CodedOutputStream.computeTagSize(EventBatchReader.EVENT_MEASUREMENT_INDEX)
+								+ CodedOutputStream.computeRawVarint32Size(indexBytes) + indexBytes;
+				int valueBytes = 8 * measurementValues.length;
+				total +=
+						CodedOutputStream.computeTagSize(EventBatchReader.EVENT_MEASUREMENT_VALUE)
+								+ CodedOutputStream.computeRawVarint32Size(valueBytes) + valueBytes;
+			}
+			if (latitude != null) {
+				total += CodedOutputStream.computeDoubleSize(EventBatchReader.EVENT_LATITUDE, latitude);
+			}
+			if (longitude != null) {
+				total += CodedOutputStream.computeDoubleSize(EventBatchReader.EVENT_LONGITUDE, longitude);
+			}
+			if (elevation != null) {
+				total += CodedOutputStream.computeDoubleSize(EventBatchReader.EVENT_ELEVATION, elevation);
+			}
+			if (alertType != null) {
+				total += CodedOutputStream.computeStringSize(EventBatchReader.EVENT_ALERT_TYPE, alertType);
+			}
+			if (alertMessage != null) {
+				total += CodedOutputStream.computeStringSize(EventBatchReader.EVENT_ALERT_MESSAGE, alertMessage);
+			}
+			size = total;
+			return size;
+		}
+
+		/**
+		 * Write the event fields.
+		 *
+		 * @param output
+		 * @throws IOException
+		 */
+		public void writeTo(CodedOutputStream output) throws IOException {
+			output.writeEnum(EventBatchReader.EVENT_COMMAND, command.getNumber());
+			if (hardwareId != null) {
+				output.writeString(EventBatchReader.EVENT_HARDWARE_ID, hardwareId);
+			}
+			if (eventDate != null) {
+				output.writeFixed64(EventBatchReader.EVENT_DATE, eventDate.getTime());
+			}
+			if ((measurementIndexes != null) && (measurementIndexes.length > 0)) {
+				output.writeTag(EventBatchReader.EVENT_MEASUREMENT_INDEX, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+				output.writeRawVarint32(getIndexBytes());
+				for (int index : measurementIndexes) {
+					output.writeUInt32NoTag(index);
+				}
+				output.writeTag(EventBatchReader.EVENT_MEASUREMENT_VALUE, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+				output.writeRawVarint32(8 * measurementValues.length);
+				for (double value : measurementValues) {
+					output.writeDoubleNoTag(value);
+				}
+			}
+			if (latitude != null) {
+				output.writeDouble(EventBatchReader.EVENT_LATITUDE, latitude);
+			}
+			if (longitude != null) {
+				output.writeDouble(EventBatchReader.EVENT_LONGITUDE, longitude);
+			}
+			if (elevation != null) {
+				output.writeDouble(EventBatchReader.EVENT_ELEVATION, elevation);
+			}
+			if (alertType != null) {
+				output.writeString(EventBatchReader.EVENT_ALERT_TYPE, alertType);
+			}
+			if (alertMessage != null) {
+				output.writeString(EventBatchReader.EVENT_ALERT_MESSAGE, alertMessage);
+			}
+		}
+
+		/**
+		 * Get the size of the packed index data.
+		 *
+		 * @return
+		 */
+		protected int getIndexBytes() {
+			int bytes = 0;
+			for (int index : measurementIndexes) {
+				bytes += CodedOutputStream.computeUInt32SizeNoTag(index);
+			}
+			return bytes;
+		}
+	}
+}
@@ -7,6 +7,8 @@
  */
 package com.openiot.device.provisioning.protobuf;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Parser;
 import com.openiot.device.provisioning.protobuf.proto.Openiot;
 import com.openiot.rest.model.device.event.request.*;
 import com.openiot.rest.model.device.provisioning.DecodedDeviceEventRequest;
@@ -16,7 +18,6 @@ import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
 import com.openiot.spi.device.provisioning.IDeviceEventDecoder;
 import org.apache.log4j.Logger;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -45,8 +46,13 @@ public class ProtobufDeviceEventDecoder implements IDeviceEventDecoder<byte[]> {
 	@Override
 	public List<IDecodedDeviceEventRequest> decode(byte[] payload, Map context) throws OpenIoTException {
 		try {
-			ByteArrayInputStream stream = new ByteArrayInputStream(payload);
-			Openiot.OpenIoT.Header header = Openiot.OpenIoT.Header.parseDelimitedFrom(stream);
+			CodedInputStream stream = CodedInputStream.newInstance(payload);
+			Openiot.OpenIoT.Header header = readDelimited(stream, Openiot.OpenIoT.Header.PARSER);
+			if (header.getCommand() == Openiot.OpenIoT.Command.EVENT_BATCH) {
+				List<IDecodedDeviceEventRequest> batch = EventBatchReader.read(stream, header, context);
+				LOGGER.debug("Decoded batch of " + batch.size() + " events.");
+				return batch;
+			}
 			List<IDecodedDeviceEventRequest> results = new ArrayList<IDecodedDeviceEventRequest>();
 			DecodedDeviceEventRequest decoded = new DecodedDeviceEventRequest();
 			if (header.hasOriginator()) {
@@ -55,7 +61,7 @@ public class ProtobufDeviceEventDecoder implements IDeviceEventDecoder<byte[]> {
 			results.add(decoded);
 			switch (header.getCommand()) {
 			case REGISTER: {
-				Openiot.OpenIoT.RegisterDevice register = Openiot.OpenIoT.RegisterDevice.parseDelimitedFrom(stream);
+				Openiot.OpenIoT.RegisterDevice register = readDelimited(stream, Openiot.OpenIoT.RegisterDevice.PARSER);
 				LOGGER.debug("Decoded registration for: " + register.getHardwareId());
 				DeviceRegistrationRequest request = new DeviceRegistrationRequest();
 				request.setHardwareId(register.getHardwareId());
@@ -72,7 +78,7 @@ public class ProtobufDeviceEventDecoder implements IDeviceEventDecoder<byte[]> {
 				return results;
 			}
 			case ACKNOWLEDGE: {
-				Openiot.OpenIoT.Acknowledge ack = Openiot.OpenIoT.Acknowledge.parseDelimitedFrom(stream);
+				Openiot.OpenIoT.Acknowledge ack = readDelimited(stream, Openiot.OpenIoT.Acknowledge.PARSER);
 				LOGGER.debug("Decoded acknowledge for: " + ack.getHardwareId());
 				DeviceCommandResponseCreateRequest request = new DeviceCommandResponseCreateRequest();
 				request.setOriginatingEventId(header.getOriginator());
@@ -82,7 +88,7 @@ public class ProtobufDeviceEventDecoder implements IDeviceEventDecoder<byte[]> {
 				return results;
 			}
 			case DEVICEMEASUREMENT: {
-				Openiot.OpenIoT.DeviceMeasurements dm = Openiot.OpenIoT.DeviceMeasurements.parseDelimitedFrom(stream);
+				Openiot.OpenIoT.DeviceMeasurements dm = readDelimited(stream, Openiot.OpenIoT.DeviceMeasurements.PARSER);
 				LOGGER.debug("Decoded measurement for: " + dm.getHardwareId());
 				DeviceMeasurementsCreateRequest request = new DeviceMeasurementsCreateRequest();
 				List<Openiot.OpenIoT.Measurement> measurements = dm.getMeasurementList();
@@ -105,7 +111,7 @@ public class ProtobufDeviceEventDecoder implements IDeviceEventDecoder<byte[]> {
 				return results;
 			}
 			case DEVICELOCATION: {
-				Openiot.OpenIoT.DeviceLocation location = Openiot.OpenIoT.DeviceLocation.parseDelimitedFrom(stream);
+				Openiot.OpenIoT.DeviceLocation location = readDelimited(stream, Openiot.OpenIoT.DeviceLocation.PARSER);
 				LOGGER.debug("Decoded location for: " + location.getHardwareId());
 				DeviceLocationCreateRequest request = new DeviceLocationCreateRequest();
 				request.setLatitude(Double.parseDouble(location.getLatitude()));
@@ -127,7 +133,7 @@ public class ProtobufDeviceEventDecoder implements IDeviceEventDecoder<byte[]> {
 				return results;
 			}
 			case DEVICEALERT: {
-				Openiot.OpenIoT.DeviceAlert alert = Openiot.OpenIoT.DeviceAlert.parseDelimitedFrom(stream);
+				Openiot.OpenIoT.DeviceAlert alert = readDelimited(stream, Openiot.OpenIoT.DeviceAlert.PARSER);
 				LOGGER.debug("Decoded alert for: " + alert.getHardwareId());
 				DeviceAlertCreateRequest request = new DeviceAlertCreateRequest();
 				request.setType(alert.getAlertType());
@@ -157,4 +163,19 @@ public class ProtobufDeviceEventDecoder implements IDeviceEventDecoder<byte[]> {
 			throw new OpenIoTException("Unable to decode protobuf message.", e);
 		}
 	}
+
+	/**
+	 * Read a length-delimited message without copying it out of the payload.
+	 * 
+	 * @param stream
+	 * @param parser
+	 * @return
+	 * @throws IOException
+	 */
+	protected static <T> T readDelimited(CodedInputStream stream, Parser<T> parser) throws IOException {
+		int limit = stream.pushLimit(stream.readRawVarint32());
+		T message = parser.parseFrom(stream);
+		stream.popLimit(limit);
+		return message;
+	}
 }
\ No newline at end of file
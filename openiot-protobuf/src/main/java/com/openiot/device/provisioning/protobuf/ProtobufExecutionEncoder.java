@@ -35,6 +35,9 @@ public class ProtobufExecutionEncoder extends LifecycleComponent implements ICom
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(ProtobufExecutionEncoder.class);
 
+	/** Caches compiled specifications used to encode commands */
+	private ProtobufSpecificationCache specificationCache = new ProtobufSpecificationCache();
+
 	public ProtobufExecutionEncoder() {
 		super(LifecycleComponentType.CommandExecutionEncoder);
 	}
@@ -50,7 +53,8 @@ public class ProtobufExecutionEncoder extends LifecycleComponent implements ICom
 	@Override
 	public byte[] encode(IDeviceCommandExecution execution, IDeviceNestingContext nested,
 			IDeviceAssignment assignment) throws OpenIoTException {
-		byte[] encoded = ProtobufMessageBuilder.createMessage(execution, nested, assignment);
+		byte[] encoded =
+				ProtobufMessageBuilder.createMessage(getSpecificationCache(), execution, nested, assignment);
 		LOGGER.debug("Protobuf message: 0x" + DataUtils.bytesToHex(encoded));
 		return encoded;
 	}
@@ -136,6 +140,8 @@ public class ProtobufExecutionEncoder extends LifecycleComponent implements ICom
 	 */
 	@Override
 	public void start() throws OpenIoTException {
+		getLifecycleComponents().clear();
+		startNestedComponent(getSpecificationCache(), true);
 	}
 
 	/*
@@ -155,5 +161,14 @@ public class ProtobufExecutionEncoder extends LifecycleComponent implements ICom
 	 */
 	@Override
 	public void stop() throws OpenIoTException {
+		getSpecificationCache().lifecycleStop();
+	}
+
+	public ProtobufSpecificationCache getSpecificationCache() {
+		return specificationCache;
+	}
+
+	public void setSpecificationCache(ProtobufSpecificationCache specificationCache) {
+		this.specificationCache = specificationCache;
 	}
 }
\ No newline at end of file
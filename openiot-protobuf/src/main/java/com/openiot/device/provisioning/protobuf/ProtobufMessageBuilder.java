@@ -36,63 +36,88 @@ public class ProtobufMessageBuilder {
 	 * Create a protobuf message for an {@link IDeviceCommandExecution} targeted at the
 	 * given {@link IDeviceAssignment}.
 	 * 
+	 * @param cache
 	 * @param execution
 	 * @param nested
 	 * @param assignment
 	 * @return
 	 * @throws com.openiot.spi.OpenIoTException
 	 */
-	public static byte[] createMessage(IDeviceCommandExecution execution, IDeviceNestingContext nested,
-			IDeviceAssignment assignment) throws OpenIoTException {
+	public static byte[] createMessage(ProtobufSpecificationCache cache, IDeviceCommandExecution execution,
+			IDeviceNestingContext nested, IDeviceAssignment assignment) throws OpenIoTException {
 		IDeviceSpecification specification =
 				OpenIoT.getServer().getDeviceManagement().getDeviceSpecificationByToken(
 						execution.getCommand().getSpecificationToken());
-		DescriptorProtos.FileDescriptorProto fdproto = getFileDescriptor(specification);
-		LOGGER.debug("Using the following specification proto:\n" + fdproto.toString());
-		Descriptors.FileDescriptor[] fdescs = new Descriptors.FileDescriptor[0];
+		CompiledSpecification compiled = cache.get(specification);
+		return createMessage(compiled, execution, nested);
+	}
+
+	/**
+	 * Create a protobuf message for an {@link IDeviceCommandExecution} using the
+	 * precompiled encoder for the command.
+	 * 
+	 * @param compiled
+	 * @param execution
+	 * @param nested
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public static byte[] createMessage(CompiledSpecification compiled, IDeviceCommandExecution execution,
+			IDeviceNestingContext nested) throws OpenIoTException {
+		CompiledSpecification.CompiledCommand command = getCommand(compiled, execution);
+		String nestedPath = null;
+		String nestedSpec = null;
+		if (nested.getNested() != null) {
+			LOGGER.debug("Targeting nested device with specification: "
+					+ nested.getNested().getSpecificationToken() + " at path " + nested.getPath());
+			nestedPath = nested.getPath();
+			nestedSpec = nested.getNested().getSpecificationToken();
+		}
+		return command.getFrameEncoder().encode(execution.getInvocation().getId(), nestedPath, nestedSpec,
+				execution.getParameters());
+	}
+
+	/**
+	 * Create a protobuf message for an {@link IDeviceCommandExecution} by building
+	 * {@link DynamicMessage} instances for the header and command. Produces the same
+	 * bytes as {@link #createMessage(CompiledSpecification, IDeviceCommandExecution, IDeviceNestingContext)}.
+	 * 
+	 * @param compiled
+	 * @param execution
+	 * @param nested
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public static byte[] createDynamicMessage(CompiledSpecification compiled, IDeviceCommandExecution execution,
+			IDeviceNestingContext nested) throws OpenIoTException {
+		CompiledSpecification.CompiledCommand command = getCommand(compiled, execution);
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		try {
-			Descriptors.FileDescriptor filedesc = Descriptors.FileDescriptor.buildFrom(fdproto, fdescs);
-			Descriptors.Descriptor mdesc =
-					filedesc.findMessageTypeByName(ProtobufNaming.getSpecificationIdentifier(specification));
-
 			// Create the header message.
-			Descriptors.Descriptor header = mdesc.findNestedTypeByName(ProtobufNaming.HEADER_MSG_NAME);
-			DynamicMessage.Builder headBuilder = DynamicMessage.newBuilder(header);
-
-			// Set enum value based on command.
-			Descriptors.EnumDescriptor enumDesc = mdesc.findEnumTypeByName(ProtobufNaming.COMMAND_TYPES_ENUM);
-			Descriptors.EnumValueDescriptor enumValue =
-					enumDesc.findValueByName(ProtobufNaming.getCommandEnumName(execution.getCommand()));
-			if (enumValue == null) {
-				throw new OpenIoTException("No enum value found for command: "
-						+ execution.getCommand().getName());
-			}
-			headBuilder.setField(header.findFieldByName(ProtobufNaming.HEADER_COMMAND_FIELD_NAME), enumValue);
-			headBuilder.setField(header.findFieldByName(ProtobufNaming.HEADER_ORIGINATOR_FIELD_NAME),
-					execution.getInvocation().getId());
+			DynamicMessage.Builder headBuilder = DynamicMessage.newBuilder(compiled.getHeader());
+			headBuilder.setField(compiled.getHeaderCommand(), command.getEnumValue());
+			headBuilder.setField(compiled.getHeaderOriginator(), execution.getInvocation().getId());
 
 			if (nested.getNested() != null) {
 				LOGGER.debug("Targeting nested device with specification: "
 						+ nested.getNested().getSpecificationToken() + " at path " + nested.getPath());
-				headBuilder.setField(header.findFieldByName(ProtobufNaming.HEADER_NESTED_PATH_FIELD_NAME),
-						nested.getPath());
-				headBuilder.setField(header.findFieldByName(ProtobufNaming.HEADER_NESTED_SPEC_FIELD_NAME),
-						nested.getNested().getSpecificationToken());
+				headBuilder.setField(compiled.getHeaderNestedPath(), nested.getPath());
+				headBuilder.setField(compiled.getHeaderNestedSpec(), nested.getNested().getSpecificationToken());
 			}
 
 			DynamicMessage hmessage = headBuilder.build();
-			LOGGER.debug("Header:\n" + hmessage.toString());
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Header:\n" + hmessage.toString());
+			}
 			hmessage.writeDelimitedTo(out);
 
-			// Find nested type for command and create/populate an instance.
-			Descriptors.Descriptor command = mdesc.findNestedTypeByName(execution.getCommand().getName());
-			DynamicMessage.Builder cbuilder = DynamicMessage.newBuilder(command);
+			// Create/populate an instance of the command message.
+			DynamicMessage.Builder cbuilder = DynamicMessage.newBuilder(command.getMessage());
 
 			// Set each field in the command message.
 			for (String name : execution.getParameters().keySet()) {
 				Object value = execution.getParameters().get(name);
-				Descriptors.FieldDescriptor field = command.findFieldByName(name);
+				Descriptors.FieldDescriptor field = command.getField(name);
 				if (field == null) {
 					throw new OpenIoTException("Command parameter '" + name
 							+ "' not found in specification: ");
@@ -105,17 +130,34 @@ public class ProtobufMessageBuilder {
 				}
 			}
 			DynamicMessage cmessage = cbuilder.build();
-			LOGGER.debug("Message:\n" + cmessage.toString());
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Message:\n" + cmessage.toString());
+			}
 			cmessage.writeDelimitedTo(out);
 
 			return out.toByteArray();
-		} catch (Descriptors.DescriptorValidationException e) {
-			throw new OpenIoTException("Unable to create protobuf message.", e);
 		} catch (IOException e) {
 			throw new OpenIoTException("Unable to encode protobuf message.", e);
 		}
 	}
 
+	/**
+	 * Get the compiled command for an execution.
+	 * 
+	 * @param compiled
+	 * @param execution
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	protected static CompiledSpecification.CompiledCommand getCommand(CompiledSpecification compiled,
+			IDeviceCommandExecution execution) throws OpenIoTException {
+		CompiledSpecification.CompiledCommand command = compiled.getCommand(execution.getCommand().getName());
+		if ((command == null) || (command.getEnumValue() == null)) {
+			throw new OpenIoTException("No enum value found for command: " + execution.getCommand().getName());
+		}
+		return command;
+	}
+
 	/**
 	 * Gets a file descriptor for protobuf representation of {@link IDeviceSpecification}.
 	 * 
@@ -36,9 +36,26 @@ public class ProtobufSpecificationBuilder {
 	 */
 	public static DescriptorProtos.FileDescriptorProto createFileDescriptor(IDeviceSpecification specification)
 			throws OpenIoTException {
+		List<IDeviceCommand> commands =
+				OpenIoT.getServer().getDeviceManagement().listDeviceCommands(specification.getToken(),
+						false);
+		return createFileDescriptor(specification, commands);
+	}
+
+	/**
+	 * Creates a {@link FileDescriptorProto} based on an {@link IDeviceSpecification} and
+	 * a list of its commands that has already been loaded.
+	 * 
+	 * @param specification
+	 * @param commands
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static DescriptorProtos.FileDescriptorProto createFileDescriptor(
+			IDeviceSpecification specification, List<IDeviceCommand> commands) throws OpenIoTException {
 		DescriptorProtos.FileDescriptorProto.Builder builder =
 				DescriptorProtos.FileDescriptorProto.newBuilder();
-		builder.addMessageType(createSpecificationMessage(specification));
+		builder.addMessageType(createSpecificationMessage(specification, commands));
 		return builder.build();
 	}
 
@@ -54,6 +71,19 @@ public class ProtobufSpecificationBuilder {
 		List<IDeviceCommand> commands =
 				OpenIoT.getServer().getDeviceManagement().listDeviceCommands(specification.getToken(),
 						false);
+		return createSpecificationMessage(specification, commands);
+	}
+
+	/**
+	 * Create the message for a specification from a list of its commands.
+	 * 
+	 * @param specification
+	 * @param commands
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static DescriptorProtos.DescriptorProto createSpecificationMessage(
+			IDeviceSpecification specification, List<IDeviceCommand> commands) throws OpenIoTException {
 		DescriptorProtos.DescriptorProto.Builder builder = DescriptorProtos.DescriptorProto.newBuilder();
 		builder.setName(ProtobufNaming.getSpecificationIdentifier(specification));
 		builder.addEnumType(createCommandsEnum(commands));
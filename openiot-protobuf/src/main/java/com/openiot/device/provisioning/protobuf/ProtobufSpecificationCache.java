@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.device.provisioning.protobuf;
+
+import com.openiot.OpenIoT;
+import com.openiot.server.lifecycle.LifecycleComponent;
+import com.openiot.spi.OpenIoTException;
+import com.openiot.spi.device.IDeviceSpecification;
+import com.openiot.spi.device.IDeviceSpecificationListener;
+import com.openiot.spi.device.command.IDeviceCommand;
+import com.openiot.spi.server.lifecycle.LifecycleComponentType;
+import org.apache.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches a {@link CompiledSpecification} for each device specification so that protobuf
+ * descriptors are built once rather than for every command that is encoded. Entries are
+ * keyed by specification token and checked against the specification version (its last
+ * update time). Entries are dropped when the specification or one of its commands
+ * changes.
+ *
+ * Each token has a generation that is bumped on every change. A compiled specification
+ * is only stored if the generation is unchanged since compilation started, so a change
+ * that arrives while a specification is being compiled is never overwritten by the
+ * stale result.
+ *
+ * @author Derek
+ */
+public class ProtobufSpecificationCache extends LifecycleComponent implements IDeviceSpecificationListener {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(ProtobufSpecificationCache.class);
+
+	/** Compiled specifications indexed by token */
+	private ConcurrentMap<String, CompiledSpecification> specifications =
+			new ConcurrentHashMap<String, CompiledSpecification>();
+
+	/** Change generation indexed by token */
+	private ConcurrentMap<String, Generation> generations = new ConcurrentHashMap<String, Generation>();
+
+	public ProtobufSpecificationCache() {
+		super(LifecycleComponentType.Other);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.server.lifecycle.ILifecycleComponent#start()
+	 */
+	@Override
+	public void start() throws OpenIoTException {
+		OpenIoT.getServer().getDeviceManagementListeners().addSpecificationListener(this);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.server.lifecycle.ILifecycleComponent#stop()
+	 */
+	@Override
+	public void stop() throws OpenIoTException {
+		OpenIoT.getServer().getDeviceManagementListeners().removeSpecificationListener(this);
+		clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.openiot.spi.server.lifecycle.ILifecycleComponent#getLogger()
+	 */
+	@Override
+	public Logger getLogger() {
+		return LOGGER;
+	}
+
+	/**
+	 * Get the compiled form of a specification, building it if it is not cached or the
+	 * specification has changed.
+	 *
+	 * @param specification
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	public CompiledSpecification get(IDeviceSpecification specification) throws OpenIoTException {
+		String token = specification.getToken();
+		long version = getVersion(specification);
+		CompiledSpecification compiled = specifications.get(token);
+		if ((compiled != null) && (compiled.getVersion() == version)) {
+			return compiled;
+		}
+		Generation generation = getGeneration(token);
+		long start = generation.get();
+		List<IDeviceCommand> commands =
+				OpenIoT.getServer().getDeviceManagement().listDeviceCommands(token, false);
+		compiled = CompiledSpecification.compile(specification, version, commands);
+		if (generation.putIfUnchanged(start, token, compiled)) {
+			LOGGER.debug("Compiled protobuf descriptors for specification " + token + ".");
+		}
+		return compiled;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.openiot.spi.device.IDeviceSpecificationListener#onDeviceSpecificationChanged(java
+	 * .lang.String)
+	 */
+	@Override
+	public void onDeviceSpecificationChanged(String specificationToken) {
+		if (specificationToken != null) {
+			getGeneration(specificationToken).invalidate(specificationToken);
+		}
+	}
+
+	/**
+	 * Remove all cached specifications.
+	 */
+	public void clear() {
+		for (String token : generations.keySet()) {
+			onDeviceSpecificationChanged(token);
+		}
+	}
+
+	/**
+	 * Get the number of cached specifications.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return specifications.size();
+	}
+
+	/**
+	 * Get the generation for a token, creating it if necessary.
+	 *
+	 * @param token
+	 * @return
+	 */
+	protected Generation getGeneration(String token) {
+		Generation generation = generations.get(token);
+		if (generation == null) {
+			Generation created = new Generation();
+			generation = generations.putIfAbsent(token, created);
+			if (generation == null) {
+				generation = created;
+			}
+		}
+		return generation;
+	}
+
+	/**
+	 * Get the version used to detect specification changes made elsewhere.
+	 *
+	 * @param specification
+	 * @return
+	 */
+	protected static long getVersion(IDeviceSpecification specification) {
+		if (specification.getUpdatedDate() != null) {
+			return specification.getUpdatedDate().getTime();
+		}
+		if (specification.getCreatedDate() != null) {
+			return specification.getCreatedDate().getTime();
+		}
+		return 0;
+	}
+
+	/**
+	 * Counts changes to a single specification. Updates to the counter and to the cached
+	 * entry for the token happen under the same lock.
+	 *
+	 * @author Derek
+	 */
+	private class Generation {
+
+		/** Number of changes seen */
+		private long value;
+
+		/**
+		 * Get the current generation.
+		 *
+		 * @return
+		 */
+		public synchronized long get() {
+			return value;
+		}
+
+		/**
+		 * Store a compiled specification if no change happened since the given generation.
+		 *
+		 * @param expected
+		 * @param token
+		 * @param compiled
+		 * @return
+		 */
+		public synchronized boolean putIfUnchanged(long expected, String token,
+				CompiledSpecification compiled) {
+			if (value != expected) {
+				return false;
+			}
+			specifications.put(token, compiled);
+			return true;
+		}
+
+		/**
+		 * Record a change and drop the cached entry.
+		 *
+		 * @param token
+		 */
+		public synchronized void invalidate(String token) {
+			value++;
+			specifications.remove(token);
+		}
+	}
+}
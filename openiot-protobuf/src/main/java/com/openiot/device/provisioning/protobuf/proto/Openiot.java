@@ -116,6 +116,10 @@ public final class Openiot {
              * <code>DEVICEMEASUREMENT = 5;</code>
              */
             DEVICEMEASUREMENT(4, 5),
+            /**
+             * <code>EVENT_BATCH = 6;</code>
+             */
+            EVENT_BATCH(5, 6),
             ;
 
             /**
@@ -138,6 +142,10 @@ public final class Openiot {
              * <code>DEVICEMEASUREMENT = 5;</code>
              */
             public static final int DEVICEMEASUREMENT_VALUE = 5;
+            /**
+             * <code>EVENT_BATCH = 6;</code>
+             */
+            public static final int EVENT_BATCH_VALUE = 6;
 
 
             public final int getNumber() { return value; }
@@ -149,6 +157,7 @@ public final class Openiot {
                     case 3: return DEVICELOCATION;
                     case 4: return DEVICEALERT;
                     case 5: return DEVICEMEASUREMENT;
+                    case 6: return EVENT_BATCH;
                     default: return null;
                 }
             }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.protobuf.test;
+
+import com.google.protobuf.ByteString;
+import com.openiot.device.provisioning.protobuf.CompiledSpecification;
+import com.openiot.device.provisioning.protobuf.ProtobufMessageBuilder;
+import com.openiot.rest.model.device.DeviceSpecification;
+import com.openiot.rest.model.device.command.CommandParameter;
+import com.openiot.rest.model.device.command.DeviceCommand;
+import com.openiot.rest.model.device.command.DeviceCommandExecution;
+import com.openiot.rest.model.device.event.DeviceCommandInvocation;
+import com.openiot.spi.device.IDevice;
+import com.openiot.spi.device.IDeviceNestingContext;
+import com.openiot.spi.device.command.IDeviceCommand;
+import com.openiot.spi.device.command.ParameterType;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compares command encoding through {@link ProtobufMessageBuilder#createDynamicMessage}
+ * with the precompiled encoder used by {@link ProtobufMessageBuilder#createMessage} for
+ * commands with 5, 20 and 100 parameters. Both paths must produce the same bytes for
+ * every parameter type. Set <code>benchmark.iterations</code> to change the number of
+ * timed encodings (defaults to 100000). Run with the <code>benchmark</code> profile.
+ *
+ * @author Derek
+ */
+public class CommandEncodingBenchmark {
+
+	/** Static logger instance */
+	private static Logger LOGGER = Logger.getLogger(CommandEncodingBenchmark.class);
+
+	/** Parameter counts to compare */
+	private static final int[] PARAMETER_COUNTS = { 5, 20, 100 };
+
+	/** Parameter types cycled through when building commands */
+	private static final ParameterType[] TYPES = ParameterType.values();
+
+	/** Nesting context for a device that is not nested */
+	private static final IDeviceNestingContext NOT_NESTED = new IDeviceNestingContext() {
+
+		public IDevice getGateway() {
+			return null;
+		}
+
+		public IDevice getNested() {
+			return null;
+		}
+
+		public String getPath() {
+			return null;
+		}
+	};
+
+	@Test
+	public void compareParameterTypes() throws Exception {
+		for (int i = 0; i < TYPES.length; i++) {
+			DeviceCommandExecution execution = createExecution(TYPES.length + i, 1);
+			CompiledSpecification compiled =
+					CompiledSpecification.compile(createSpecification(), 1,
+							Collections.<IDeviceCommand> singletonList(execution.getCommand()));
+
+			byte[] dynamic = ProtobufMessageBuilder.createDynamicMessage(compiled, execution, NOT_NESTED);
+			byte[] precompiled = ProtobufMessageBuilder.createMessage(compiled, execution, NOT_NESTED);
+			Assert.assertArrayEquals("Encodings differ for " + TYPES[i] + ".", dynamic, precompiled);
+		}
+	}
+
+	@Test
+	public void compareEncoders() throws Exception {
+		int iterations = Integer.getInteger("benchmark.iterations", 100000);
+		LOGGER.info("Params  Bytes  DynamicMessage (ns/op)  Precompiled (ns/op)");
+		for (int count : PARAMETER_COUNTS) {
+			DeviceCommandExecution execution = createExecution(0, count);
+			CompiledSpecification compiled =
+					CompiledSpecification.compile(createSpecification(), 1,
+							Collections.<IDeviceCommand> singletonList(execution.getCommand()));
+
+			byte[] dynamic = ProtobufMessageBuilder.createDynamicMessage(compiled, execution, NOT_NESTED);
+			byte[] precompiled = ProtobufMessageBuilder.createMessage(compiled, execution, NOT_NESTED);
+			Assert.assertArrayEquals(dynamic, precompiled);
+
+			// Warm up both paths before timing.
+			time(compiled, execution, iterations, true);
+			time(compiled, execution, iterations, false);
+			long dynamicNs = time(compiled, execution, iterations, true);
+			long precompiledNs = time(compiled, execution, iterations, false);
+			LOGGER.info(String.format("%6d  %5d  %22.1f  %19.1f", count, dynamic.length,
+					(double) dynamicNs / iterations, (double) precompiledNs / iterations));
+		}
+	}
+
+	/**
+	 * Time a number of encodings with one of the two paths.
+	 *
+	 * @param compiled
+	 * @param execution
+	 * @param iterations
+	 * @param dynamic
+	 * @return
+	 * @throws Exception
+	 */
+	protected long time(CompiledSpecification compiled, DeviceCommandExecution execution, int iterations,
+			boolean dynamic) throws Exception {
+		long checksum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			byte[] encoded =
+					dynamic ? ProtobufMessageBuilder.createDynamicMessage(compiled, execution, NOT_NESTED)
+							: ProtobufMessageBuilder.createMessage(compiled, execution, NOT_NESTED);
+			checksum += encoded.length;
+		}
+		long elapsed = System.nanoTime() - start;
+		Assert.assertTrue(checksum > 0);
+		return elapsed;
+	}
+
+	/**
+	 * Create a specification with a random token.
+	 *
+	 * @return
+	 */
+	protected DeviceSpecification createSpecification() {
+		DeviceSpecification specification = new DeviceSpecification();
+		specification.setToken(UUID.randomUUID().toString());
+		specification.setName("Benchmark");
+		return specification;
+	}
+
+	/**
+	 * Create an execution for a command with the given number of parameters, all of which
+	 * have values. Parameter types are cycled through starting from the given index.
+	 *
+	 * @param first
+	 * @param count
+	 * @return
+	 */
+	protected DeviceCommandExecution createExecution(int first, int count) {
+		List<CommandParameter> parameters = new ArrayList<CommandParameter>();
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (int i = first; i < first + count; i++) {
+			ParameterType type = TYPES[i % TYPES.length];
+			String name = "param" + i;
+			parameters.add(new CommandParameter(name, type, (i % 2) == 0));
+			values.put(name, createValue(type, i));
+		}
+		DeviceCommand command = new DeviceCommand();
+		command.setName("benchmark");
+		command.setParameters(parameters);
+
+		DeviceCommandInvocation invocation = new DeviceCommandInvocation();
+		invocation.setId("5432a1f0c8b2f0e1a6b3c4d5");
+
+		DeviceCommandExecution execution = new DeviceCommandExecution();
+		execution.setCommand(command);
+		execution.setInvocation(invocation);
+		execution.setParameters(values);
+		return execution;
+	}
+
+	/**
+	 * Create a parameter value of the Java type expected for a parameter type. Signed
+	 * types alternate between positive and negative values.
+	 *
+	 * @param type
+	 * @param i
+	 * @return
+	 */
+	protected Object createValue(ParameterType type, int i) {
+		int sign = ((i % 2) == 0) ? 1 : -1;
+		switch (type) {
+		case Double: {
+			return sign * i * 1.5;
+		}
+		case Float: {
+			return sign * i * 0.25f;
+		}
+		case Int32:
+		case SInt32:
+		case SFixed32: {
+			return sign * i * 1000;
+		}
+		case UInt32:
+		case Fixed32: {
+			return i * 1000;
+		}
+		case Int64:
+		case SInt64:
+		case SFixed64: {
+			return sign * i * 1000000000L;
+		}
+		case UInt64:
+		case Fixed64: {
+			return i * 1000000000L;
+		}
+		case Bool: {
+			return (i % 3) == 0;
+		}
+		case String: {
+			return "value-" + i;
+		}
+		case Bytes: {
+			return ByteString.copyFromUtf8("bytes-" + i);
+		}
+		default: {
+			throw new IllegalArgumentException("Unknown parameter type: " + type);
+		}
+		}
+	}
+}
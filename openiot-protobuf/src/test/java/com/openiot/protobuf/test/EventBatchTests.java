@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.openiot.protobuf.test;
+
+import com.openiot.device.provisioning.protobuf.EventBatchWriter;
+import com.openiot.device.provisioning.protobuf.ProtobufDeviceEventDecoder;
+import com.openiot.spi.device.event.request.IDeviceAlertCreateRequest;
+import com.openiot.spi.device.event.request.IDeviceLocationCreateRequest;
+import com.openiot.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+import com.openiot.spi.device.provisioning.IDecodedDeviceEventRequest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Round trips batched events through {@link EventBatchWriter} and
+ * {@link ProtobufDeviceEventDecoder}.
+ * 
+ * @author Derek
+ */
+public class EventBatchTests {
+
+	/** Hardware id for test messages */
+	private static final String HARDWARE_ID = "46497751-fdbd-46c0-a6db-3f0007b0fd00";
+
+	/** Number of events in a batch */
+	private static final int BATCH_SIZE = 500;
+
+	@Test
+	public void doMeasurementsBatchTest() throws Exception {
+		byte[] payload = EventsHelper.generateEncodedMeasurementsBatch(HARDWARE_ID, BATCH_SIZE);
+		List<IDecodedDeviceEventRequest> decoded =
+				new ProtobufDeviceEventDecoder().decode(payload, new HashMap<String, Object>());
+		Assert.assertEquals(BATCH_SIZE, decoded.size());
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			IDecodedDeviceEventRequest current = decoded.get(i);
+			Assert.assertEquals(HARDWARE_ID, current.getHardwareId());
+			IDeviceMeasurementsCreateRequest mx = (IDeviceMeasurementsCreateRequest) current.getRequest();
+			Assert.assertEquals(123.4 + i, mx.getMeasurement("fuel.level"), 0.0);
+			Assert.assertEquals(90.0 + i, mx.getMeasurement("engine.temp"), 0.0);
+			Assert.assertNotNull(mx.getEventDate());
+		}
+	}
+
+	@Test
+	public void doMixedBatchTest() throws Exception {
+		Date date = new Date(1400000000000L);
+		Map<String, Double> measurements = new HashMap<String, Double>();
+		measurements.put("fuel.level", 1.5);
+		EventBatchWriter writer = new EventBatchWriter();
+		writer.addMeasurements(HARDWARE_ID, measurements, date);
+		writer.addLocation("other", 33.75, -84.39, null, date);
+		writer.addAlert(HARDWARE_ID, "engine.overheat", "Engine is overheating.", null);
+		byte[] payload = writer.build("originator");
+
+		List<IDecodedDeviceEventRequest> decoded =
+				new ProtobufDeviceEventDecoder().decode(payload, new HashMap<String, Object>());
+		Assert.assertEquals(3, decoded.size());
+		Assert.assertEquals("originator", decoded.get(0).getOriginator());
+		Assert.assertEquals(date, decoded.get(0).getRequest().getEventDate());
+
+		IDeviceLocationCreateRequest location = (IDeviceLocationCreateRequest) decoded.get(1).getRequest();
+		Assert.assertEquals("other", decoded.get(1).getHardwareId());
+		Assert.assertEquals(33.75, location.getLatitude(), 0.0);
+		Assert.assertEquals(-84.39, location.getLongitude(), 0.0);
+		Assert.assertNull(location.getElevation());
+
+		IDeviceAlertCreateRequest alert = (IDeviceAlertCreateRequest) decoded.get(2).getRequest();
+		Assert.assertEquals("engine.overheat", alert.getType());
+		Assert.assertEquals("Engine is overheating.", alert.getMessage());
+	}
+}
@@ -7,12 +7,15 @@
  */
 package com.openiot.protobuf.test;
 
+import com.openiot.device.provisioning.protobuf.EventBatchWriter;
 import com.openiot.device.provisioning.protobuf.ProtobufDeviceEventEncoder;
 import com.openiot.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
 import com.openiot.rest.model.device.provisioning.DecodedDeviceEventRequest;
 import com.openiot.spi.OpenIoTException;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Helper class for generating encoded messages using the OpenIoT GPB format.
@@ -39,4 +42,25 @@ public class EventsHelper {
 
 		return (new ProtobufDeviceEventEncoder()).encode(request);
 	}
+
+	/**
+	 * Generate an encoded batch of measurements events for the given hardware id.
+	 * 
+	 * @param hardwareId
+	 * @param count
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	public static byte[] generateEncodedMeasurementsBatch(String hardwareId, int count) throws OpenIoTException {
+		EventBatchWriter writer = new EventBatchWriter();
+		writer.setHardwareId(hardwareId);
+		writer.setEventDate(new Date());
+		for (int i = 0; i < count; i++) {
+			Map<String, Double> measurements = new HashMap<String, Double>();
+			measurements.put("fuel.level", 123.4 + i);
+			measurements.put("engine.temp", 90.0 + i);
+			writer.addMeasurements(null, measurements, null);
+		}
+		return writer.build(null);
+	}
 }
@@ -9,6 +9,7 @@ package com.openiot.protobuf.test;
 
 import org.junit.Test;
 
+import java.io.OutputStream;
 import java.net.Socket;
 
 public class SocketTests {
@@ -19,6 +20,12 @@ public class SocketTests {
 	/** Port that server socket listens on */
 	public static final int SERVER_SOCKET_PORT = 8585;
 
+	/** Port that NIO server socket listens on (configured with varint framing) */
+	public static final int NIO_SERVER_SOCKET_PORT = 8586;
+
+	/** Number of messages sent over a single NIO connection */
+	public static final int NIO_MESSAGE_COUNT = 100;
+
 	@Test
 	public void doSocketTest() throws Exception {
 		Socket socket = new Socket("localhost", SERVER_SOCKET_PORT);
@@ -28,4 +35,33 @@ public class SocketTests {
 		socket.getOutputStream().close();
 		socket.close();
 	}
+
+	@Test
+	public void doNioSocketTest() throws Exception {
+		Socket socket = new Socket("localhost", NIO_SERVER_SOCKET_PORT);
+		OutputStream output = socket.getOutputStream();
+		for (int i = 0; i < NIO_MESSAGE_COUNT; i++) {
+			byte[] encoded = EventsHelper.generateEncodedMeasurementsMessage(HARDWARE_ID);
+			writeVarint(output, encoded.length);
+			output.write(encoded);
+		}
+		output.flush();
+		output.close();
+		socket.close();
+	}
+
+	/**
+	 * Write a varint frame length.
+	 * 
+	 * @param output
+	 * @param value
+	 * @throws Exception
+	 */
+	protected void writeVarint(OutputStream output, int value) throws Exception {
+		while ((value & ~0x7f) != 0) {
+			output.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		output.write(value);
+	}
 }
\ No newline at end of file
@@ -66,6 +66,23 @@ public class BatchOperationsParser {
 			manager.addPropertyValue("throttleDelayMs", throttleDelayMs.getValue());
 		}
 
+		Attr fanoutThreads = element.getAttributeNode("fanoutThreads");
+		if (fanoutThreads != null) {
+			manager.addPropertyValue("fanoutThreads", fanoutThreads.getValue());
+		}
+
+		Attr maxInvocationsPerSecond = element.getAttributeNode("maxInvocationsPerSecond");
+		if (maxInvocationsPerSecond != null) {
+			manager.addPropertyValue("maxInvocationsPerSecond", maxInvocationsPerSecond.getValue());
+		}
+
+		Attr fanoutChunkSize = element.getAttributeNode("fanoutChunkSize");
+		if (fanoutChunkSize != null) {
+			manager.addPropertyValue("fanoutChunkSize", fanoutChunkSize.getValue());
+		}
+
+		InboundProcessingStrategyParser.parseThreadingMode(element, manager);
+
 		return manager.getBeanDefinition();
 	}
 
@@ -7,10 +7,12 @@
  */
 package com.openiot.spring.handler;
 
+import com.openiot.device.provisioning.CommandDeliveryOutbox;
 import com.openiot.device.provisioning.mqtt.HardwareIdMqttParameterExtractor;
 import com.openiot.device.provisioning.mqtt.MqttCommandDeliveryProvider;
 import com.openiot.device.provisioning.mqtt.MqttCommandDestination;
 import com.openiot.device.provisioning.mqtt.MqttParameters;
+import com.openiot.device.provisioning.mqtt.MqttPipelinedCommandDeliveryProvider;
 import com.openiot.device.provisioning.protobuf.JavaHybridProtobufExecutionEncoder;
 import com.openiot.device.provisioning.protobuf.ProtobufExecutionEncoder;
 import com.openiot.device.provisioning.sms.SmsCommandDestination;
@@ -127,8 +129,11 @@ public class CommandDestinationsParser {
 	 * @return
 	 */
 	protected AbstractBeanDefinition createMqttDeliveryProvider(Element element) {
+		Attr deliveryMode = element.getAttributeNode("deliveryMode");
+		boolean pipelined = (deliveryMode != null) && ("pipelined".equals(deliveryMode.getValue()));
 		BeanDefinitionBuilder mqtt =
-				BeanDefinitionBuilder.rootBeanDefinition(MqttCommandDeliveryProvider.class);
+				BeanDefinitionBuilder.rootBeanDefinition(pipelined ? MqttPipelinedCommandDeliveryProvider.class
+						: MqttCommandDeliveryProvider.class);
 
 		Attr hostname = element.getAttributeNode("hostname");
 		if (hostname == null) {
@@ -142,6 +147,18 @@ public class CommandDestinationsParser {
 		}
 		mqtt.addPropertyValue("port", port.getValue());
 
+		if (pipelined) {
+			Attr connectionCount = element.getAttributeNode("connectionCount");
+			if (connectionCount != null) {
+				mqtt.addPropertyValue("connectionCount", connectionCount.getValue());
+			}
+
+			Attr maxInFlight = element.getAttributeNode("maxInFlight");
+			if (maxInFlight != null) {
+				mqtt.addPropertyValue("maxInFlight", maxInFlight.getValue());
+			}
+		}
+
 		return mqtt.getBeanDefinition();
 	}
 
@@ -221,6 +238,48 @@ public class CommandDestinationsParser {
 			throw new RuntimeException("Command destination does not contain destinationId attribute.");
 		}
 		builder.addPropertyValue("destinationId", destinationId.getValue());
+
+		Attr outbox = element.getAttributeNode("outbox");
+		if ((outbox != null) && (Boolean.parseBoolean(outbox.getValue()))) {
+			builder.addPropertyValue("outbox", createOutbox(element));
+		}
+	}
+
+	/**
+	 * Create a command delivery outbox from the outbox attributes of a destination.
+	 * 
+	 * @param element
+	 * @return
+	 */
+	protected AbstractBeanDefinition createOutbox(Element element) {
+		BeanDefinitionBuilder outbox = BeanDefinitionBuilder.rootBeanDefinition(CommandDeliveryOutbox.class);
+
+		Attr outboxThreads = element.getAttributeNode("outboxThreads");
+		if (outboxThreads != null) {
+			outbox.addPropertyValue("numThreads", outboxThreads.getValue());
+		}
+
+		Attr outboxCapacity = element.getAttributeNode("outboxCapacity");
+		if (outboxCapacity != null) {
+			outbox.addPropertyValue("capacity", outboxCapacity.getValue());
+		}
+
+		Attr maxDeliveryAttempts = element.getAttributeNode("maxDeliveryAttempts");
+		if (maxDeliveryAttempts != null) {
+			outbox.addPropertyValue("maxAttempts", maxDeliveryAttempts.getValue());
+		}
+
+		Attr initialRetryDelayMs = element.getAttributeNode("initialRetryDelayMs");
+		if (initialRetryDelayMs != null) {
+			outbox.addPropertyValue("initialRetryDelayMs", initialRetryDelayMs.getValue());
+		}
+
+		Attr maxRetryDelayMs = element.getAttributeNode("maxRetryDelayMs");
+		if (maxRetryDelayMs != null) {
+			outbox.addPropertyValue("maxRetryDelayMs", maxRetryDelayMs.getValue());
+		}
+
+		return outbox.getBeanDefinition();
 	}
 
 	/**
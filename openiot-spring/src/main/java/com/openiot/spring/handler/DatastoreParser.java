@@ -16,6 +16,7 @@ import com.openiot.mongodb.DockerMongoClient;
 import com.openiot.mongodb.OpenIoTMongoClient;
 import com.openiot.mongodb.device.MongoDeviceManagement;
 import com.openiot.mongodb.user.MongoUserManagement;
+import com.openiot.device.state.DeviceAssignmentStateAggregator;
 import com.openiot.server.OpenIoTServerBeans;
 import com.openiot.server.device.DefaultDeviceModelInitializer;
 import com.openiot.server.user.DefaultUserModelInitializer;
@@ -81,6 +82,10 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 				parseHazelcastCache(child, context);
 				break;
 			}
+			case AssignmentStateAggregator: {
+				parseAssignmentStateAggregator(child, context);
+				break;
+			}
 			case DefaultDeviceModelInitializer: {
 				parseDefaultDeviceModelInitializer(child, context);
 				break;
@@ -129,6 +134,26 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 		BeanDefinitionBuilder dm =
 				BeanDefinitionBuilder.rootBeanDefinition(MongoDeviceManagement.class);
 		dm.addPropertyReference("mongoClient", "mongo");
+		Attr useMeasurementBuckets = element.getAttributeNode("useMeasurementBuckets");
+		if (useMeasurementBuckets != null) {
+			dm.addPropertyValue("useMeasurementBuckets", useMeasurementBuckets.getValue());
+		}
+		Attr maxEventsPerBucket = element.getAttributeNode("maxEventsPerBucket");
+		if (maxEventsPerBucket != null) {
+			dm.addPropertyValue("maxEventsPerBucket", maxEventsPerBucket.getValue());
+		}
+		Attr minuteRollupRetentionDays = element.getAttributeNode("minuteRollupRetentionDays");
+		if (minuteRollupRetentionDays != null) {
+			dm.addPropertyValue("minuteRollupRetentionDays", minuteRollupRetentionDays.getValue());
+		}
+		Attr hourRollupRetentionDays = element.getAttributeNode("hourRollupRetentionDays");
+		if (hourRollupRetentionDays != null) {
+			dm.addPropertyValue("hourRollupRetentionDays", hourRollupRetentionDays.getValue());
+		}
+		Attr dayRollupRetentionDays = element.getAttributeNode("dayRollupRetentionDays");
+		if (dayRollupRetentionDays != null) {
+			dm.addPropertyValue("dayRollupRetentionDays", dayRollupRetentionDays.getValue());
+		}
 		context.getRegistry().registerBeanDefinition(OpenIoTServerBeans.BEAN_DEVICE_MANAGEMENT,
 				dm.getBeanDefinition());
 
@@ -177,6 +202,18 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 		BeanDefinitionBuilder dm =
 				BeanDefinitionBuilder.rootBeanDefinition(HBaseDeviceManagement.class);
 		dm.addPropertyReference("client", "hbase");
+		Attr minuteRollupRetentionDays = element.getAttributeNode("minuteRollupRetentionDays");
+		if (minuteRollupRetentionDays != null) {
+			dm.addPropertyValue("minuteRollupRetentionDays", minuteRollupRetentionDays.getValue());
+		}
+		Attr hourRollupRetentionDays = element.getAttributeNode("hourRollupRetentionDays");
+		if (hourRollupRetentionDays != null) {
+			dm.addPropertyValue("hourRollupRetentionDays", hourRollupRetentionDays.getValue());
+		}
+		Attr dayRollupRetentionDays = element.getAttributeNode("dayRollupRetentionDays");
+		if (dayRollupRetentionDays != null) {
+			dm.addPropertyValue("dayRollupRetentionDays", dayRollupRetentionDays.getValue());
+		}
 		context.getRegistry().registerBeanDefinition(OpenIoTServerBeans.BEAN_DEVICE_MANAGEMENT,
 				dm.getBeanDefinition());
 
@@ -251,6 +288,31 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 				OpenIoTServerBeans.BEAN_DEVICE_MANAGEMENT_CACHE_PROVIDER, cache.getBeanDefinition());
 	}
 
+	/**
+	 * Parse configuration for the device assignment state aggregator.
+	 * 
+	 * @param element
+	 * @param context
+	 */
+	protected void parseAssignmentStateAggregator(Element element, ParserContext context) {
+		BeanDefinitionBuilder aggregator =
+				BeanDefinitionBuilder.rootBeanDefinition(DeviceAssignmentStateAggregator.class);
+		Attr flushIntervalMs = element.getAttributeNode("flushIntervalMs");
+		if (flushIntervalMs != null) {
+			aggregator.addPropertyValue("flushIntervalMs", flushIntervalMs.getValue());
+		}
+		Attr dirtyThreshold = element.getAttributeNode("dirtyThreshold");
+		if (dirtyThreshold != null) {
+			aggregator.addPropertyValue("dirtyThreshold", dirtyThreshold.getValue());
+		}
+		Attr flushOnShutdown = element.getAttributeNode("flushOnShutdown");
+		if (flushOnShutdown != null) {
+			aggregator.addPropertyValue("flushOnShutdown", flushOnShutdown.getValue());
+		}
+		context.getRegistry().registerBeanDefinition(OpenIoTServerBeans.BEAN_ASSIGNMENT_STATE_AGGREGATOR,
+				aggregator.getBeanDefinition());
+	}
+
 	/**
 	 * Parse configuration for default device model initializer.
 	 * 
@@ -304,6 +366,9 @@ public class DatastoreParser extends AbstractBeanDefinitionParser {
 		/** Hazelcast cache provider */
 		HazelcastCache("hazelcast-cache"),
 
+		/** Coalesces device assignment state updates */
+		AssignmentStateAggregator("assignment-state-aggregator"),
+
 		/** Creates sample data if no device data is present */
 		DefaultDeviceModelInitializer("default-device-model-initializer"),
 
@@ -13,8 +13,12 @@ import com.openiot.device.provisioning.BinaryInboundEventSource;
 import com.openiot.device.provisioning.EchoStringDecoder;
 import com.openiot.device.provisioning.StringInboundEventSource;
 import com.openiot.device.provisioning.json.JsonBatchEventDecoder;
+import com.openiot.device.provisioning.json.JsonStreamingBatchEventDecoder;
+import com.openiot.device.provisioning.mqtt.MqttAsyncInboundEventReceiver;
 import com.openiot.device.provisioning.mqtt.MqttInboundEventReceiver;
 import com.openiot.device.provisioning.socket.BinarySocketInboundEventReceiver;
+import com.openiot.device.provisioning.socket.FrameFormat;
+import com.openiot.device.provisioning.socket.NioSocketInboundEventReceiver;
 import com.openiot.device.provisioning.socket.ReadAllInteractionHandler;
 import com.openiot.device.provisioning.websocket.StringWebSocketEventReceiver;
 import com.openiot.spi.device.provisioning.IInboundEventReceiver;
@@ -94,6 +98,10 @@ public class EventSourcesParser {
 				result.add(parseSocketEventSource(child, context));
 				break;
 			}
+			case NioSocketEventSource: {
+				result.add(parseNioSocketEventSource(child, context));
+				break;
+			}
 			case MqttEventSource: {
 				result.add(parseMqttEventSource(child, context));
 				break;
@@ -144,6 +152,7 @@ public class EventSourcesParser {
 
 		// Verify that a sourceId was provided and set it on the bean.
 		parseEventSourceId(element, source);
+		parseDecodeStage(element, source);
 
 		// Create MQTT event receiver bean and register it.
 		AbstractBeanDefinition receiver = createMqttEventReceiver(element);
@@ -182,8 +191,11 @@ public class EventSourcesParser {
 	 * @return
 	 */
 	protected AbstractBeanDefinition createMqttEventReceiver(Element element) {
+		Attr receiverMode = element.getAttributeNode("receiverMode");
+		boolean async = (receiverMode != null) && ("async".equals(receiverMode.getValue()));
 		BeanDefinitionBuilder mqtt =
-				BeanDefinitionBuilder.rootBeanDefinition(getMqttEventReceiverImplementation());
+				BeanDefinitionBuilder.rootBeanDefinition(async ? MqttAsyncInboundEventReceiver.class
+						: getMqttEventReceiverImplementation());
 
 		Attr hostname = element.getAttributeNode("hostname");
 		if (hostname == null) {
@@ -203,6 +215,33 @@ public class EventSourcesParser {
 		}
 		mqtt.addPropertyValue("topic", topic.getValue());
 
+		Attr pauseWhenOverloaded = element.getAttributeNode("pauseWhenOverloaded");
+		if (pauseWhenOverloaded != null) {
+			mqtt.addPropertyValue("pauseWhenOverloaded", pauseWhenOverloaded.getValue());
+		}
+
+		Attr clientId = element.getAttributeNode("clientId");
+		if (clientId != null) {
+			mqtt.addPropertyValue("clientId", clientId.getValue());
+		}
+
+		if (async) {
+			Attr maxInFlight = element.getAttributeNode("maxInFlight");
+			if (maxInFlight != null) {
+				mqtt.addPropertyValue("maxInFlight", maxInFlight.getValue());
+			}
+
+			Attr connectionCount = element.getAttributeNode("connectionCount");
+			if (connectionCount != null) {
+				mqtt.addPropertyValue("connectionCount", connectionCount.getValue());
+			}
+
+			Attr sharedSubscriptionGroup = element.getAttributeNode("sharedSubscriptionGroup");
+			if (sharedSubscriptionGroup != null) {
+				mqtt.addPropertyValue("sharedSubscriptionGroup", sharedSubscriptionGroup.getValue());
+			}
+		}
+
 		return mqtt.getBeanDefinition();
 	}
 
@@ -220,6 +259,7 @@ public class EventSourcesParser {
 
         // Verify that a sourceId was provided and set it on the bean.
         parseEventSourceId(element, source);
+        parseDecodeStage(element, source);
 
         // Create EventHub event receiver bean and register it.
         AbstractBeanDefinition receiver = createEventHubEventReceiver(element);
@@ -319,6 +359,7 @@ public class EventSourcesParser {
 
 		// Verify that a sourceId was provided and set it on the bean.
 		parseEventSourceId(element, source);
+		parseDecodeStage(element, source);
 
 		// Create ActiveMQ event receiver bean and register it.
 		AbstractBeanDefinition receiver = createActiveMQEventReceiver(element);
@@ -413,6 +454,7 @@ public class EventSourcesParser {
 
 		// Verify that a sourceId was provided and set it on the bean.
 		parseEventSourceId(element, source);
+		parseDecodeStage(element, source);
 
 		// Create socket event receiver bean and register it.
 		AbstractBeanDefinition receiver = createSocketEventReceiver(element, context);
@@ -455,6 +497,11 @@ public class EventSourcesParser {
 		BeanDefinitionBuilder socket =
 				BeanDefinitionBuilder.rootBeanDefinition(getSocketEventReceiverImplementation());
 
+		Attr bindAddress = element.getAttributeNode("bindAddress");
+		if (bindAddress != null) {
+			socket.addPropertyValue("bindAddress", bindAddress.getValue());
+		}
+
 		Attr port = element.getAttributeNode("port");
 		if (port != null) {
 			socket.addPropertyValue("port", port.getValue());
@@ -465,12 +512,103 @@ public class EventSourcesParser {
 			socket.addPropertyValue("numThreads", numThreads.getValue());
 		}
 
+		InboundProcessingStrategyParser.parseThreadingMode(element, socket);
+
 		// Parse configured socket interaction handler factory if available.
 		parseSocketInteractionHandlerFactory(element, context, socket);
 
 		return socket.getBeanDefinition();
 	}
 
+	/**
+	 * Parse a non-blocking socket event source.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected AbstractBeanDefinition parseNioSocketEventSource(Element element, ParserContext context) {
+		BeanDefinitionBuilder source =
+				BeanDefinitionBuilder.rootBeanDefinition(getSocketEventSourceImplementation());
+
+		// Verify that a sourceId was provided and set it on the bean.
+		parseEventSourceId(element, source);
+		parseDecodeStage(element, source);
+
+		// Create NIO socket event receiver bean and register it.
+		AbstractBeanDefinition receiver = createNioSocketEventReceiver(element, context);
+		String receiverName = nameGenerator.generateBeanName(receiver, context.getRegistry());
+		context.getRegistry().registerBeanDefinition(receiverName, receiver);
+
+		// Create list with bean reference and add it as property.
+		ManagedList<Object> list = new ManagedList<Object>();
+		RuntimeBeanReference ref = new RuntimeBeanReference(receiverName);
+		list.add(ref);
+		source.addPropertyValue("inboundEventReceivers", list);
+
+		// Add decoder reference.
+		boolean hadDecoder = parseBinaryDecoder(element, context, source);
+		if (!hadDecoder) {
+			throw new RuntimeException("No event decoder specified for NIO socket event source: "
+					+ element.toString());
+		}
+
+		return source.getBeanDefinition();
+	}
+
+	/**
+	 * Create NIO socket event receiver from XML element.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected AbstractBeanDefinition createNioSocketEventReceiver(Element element, ParserContext context) {
+		BeanDefinitionBuilder socket =
+				BeanDefinitionBuilder.rootBeanDefinition(NioSocketInboundEventReceiver.class);
+
+		Attr bindAddress = element.getAttributeNode("bindAddress");
+		if (bindAddress != null) {
+			socket.addPropertyValue("bindAddress", bindAddress.getValue());
+		}
+
+		Attr port = element.getAttributeNode("port");
+		if (port != null) {
+			socket.addPropertyValue("port", port.getValue());
+		}
+
+		Attr numSelectorThreads = element.getAttributeNode("numSelectorThreads");
+		if (numSelectorThreads != null) {
+			socket.addPropertyValue("numSelectors", numSelectorThreads.getValue());
+		}
+
+		Attr frameFormat = element.getAttributeNode("frameFormat");
+		if (frameFormat != null) {
+			FrameFormat format = FrameFormat.getByName(frameFormat.getValue());
+			if (format == null) {
+				throw new RuntimeException("Unknown frame format: " + frameFormat.getValue());
+			}
+			socket.addPropertyValue("frameFormat", format);
+		}
+
+		Attr maxFrameSize = element.getAttributeNode("maxFrameSize");
+		if (maxFrameSize != null) {
+			socket.addPropertyValue("maxFrameSize", maxFrameSize.getValue());
+		}
+
+		Attr readBufferSize = element.getAttributeNode("readBufferSize");
+		if (readBufferSize != null) {
+			socket.addPropertyValue("readBufferSize", readBufferSize.getValue());
+		}
+
+		Attr pauseWhenOverloaded = element.getAttributeNode("pauseWhenOverloaded");
+		if (pauseWhenOverloaded != null) {
+			socket.addPropertyValue("pauseWhenOverloaded", pauseWhenOverloaded.getValue());
+		}
+
+		return socket.getBeanDefinition();
+	}
+
 	/**
 	 * Parse a socket interaction handler factory from the list of possibilities.
 	 * 
@@ -567,6 +705,7 @@ public class EventSourcesParser {
 
 		// Verify that a sourceId was provided and set it on the bean.
 		parseEventSourceId(element, source);
+		parseDecodeStage(element, source);
 
 		// Create event receiver bean and register it.
 		AbstractBeanDefinition receiver = createStringWebSocketEventReceiver(element, context);
@@ -746,7 +885,12 @@ public class EventSourcesParser {
 	protected void parseJsonDecoder(Element parent, Element decoder, ParserContext context,
 			BeanDefinitionBuilder source) {
 		LOGGER.debug("Configuring OpenIoT JSON batch event decoder for " + parent.getLocalName());
-		BeanDefinitionBuilder builder = BeanDefinitionBuilder.rootBeanDefinition(JsonBatchEventDecoder.class);
+		Attr streaming = decoder.getAttributeNode("streaming");
+		Class<?> type = JsonBatchEventDecoder.class;
+		if ((streaming != null) && (Boolean.parseBoolean(streaming.getValue()))) {
+			type = JsonStreamingBatchEventDecoder.class;
+		}
+		BeanDefinitionBuilder builder = BeanDefinitionBuilder.rootBeanDefinition(type);
 		AbstractBeanDefinition bean = builder.getBeanDefinition();
 		String name = nameGenerator.generateBeanName(bean, context.getRegistry());
 		context.getRegistry().registerBeanDefinition(name, bean);
@@ -804,6 +948,26 @@ public class EventSourcesParser {
 		builder.addPropertyValue("sourceId", sourceId.getValue());
 	}
 
+	/**
+	 * Parse attributes that move decoding off the receiver threads.
+	 * 
+	 * @param element
+	 * @param builder
+	 */
+	protected void parseDecodeStage(Element element, BeanDefinitionBuilder builder) {
+		Attr decodeThreads = element.getAttributeNode("decodeThreads");
+		if (decodeThreads != null) {
+			builder.addPropertyValue("decodeThreads", decodeThreads.getValue());
+		}
+		Attr decodeQueueSize = element.getAttributeNode("decodeQueueSize");
+		if (decodeQueueSize != null) {
+			builder.addPropertyValue("decodeQueueSize", decodeQueueSize.getValue());
+		}
+
+		// Decode threads follow the threading mode of receivers that support one.
+		InboundProcessingStrategyParser.parseThreadingMode(element, builder, "decodeThreadingMode");
+	}
+
 	/**
 	 * Expected child elements.
 	 * 
@@ -823,6 +987,9 @@ public class EventSourcesParser {
 		/** Socket event source */
 		SocketEventSource("socket-event-source"),
 
+		/** Non-blocking socket event source with framed payloads */
+		NioSocketEventSource("nio-socket-event-source"),
+
 		/** MQTT event source */
 		MqttEventSource("mqtt-event-source"),
 
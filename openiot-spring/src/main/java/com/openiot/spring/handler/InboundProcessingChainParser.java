@@ -9,6 +9,7 @@ package com.openiot.spring.handler;
 
 import com.openiot.device.event.processor.DefaultEventStorageProcessor;
 import com.openiot.device.event.processor.DefaultInboundEventProcessorChain;
+import com.openiot.device.event.processor.MeasurementRollupProcessor;
 import com.openiot.server.OpenIoTServerBeans;
 import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
@@ -57,6 +58,10 @@ public class InboundProcessingChainParser extends AbstractBeanDefinitionParser {
 				processors.add(parseDefaultEventStorageProcessor(element, context));
 				break;
 			}
+			case MeasurementRollupProcessor: {
+				processors.add(parseMeasurementRollupProcessor(child, context));
+				break;
+			}
 			}
 		}
 		chain.addPropertyValue("processors", processors);
@@ -93,6 +98,27 @@ public class InboundProcessingChainParser extends AbstractBeanDefinitionParser {
 		return processor.getBeanDefinition();
 	}
 
+	/**
+	 * Parse configuration for measurement rollup processor.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected AbstractBeanDefinition parseMeasurementRollupProcessor(Element element, ParserContext context) {
+		BeanDefinitionBuilder processor =
+				BeanDefinitionBuilder.rootBeanDefinition(MeasurementRollupProcessor.class);
+		Attr flushIntervalMs = element.getAttributeNode("flushIntervalMs");
+		if (flushIntervalMs != null) {
+			processor.addPropertyValue("flushIntervalMs", flushIntervalMs.getValue());
+		}
+		Attr maxPendingRollups = element.getAttributeNode("maxPendingRollups");
+		if (maxPendingRollups != null) {
+			processor.addPropertyValue("maxPendingRollups", maxPendingRollups.getValue());
+		}
+		return processor.getBeanDefinition();
+	}
+
 	/**
 	 * Expected child elements.
 	 * 
@@ -104,7 +130,10 @@ public class InboundProcessingChainParser extends AbstractBeanDefinitionParser {
 		InboundEventProcessor("inbound-event-processor"),
 
 		/** Reference to custom inbound event processor */
-		DefaultEventStorageProcessor("default-event-storage-processor");
+		DefaultEventStorageProcessor("default-event-storage-processor"),
+
+		/** Maintains measurement rollups */
+		MeasurementRollupProcessor("measurement-rollup-processor");
 
 		/** Event code */
 		private String localName;
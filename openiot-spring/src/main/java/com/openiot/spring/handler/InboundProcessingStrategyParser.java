@@ -8,6 +8,11 @@
 package com.openiot.spring.handler;
 
 import com.openiot.device.provisioning.BlockingQueueInboundProcessingStrategy;
+import com.openiot.device.provisioning.PartitionedInboundProcessingStrategy;
+import com.openiot.device.provisioning.RingBufferInboundProcessingStrategy;
+import com.openiot.device.provisioning.overload.OverloadPolicy;
+import com.openiot.device.provisioning.ringbuffer.WaitStrategy;
+import com.openiot.server.concurrent.ThreadingMode;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
@@ -43,6 +48,12 @@ public class InboundProcessingStrategyParser {
 			case DefaultInboundProcessingStrategy: {
 				return parseDefaultInboundProcessingStrategy(child, context);
 			}
+			case RingBufferInboundProcessingStrategy: {
+				return parseRingBufferInboundProcessingStrategy(child, context);
+			}
+			case PartitionedInboundProcessingStrategy: {
+				return parsePartitionedInboundProcessingStrategy(child, context);
+			}
 			}
 		}
 		return null;
@@ -64,6 +75,21 @@ public class InboundProcessingStrategyParser {
 			manager.addPropertyValue("eventProcessorThreadCount", numEventProcessorThreads.getValue());
 		}
 
+		parseThreadingMode(element, manager);
+
+		Attr maxBatchSize = element.getAttributeNode("maxBatchSize");
+		if (maxBatchSize != null) {
+			manager.addPropertyValue("maxBatchSize", maxBatchSize.getValue());
+		}
+
+		Attr maxBatchWaitMs = element.getAttributeNode("maxBatchWaitMs");
+		if (maxBatchWaitMs != null) {
+			manager.addPropertyValue("maxBatchWaitMs", maxBatchWaitMs.getValue());
+		}
+
+		parseOverloadPolicy(element, manager);
+		parseFlowControl(element, manager);
+
 		Attr enableMonitoring = element.getAttributeNode("enableMonitoring");
 		if (enableMonitoring != null) {
 			manager.addPropertyValue("enableMonitoring", enableMonitoring.getValue());
@@ -77,6 +103,178 @@ public class InboundProcessingStrategyParser {
 		return manager.getBeanDefinition();
 	}
 
+	/**
+	 * Parse information for the ring buffer inbound processing strategy.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected BeanDefinition parseRingBufferInboundProcessingStrategy(Element element,
+			ParserContext context) {
+		BeanDefinitionBuilder manager =
+				BeanDefinitionBuilder.rootBeanDefinition(RingBufferInboundProcessingStrategy.class);
+
+		Attr numEventProcessorThreads = element.getAttributeNode("numEventProcessorThreads");
+		if (numEventProcessorThreads != null) {
+			manager.addPropertyValue("eventProcessorThreadCount", numEventProcessorThreads.getValue());
+		}
+
+		parseThreadingMode(element, manager);
+
+		Attr ringBufferSize = element.getAttributeNode("ringBufferSize");
+		if (ringBufferSize != null) {
+			manager.addPropertyValue("ringBufferSize", ringBufferSize.getValue());
+		}
+
+		Attr waitStrategy = element.getAttributeNode("waitStrategy");
+		if (waitStrategy != null) {
+			WaitStrategy strategy = WaitStrategy.getByName(waitStrategy.getValue());
+			if (strategy == null) {
+				throw new RuntimeException("Unknown ring buffer wait strategy: " + waitStrategy.getValue());
+			}
+			manager.addPropertyValue("waitStrategy", strategy);
+		}
+
+		parseFlowControl(element, manager);
+
+		Attr enableMonitoring = element.getAttributeNode("enableMonitoring");
+		if (enableMonitoring != null) {
+			manager.addPropertyValue("enableMonitoring", enableMonitoring.getValue());
+		}
+
+		Attr monitoringIntervalSec = element.getAttributeNode("monitoringIntervalSec");
+		if (monitoringIntervalSec != null) {
+			manager.addPropertyValue("monitoringIntervalSec", monitoringIntervalSec.getValue());
+		}
+
+		return manager.getBeanDefinition();
+	}
+
+	/**
+	 * Parse information for the partitioned inbound processing strategy.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected BeanDefinition parsePartitionedInboundProcessingStrategy(Element element,
+			ParserContext context) {
+		BeanDefinitionBuilder manager =
+				BeanDefinitionBuilder.rootBeanDefinition(PartitionedInboundProcessingStrategy.class);
+
+		Attr numLanes = element.getAttributeNode("numLanes");
+		if (numLanes != null) {
+			manager.addPropertyValue("laneCount", numLanes.getValue());
+		}
+
+		parseThreadingMode(element, manager);
+
+		Attr laneQueueSize = element.getAttributeNode("laneQueueSize");
+		if (laneQueueSize != null) {
+			manager.addPropertyValue("laneQueueSize", laneQueueSize.getValue());
+		}
+
+		Attr maxBatchSize = element.getAttributeNode("maxBatchSize");
+		if (maxBatchSize != null) {
+			manager.addPropertyValue("maxBatchSize", maxBatchSize.getValue());
+		}
+
+		Attr maxBatchWaitMs = element.getAttributeNode("maxBatchWaitMs");
+		if (maxBatchWaitMs != null) {
+			manager.addPropertyValue("maxBatchWaitMs", maxBatchWaitMs.getValue());
+		}
+
+		parseOverloadPolicy(element, manager);
+		parseFlowControl(element, manager);
+
+		Attr enableMonitoring = element.getAttributeNode("enableMonitoring");
+		if (enableMonitoring != null) {
+			manager.addPropertyValue("enableMonitoring", enableMonitoring.getValue());
+		}
+
+		Attr monitoringIntervalSec = element.getAttributeNode("monitoringIntervalSec");
+		if (monitoringIntervalSec != null) {
+			manager.addPropertyValue("monitoringIntervalSec", monitoringIntervalSec.getValue());
+		}
+
+		return manager.getBeanDefinition();
+	}
+
+	/**
+	 * Parse attributes that control what happens when the strategy queue is full.
+	 * 
+	 * @param element
+	 * @param manager
+	 */
+	public static void parseOverloadPolicy(Element element, BeanDefinitionBuilder manager) {
+		Attr overloadPolicy = element.getAttributeNode("overloadPolicy");
+		if (overloadPolicy != null) {
+			OverloadPolicy policy = OverloadPolicy.getByName(overloadPolicy.getValue());
+			if (policy == null) {
+				throw new RuntimeException("Unknown overload policy: " + overloadPolicy.getValue());
+			}
+			manager.addPropertyValue("overloadPolicy", policy);
+		}
+
+		Attr blockTimeoutMs = element.getAttributeNode("blockTimeoutMs");
+		if (blockTimeoutMs != null) {
+			manager.addPropertyValue("blockTimeoutMs", blockTimeoutMs.getValue());
+		}
+
+		Attr shedEventTypes = element.getAttributeNode("shedEventTypes");
+		if (shedEventTypes != null) {
+			manager.addPropertyValue("shedEventTypes", shedEventTypes.getValue());
+		}
+	}
+
+	/**
+	 * Parse attribute that selects platform or virtual threads. Shared with other parsers
+	 * for components that support both modes.
+	 * 
+	 * @param element
+	 * @param manager
+	 */
+	public static void parseThreadingMode(Element element, BeanDefinitionBuilder manager) {
+		parseThreadingMode(element, manager, "threadingMode");
+	}
+
+	/**
+	 * Parse attribute that selects platform or virtual threads into the given property.
+	 * 
+	 * @param element
+	 * @param manager
+	 * @param property
+	 */
+	public static void parseThreadingMode(Element element, BeanDefinitionBuilder manager, String property) {
+		Attr threadingMode = element.getAttributeNode("threadingMode");
+		if (threadingMode != null) {
+			ThreadingMode mode = ThreadingMode.getByName(threadingMode.getValue());
+			if (mode == null) {
+				throw new RuntimeException("Unknown threading mode: " + threadingMode.getValue());
+			}
+			manager.addPropertyValue(property, mode);
+		}
+	}
+
+	/**
+	 * Parse attributes that control when receivers are asked to pause consumption.
+	 * 
+	 * @param element
+	 * @param manager
+	 */
+	protected void parseFlowControl(Element element, BeanDefinitionBuilder manager) {
+		Attr highWaterMark = element.getAttributeNode("highWaterMark");
+		if (highWaterMark != null) {
+			manager.addPropertyValue("highWaterMark", highWaterMark.getValue());
+		}
+
+		Attr lowWaterMark = element.getAttributeNode("lowWaterMark");
+		if (lowWaterMark != null) {
+			manager.addPropertyValue("lowWaterMark", lowWaterMark.getValue());
+		}
+	}
+
 	/**
 	 * Parse a registration manager reference.
 	 * 
@@ -100,7 +298,13 @@ public class InboundProcessingStrategyParser {
 	public static enum Elements {
 
 		/** Default inbound processing strategy */
-		DefaultInboundProcessingStrategy("default-inbound-processing-strategy");
+		DefaultInboundProcessingStrategy("default-inbound-processing-strategy"),
+
+		/** Ring buffer inbound processing strategy */
+		RingBufferInboundProcessingStrategy("ring-buffer-inbound-processing-strategy"),
+
+		/** Inbound processing strategy partitioned by hardware id */
+		PartitionedInboundProcessingStrategy("partitioned-inbound-processing-strategy");
 
 		/** Event code */
 		private String localName;
@@ -9,6 +9,7 @@ package com.openiot.spring.handler;
 
 import com.openiot.azure.device.provisioning.EventHubOutboundEventProcessor;
 import com.openiot.device.event.processor.DefaultOutboundEventProcessorChain;
+import com.openiot.device.event.processor.ParallelOutboundEventProcessorChain;
 import com.openiot.device.provisioning.ProvisioningEventProcessor;
 import com.openiot.geospatial.ZoneTest;
 import com.openiot.geospatial.ZoneTestEventProcessor;
@@ -47,8 +48,7 @@ public class OutboundProcessingChainParser extends AbstractBeanDefinitionParser
 	 */
 	@Override
 	protected AbstractBeanDefinition parseInternal(Element element, ParserContext context) {
-		BeanDefinitionBuilder chain =
-				BeanDefinitionBuilder.rootBeanDefinition(DefaultOutboundEventProcessorChain.class);
+		BeanDefinitionBuilder chain = parseChain(element);
 		List<Element> dsChildren = DomUtils.getChildElements(element);
 		List<Object> processors = new ManagedList<Object>();
 		for (Element child : dsChildren) {
@@ -90,6 +90,43 @@ public class OutboundProcessingChainParser extends AbstractBeanDefinitionParser
 		return null;
 	}
 
+	/**
+	 * Create the chain bean. Uses the parallel chain if the 'parallel' attribute is set.
+	 * 
+	 * @param element
+	 * @return
+	 */
+	protected BeanDefinitionBuilder parseChain(Element element) {
+		Attr parallel = element.getAttributeNode("parallel");
+		if ((parallel == null) || (!Boolean.parseBoolean(parallel.getValue()))) {
+			return BeanDefinitionBuilder.rootBeanDefinition(DefaultOutboundEventProcessorChain.class);
+		}
+		BeanDefinitionBuilder chain =
+				BeanDefinitionBuilder.rootBeanDefinition(ParallelOutboundEventProcessorChain.class);
+
+		Attr processorQueueSize = element.getAttributeNode("processorQueueSize");
+		if (processorQueueSize != null) {
+			chain.addPropertyValue("processorQueueSize", Integer.parseInt(processorQueueSize.getValue()));
+		}
+
+		Attr failureThreshold = element.getAttributeNode("failureThreshold");
+		if (failureThreshold != null) {
+			chain.addPropertyValue("failureThreshold", Integer.parseInt(failureThreshold.getValue()));
+		}
+
+		Attr circuitOpenMs = element.getAttributeNode("circuitOpenMs");
+		if (circuitOpenMs != null) {
+			chain.addPropertyValue("circuitOpenMs", Long.parseLong(circuitOpenMs.getValue()));
+		}
+
+		Attr slowCallThresholdMs = element.getAttributeNode("slowCallThresholdMs");
+		if (slowCallThresholdMs != null) {
+			chain.addPropertyValue("slowCallThresholdMs", Long.parseLong(slowCallThresholdMs.getValue()));
+		}
+
+		return chain;
+	}
+
 	/**
 	 * Parse configuration for custom outbound event processor.
 	 * 
@@ -261,6 +298,11 @@ public class OutboundProcessingChainParser extends AbstractBeanDefinitionParser
 			processor.addPropertyValue("numThreads", Integer.parseInt(numThreads.getValue()));
 		}
 
+		Attr maxBatchSize = element.getAttributeNode("maxBatchSize");
+		if (maxBatchSize != null) {
+			processor.addPropertyValue("maxBatchSize", Integer.parseInt(maxBatchSize.getValue()));
+		}
+
 		return processor.getBeanDefinition();
 	}
 
@@ -53,6 +53,11 @@ public class ProvisioningParser extends AbstractBeanDefinitionParser {
 				provisioning.addPropertyValue("inboundProcessingStrategy", strategy);
 				break;
 			}
+			case OutboundProcessingStrategy: {
+				Object strategy = parseOutboundProcessingStrategy(child, context);
+				provisioning.addPropertyValue("outboundProcessingStrategy", strategy);
+				break;
+			}
 			case Registration: {
 				Object manager = parseRegistration(child, context);
 				provisioning.addPropertyValue("registrationManager", manager);
@@ -112,6 +117,17 @@ public class ProvisioningParser extends AbstractBeanDefinitionParser {
 		return new InboundProcessingStrategyParser().parse(element, context);
 	}
 
+	/**
+	 * Parse the outbound processing strategy configuration.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return
+	 */
+	protected Object parseOutboundProcessingStrategy(Element element, ParserContext context) {
+		return new OutboundProcessingStrategyParser().parse(element, context);
+	}
+
 	/**
 	 * Parse the registration configuration.
 	 * 
@@ -169,6 +185,9 @@ public class ProvisioningParser extends AbstractBeanDefinitionParser {
 		/** Inbound processing strategy */
 		InboundProcessingStrategy("inbound-processing-strategy"),
 
+		/** Outbound processing strategy */
+		OutboundProcessingStrategy("outbound-processing-strategy"),
+
 		/** Device registration */
 		Registration("registration"),
 
@@ -20,6 +20,7 @@ import com.openiot.rest.model.device.event.request.*;
 import com.openiot.rest.model.device.request.DeviceAssignmentCreateRequest;
 import com.openiot.rest.model.search.DateRangeSearchCriteria;
 import com.openiot.rest.model.search.SearchResults;
+import com.openiot.rest.model.search.device.MeasurementAggregationCriteria;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.OpenIoTSystemException;
 import com.openiot.spi.device.DeviceAssignmentStatus;
@@ -27,6 +28,8 @@ import com.openiot.spi.device.DeviceAssignmentType;
 import com.openiot.spi.device.IDeviceAssignment;
 import com.openiot.spi.device.IDeviceManagement;
 import com.openiot.spi.device.charting.IChartSeries;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
+import com.openiot.spi.device.charting.MeasurementRollupResolution;
 import com.openiot.spi.device.command.IDeviceCommand;
 import com.openiot.spi.device.event.*;
 import com.openiot.spi.error.ErrorCode;
@@ -44,6 +47,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -60,6 +64,18 @@ public class AssignmentsController extends OpenIoTController {
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(AssignmentsController.class);
 
+	/** Resolution value that lists stored measurements */
+	private static final String RESOLUTION_RAW = "raw";
+
+	/** Resolution value that picks a rollup resolution based on the range */
+	private static final String RESOLUTION_AUTO = "auto";
+
+	/** Most intervals returned when the rollup resolution is picked automatically */
+	private static final long MAX_ROLLUP_POINTS = 1000;
+
+	/** Default range for rollup series when no start date is passed */
+	private static final long DEFAULT_ROLLUP_RANGE_MS = 24 * 60 * 60 * 1000;
+
 	/**
 	 * Used by AJAX calls to create a device assignment.
 	 * 
@@ -192,6 +208,8 @@ public class AssignmentsController extends OpenIoTController {
 	 * @param pageSize
 	 * @param startDate
 	 * @param endDate
+	 * @param continuationToken
+	 * @param includeTotal
 	 * @return
 	 * @throws com.openiot.spi.OpenIoTException
 	 */
@@ -204,12 +222,16 @@ public class AssignmentsController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listEvents", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			return OpenIoT.getServer().getDeviceManagement().listDeviceEvents(token, criteria);
 		} finally {
 			Tracer.stop(LOGGER);
@@ -232,12 +254,16 @@ public class AssignmentsController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listMeasurements", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			return OpenIoT.getServer().getDeviceManagement().listDeviceMeasurements(token, criteria);
 		} finally {
 			Tracer.stop(LOGGER);
@@ -261,10 +287,14 @@ public class AssignmentsController extends OpenIoTController {
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
 			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
-			@ApiParam(value = "Measurement Ids", required = false) @RequestParam(required = false) String[] measurementIds)
+			@ApiParam(value = "Measurement Ids", required = false) @RequestParam(required = false) String[] measurementIds,
+			@ApiParam(value = "Rollup resolution (raw, auto, 1m, 1h or 1d)", required = false) @RequestParam(defaultValue = "raw") String resolution)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listMeasurementsAsChartSeries", LOGGER);
 		try {
+			if (!RESOLUTION_RAW.equals(resolution)) {
+				return listRollupsAsChartSeries(token, startDate, endDate, measurementIds, resolution);
+			}
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
 			ISearchResults<IDeviceMeasurements> measurements =
@@ -276,6 +306,73 @@ public class AssignmentsController extends OpenIoTController {
 		}
 	}
 
+	/**
+	 * Build chart series from measurement rollups. An automatic resolution uses the finest
+	 * rollups that cover the range with at most {@link #MAX_ROLLUP_POINTS} intervals.
+	 * 
+	 * @param token
+	 * @param startDate
+	 * @param endDate
+	 * @param measurementIds
+	 * @param code
+	 * @return
+	 * @throws OpenIoTException
+	 */
+	protected List<IChartSeries<Double>> listRollupsAsChartSeries(String token, Date startDate, Date endDate,
+			String[] measurementIds, String code) throws OpenIoTException {
+		Date end = (endDate != null) ? endDate : new Date();
+		Date start = (startDate != null) ? startDate : new Date(end.getTime() - DEFAULT_ROLLUP_RANGE_MS);
+		MeasurementRollupResolution resolution =
+				RESOLUTION_AUTO.equals(code) ? MeasurementRollupResolution.getForRange(
+						end.getTime() - start.getTime(), MAX_ROLLUP_POINTS) : MeasurementRollupResolution
+						.getByCode(code);
+		if (resolution == null) {
+			throw new OpenIoTSystemException(ErrorCode.InvalidRollupResolution, ErrorLevel.ERROR);
+		}
+		Date aligned = new Date(resolution.getIntervalStart(start.getTime()));
+		MeasurementAggregationCriteria criteria =
+				new MeasurementAggregationCriteria(aligned, end, resolution.getIntervalMs());
+		if (measurementIds != null) {
+			criteria.setMeasurementIds(Arrays.asList(measurementIds));
+		}
+		List<IMeasurementAggregateSeries> rollups =
+				OpenIoT.getServer().getDeviceManagement().listMeasurementRollups(token, resolution, criteria);
+		ChartBuilder builder = new ChartBuilder();
+		return builder.processAggregates(rollups);
+	}
+
+	/**
+	 * Aggregate device measurements for a given assignment into fixed-width intervals.
+	 * 
+	 * @param token
+	 * @param startDate
+	 * @param endDate
+	 * @param intervalMs
+	 * @param measurementIds
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	@RequestMapping(value = "/{token}/measurements/aggregates", method = RequestMethod.GET)
+	@ResponseBody
+	@ApiOperation(value = "Aggregate measurements for device assignment by time interval")
+	@Secured({ SitewhereRoles.ROLE_AUTHENTICATED_USER })
+	public List<IMeasurementAggregateSeries> aggregateMeasurements(
+			@ApiParam(value = "Assignment token", required = true) @PathVariable String token,
+			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Interval in milliseconds", required = false) @RequestParam(required = false) Long intervalMs,
+			@ApiParam(value = "Measurement Ids", required = false) @RequestParam(required = false) String[] measurementIds)
+			throws OpenIoTException {
+		Tracer.start(TracerCategory.RestApiCall, "aggregateMeasurements", LOGGER);
+		try {
+			MeasurementAggregationCriteria criteria =
+					createAggregationCriteria(startDate, endDate, intervalMs, measurementIds);
+			return OpenIoT.getServer().getDeviceManagement().aggregateDeviceMeasurements(token, criteria);
+		} finally {
+			Tracer.stop(LOGGER);
+		}
+	}
+
 	/**
 	 * Create measurements to be associated with a device assignment.
 	 * 
@@ -318,12 +415,16 @@ public class AssignmentsController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listLocations", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			return OpenIoT.getServer().getDeviceManagement().listDeviceLocations(token, criteria);
 		} finally {
 			Tracer.stop(LOGGER);
@@ -372,12 +473,16 @@ public class AssignmentsController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listAlerts", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			return OpenIoT.getServer().getDeviceManagement().listDeviceAlerts(token, criteria);
 		} finally {
 			Tracer.stop(LOGGER);
@@ -461,12 +566,16 @@ public class AssignmentsController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listCommandInvocations", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			ISearchResults<IDeviceCommandInvocation> matches =
 					OpenIoT.getServer().getDeviceManagement().listDeviceCommandInvocations(token, criteria);
 			DeviceCommandInvocationMarshalHelper helper = new DeviceCommandInvocationMarshalHelper();
@@ -522,12 +631,16 @@ public class AssignmentsController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listStateChanges", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			return OpenIoT.getServer().getDeviceManagement().listDeviceStateChanges(token, criteria);
 		} finally {
 			Tracer.stop(LOGGER);
@@ -575,12 +688,16 @@ public class AssignmentsController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listCommandResponses", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			return OpenIoT.getServer().getDeviceManagement().listDeviceCommandResponses(token, criteria);
 		} finally {
 			Tracer.stop(LOGGER);
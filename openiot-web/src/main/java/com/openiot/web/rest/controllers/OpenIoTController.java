@@ -9,6 +9,7 @@ package com.openiot.web.rest.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.openiot.rest.IOpenIoTWebConstants;
+import com.openiot.rest.model.search.device.MeasurementAggregationCriteria;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.OpenIoTSystemException;
 import org.apache.log4j.Logger;
@@ -20,6 +21,8 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
 
 /**
  * Base class for common controller functionality.
@@ -31,6 +34,37 @@ public class OpenIoTController {
 	/** Static logger instance */
 	private static Logger LOGGER = Logger.getLogger(OpenIoTController.class);
 
+	/** Default range for measurement aggregates when no start date is passed */
+	private static final long DEFAULT_AGGREGATE_RANGE_MS = 24 * 60 * 60 * 1000;
+
+	/** Number of intervals used for measurement aggregates when no interval is passed */
+	private static final long DEFAULT_AGGREGATE_INTERVALS = 300;
+
+	/**
+	 * Create criteria for aggregating measurements from request parameters. The range
+	 * defaults to the last day and the interval to one that splits the range into a few
+	 * hundred points.
+	 * 
+	 * @param startDate
+	 * @param endDate
+	 * @param intervalMs
+	 * @param measurementIds
+	 * @return
+	 */
+	protected MeasurementAggregationCriteria createAggregationCriteria(Date startDate, Date endDate,
+			Long intervalMs, String[] measurementIds) {
+		Date end = (endDate != null) ? endDate : new Date();
+		Date start = (startDate != null) ? startDate : new Date(end.getTime() - DEFAULT_AGGREGATE_RANGE_MS);
+		long interval =
+				(intervalMs != null) ? intervalMs : Math.max(1,
+						(end.getTime() - start.getTime()) / DEFAULT_AGGREGATE_INTERVALS);
+		MeasurementAggregationCriteria criteria = new MeasurementAggregationCriteria(start, end, interval);
+		if (measurementIds != null) {
+			criteria.setMeasurementIds(Arrays.asList(measurementIds));
+		}
+		return criteria;
+	}
+
 	/**
 	 * Send message back to called indicating successful add.
 	 * 
@@ -20,12 +20,14 @@ import com.openiot.rest.model.device.request.ZoneCreateRequest;
 import com.openiot.rest.model.search.DateRangeSearchCriteria;
 import com.openiot.rest.model.search.SearchCriteria;
 import com.openiot.rest.model.search.SearchResults;
+import com.openiot.rest.model.search.device.MeasurementAggregationCriteria;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.OpenIoTSystemException;
 import com.openiot.spi.asset.IAssetModuleManager;
 import com.openiot.spi.device.IDeviceAssignment;
 import com.openiot.spi.device.ISite;
 import com.openiot.spi.device.IZone;
+import com.openiot.spi.device.charting.IMeasurementAggregateSeries;
 import com.openiot.spi.device.event.*;
 import com.openiot.spi.error.ErrorCode;
 import com.openiot.spi.error.ErrorLevel;
@@ -192,12 +194,16 @@ public class SitesController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listDeviceMeasurementsForSite", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			ISearchResults<IDeviceMeasurements> results =
 					OpenIoT.getServer().getDeviceManagement().listDeviceMeasurementsForSite(siteToken,
 							criteria);
@@ -214,6 +220,39 @@ public class SitesController extends OpenIoTController {
 		}
 	}
 
+	/**
+	 * Aggregate device measurements for a given site into fixed-width intervals.
+	 * 
+	 * @param siteToken
+	 * @param startDate
+	 * @param endDate
+	 * @param intervalMs
+	 * @param measurementIds
+	 * @return
+	 * @throws com.openiot.spi.OpenIoTException
+	 */
+	@RequestMapping(value = "/{siteToken}/measurements/aggregates", method = RequestMethod.GET)
+	@ResponseBody
+	@ApiOperation(value = "Aggregate measurements associated with a site by time interval")
+	@Secured({ SitewhereRoles.ROLE_AUTHENTICATED_USER })
+	public List<IMeasurementAggregateSeries> aggregateDeviceMeasurementsForSite(
+			@ApiParam(value = "Unique token that identifies site", required = true) @PathVariable String siteToken,
+			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Interval in milliseconds", required = false) @RequestParam(required = false) Long intervalMs,
+			@ApiParam(value = "Measurement Ids", required = false) @RequestParam(required = false) String[] measurementIds)
+			throws OpenIoTException {
+		Tracer.start(TracerCategory.RestApiCall, "aggregateDeviceMeasurementsForSite", LOGGER);
+		try {
+			MeasurementAggregationCriteria criteria =
+					createAggregationCriteria(startDate, endDate, intervalMs, measurementIds);
+			return OpenIoT.getServer().getDeviceManagement().aggregateDeviceMeasurementsForSite(siteToken,
+					criteria);
+		} finally {
+			Tracer.stop(LOGGER);
+		}
+	}
+
 	/**
 	 * Get device locations for a given site.
 	 * 
@@ -231,12 +270,16 @@ public class SitesController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listDeviceLocationsForSite", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			ISearchResults<IDeviceLocation> results =
 					OpenIoT.getServer().getDeviceManagement().listDeviceLocationsForSite(siteToken,
 							criteria);
@@ -270,12 +313,16 @@ public class SitesController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listDeviceAlertsForSite", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			ISearchResults<IDeviceAlert> results =
 					OpenIoT.getServer().getDeviceManagement().listDeviceAlertsForSite(siteToken, criteria);
 
@@ -308,12 +355,16 @@ public class SitesController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listDeviceCommandInvocationsForSite", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			ISearchResults<IDeviceCommandInvocation> results =
 					OpenIoT.getServer().getDeviceManagement().listDeviceCommandInvocationsForSite(
 							siteToken, criteria);
@@ -347,12 +398,16 @@ public class SitesController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listDeviceCommandResponsesForSite", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			ISearchResults<IDeviceCommandResponse> results =
 					OpenIoT.getServer().getDeviceManagement().listDeviceCommandResponsesForSite(siteToken,
 							criteria);
@@ -386,12 +441,16 @@ public class SitesController extends OpenIoTController {
 			@ApiParam(value = "Page number (First page is 1)", required = false) @RequestParam(defaultValue = "1") int page,
 			@ApiParam(value = "Page size", required = false) @RequestParam(defaultValue = "100") int pageSize,
 			@ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
-			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate)
+			@ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+			@ApiParam(value = "Continuation token from previous page", required = false) @RequestParam(required = false) String continuationToken,
+			@ApiParam(value = "Include total count", required = false) @RequestParam(defaultValue = "true") boolean includeTotal)
 			throws OpenIoTException {
 		Tracer.start(TracerCategory.RestApiCall, "listDeviceStateChangesForSite", LOGGER);
 		try {
 			DateRangeSearchCriteria criteria =
 					new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+			criteria.setContinuationToken(continuationToken);
+			criteria.setIncludeTotal(includeTotal);
 			ISearchResults<IDeviceStateChange> results =
 					OpenIoT.getServer().getDeviceManagement().listDeviceStateChangesForSite(siteToken,
 							criteria);
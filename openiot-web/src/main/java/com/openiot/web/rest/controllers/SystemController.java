@@ -12,6 +12,7 @@ import com.openiot.Tracer;
 import com.openiot.core.user.SitewhereRoles;
 import com.openiot.spi.OpenIoTException;
 import com.openiot.spi.server.debug.TracerCategory;
+import com.openiot.spi.system.ILatencySummary;
 import com.openiot.spi.system.IVersion;
 import com.wordnik.swagger.annotations.Api;
 import com.wordnik.swagger.annotations.ApiOperation;
@@ -22,6 +23,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import java.util.List;
+
 /**
  * Controller for system operations.
  * 
@@ -47,4 +50,31 @@ public class SystemController extends OpenIoTController {
 			Tracer.stop(LOGGER);
 		}
 	}
+
+	@RequestMapping(value = "/latency", method = RequestMethod.GET)
+	@ResponseBody
+	@ApiOperation(value = "Get latency percentiles for each event pipeline stage")
+	@Secured({ SitewhereRoles.ROLE_AUTHENTICATED_USER })
+	public List<ILatencySummary> getPipelineLatency() throws OpenIoTException {
+		Tracer.start(TracerCategory.RestApiCall, "getPipelineLatency", LOGGER);
+		try {
+			return OpenIoT.getServer().getPipelineLatencyMetrics().getLatencySummaries();
+		} finally {
+			Tracer.stop(LOGGER);
+		}
+	}
+
+	@RequestMapping(value = "/latency", method = RequestMethod.DELETE)
+	@ResponseBody
+	@ApiOperation(value = "Discard recorded latencies for all event pipeline stages")
+	@Secured({ SitewhereRoles.ROLE_ADMINISTER_SITES })
+	public List<ILatencySummary> resetPipelineLatency() throws OpenIoTException {
+		Tracer.start(TracerCategory.RestApiCall, "resetPipelineLatency", LOGGER);
+		try {
+			OpenIoT.getServer().getPipelineLatencyMetrics().reset();
+			return OpenIoT.getServer().getPipelineLatencyMetrics().getLatencySummaries();
+		} finally {
+			Tracer.stop(LOGGER);
+		}
+	}
 }
\ No newline at end of file